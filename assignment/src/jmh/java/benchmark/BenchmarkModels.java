@@ -0,0 +1,91 @@
+package benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import formula.FormulaGenerator;
+import formula.stateFormula.StateFormula;
+import model.ModelGenerator;
+
+/**
+ * Random models and formulas for the benchmarks, generated from a fixed seed so that every run measures the same
+ * inputs. Models are random graphs from ModelGenerator whose states are labelled with p0 to p3 and whose transitions
+ * perform act0 to act3, and formulas come from FormulaGenerator over the same labels and actions.
+ */
+final class BenchmarkModels {
+    static final long SEED = 4052;
+    private static final int LABELS = 4;
+    private static final int ACTIONS = 4;
+
+    private BenchmarkModels() {
+    }
+
+    /**
+     * Writes a random model in the JSON format of Model.parseModel to a temporary file, deleted on exit.
+     *
+     * @param states
+     *            - number of states
+     * @param branching
+     *            - number of transitions leaving each state
+     * @return the path of the file
+     */
+    static String writeModel(int states, int branching) throws IOException {
+        String path = temporaryFile("model", ".json");
+        ModelGenerator.randomGraph(states, branching, LABELS, ACTIONS, SEED).writeJson(path);
+        return path;
+    }
+
+    /**
+     * Writes a random formula in the JSON format of FormulaParser to a temporary file, deleted on exit, along with
+     * the action sets it refers to.
+     *
+     * @param depth
+     *            - nesting depth of the formula
+     * @param seed
+     *            - seed of the formula, to draw several formulas of the same depth
+     * @return the path of the file
+     */
+    static String writeFormula(int depth, long seed) throws IOException {
+        String path = temporaryFile("formula", ".json");
+        new FormulaGenerator(labels(), actions(), seed).write(depth, path);
+        return path;
+    }
+
+    /**
+     * Draws a random formula without action sets, in the syntax read by parseRawFormulaString.
+     *
+     * @param depth
+     *            - nesting depth of the formula, 0 for an atomic proposition
+     * @param seed
+     *            - seed of the formula
+     * @return the formula
+     */
+    static String rawFormula(int depth, long seed) {
+        StateFormula formula = new FormulaGenerator(labels(), Collections.<String>emptyList(), seed).next(depth);
+        return FormulaGenerator.toFormulaString(formula);
+    }
+
+    private static List<String> labels() {
+        List<String> labels = new ArrayList<>();
+        for (int i = 0; i < LABELS; i++)
+            labels.add("p" + i);
+        return labels;
+    }
+
+    private static List<String> actions() {
+        List<String> actions = new ArrayList<>();
+        for (int i = 0; i < ACTIONS; i++)
+            actions.add("act" + i);
+        return actions;
+    }
+
+    private static String temporaryFile(String prefix, String suffix) throws IOException {
+        File file = File.createTempFile(prefix, suffix);
+        file.deleteOnExit();
+        return file.getPath();
+    }
+
+}
@@ -0,0 +1,80 @@
+package benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import formula.FormulaParser;
+import formula.stateFormula.BoolProp;
+import formula.stateFormula.StateFormula;
+import model.Model;
+import modelChecker.*;
+
+/**
+ * Time taken by each model checker to check a random query against a random model, from the parsed Model to the
+ * verdict and trace. A new checker is created for every check, so no result is reused from a previous iteration.
+ * SimpleModelChecker adds the transitions of the model to its states as it checks it, so it is given a model parsed
+ * again before each invocation, outside the measured time.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CheckerBenchmark {
+    @Param({ "1000", "10000" })
+    public int states;
+
+    @Param({ "2", "4" })
+    public int branching;
+
+    @Param({ "2", "4", "6" })
+    public int depth;
+
+    @Param({ "simple", "fixpoint", "symbolic", "onTheFly" })
+    public String engine;
+
+    private String modelPath;
+    private Model model;
+    private StateFormula constraint;
+    private StateFormula query;
+
+    @Setup
+    public void setUp() throws IOException {
+        modelPath = BenchmarkModels.writeModel(states, branching);
+        model = Model.parseModel(modelPath);
+        constraint = new BoolProp(true);
+        query = new FormulaParser(BenchmarkModels.writeFormula(depth, BenchmarkModels.SEED)).parse();
+    }
+
+    @Setup(Level.Invocation)
+    public void freshModel() throws IOException {
+        if (engine.equals("simple"))
+            model = Model.parseModel(modelPath);
+    }
+
+    @Benchmark
+    public String[] check() {
+        ModelChecker checker = newChecker();
+        checker.check(model, constraint, query);
+        return checker.getTrace();
+    }
+
+    private ModelChecker newChecker() {
+        switch (engine) {
+        case "simple":
+            return new SimpleModelChecker();
+        case "fixpoint":
+            return new FixpointModelChecker();
+        case "symbolic":
+            return new SymbolicModelChecker();
+        case "onTheFly":
+            return new OnTheFlyModelChecker();
+        default:
+            throw new IllegalArgumentException("Unknown engine " + engine);
+        }
+    }
+
+}
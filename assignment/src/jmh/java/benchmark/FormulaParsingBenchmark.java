@@ -0,0 +1,43 @@
+package benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import formula.FormulaParser;
+import formula.stateFormula.StateFormula;
+
+/**
+ * Time taken to parse formulas of growing nesting depth, from a JSON file with action sets and from a raw string.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FormulaParsingBenchmark {
+    @Param({ "2", "4", "8", "12" })
+    public int depth;
+
+    private String jsonPath;
+    private String raw;
+
+    @Setup
+    public void setUp() throws IOException {
+        jsonPath = BenchmarkModels.writeFormula(depth, BenchmarkModels.SEED);
+        raw = BenchmarkModels.rawFormula(depth, BenchmarkModels.SEED);
+    }
+
+    @Benchmark
+    public StateFormula parse() throws IOException {
+        return new FormulaParser(jsonPath).parse();
+    }
+
+    @Benchmark
+    public StateFormula parseRawFormulaString() throws IOException {
+        return FormulaParser.parseRawFormulaString(raw);
+    }
+
+}
@@ -0,0 +1,58 @@
+package benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import model.BinaryModelFormat;
+import model.CompiledModel;
+import model.Model;
+import model.ModelLoader;
+
+/**
+ * Time taken to load a model from disk: parsing its JSON into a Model, streaming it straight into a CompiledModel, and
+ * reading the binary format written from that compiled model.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ModelLoadingBenchmark {
+    @Param({ "1000", "10000", "100000" })
+    public int states;
+
+    @Param({ "2", "4" })
+    public int branching;
+
+    private String jsonPath;
+    private String binaryPath;
+
+    @Setup
+    public void setUp() throws IOException {
+        jsonPath = BenchmarkModels.writeModel(states, branching);
+        File binary = File.createTempFile("model", ".bin");
+        binary.deleteOnExit();
+        binaryPath = binary.getPath();
+        BinaryModelFormat.write(new ModelLoader().load(jsonPath), binaryPath);
+    }
+
+    @Benchmark
+    public Model parseModel() throws IOException {
+        return Model.parseModel(jsonPath);
+    }
+
+    @Benchmark
+    public CompiledModel loadCompiled() throws IOException {
+        return new ModelLoader().load(jsonPath);
+    }
+
+    @Benchmark
+    public CompiledModel readBinary() throws IOException {
+        return BinaryModelFormat.read(binaryPath);
+    }
+
+}
@@ -0,0 +1,547 @@
+package bdd;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reduced ordered binary decision diagrams over a fixed number of boolean variables, variable 0 being at the top.
+ * A BDD is an int handle to a node of the manager; ZERO and ONE are the terminals. Nodes are hash-consed in a unique
+ * table, so two BDDs denote the same boolean function exactly when their handles are equal, and the results of the
+ * operations are memoised in a direct-mapped computed table.
+ *
+ * Nodes are reclaimed by a mark-and-sweep garbage collector. The roots are the BDDs with a positive reference count,
+ * set with ref and deref. Collection never happens inside an operation: the node table grows instead, and callers run
+ * gc or maybeGc at points where every BDD they still need is referenced.
+ *
+ * A manager is not thread-safe.
+ */
+public class BddManager {
+    public static final int ZERO = 0;
+    public static final int ONE = 1;
+
+    private static final int AND = 0;
+    private static final int OR = 1;
+    private static final int DIFF = 2;
+    private static final int NOT = 3;
+    private static final int EXISTS = 4;
+    private static final int REL_PROD = 5;
+    private static final int REPLACE = 6;
+
+    private final int varCount;
+
+    // Node table, free nodes being chained through next and having a negative variable:
+    private int[] vars;
+    private int[] lows;
+    private int[] highs;
+    private int[] next;
+    private int[] refs;
+    private int[] buckets;
+    private int freeList = -1;
+    private int freeCount;
+
+    // Live nodes after the last collection, maybeGc collects again once the table has grown past twice that:
+    private int gcThreshold;
+    private int gcCount;
+
+    // Computed table, indexed by a hash of the operation and its operands:
+    private final int[] cacheOps;
+    private final int[] cacheA;
+    private final int[] cacheB;
+    private final int[] cacheC;
+    private final int[] cacheResults;
+
+    private final List<int[]> renamings = new ArrayList<>();
+
+    /**
+     * Creates a manager.
+     *
+     * @param varCount
+     *            - number of variables
+     * @param initialNodes
+     *            - initial capacity of the node table, which grows as needed
+     * @param cacheSize
+     *            - number of entries of the computed table, rounded up to a power of two
+     */
+    public BddManager(int varCount, int initialNodes, int cacheSize) {
+        if (varCount < 0)
+            throw new IllegalArgumentException("The number of variables cannot be negative");
+        this.varCount = varCount;
+
+        int capacity = Math.max(16, Integer.highestOneBit(Math.max(initialNodes, 2) - 1) << 1);
+        vars = new int[capacity];
+        lows = new int[capacity];
+        highs = new int[capacity];
+        next = new int[capacity];
+        refs = new int[capacity];
+        buckets = new int[capacity];
+        Arrays.fill(buckets, -1);
+        for (int node = capacity - 1; node >= 2; node--)
+            release(node);
+
+        // Terminals sit below every variable and are never collected:
+        vars[ZERO] = vars[ONE] = varCount;
+        refs[ZERO] = refs[ONE] = 1;
+
+        int entries = Math.max(16, Integer.highestOneBit(Math.max(cacheSize, 2) - 1) << 1);
+        cacheOps = new int[entries];
+        cacheA = new int[entries];
+        cacheB = new int[entries];
+        cacheC = new int[entries];
+        cacheResults = new int[entries];
+        Arrays.fill(cacheOps, -1);
+        gcThreshold = capacity;
+    }
+
+    public int getVarCount() {
+        return varCount;
+    }
+
+    /**
+     * Returns the number of nodes in use, terminals included, some of which may be garbage until the next
+     * collection.
+     */
+    public int getNodeCount() {
+        return vars.length - freeCount;
+    }
+
+    public int getGcCount() {
+        return gcCount;
+    }
+
+    public int getVar(int f) {
+        return vars[f];
+    }
+
+    public int getLow(int f) {
+        return lows[f];
+    }
+
+    public int getHigh(int f) {
+        return highs[f];
+    }
+
+    /**
+     * Returns the BDD of a single variable.
+     */
+    public int ithVar(int var) {
+        return mk(var, ZERO, ONE);
+    }
+
+    /**
+     * Returns the BDD of the negation of a single variable.
+     */
+    public int nithVar(int var) {
+        return mk(var, ONE, ZERO);
+    }
+
+    /**
+     * Returns the node testing a variable, the only way to build a BDD from scratch.
+     *
+     * @param var
+     *            - the variable tested, above the variables of both branches
+     * @param low
+     *            - the BDD when the variable is false
+     * @param high
+     *            - the BDD when the variable is true
+     * @return the unique node for these arguments, or low if both branches are equal
+     */
+    public int mk(int var, int low, int high) {
+        if (var < 0 || var >= vars[low] || var >= vars[high])
+            throw new IllegalArgumentException("Variable " + var + " is not above the variables of its branches");
+        if (low == high)
+            return low;
+
+        int bucket = hash(var, low, high) & (buckets.length - 1);
+        for (int node = buckets[bucket]; node >= 0; node = next[node]) {
+            if (vars[node] == var && lows[node] == low && highs[node] == high)
+                return node;
+        }
+
+        if (freeList < 0) {
+            grow();
+            bucket = hash(var, low, high) & (buckets.length - 1);
+        }
+        int node = freeList;
+        freeList = next[node];
+        freeCount--;
+        vars[node] = var;
+        lows[node] = low;
+        highs[node] = high;
+        next[node] = buckets[bucket];
+        buckets[bucket] = node;
+        return node;
+    }
+
+    /**
+     * Returns the conjunction of positive literals of the given variables, used as the quantified variables of
+     * exists and relProd.
+     */
+    public int cube(int[] cubeVars) {
+        int[] sorted = cubeVars.clone();
+        Arrays.sort(sorted);
+        int result = ONE;
+        for (int i = sorted.length - 1; i >= 0; i--) {
+            if (i + 1 < sorted.length && sorted[i] == sorted[i + 1])
+                continue;
+            result = mk(sorted[i], ZERO, result);
+        }
+        return result;
+    }
+
+    /**
+     * Registers a renaming of variables for replace. The renaming must keep the order of the variables it is applied
+     * to, so that the renamed BDD is still ordered.
+     *
+     * @param map
+     *            - for each variable, the variable it is renamed to
+     * @return the id of the renaming
+     */
+    public int newRenaming(int[] map) {
+        if (map.length != varCount)
+            throw new IllegalArgumentException("A renaming must map each of the " + varCount + " variables");
+        renamings.add(map.clone());
+        return renamings.size() - 1;
+    }
+
+    public int and(int f, int g) {
+        return apply(AND, f, g);
+    }
+
+    public int or(int f, int g) {
+        return apply(OR, f, g);
+    }
+
+    /**
+     * Returns f and not g.
+     */
+    public int diff(int f, int g) {
+        return apply(DIFF, f, g);
+    }
+
+    public int not(int f) {
+        if (f <= ONE)
+            return f ^ 1;
+
+        int cached = lookup(NOT, f, 0, 0);
+        if (cached >= 0)
+            return cached;
+        int result = mk(vars[f], not(lows[f]), not(highs[f]));
+        store(NOT, f, 0, 0, result);
+        return result;
+    }
+
+    /**
+     * Existentially quantifies the variables of a cube.
+     */
+    public int exists(int f, int cube) {
+        if (f <= ONE || cube == ONE)
+            return f;
+        while (vars[cube] < vars[f])
+            cube = highs[cube];
+        if (cube == ONE)
+            return f;
+
+        int cached = lookup(EXISTS, f, cube, 0);
+        if (cached >= 0)
+            return cached;
+
+        int result;
+        if (vars[cube] == vars[f]) {
+            int low = exists(lows[f], highs[cube]);
+            result = low == ONE ? ONE : or(low, exists(highs[f], highs[cube]));
+        } else {
+            result = mk(vars[f], exists(lows[f], cube), exists(highs[f], cube));
+        }
+        store(EXISTS, f, cube, 0, result);
+        return result;
+    }
+
+    /**
+     * Relational product, the existential quantification of the variables of a cube over the conjunction of f and
+     * g, computed without building the conjunction.
+     */
+    public int relProd(int f, int g, int cube) {
+        if (f == ZERO || g == ZERO)
+            return ZERO;
+        if (cube == ONE)
+            return and(f, g);
+        if (f == ONE)
+            return exists(g, cube);
+        if (g == ONE || f == g)
+            return exists(f, cube);
+        if (f > g) {
+            int swap = f;
+            f = g;
+            g = swap;
+        }
+
+        int top = Math.min(vars[f], vars[g]);
+        while (vars[cube] < top)
+            cube = highs[cube];
+        if (cube == ONE)
+            return and(f, g);
+
+        int cached = lookup(REL_PROD, f, g, cube);
+        if (cached >= 0)
+            return cached;
+
+        int f0 = vars[f] == top ? lows[f] : f;
+        int f1 = vars[f] == top ? highs[f] : f;
+        int g0 = vars[g] == top ? lows[g] : g;
+        int g1 = vars[g] == top ? highs[g] : g;
+
+        int result;
+        if (vars[cube] == top) {
+            int low = relProd(f0, g0, highs[cube]);
+            result = low == ONE ? ONE : or(low, relProd(f1, g1, highs[cube]));
+        } else {
+            result = mk(top, relProd(f0, g0, cube), relProd(f1, g1, cube));
+        }
+        store(REL_PROD, f, g, cube, result);
+        return result;
+    }
+
+    /**
+     * Renames the variables of a BDD.
+     *
+     * @param f
+     *            - the BDD
+     * @param renaming
+     *            - id of a renaming returned by newRenaming
+     * @return the BDD with each variable replaced by its image
+     */
+    public int replace(int f, int renaming) {
+        if (f <= ONE)
+            return f;
+
+        int cached = lookup(REPLACE, f, renaming, 0);
+        if (cached >= 0)
+            return cached;
+        int[] map = renamings.get(renaming);
+        int result = mk(map[vars[f]], replace(lows[f], renaming), replace(highs[f], renaming));
+        store(REPLACE, f, renaming, 0, result);
+        return result;
+    }
+
+    /**
+     * Evaluates a BDD under an assignment of its variables.
+     *
+     * @param f
+     *            - the BDD
+     * @param assignment
+     *            - value of each variable
+     * @return the value of the function
+     */
+    public boolean evaluate(int f, boolean[] assignment) {
+        while (f > ONE)
+            f = assignment[vars[f]] ? highs[f] : lows[f];
+        return f == ONE;
+    }
+
+    /**
+     * Returns the number of nodes of a BDD, terminals included.
+     */
+    public int nodeCount(int f) {
+        boolean[] seen = new boolean[vars.length];
+        int[] stack = new int[vars.length];
+        int size = 0, count = 0;
+        stack[size++] = f;
+        seen[f] = true;
+        while (size > 0) {
+            int node = stack[--size];
+            count++;
+            if (node <= ONE)
+                continue;
+            if (!seen[lows[node]]) {
+                seen[lows[node]] = true;
+                stack[size++] = lows[node];
+            }
+            if (!seen[highs[node]]) {
+                seen[highs[node]] = true;
+                stack[size++] = highs[node];
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Protects a BDD from garbage collection.
+     *
+     * @return the BDD itself
+     */
+    public int ref(int f) {
+        refs[f]++;
+        return f;
+    }
+
+    /**
+     * Releases a reference taken with ref.
+     */
+    public void deref(int f) {
+        if (refs[f] <= 0)
+            throw new IllegalStateException("BDD " + f + " is not referenced");
+        refs[f]--;
+    }
+
+    /**
+     * Collects garbage if the node table has grown enough since the last collection. Every BDD still needed must be
+     * referenced.
+     *
+     * @return true if a collection took place
+     */
+    public boolean maybeGc() {
+        if (getNodeCount() < gcThreshold)
+            return false;
+        gc();
+        return true;
+    }
+
+    /**
+     * Frees every node not reachable from a referenced BDD and empties the computed table. Every BDD still needed
+     * must be referenced.
+     */
+    public void gc() {
+        boolean[] marked = new boolean[vars.length];
+        int[] stack = new int[vars.length];
+        marked[ZERO] = marked[ONE] = true;
+        for (int root = 2; root < vars.length; root++) {
+            if (refs[root] <= 0 || marked[root] || vars[root] < 0)
+                continue;
+            int size = 0;
+            stack[size++] = root;
+            marked[root] = true;
+            while (size > 0) {
+                int node = stack[--size];
+                if (!marked[lows[node]]) {
+                    marked[lows[node]] = true;
+                    stack[size++] = lows[node];
+                }
+                if (!marked[highs[node]]) {
+                    marked[highs[node]] = true;
+                    stack[size++] = highs[node];
+                }
+            }
+        }
+
+        Arrays.fill(buckets, -1);
+        freeList = -1;
+        freeCount = 0;
+        for (int node = vars.length - 1; node >= 2; node--) {
+            if (marked[node])
+                rehash(node);
+            else
+                release(node);
+        }
+        Arrays.fill(cacheOps, -1);
+
+        gcCount++;
+        gcThreshold = Math.max(gcThreshold, 2 * getNodeCount());
+    }
+
+    private void release(int node) {
+        vars[node] = -1;
+        refs[node] = 0;
+        next[node] = freeList;
+        freeList = node;
+        freeCount++;
+    }
+
+    private void rehash(int node) {
+        int bucket = hash(vars[node], lows[node], highs[node]) & (buckets.length - 1);
+        next[node] = buckets[bucket];
+        buckets[bucket] = node;
+    }
+
+    private void grow() {
+        int oldCapacity = vars.length;
+        int capacity = oldCapacity * 2;
+        vars = Arrays.copyOf(vars, capacity);
+        lows = Arrays.copyOf(lows, capacity);
+        highs = Arrays.copyOf(highs, capacity);
+        next = Arrays.copyOf(next, capacity);
+        refs = Arrays.copyOf(refs, capacity);
+        buckets = new int[capacity];
+        Arrays.fill(buckets, -1);
+
+        for (int node = 2; node < oldCapacity; node++) {
+            if (vars[node] >= 0)
+                rehash(node);
+        }
+        for (int node = capacity - 1; node >= oldCapacity; node--)
+            release(node);
+    }
+
+    private int apply(int op, int f, int g) {
+        switch (op) {
+        case AND:
+            if (f == ZERO || g == ZERO)
+                return ZERO;
+            if (f == ONE || f == g)
+                return g;
+            if (g == ONE)
+                return f;
+            break;
+        case OR:
+            if (f == ONE || g == ONE)
+                return ONE;
+            if (f == ZERO || f == g)
+                return g;
+            if (g == ZERO)
+                return f;
+            break;
+        default:
+            if (f == ZERO || g == ONE || f == g)
+                return ZERO;
+            if (g == ZERO)
+                return f;
+            if (f == ONE)
+                return not(g);
+        }
+
+        // Conjunction and disjunction commute, both orders share a cache entry:
+        if (op != DIFF && f > g) {
+            int swap = f;
+            f = g;
+            g = swap;
+        }
+
+        int cached = lookup(op, f, g, 0);
+        if (cached >= 0)
+            return cached;
+
+        int top = Math.min(vars[f], vars[g]);
+        int low = apply(op, vars[f] == top ? lows[f] : f, vars[g] == top ? lows[g] : g);
+        int high = apply(op, vars[f] == top ? highs[f] : f, vars[g] == top ? highs[g] : g);
+        int result = mk(top, low, high);
+        store(op, f, g, 0, result);
+        return result;
+    }
+
+    private int lookup(int op, int a, int b, int c) {
+        int entry = hash(op, a, b, c) & (cacheOps.length - 1);
+        if (cacheOps[entry] == op && cacheA[entry] == a && cacheB[entry] == b && cacheC[entry] == c)
+            return cacheResults[entry];
+        return -1;
+    }
+
+    private void store(int op, int a, int b, int c, int result) {
+        int entry = hash(op, a, b, c) & (cacheOps.length - 1);
+        cacheOps[entry] = op;
+        cacheA[entry] = a;
+        cacheB[entry] = b;
+        cacheC[entry] = c;
+        cacheResults[entry] = result;
+    }
+
+    private static int hash(int a, int b, int c) {
+        int h = a * 0x9E3779B1 + b * 0x85EBCA77 + c * 0xC2B2AE3D;
+        return h ^ (h >>> 15);
+    }
+
+    private static int hash(int a, int b, int c, int d) {
+        int h = hash(a, b, c) * 0x27D4EB2F + d * 0x165667B1;
+        return h ^ (h >>> 13);
+    }
+
+}
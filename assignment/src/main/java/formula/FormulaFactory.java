@@ -0,0 +1,181 @@
+package formula;
+
+import java.util.*;
+
+import formula.pathFormula.*;
+import formula.stateFormula.*;
+
+/**
+ * Hash-consing factory for formulas. Every formula built or interned through the same factory is a canonical
+ * instance: two structurally equal formulas, action sets included, are the very same object and share the same id.
+ * Ids are given in creation order starting from 0 and never change, so they can key caches of results computed for
+ * subformulas.
+ *
+ * The action sets of canonical formulas are unmodifiable copies, so that a canonical instance can never drift away
+ * from its id. An empty action set stands for any action, as everywhere else.
+ */
+public class FormulaFactory {
+    private static final Set<String> ANY_ACTION = Collections.emptySet();
+
+    private final Map<List<Object>, Object> canonical = new HashMap<>();
+    private final Map<Object, Integer> ids = new IdentityHashMap<>();
+
+    /**
+     * Returns the canonical instance of a state formula, interning its subformulas on the way. Interning a canonical
+     * instance returns it unchanged.
+     *
+     * @param formula
+     *            - any state formula, typically freshly parsed
+     * @return the canonical instance structurally equal to the formula
+     */
+    public synchronized StateFormula intern(StateFormula formula) {
+        if (ids.containsKey(formula))
+            return formula;
+
+        if (formula instanceof And) {
+            return and(intern(((And) formula).left), intern(((And) formula).right));
+        } else if (formula instanceof Or) {
+            return or(intern(((Or) formula).left), intern(((Or) formula).right));
+        } else if (formula instanceof Not) {
+            return not(intern(((Not) formula).stateFormula));
+        } else if (formula instanceof AtomicProp) {
+            return atomic(((AtomicProp) formula).label);
+        } else if (formula instanceof BoolProp) {
+            return bool(((BoolProp) formula).value);
+        } else if (formula instanceof ThereExists) {
+            return exists(intern(((ThereExists) formula).pathFormula));
+        } else if (formula instanceof ForAll) {
+            return forAll(intern(((ForAll) formula).pathFormula));
+        } else {
+            throw new IllegalArgumentException("Unsupported state formula " + formula);
+        }
+    }
+
+    /**
+     * Returns the canonical instance of a path formula, interning its subformulas on the way.
+     *
+     * @param formula
+     *            - any path formula
+     * @return the canonical instance structurally equal to the formula
+     */
+    public synchronized PathFormula intern(PathFormula formula) {
+        if (ids.containsKey(formula))
+            return formula;
+
+        if (formula instanceof Until) {
+            Until until = (Until) formula;
+            return until(intern(until.left), intern(until.right), until.getLeftActions(), until.getRightActions());
+        } else if (formula instanceof Eventually) {
+            Eventually eventually = (Eventually) formula;
+            return eventually(intern(eventually.stateFormula), eventually.getLeftActions(),
+                    eventually.getRightActions());
+        } else if (formula instanceof Next) {
+            return next(intern(((Next) formula).stateFormula), ((Next) formula).getActions());
+        } else if (formula instanceof Always) {
+            return always(intern(((Always) formula).stateFormula), ((Always) formula).getActions());
+        } else {
+            throw new IllegalArgumentException("Unsupported path formula " + formula);
+        }
+    }
+
+    /**
+     * Returns the id of a canonical formula of this factory.
+     *
+     * @param formula
+     *            - a state or path formula
+     * @return its id, or -1 if the formula was not built by this factory
+     */
+    public synchronized int getId(Object formula) {
+        Integer id = ids.get(formula);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Returns the number of canonical formulas built so far, which is also the next id to be given.
+     *
+     * @return number of distinct formulas
+     */
+    public synchronized int size() {
+        return ids.size();
+    }
+
+    public synchronized StateFormula and(StateFormula left, StateFormula right) {
+        return unique(new And(left, right), "&&", id(left), id(right));
+    }
+
+    public synchronized StateFormula or(StateFormula left, StateFormula right) {
+        return unique(new Or(left, right), "||", id(left), id(right));
+    }
+
+    public synchronized StateFormula not(StateFormula formula) {
+        return unique(new Not(formula), "!", id(formula));
+    }
+
+    public synchronized StateFormula atomic(String label) {
+        return unique(new AtomicProp(label), "p", label);
+    }
+
+    public synchronized StateFormula bool(boolean value) {
+        return unique(new BoolProp(value), "b", value);
+    }
+
+    public synchronized StateFormula exists(PathFormula formula) {
+        return unique(new ThereExists(formula), "E", id(formula));
+    }
+
+    public synchronized StateFormula forAll(PathFormula formula) {
+        return unique(new ForAll(formula), "A", id(formula));
+    }
+
+    public synchronized PathFormula until(StateFormula left, StateFormula right, Set<String> leftActions,
+            Set<String> rightActions) {
+        Set<String> a = actions(leftActions), b = actions(rightActions);
+        return unique(new Until(left, right, a, b), "U", id(left), id(right), a, b);
+    }
+
+    public synchronized PathFormula eventually(StateFormula formula, Set<String> leftActions,
+            Set<String> rightActions) {
+        Set<String> a = actions(leftActions), b = actions(rightActions);
+        return unique(new Eventually(formula, a, b), "F", id(formula), a, b);
+    }
+
+    public synchronized PathFormula next(StateFormula formula, Set<String> actions) {
+        Set<String> a = actions(actions);
+        return unique(new Next(formula, a), "X", id(formula), a);
+    }
+
+    public synchronized PathFormula always(StateFormula formula, Set<String> actions) {
+        Set<String> a = actions(actions);
+        return unique(new Always(formula, a), "G", id(formula), a);
+    }
+
+    /**
+     * Looks the key up, registering the candidate as the canonical instance if there is none yet. The candidate is
+     * only allocated to be thrown away when the formula already exists, which keeps every builder a single line.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> T unique(T candidate, Object... key) {
+        List<Object> list = Arrays.asList(key);
+        Object existing = canonical.get(list);
+        if (existing != null)
+            return (T) existing;
+
+        canonical.put(list, candidate);
+        ids.put(candidate, ids.size());
+        return candidate;
+    }
+
+    private int id(Object operand) {
+        Integer id = ids.get(operand);
+        if (id == null)
+            throw new IllegalArgumentException("Operand " + operand + " was not built by this factory, intern it first");
+        return id;
+    }
+
+    private static Set<String> actions(Set<String> actions) {
+        if (actions == null || actions.isEmpty())
+            return ANY_ACTION;
+        return Collections.unmodifiableSet(new TreeSet<>(actions));
+    }
+
+}
@@ -0,0 +1,216 @@
+package formula;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import formula.pathFormula.*;
+import formula.stateFormula.*;
+
+/**
+ * Generator of random CTL formulas over given atomic propositions and actions, for benchmarks and stress tests.
+ * Formulas are built as formula objects and can be written in the JSON format read by FormulaParser, their action
+ * sets being declared next to the formula under the identifiers a0, a1...
+ */
+public class FormulaGenerator {
+    private final List<String> labels;
+    private final List<String> actions;
+    private final Random random;
+
+    /**
+     * Creates a generator.
+     *
+     * @param labels
+     *            - atomic propositions to draw from, made of lower case letters and digits
+     * @param actions
+     *            - actions to draw action sets from, none to only generate formulas allowing every action
+     * @param seed
+     *            - seed of the generator, the same seed giving the same formulas
+     */
+    public FormulaGenerator(List<String> labels, List<String> actions, long seed) {
+        if (labels.isEmpty())
+            throw new IllegalArgumentException("Formulas need at least one atomic proposition");
+        this.labels = new ArrayList<>(labels);
+        this.actions = new ArrayList<>(actions);
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Draws a random formula. Every operator, temporal or not, is equally likely at each level, and half of the path
+     * formulas are restricted to a random action set.
+     *
+     * @param depth
+     *            - nesting depth of the formula, 0 for an atomic proposition
+     * @return the formula
+     */
+    public StateFormula next(int depth) {
+        if (depth == 0)
+            return random.nextInt(8) == 0 ? new BoolProp(true) : new AtomicProp(labels.get(random.nextInt(labels.size())));
+
+        StateFormula left = next(depth - 1);
+        switch (random.nextInt(11)) {
+        case 0:
+            return new Not(left);
+        case 1:
+            return new And(left, next(depth - 1));
+        case 2:
+            return new Or(left, next(depth - 1));
+        case 3:
+            return new ThereExists(new Next(left, actionSet()));
+        case 4:
+            return new ForAll(new Next(left, actionSet()));
+        case 5:
+            return new ThereExists(new Eventually(left, actionSet(), actionSet()));
+        case 6:
+            return new ForAll(new Eventually(left, actionSet(), actionSet()));
+        case 7:
+            return new ThereExists(new Always(left, actionSet()));
+        case 8:
+            return new ForAll(new Always(left, actionSet()));
+        case 9:
+            return new ThereExists(new Until(left, next(depth - 1), actionSet(), actionSet()));
+        default:
+            return new ForAll(new Until(left, next(depth - 1), actionSet(), actionSet()));
+        }
+    }
+
+    /**
+     * Writes a random formula to a file in the JSON format of FormulaParser.
+     *
+     * @param depth
+     *            - nesting depth of the formula
+     * @param filePath
+     *            - path of the file, replaced if it exists
+     * @return the formula written
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    public StateFormula write(int depth, String filePath) throws IOException {
+        StateFormula formula = next(depth);
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(filePath), StandardCharsets.UTF_8)) {
+            out.write(toJson(formula));
+        }
+        return formula;
+    }
+
+    /**
+     * Writes a formula in the JSON format of FormulaParser, each distinct non-empty action set being declared once.
+     *
+     * @param formula
+     *            - the formula
+     * @return the JSON document
+     */
+    public static String toJson(StateFormula formula) {
+        Map<Set<String>, String> identifiers = new LinkedHashMap<>();
+        StringBuilder text = new StringBuilder();
+        write(formula, text, identifiers);
+
+        StringBuilder json = new StringBuilder("{\n  \"formula\": \"").append(text).append('"');
+        for (Map.Entry<Set<String>, String> entry : identifiers.entrySet()) {
+            json.append(",\n  \"").append(entry.getValue()).append("\": [");
+            String separator = "";
+            for (String action : new TreeSet<>(entry.getKey())) {
+                json.append(separator).append('"').append(action).append('"');
+                separator = ", ";
+            }
+            json.append(']');
+        }
+        return json.append("\n}\n").toString();
+    }
+
+    /**
+     * Writes a formula in the syntax of FormulaParser, which parseRawFormulaString reads back when the formula has no
+     * action sets.
+     *
+     * @param formula
+     *            - the formula
+     * @return the formula string
+     */
+    public static String toFormulaString(StateFormula formula) {
+        StringBuilder text = new StringBuilder();
+        write(formula, text, new LinkedHashMap<Set<String>, String>());
+        return text.toString();
+    }
+
+    private static void write(StateFormula formula, StringBuilder text, Map<Set<String>, String> identifiers) {
+        if (formula instanceof AtomicProp) {
+            text.append(((AtomicProp) formula).label);
+        } else if (formula instanceof BoolProp) {
+            text.append(((BoolProp) formula).value ? "TRUE" : "FALSE");
+        } else if (formula instanceof Not) {
+            text.append(FormulaParser.NOT_TOKEN);
+            write(((Not) formula).stateFormula, text, identifiers);
+        } else if (formula instanceof And) {
+            writeBinary(((And) formula).left, " && ", ((And) formula).right, text, identifiers);
+        } else if (formula instanceof Or) {
+            writeBinary(((Or) formula).left, " || ", ((Or) formula).right, text, identifiers);
+        } else if (formula instanceof ThereExists) {
+            text.append(FormulaParser.THEREEXISTS_TOKEN);
+            write(((ThereExists) formula).pathFormula, text, identifiers);
+        } else if (formula instanceof ForAll) {
+            text.append(FormulaParser.FORALL_TOKEN);
+            write(((ForAll) formula).pathFormula, text, identifiers);
+        } else {
+            throw new IllegalArgumentException("Unsupported state formula " + formula);
+        }
+    }
+
+    private static void write(PathFormula formula, StringBuilder text, Map<Set<String>, String> identifiers) {
+        if (formula instanceof Next) {
+            text.append(identifier(((Next) formula).getActions(), identifiers)).append(FormulaParser.NEXT_TOKEN)
+                    .append(' ');
+            write(((Next) formula).stateFormula, text, identifiers);
+        } else if (formula instanceof Always) {
+            text.append(identifier(((Always) formula).getActions(), identifiers)).append(FormulaParser.ALWAYS_TOKEn)
+                    .append(' ');
+            write(((Always) formula).stateFormula, text, identifiers);
+        } else if (formula instanceof Eventually) {
+            Eventually eventually = (Eventually) formula;
+            text.append(identifier(eventually.getLeftActions(), identifiers)).append(FormulaParser.EVENTUALLY_TOKEN)
+                    .append(identifier(eventually.getRightActions(), identifiers)).append(' ');
+            write(eventually.stateFormula, text, identifiers);
+        } else if (formula instanceof Until) {
+            Until until = (Until) formula;
+            text.append(FormulaParser.LEFT_BRACKET_TOKEN);
+            write(until.left, text, identifiers);
+            text.append(' ').append(identifier(until.getLeftActions(), identifiers)).append(FormulaParser.UNTIL_TOKEN)
+                    .append(identifier(until.getRightActions(), identifiers)).append(' ');
+            write(until.right, text, identifiers);
+            text.append(FormulaParser.RIGHT_BRACKET_TOKEN);
+        } else {
+            throw new IllegalArgumentException("Unsupported path formula " + formula);
+        }
+    }
+
+    private static void writeBinary(StateFormula left, String operator, StateFormula right, StringBuilder text,
+            Map<Set<String>, String> identifiers) {
+        text.append(FormulaParser.LEFT_BRACKET_TOKEN);
+        write(left, text, identifiers);
+        text.append(operator);
+        write(right, text, identifiers);
+        text.append(FormulaParser.RIGHT_BRACKET_TOKEN);
+    }
+
+    // The empty action set allows every action and needs no identifier:
+    private static String identifier(Set<String> actions, Map<Set<String>, String> identifiers) {
+        if (actions.isEmpty())
+            return "";
+        String identifier = identifiers.get(actions);
+        if (identifier == null) {
+            identifier = "a" + identifiers.size();
+            identifiers.put(new HashSet<>(actions), identifier);
+        }
+        return identifier;
+    }
+
+    private Set<String> actionSet() {
+        Set<String> set = new HashSet<>();
+        if (actions.isEmpty() || random.nextBoolean())
+            return set;
+        set.add(actions.get(random.nextInt(actions.size())));
+        if (random.nextBoolean())
+            set.add(actions.get(random.nextInt(actions.size())));
+        return set;
+    }
+
+}
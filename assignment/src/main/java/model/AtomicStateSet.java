@@ -0,0 +1,87 @@
+package model;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A set of states which several threads may add states to concurrently. Additions are lock-free compare-and-set
+ * operations on the words of the bitset, and exactly one thread succeeds in adding any given state.
+ */
+public class AtomicStateSet {
+    private final int size;
+    private final AtomicLongArray words;
+
+    public AtomicStateSet(int size) {
+        this.size = size;
+        this.words = new AtomicLongArray((size + 63) >>> 6);
+    }
+
+    /**
+     * Creates a concurrent set holding the states of another set.
+     *
+     * @param set
+     *            - the states to start from
+     */
+    public AtomicStateSet(StateSet set) {
+        this.size = set.size();
+        this.words = new AtomicLongArray(set.words);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean contains(int state) {
+        return (words.get(state >>> 6) & (1L << state)) != 0;
+    }
+
+    /**
+     * Adds the state if no thread has added it yet.
+     *
+     * @param state
+     *            - id of the state
+     * @return true for the one call which added the state
+     */
+    public boolean addIfAbsent(int state) {
+        int index = state >>> 6;
+        long mask = 1L << state;
+        while (true) {
+            long word = words.get(index);
+            if ((word & mask) != 0)
+                return false;
+            if (words.compareAndSet(index, word, word | mask))
+                return true;
+        }
+    }
+
+    /**
+     * Removes the state if no thread has removed it yet.
+     *
+     * @param state
+     *            - id of the state
+     * @return true for the one call which removed the state
+     */
+    public boolean removeIfPresent(int state) {
+        int index = state >>> 6;
+        long mask = 1L << state;
+        while (true) {
+            long word = words.get(index);
+            if ((word & mask) == 0)
+                return false;
+            if (words.compareAndSet(index, word, word & ~mask))
+                return true;
+        }
+    }
+
+    /**
+     * Copies the set, once every thread updating it has finished.
+     *
+     * @return a plain state set with the same states
+     */
+    public StateSet toStateSet() {
+        StateSet set = new StateSet(size);
+        for (int i = 0; i < set.words.length; i++)
+            set.words[i] = words.get(i);
+        return set;
+    }
+
+}
@@ -0,0 +1,442 @@
+package model;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Versioned binary serialisation of compiled models. A file holds a header, a string table with the label and action
+ * names, the interned action sets, the per-state labels, the forward and reverse CSR adjacency as int arrays and the
+ * state names. Everything is little endian and every section starts on an 8 byte boundary.
+ *
+ * Files are read through FileChannel.map: the int arrays are bulk copied out of the mapping without any parsing, and
+ * the state names stay in the mapped file and are only decoded when asked for, so the page cache holding them is
+ * shared by every process checking the same model.
+ */
+public class BinaryModelFormat {
+    public static final int MAGIC = 0x4D4C5443; // "CTLM" read as little endian
+    public static final int VERSION = 1;
+
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final long WINDOW_SIZE = 1L << 30;
+
+    private BinaryModelFormat() {
+    }
+
+    /**
+     * Writes a compiled model to a file, replacing it if it exists.
+     *
+     * @param model
+     *            - the model to write
+     * @param filePath
+     *            - path of the binary file
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    public static void write(CompiledModel model, String filePath) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            write(model, new Output(channel));
+        }
+    }
+
+    /**
+     * Computes a SHA-256 digest of the content of a compiled model, as the digest of its binary file. The file is
+     * streamed through the digest buffer by buffer and never held in memory. Two models with the same states, names,
+     * labels and transitions in the same order have the same digest, whatever file they were loaded from.
+     *
+     * @param model
+     *            - the model to digest
+     * @return the 32 bytes of the digest
+     */
+    public static byte[] digest(CompiledModel model) {
+        final MessageDigest digest = sha256();
+        try {
+            write(model, new Output(new WritableByteChannel() {
+                @Override
+                public int write(ByteBuffer source) {
+                    int bytes = source.remaining();
+                    digest.update(source);
+                    return bytes;
+                }
+
+                @Override
+                public boolean isOpen() {
+                    return true;
+                }
+
+                @Override
+                public void close() {
+                }
+            }));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return digest.digest();
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to provide SHA-256:
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void write(CompiledModel edited, Output out) throws IOException {
+        CompiledModel model = edited.flatten();
+        int stateCount = model.getStateCount();
+
+        out.putInt(MAGIC);
+        out.putInt(VERSION);
+        out.putInt(stateCount);
+        out.putInt(model.getEdgeCount());
+        out.putInt(model.labelNames.length);
+        out.putInt(model.actionNames.length);
+        out.putInt(model.actionSets.length);
+        out.putInt(model.labelIds.length);
+        out.align();
+
+        for (int s = 0; s < stateCount; s += 64) {
+            long word = 0;
+            for (int bit = 0; bit < 64 && s + bit < stateCount; bit++) {
+                if (model.isInitial(s + bit))
+                    word |= 1L << bit;
+            }
+            out.putLong(word);
+        }
+
+        for (String label : model.labelNames)
+            out.putString(label);
+        out.align();
+        for (String action : model.actionNames)
+            out.putString(action);
+        out.align();
+
+        int actionSetEntries = 0;
+        out.putInt(0);
+        for (int[] actionSet : model.actionSets)
+            out.putInt(actionSetEntries += actionSet.length);
+        for (int[] actionSet : model.actionSets)
+            out.putInts(actionSet);
+        out.align();
+
+        out.putInts(model.labelOffsets);
+        out.putInts(model.labelIds);
+        out.align();
+        out.putInts(model.outOffsets);
+        out.putInts(model.outTargets);
+        out.putInts(model.outActionSets);
+        out.align();
+        out.putInts(model.inOffsets);
+        out.putInts(model.inSources);
+        out.putInts(model.inEdges);
+        out.align();
+
+        // State names last, as byte offsets followed by the UTF-8 bytes of all the names, each encoded once:
+        long nameBytes = 0;
+        out.putInt(0);
+        for (int s = 0; s < stateCount; s++) {
+            nameBytes += utf8Length(model.getStateName(s));
+            if (nameBytes > Integer.MAX_VALUE)
+                throw new IOException("State names take more than 2 GB");
+            out.putInt((int) nameBytes);
+        }
+        for (int s = 0; s < stateCount; s++)
+            out.putBytes(model.getStateName(s).getBytes(StandardCharsets.UTF_8));
+
+        out.flush();
+    }
+
+    /**
+     * Counts the bytes of the UTF-8 encoding of a string without encoding it, a lone surrogate being encoded as '?'.
+     */
+    static int utf8Length(String string) {
+        int bytes = 0;
+        for (int i = 0; i < string.length(); i++) {
+            char c = string.charAt(i);
+            if (c < 0x80) {
+                bytes++;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < string.length()
+                    && Character.isLowSurrogate(string.charAt(i + 1))) {
+                bytes += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                bytes++;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Reads a compiled model from a binary file.
+     *
+     * @param filePath
+     *            - path of the binary file
+     * @return the compiled model
+     * @throws IOException
+     *             if the file cannot be read or is not a compiled model of a supported version
+     */
+    public static CompiledModel read(String filePath) throws IOException {
+        Path path = Paths.get(filePath);
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            Input in = new Input(channel);
+
+            if (in.getInt() != MAGIC)
+                throw new IOException(filePath + " is not a binary model");
+            int version = in.getInt();
+            if (version != VERSION)
+                throw new IOException(filePath + " has unsupported format version " + version);
+
+            int stateCount = in.getInt();
+            int edgeCount = in.getInt();
+            int labelCount = in.getInt();
+            int actionCount = in.getInt();
+            int actionSetCount = in.getInt();
+            int labelEntries = in.getInt();
+            in.align();
+
+            StateSet initialStates = new StateSet(stateCount);
+            for (int s = 0; s < stateCount; s += 64) {
+                long word = in.getLong();
+                for (int bit = 0; bit < 64 && s + bit < stateCount; bit++) {
+                    if ((word & (1L << bit)) != 0)
+                        initialStates.add(s + bit);
+                }
+            }
+
+            String[] labelNames = new String[labelCount];
+            for (int i = 0; i < labelCount; i++)
+                labelNames[i] = in.getString();
+            in.align();
+            String[] actionNames = new String[actionCount];
+            for (int i = 0; i < actionCount; i++)
+                actionNames[i] = in.getString();
+            in.align();
+
+            int[] actionSetOffsets = in.getInts(actionSetCount + 1);
+            int[][] actionSets = new int[actionSetCount][];
+            for (int i = 0; i < actionSetCount; i++)
+                actionSets[i] = in.getInts(actionSetOffsets[i + 1] - actionSetOffsets[i]);
+            in.align();
+
+            int[] labelOffsets = in.getInts(stateCount + 1);
+            int[] labelIds = in.getInts(labelEntries);
+            in.align();
+            int[] outOffsets = in.getInts(stateCount + 1);
+            int[] outTargets = in.getInts(edgeCount);
+            int[] outActionSets = in.getInts(edgeCount);
+            in.align();
+            int[] inOffsets = in.getInts(stateCount + 1);
+            int[] inSources = in.getInts(edgeCount);
+            int[] inEdges = in.getInts(edgeCount);
+            in.align();
+
+            int[] nameOffsets = in.getInts(stateCount + 1);
+            ByteBuffer nameBytes = in.map(nameOffsets[stateCount]);
+
+            return new CompiledModel(new MappedNameTable(nameOffsets, nameBytes), initialStates, labelNames,
+                    labelOffsets, labelIds, actionNames, actionSets, outOffsets, outTargets, outActionSets, inOffsets,
+                    inSources, inEdges);
+        }
+    }
+
+    /**
+     * State names decoded on demand from the mapped string table.
+     */
+    private static class MappedNameTable extends NameTable {
+        private final int[] offsets;
+        private final ByteBuffer bytes;
+
+        MappedNameTable(int[] offsets, ByteBuffer bytes) {
+            this.offsets = offsets;
+            this.bytes = bytes;
+        }
+
+        @Override
+        int size() {
+            return offsets.length - 1;
+        }
+
+        @Override
+        String get(int index) {
+            byte[] name = new byte[offsets[index + 1] - offsets[index]];
+            ByteBuffer view = bytes.duplicate();
+            view.position(offsets[index]);
+            view.get(name);
+            return new String(name, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Buffered little endian writer keeping track of the position for alignment.
+     */
+    private static class Output {
+        private final WritableByteChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        private long position;
+
+        Output(WritableByteChannel channel) {
+            this.channel = channel;
+        }
+
+        void putInt(int value) throws IOException {
+            ensure(4);
+            buffer.putInt(value);
+            position += 4;
+        }
+
+        void putLong(long value) throws IOException {
+            ensure(8);
+            buffer.putLong(value);
+            position += 8;
+        }
+
+        void putInts(int[] values) throws IOException {
+            int offset = 0;
+            while (offset < values.length) {
+                ensure(4);
+                int count = Math.min(values.length - offset, buffer.remaining() / 4);
+                buffer.asIntBuffer().put(values, offset, count);
+                buffer.position(buffer.position() + count * 4);
+                offset += count;
+                position += count * 4L;
+            }
+        }
+
+        void putBytes(byte[] bytes) throws IOException {
+            int offset = 0;
+            while (offset < bytes.length) {
+                ensure(1);
+                int count = Math.min(bytes.length - offset, buffer.remaining());
+                buffer.put(bytes, offset, count);
+                offset += count;
+                position += count;
+            }
+        }
+
+        void putString(String string) throws IOException {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            putInt(bytes.length);
+            putBytes(bytes);
+        }
+
+        void align() throws IOException {
+            while ((position & 7) != 0) {
+                ensure(1);
+                buffer.put((byte) 0);
+                position++;
+            }
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+            buffer.clear();
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes)
+                flush();
+        }
+    }
+
+    /**
+     * Little endian reader over windows of at most 1 GB mapped from the file, so that files larger than a single
+     * mapping can be read.
+     */
+    private static class Input {
+        private final FileChannel channel;
+        private final long size;
+        private ByteBuffer window;
+        private long windowStart;
+        private long position;
+
+        Input(FileChannel channel) throws IOException {
+            this.channel = channel;
+            this.size = channel.size();
+        }
+
+        int getInt() throws IOException {
+            int value = window(4).getInt((int) (position - windowStart));
+            position += 4;
+            return value;
+        }
+
+        long getLong() throws IOException {
+            long value = window(8).getLong((int) (position - windowStart));
+            position += 8;
+            return value;
+        }
+
+        int[] getInts(int count) throws IOException {
+            int[] values = new int[count];
+            int offset = 0;
+            while (offset < count) {
+                int chunk = (int) Math.min(count - offset, WINDOW_SIZE / 4);
+                ByteBuffer view = window(chunk * 4L).duplicate().order(ByteOrder.LITTLE_ENDIAN);
+                view.position((int) (position - windowStart));
+                view.asIntBuffer().get(values, offset, chunk);
+                offset += chunk;
+                position += chunk * 4L;
+            }
+            return values;
+        }
+
+        String getString() throws IOException {
+            int length = getInt();
+            byte[] bytes = new byte[length];
+            ByteBuffer view = window(length).duplicate();
+            view.position((int) (position - windowStart));
+            view.get(bytes);
+            position += length;
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        void align() {
+            position = (position + 7) & ~7L;
+        }
+
+        /**
+         * Maps the next bytes of the file on their own, the mapping staying valid once the file is closed.
+         */
+        ByteBuffer map(int length) throws IOException {
+            checkAvailable(length);
+            ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+            position += length;
+            return mapped;
+        }
+
+        private ByteBuffer window(long bytes) throws IOException {
+            if (window == null || position < windowStart || position + bytes > windowStart + window.capacity()) {
+                checkAvailable(bytes);
+                windowStart = position;
+                window = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                        Math.min(Math.max(bytes, WINDOW_SIZE), size - position)).order(ByteOrder.LITTLE_ENDIAN);
+            }
+            return window;
+        }
+
+        private void checkAvailable(long bytes) throws IOException {
+            if (position + bytes > size)
+                throw new IOException("Binary model is truncated");
+        }
+    }
+
+}
@@ -0,0 +1,190 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * Optional preprocessing pass merging the bisimilar states of a compiled model. Two states are bisimilar when they
+ * have the same labels and, for every action set, each can move to a state bisimilar to one the other can move to
+ * with that action set. Bisimilar states satisfy exactly the same asCTL formulas, under any constraint or fairness
+ * constraint, so checking the quotient model gives the same verdicts as checking the original one.
+ *
+ * The coarsest bisimulation is computed by PartitionRefinement. Each quotient state is named after the first of its
+ * original states, is initial when one of them is, and keeps one edge per distinct action set and target. The
+ * original states of each quotient state are kept so traces can be mapped back with getMembers.
+ */
+public class BisimulationQuotient {
+    private final CompiledModel original;
+    private final CompiledModel quotient;
+    private final int[] quotientIds;
+    private final int[] memberOffsets;
+    private final int[] members;
+    private final long nanos;
+
+    private BisimulationQuotient(CompiledModel original, CompiledModel quotient, int[] quotientIds,
+            int[] memberOffsets, int[] members, long nanos) {
+        this.original = original;
+        this.quotient = quotient;
+        this.quotientIds = quotientIds;
+        this.memberOffsets = memberOffsets;
+        this.members = members;
+        this.nanos = nanos;
+    }
+
+    /**
+     * Minimises a model up to strong bisimulation.
+     *
+     * @param model
+     *            - the compiled model
+     * @return the quotient, holding the minimised model and the states each of its states stands for
+     */
+    public static BisimulationQuotient minimize(CompiledModel model) {
+        long start = System.nanoTime();
+        int stateCount = model.getStateCount();
+        int[] blocks = new PartitionRefinement(model.flatten()).run();
+
+        // Number the classes in the order of their first state, which stands for the class:
+        int[] classOf = new int[stateCount];
+        int[] classIds = new int[model.getStateCount() + model.getEdgeCount() + 1];
+        Arrays.fill(classIds, -1);
+        IntList representatives = new IntList();
+        for (int s = 0; s < stateCount; s++) {
+            if (classIds[blocks[s]] < 0) {
+                classIds[blocks[s]] = representatives.size();
+                representatives.add(s);
+            }
+            classOf[s] = classIds[blocks[s]];
+        }
+        int classCount = representatives.size();
+
+        int[] memberOffsets = new int[classCount + 1];
+        for (int s = 0; s < stateCount; s++)
+            memberOffsets[classOf[s] + 1]++;
+        for (int c = 0; c < classCount; c++)
+            memberOffsets[c + 1] += memberOffsets[c];
+        int[] members = new int[stateCount];
+        int[] filled = Arrays.copyOf(memberOffsets, classCount);
+        for (int s = 0; s < stateCount; s++)
+            members[filled[classOf[s]]++] = s;
+
+        String[] names = new String[classCount];
+        StateSet initialStates = new StateSet(classCount);
+        int[] labelOffsets = new int[classCount + 1];
+        for (int c = 0; c < classCount; c++) {
+            int s = representatives.get(c);
+            names[c] = model.getStateName(s);
+            labelOffsets[c + 1] = labelOffsets[c] + model.labelEnd(s) - model.labelBegin(s);
+        }
+        for (int s = model.getInitialStates().nextState(0); s >= 0; s = model.getInitialStates().nextState(s + 1))
+            initialStates.add(classOf[s]);
+
+        /*
+         Bisimilar states reach the same classes with the same action sets, so the edges of the representative are
+         enough, once the ones reaching the same class with the same action set are merged:
+         */
+        int[] labelIds = new int[labelOffsets[classCount]];
+        int[] outOffsets = new int[classCount + 1];
+        IntList outTargets = new IntList();
+        IntList outActionSets = new IntList();
+        long[] pairs = new long[0];
+        for (int c = 0; c < classCount; c++) {
+            int s = representatives.get(c);
+            for (int position = model.labelBegin(s), copy = labelOffsets[c]; position < model.labelEnd(s); position++)
+                labelIds[copy++] = model.labelId(position);
+
+            int degree = model.outDegree(s);
+            if (pairs.length < degree)
+                pairs = new long[degree];
+            for (int i = 0; i < degree; i++) {
+                int e = model.outBegin(s) + i;
+                pairs[i] = ((long) classOf[model.target(e)] << 32) | model.actionSet(e);
+            }
+            Arrays.sort(pairs, 0, degree);
+            for (int i = 0; i < degree; i++) {
+                if (i > 0 && pairs[i] == pairs[i - 1])
+                    continue;
+                outTargets.add((int) (pairs[i] >>> 32));
+                outActionSets.add((int) pairs[i]);
+            }
+            outOffsets[c + 1] = outTargets.size();
+        }
+
+        int[] targets = outTargets.toArray();
+        int[][] in = CompiledModel.reverse(classCount, outOffsets, targets);
+        CompiledModel quotient = new CompiledModel(NameTable.of(names), initialStates, model.labelNames,
+                labelOffsets, labelIds, model.actionNames, model.actionSets, outOffsets, targets,
+                outActionSets.toArray(), in[0], in[1], in[2]);
+
+        return new BisimulationQuotient(model, quotient, classOf, memberOffsets, members, System.nanoTime() - start);
+    }
+
+    public CompiledModel getOriginal() {
+        return original;
+    }
+
+    /**
+     * Returns the minimised model, which has one state per class of bisimilar states of the original model.
+     *
+     * @return the quotient model
+     */
+    public CompiledModel getModel() {
+        return quotient;
+    }
+
+    /**
+     * Translates the id of a state of the original model.
+     *
+     * @param originalId
+     *            - id in the original model
+     * @return id of the quotient state standing for it
+     */
+    public int getQuotientId(int originalId) {
+        return quotientIds[originalId];
+    }
+
+    /**
+     * Returns the original states merged into a quotient state.
+     *
+     * @param quotientId
+     *            - id in the quotient model
+     * @return ids in the original model, in increasing order
+     */
+    public int[] getMembers(int quotientId) {
+        return Arrays.copyOfRange(members, memberOffsets[quotientId], memberOffsets[quotientId + 1]);
+    }
+
+    /**
+     * Maps a state of the quotient back to an original state, preferring initial ones so a trace of a violated
+     * initial state names a state the original model starts in.
+     *
+     * @param quotientId
+     *            - id in the quotient model
+     * @return the first initial original state merged into it, or its first original state if none is initial
+     */
+    public int getOriginalId(int quotientId) {
+        for (int i = memberOffsets[quotientId]; i < memberOffsets[quotientId + 1]; i++) {
+            if (original.isInitial(members[i]))
+                return members[i];
+        }
+        return members[memberOffsets[quotientId]];
+    }
+
+    public int getMergedStates() {
+        return original.getStateCount() - quotient.getStateCount();
+    }
+
+    public int getMergedEdges() {
+        return original.getEdgeCount() - quotient.getEdgeCount();
+    }
+
+    public double getMillis() {
+        return nanos / 1e6;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Minimised %d states and %d edges to %d states and %d edges in %.1f ms",
+                original.getStateCount(), original.getEdgeCount(), quotient.getStateCount(),
+                quotient.getEdgeCount(), getMillis());
+    }
+
+}
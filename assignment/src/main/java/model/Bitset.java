@@ -0,0 +1,163 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * Bitset over the dense ids 0 to size - 1 of a compiled model, the word operations shared by StateSet, over the state
+ * ids, and EdgeSet, over the edge ids. Membership costs one bit per id and the bulk operations work on 64 ids at a
+ * time. Sets of states and sets of edges are never equal to each other.
+ */
+abstract class Bitset {
+    static final int ADDRESS_BITS = 6;
+
+    final int size;
+    final long[] words;
+
+    Bitset(int size) {
+        this.size = size;
+        this.words = new long[(size + 63) >>> ADDRESS_BITS];
+    }
+
+    /**
+     * Returns the number of ids the set ranges over.
+     *
+     * @return size of the id space
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean contains(int id) {
+        return (words[id >>> ADDRESS_BITS] & (1L << id)) != 0;
+    }
+
+    public void add(int id) {
+        words[id >>> ADDRESS_BITS] |= 1L << id;
+    }
+
+    public void remove(int id) {
+        words[id >>> ADDRESS_BITS] &= ~(1L << id);
+    }
+
+    /**
+     * Adds the id if it is not in the set yet.
+     *
+     * @param id
+     *            - the id to add
+     * @return true if the id was not in the set before
+     */
+    public boolean addIfAbsent(int id) {
+        int index = id >>> ADDRESS_BITS;
+        long mask = 1L << id;
+        if ((words[index] & mask) != 0)
+            return false;
+        words[index] |= mask;
+        return true;
+    }
+
+    public int cardinality() {
+        int count = 0;
+        for (long word : words)
+            count += Long.bitCount(word);
+        return count;
+    }
+
+    public boolean isEmpty() {
+        for (long word : words) {
+            if (word != 0)
+                return false;
+        }
+        return true;
+    }
+
+    void fill() {
+        Arrays.fill(words, -1L);
+        clearTail();
+    }
+
+    void or(Bitset other) {
+        checkSize(other);
+        for (int i = 0; i < words.length; i++)
+            words[i] |= other.words[i];
+    }
+
+    void and(Bitset other) {
+        checkSize(other);
+        for (int i = 0; i < words.length; i++)
+            words[i] &= other.words[i];
+    }
+
+    void andNot(Bitset other) {
+        checkSize(other);
+        for (int i = 0; i < words.length; i++)
+            words[i] &= ~other.words[i];
+    }
+
+    void flip() {
+        for (int i = 0; i < words.length; i++)
+            words[i] = ~words[i];
+        clearTail();
+    }
+
+    /**
+     * Copies the words of this set into an empty set over at least as many ids.
+     */
+    <T extends Bitset> T copyInto(T copy) {
+        System.arraycopy(words, 0, copy.words, 0, words.length);
+        return copy;
+    }
+
+    /**
+     * Returns the first id of the set greater than or equal to the given one, or -1 if there is none.
+     */
+    int next(int from) {
+        if (from >= size)
+            return -1;
+
+        int index = from >>> ADDRESS_BITS;
+        long word = words[index] & (-1L << from);
+
+        while (true) {
+            if (word != 0)
+                return (index << ADDRESS_BITS) + Long.numberOfTrailingZeros(word);
+            if (++index == words.length)
+                return -1;
+            word = words[index];
+        }
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (other == null || other.getClass() != getClass())
+            return false;
+        return size == ((Bitset) other).size && Arrays.equals(words, ((Bitset) other).words);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * size + Arrays.hashCode(words);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("{");
+        for (int id = next(0); id >= 0; id = next(id + 1)) {
+            if (sb.length() > 1)
+                sb.append(", ");
+            sb.append(id);
+        }
+        return sb.append("}").toString();
+    }
+
+    private void clearTail() {
+        // Bits past the last id must stay clear for cardinality and equality to hold:
+        if ((size & 63) != 0)
+            words[words.length - 1] &= -1L >>> (64 - (size & 63));
+    }
+
+    private void checkSize(Bitset other) {
+        if (other.size != size)
+            throw new IllegalArgumentException("Sets range over id spaces of different sizes");
+    }
+
+}
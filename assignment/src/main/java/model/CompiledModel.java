@@ -0,0 +1,877 @@
+package model;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Immutable, int-indexed form of a model used by the model checkers. States are numbered densely and the transitions
+ * are stored in compressed sparse row form: the outgoing edges of state s are the edge ids outBegin(s) to outEnd(s) -
+ * 1, and the incoming edges of state t are found through the reverse adjacency between inBegin(t) and inEnd(t) - 1.
+ * State labels and action sets are interned to small int ids, so that walking the graph never hashes a string nor
+ * allocates an object. A version edited by a ModelDelta shares the arrays of the model the edits started from and
+ * reads the rows they rewrote from a RowPatch.
+ */
+public class CompiledModel implements TransitionSystem {
+    final NameTable stateNames;
+    final StateSet initialStates;
+
+    final String[] labelNames;
+    final int[] labelOffsets;
+    final int[] labelIds;
+    // Inverted index of the labels, the states carrying each of them:
+    final StateSet[] labelStates;
+
+    final String[] actionNames;
+    final int[][] actionSets;
+
+    // Forward adjacency, edges are numbered in the order of their source state:
+    final int[] outOffsets;
+    final int[] outTargets;
+    final int[] outActionSets;
+
+    // Reverse adjacency, each entry refers to the forward edge it comes from:
+    final int[] inOffsets;
+    final int[] inSources;
+    final int[] inEdges;
+
+    // States removed by a ModelDelta, kept without labels nor transitions so that the others keep their ids:
+    final StateSet removedStates;
+    // Rows rewritten by ModelDeltas over the arrays above, which are those of the root, or null for a flat model:
+    final RowPatch patch;
+
+    private volatile Map<String, Integer> stateIds;
+    private volatile Map<String, Integer> labelIndex;
+    private volatile Map<String, Integer> actionIndex;
+    private volatile List<Set<String>> actionSetNames;
+    // Inverted index from each action to the edges performing it, as offsets, edge ids and edge sources:
+    private volatile int[][] actionEdges;
+    private final Map<Set<String>, EdgeSet> edgeMasks = new ConcurrentHashMap<>();
+
+    CompiledModel(NameTable stateNames, StateSet initialStates, String[] labelNames, int[] labelOffsets,
+            int[] labelIds, String[] actionNames, int[][] actionSets, int[] outOffsets, int[] outTargets,
+            int[] outActionSets, int[] inOffsets, int[] inSources, int[] inEdges) {
+        this(stateNames, initialStates, labelNames, labelOffsets, labelIds, actionNames, actionSets, outOffsets,
+                outTargets, outActionSets, inOffsets, inSources, inEdges, null);
+    }
+
+    /**
+     * Creates a compiled model some states of which were removed by a ModelDelta.
+     *
+     * @param removedStates
+     *            - the removed states, or null if there is none
+     */
+    CompiledModel(NameTable stateNames, StateSet initialStates, String[] labelNames, int[] labelOffsets,
+            int[] labelIds, String[] actionNames, int[][] actionSets, int[] outOffsets, int[] outTargets,
+            int[] outActionSets, int[] inOffsets, int[] inSources, int[] inEdges, StateSet removedStates) {
+        this.stateNames = stateNames;
+        this.initialStates = initialStates;
+        this.labelNames = labelNames;
+        this.labelOffsets = labelOffsets;
+        this.labelIds = labelIds;
+        this.labelStates = labelStates(labelNames.length, labelOffsets, labelIds);
+        this.actionNames = actionNames;
+        this.actionSets = actionSets;
+        this.outOffsets = outOffsets;
+        this.outTargets = outTargets;
+        this.outActionSets = outActionSets;
+        this.inOffsets = inOffsets;
+        this.inSources = inSources;
+        this.inEdges = inEdges;
+        this.removedStates = removedStates;
+        this.patch = null;
+    }
+
+    /**
+     * Creates a version of a model edited by a ModelDelta, reading the rows it did not rewrite from the root.
+     */
+    CompiledModel(RowPatch patch, NameTable stateNames, StateSet initialStates, String[] labelNames,
+            StateSet[] labelStates, String[] actionNames, int[][] actionSets, StateSet removedStates) {
+        CompiledModel root = patch.root;
+        this.stateNames = stateNames;
+        this.initialStates = initialStates;
+        this.labelNames = labelNames;
+        this.labelOffsets = root.labelOffsets;
+        this.labelIds = root.labelIds;
+        this.labelStates = labelStates;
+        this.actionNames = actionNames;
+        this.actionSets = actionSets;
+        this.outOffsets = root.outOffsets;
+        this.outTargets = root.outTargets;
+        this.outActionSets = root.outActionSets;
+        this.inOffsets = root.inOffsets;
+        this.inSources = root.inSources;
+        this.inEdges = root.inEdges;
+        this.removedStates = removedStates;
+        this.patch = patch;
+    }
+
+    /**
+     * Builds the reverse adjacency of a forward adjacency with a counting sort of the edges on their target.
+     *
+     * @return the offsets, sources and forward edge ids of the reverse adjacency
+     */
+    static int[][] reverse(int stateCount, int[] outOffsets, int[] outTargets) {
+        int[] inOffsets = new int[stateCount + 1];
+        int[] inSources = new int[outTargets.length];
+        int[] inEdges = new int[outTargets.length];
+
+        for (int target : outTargets)
+            inOffsets[target + 1]++;
+        for (int s = 0; s < stateCount; s++)
+            inOffsets[s + 1] += inOffsets[s];
+
+        int[] next = Arrays.copyOf(inOffsets, stateCount);
+        for (int s = 0; s < stateCount; s++) {
+            for (int e = outOffsets[s]; e < outOffsets[s + 1]; e++) {
+                int position = next[outTargets[e]]++;
+                inSources[position] = s;
+                inEdges[position] = e;
+            }
+        }
+
+        return new int[][] { inOffsets, inSources, inEdges };
+    }
+
+    private static StateSet[] labelStates(int labelCount, int[] labelOffsets, int[] labelIds) {
+        int stateCount = labelOffsets.length - 1;
+        StateSet[] labelStates = new StateSet[labelCount];
+        for (int label = 0; label < labelCount; label++)
+            labelStates[label] = new StateSet(stateCount);
+        for (int s = 0; s < stateCount; s++) {
+            for (int i = labelOffsets[s]; i < labelOffsets[s + 1]; i++)
+                labelStates[labelIds[i]].add(s);
+        }
+        return labelStates;
+    }
+
+    /**
+     * Copies a version edited by ModelDeltas into new flat arrays, numbering the edges densely again. States keep
+     * their id, removed ones included.
+     *
+     * @return the flat model, or this model if it is flat already
+     */
+    CompiledModel flatten() {
+        if (patch == null)
+            return this;
+
+        int stateCount = getStateCount();
+        int[] flatLabelOffsets = new int[stateCount + 1];
+        IntList flatLabelIds = new IntList(labelIds.length + patch.appendedLabels);
+        int[] flatOutOffsets = new int[stateCount + 1];
+        IntList flatTargets = new IntList(getEdgeCount());
+        IntList flatActionSets = new IntList(getEdgeCount());
+        for (int s = 0; s < stateCount; s++) {
+            for (int i = labelBegin(s); i < labelEnd(s); i++)
+                flatLabelIds.add(labelId(i));
+            flatLabelOffsets[s + 1] = flatLabelIds.size();
+            for (int e = outBegin(s); e < outEnd(s); e++) {
+                flatTargets.add(target(e));
+                flatActionSets.add(actionSet(e));
+            }
+            flatOutOffsets[s + 1] = flatTargets.size();
+        }
+
+        int[] targets = flatTargets.toArray();
+        int[][] in = reverse(stateCount, flatOutOffsets, targets);
+        return new CompiledModel(stateNames, initialStates, labelNames, flatLabelOffsets, flatLabelIds.toArray(),
+                actionNames, actionSets, flatOutOffsets, targets, flatActionSets.toArray(), in[0], in[1], in[2],
+                removedStates);
+    }
+
+    /**
+     * Compiles a model parsed from JSON.
+     *
+     * @param model
+     *            - the model to compile
+     * @return the compiled form of the model
+     */
+    public static CompiledModel compile(Model model) {
+        Builder builder = new Builder();
+
+        for (State state : model.getStates())
+            builder.addState(state.getName(), state.isInit(), state.getLabel());
+
+        for (Transition transition : model.getTransitions())
+            builder.addTransition(transition.getSource(), transition.getTarget(), transition.getActions());
+
+        return builder.build();
+    }
+
+    public int getStateCount() {
+        return stateNames.size();
+    }
+
+    public int getEdgeCount() {
+        return patch == null ? outTargets.length : patch.edgeCount;
+    }
+
+    /**
+     * Returns the number of edge ids, which the sets of edges range over. Once a ModelDelta rewrote the transitions
+     * of a state, the ids of its previous edges are left unused, so there are more ids than edges.
+     *
+     * @return size of the id space of the edges
+     */
+    public int getEdgeIdCount() {
+        return patch == null ? outTargets.length : outTargets.length + patch.appendedEdges;
+    }
+
+    public String getStateName(int state) {
+        return stateNames.get(state);
+    }
+
+    /**
+     * Looks a state up by name.
+     *
+     * @param name
+     *            - name of the state
+     * @return id of the state, or -1 if the model has no such state
+     */
+    public int getStateId(String name) {
+        int id = findState(name);
+        return id >= 0 && isRemoved(id) ? -1 : id;
+    }
+
+    /**
+     * Looks a state up by name, including the states removed by a ModelDelta.
+     */
+    int findState(String name) {
+        if (patch != null)
+            return patch.findState(name);
+        Map<String, Integer> ids = stateIds;
+        if (ids == null)
+            stateIds = ids = stateNames.index();
+        Integer id = ids.get(name);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Tells whether a state was removed by a ModelDelta. Removed states keep their id but have no label nor
+     * transition and are not initial, so no path goes through them.
+     *
+     * @param state
+     *            - id of the state
+     * @return true if the state was removed
+     */
+    public boolean isRemoved(int state) {
+        return removedStates != null && removedStates.contains(state);
+    }
+
+    public boolean isInitial(int state) {
+        return initialStates.contains(state);
+    }
+
+    /**
+     * Returns the initial states of the model.
+     *
+     * @return a copy of the set of initial states
+     */
+    public StateSet getInitialStates() {
+        return initialStates.copy();
+    }
+
+    public int outBegin(int state) {
+        return begin(state, RowPatch.OUT, outOffsets);
+    }
+
+    public int outEnd(int state) {
+        return end(state, RowPatch.OUT, outOffsets);
+    }
+
+    public int outDegree(int state) {
+        return outEnd(state) - outBegin(state);
+    }
+
+    public int target(int edge) {
+        return edge < outTargets.length ? outTargets[edge] : patch.targets[edge - outTargets.length];
+    }
+
+    public int actionSet(int edge) {
+        return edge < outActionSets.length ? outActionSets[edge] : patch.actionSets[edge - outActionSets.length];
+    }
+
+    public int inBegin(int state) {
+        return begin(state, RowPatch.IN, inOffsets);
+    }
+
+    public int inEnd(int state) {
+        return end(state, RowPatch.IN, inOffsets);
+    }
+
+    /**
+     * Returns the source of an entry of the reverse adjacency.
+     *
+     * @param position
+     *            - position between inBegin(t) and inEnd(t) - 1 for some state t
+     * @return id of the source state
+     */
+    public int inSource(int position) {
+        return position < inSources.length ? inSources[position] : patch.inSources[position - inSources.length];
+    }
+
+    /**
+     * Returns the forward edge of an entry of the reverse adjacency.
+     *
+     * @param position
+     *            - position between inBegin(t) and inEnd(t) - 1 for some state t
+     * @return id of the edge
+     */
+    public int inEdge(int position) {
+        return position < inEdges.length ? inEdges[position] : patch.inEdges[position - inEdges.length];
+    }
+
+    int labelBegin(int state) {
+        return begin(state, RowPatch.LABELS, labelOffsets);
+    }
+
+    int labelEnd(int state) {
+        return end(state, RowPatch.LABELS, labelOffsets);
+    }
+
+    /**
+     * Returns the label at a position between labelBegin(s) and labelEnd(s) - 1 for some state s.
+     */
+    int labelId(int position) {
+        return position < labelIds.length ? labelIds[position] : patch.labelIds[position - labelIds.length];
+    }
+
+    // Rows rewritten by a ModelDelta are read from the patch, the others from the arrays of the root:
+    private int begin(int state, int field, int[] offsets) {
+        if (patch != null) {
+            int begin = patch.get(state, field);
+            if (begin >= 0)
+                return begin;
+        }
+        return offsets[state];
+    }
+
+    private int end(int state, int field, int[] offsets) {
+        if (patch != null) {
+            int end = patch.get(state, field + 1);
+            if (end >= 0)
+                return end;
+        }
+        return offsets[state + 1];
+    }
+
+    /**
+     * Pre-image operator: returns the states with an edge of the mask into the targets. Only the incoming edges of the
+     * targets are visited.
+     *
+     * @param targets
+     *            - the states to reach
+     * @param edges
+     *            - the edges which may be taken, over the edge ids
+     * @return the new set of sources
+     */
+    public StateSet preExists(StateSet targets, EdgeSet edges) {
+        return preExists(targets, edges, null);
+    }
+
+    /**
+     * Universal pre-image operator: returns the states having at least one edge, every one of which is in the mask
+     * and leads into the targets. Each source counts the edges of the mask reaching the targets and is added when the
+     * count reaches its out-degree, so only the incoming edges of the targets are visited.
+     *
+     * @param targets
+     *            - the states every edge must reach
+     * @param edges
+     *            - the edges which may be taken, over the edge ids
+     * @return the new set of sources
+     */
+    public StateSet preForAll(StateSet targets, EdgeSet edges) {
+        return preForAll(targets, edges, null, null);
+    }
+
+    /**
+     * Pre-image within the edges of a scope, edges outside it being ignored.
+     */
+    StateSet preExists(StateSet targets, EdgeSet edges, EdgeSet scope) {
+        StateSet result = new StateSet(getStateCount());
+        for (int t = targets.nextState(0); t >= 0; t = targets.nextState(t + 1)) {
+            for (int i = inBegin(t), end = inEnd(t); i < end; i++) {
+                int edge = inEdge(i);
+                if (edges.contains(edge) && (scope == null || scope.contains(edge)))
+                    result.add(inSource(i));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Universal pre-image within the edges of a scope, the degrees counting the edges of each state in the scope.
+     */
+    StateSet preForAll(StateSet targets, EdgeSet edges, EdgeSet scope, int[] degrees) {
+        StateSet result = new StateSet(getStateCount());
+        int[] counts = new int[getStateCount()];
+        for (int t = targets.nextState(0); t >= 0; t = targets.nextState(t + 1)) {
+            for (int i = inBegin(t), end = inEnd(t); i < end; i++) {
+                int edge = inEdge(i);
+                if (!edges.contains(edge) || (scope != null && !scope.contains(edge)))
+                    continue;
+                int source = inSource(i);
+                int degree = degrees == null ? outDegree(source) : degrees[source];
+                if (++counts[source] == degree)
+                    result.add(source);
+            }
+        }
+        return result;
+    }
+
+    public int getLabelCount() {
+        return labelNames.length;
+    }
+
+    public String getLabelName(int label) {
+        return labelNames[label];
+    }
+
+    /**
+     * Looks a label up by name.
+     *
+     * @param name
+     *            - the atomic proposition
+     * @return id of the label, or -1 if no state carries it
+     */
+    public int getLabelId(String name) {
+        Map<String, Integer> ids = labelIndex;
+        if (ids == null)
+            labelIndex = ids = index(labelNames);
+        Integer id = ids.get(name);
+        return id == null ? -1 : id;
+    }
+
+    public boolean hasLabel(int state, int label) {
+        return labelStates[label].contains(state);
+    }
+
+    /**
+     * Returns the states carrying a label, from the index built when the model is loaded. The set is shared by every
+     * caller and must not be modified, copy it to compute with it.
+     *
+     * @param label
+     *            - id of the label
+     * @return the states labelled with it
+     */
+    public StateSet getLabelStates(int label) {
+        return labelStates[label];
+    }
+
+    public String[] getLabels(int state) {
+        int begin = labelBegin(state);
+        String[] labels = new String[labelEnd(state) - begin];
+        for (int i = 0; i < labels.length; i++)
+            labels[i] = labelNames[labelId(begin + i)];
+        return labels;
+    }
+
+    public int getActionCount() {
+        return actionNames.length;
+    }
+
+    public String getActionName(int action) {
+        return actionNames[action];
+    }
+
+    /**
+     * Looks an action up by name.
+     *
+     * @param name
+     *            - the action
+     * @return id of the action, or -1 if no transition performs it
+     */
+    public int getActionId(String name) {
+        Map<String, Integer> ids = actionIndex;
+        if (ids == null)
+            actionIndex = ids = index(actionNames);
+        Integer id = ids.get(name);
+        return id == null ? -1 : id;
+    }
+
+    public int getActionSetCount() {
+        return actionSets.length;
+    }
+
+    /**
+     * Returns the actions of an interned action set.
+     *
+     * @param actionSet
+     *            - id of the action set, as returned by actionSet(edge)
+     * @return sorted ids of the actions in the set
+     */
+    public int[] getActionSetActions(int actionSet) {
+        return actionSets[actionSet].clone();
+    }
+
+    /**
+     * Evaluates a set of allowed actions against every interned action set of the model, so that checking whether an
+     * edge is allowed becomes an array lookup on actionSet(edge).
+     *
+     * @param allowedActions
+     *            - actions allowed by a path formula, the empty set allowing any action
+     * @return for each action set id, whether it has an allowed action
+     */
+    public boolean[] allowedActionSets(Set<String> allowedActions) {
+        boolean[] allowed = new boolean[actionSets.length];
+
+        if (allowedActions.isEmpty()) {
+            Arrays.fill(allowed, true);
+            return allowed;
+        }
+
+        boolean[] allowedIds = new boolean[actionNames.length];
+        for (String action : allowedActions) {
+            int id = getActionId(action);
+            if (id >= 0)
+                allowedIds[id] = true;
+        }
+
+        for (int set = 0; set < actionSets.length; set++) {
+            for (int action : actionSets[set]) {
+                if (allowedIds[action]) {
+                    allowed[set] = true;
+                    break;
+                }
+            }
+        }
+
+        return allowed;
+    }
+
+    /**
+     * Returns the edges allowed by a set of actions as a bitset over the edge ids, built from the inverted index of the
+     * actions so that only the edges performing one of them are visited. Masks are computed once per distinct action
+     * set and shared by every caller, they must not be modified.
+     *
+     * @param allowedActions
+     *            - actions allowed by a path formula, the empty set allowing any action
+     * @return the set of the edges with an allowed action
+     */
+    public EdgeSet getAllowedEdges(Set<String> allowedActions) {
+        EdgeSet mask = edgeMasks.get(allowedActions);
+        if (mask != null)
+            return mask;
+
+        if (patch != null) {
+            // The edges of the root keep their action set, only the appended ones are looked at:
+            mask = patch.root.getAllowedEdges(allowedActions).resize(getEdgeIdCount());
+            boolean[] allowed = allowedActionSets(allowedActions);
+            for (int e = outTargets.length; e < getEdgeIdCount(); e++) {
+                if (allowed[actionSet(e)])
+                    mask.add(e);
+            }
+            patch.removeUnusedEdges(mask);
+        } else if (allowedActions.isEmpty()) {
+            mask = EdgeSet.full(outTargets.length);
+        } else {
+            mask = new EdgeSet(outTargets.length);
+            for (String name : allowedActions) {
+                int action = getActionId(name);
+                if (action < 0)
+                    continue;
+                for (int i = actionEdgesBegin(action); i < actionEdgesEnd(action); i++)
+                    mask.add(actionEdge(i));
+            }
+        }
+
+        edgeMasks.put(Collections.unmodifiableSet(new HashSet<>(allowedActions)), mask);
+        return mask;
+    }
+
+    /**
+     * Returns the first position of the edges performing an action in the inverted index of the actions. The edges
+     * of an action are found between actionEdgesBegin(a) and actionEdgesEnd(a) - 1, in increasing order.
+     *
+     * @param action
+     *            - id of the action
+     * @return position of its first edge
+     */
+    public int actionEdgesBegin(int action) {
+        return actionEdges()[0][action];
+    }
+
+    public int actionEdgesEnd(int action) {
+        return actionEdges()[0][action + 1];
+    }
+
+    public int actionEdge(int position) {
+        return actionEdges()[1][position];
+    }
+
+    /**
+     * Returns the source of an edge of the inverted index of the actions, since edges only know their targets.
+     *
+     * @param position
+     *            - position between actionEdgesBegin(a) and actionEdgesEnd(a) - 1 for some action a
+     * @return id of the source state of the edge
+     */
+    public int actionEdgeSource(int position) {
+        return actionEdges()[2][position];
+    }
+
+    // Built on first use with a counting sort of the edges on each of their actions:
+    private int[][] actionEdges() {
+        int[][] index = actionEdges;
+        if (index != null)
+            return index;
+
+        int stateCount = getStateCount();
+        int[] offsets = new int[actionNames.length + 1];
+        for (int s = 0; s < stateCount; s++) {
+            for (int e = outBegin(s); e < outEnd(s); e++) {
+                for (int action : actionSets[actionSet(e)])
+                    offsets[action + 1]++;
+            }
+        }
+        for (int a = 0; a < actionNames.length; a++)
+            offsets[a + 1] += offsets[a];
+
+        int[] next = Arrays.copyOf(offsets, actionNames.length);
+        int[] edges = new int[offsets[actionNames.length]];
+        int[] sources = new int[edges.length];
+        for (int s = 0; s < stateCount; s++) {
+            for (int e = outBegin(s); e < outEnd(s); e++) {
+                for (int action : actionSets[actionSet(e)]) {
+                    int position = next[action]++;
+                    edges[position] = e;
+                    sources[position] = s;
+                }
+            }
+        }
+
+        actionEdges = index = new int[][] { offsets, edges, sources };
+        return index;
+    }
+
+    @Override
+    public int[] initialStates() {
+        int[] states = new int[initialStates.cardinality()];
+        int i = 0;
+        for (int s = initialStates.nextState(0); s >= 0; s = initialStates.nextState(s + 1))
+            states[i++] = s;
+        return states;
+    }
+
+    @Override
+    public void successors(int state, IntList targets, IntList actionSets) {
+        for (int e = outBegin(state); e < outEnd(state); e++) {
+            targets.add(target(e));
+            actionSets.add(actionSet(e));
+        }
+    }
+
+    @Override
+    public Set<String> actions(int actionSet) {
+        List<Set<String>> sets = actionSetNames;
+        if (sets == null) {
+            sets = new ArrayList<>();
+            for (int[] set : actionSets) {
+                Set<String> names = new HashSet<>();
+                for (int action : set)
+                    names.add(actionNames[action]);
+                sets.add(Collections.unmodifiableSet(names));
+            }
+            actionSetNames = sets;
+        }
+        return sets.get(actionSet);
+    }
+
+    @Override
+    public boolean hasLabel(int state, String label) {
+        int id = getLabelId(label);
+        return id >= 0 && hasLabel(state, id);
+    }
+
+    @Override
+    public String stateName(int state) {
+        return getStateName(state);
+    }
+
+    private static Map<String, Integer> index(String[] names) {
+        Map<String, Integer> ids = new HashMap<>(names.length * 2);
+        for (int i = 0; i < names.length; i++)
+            ids.put(names[i], i);
+        return ids;
+    }
+
+    /**
+     * Builds a compiled model one state and one transition at a time. Transitions may refer to states declared later,
+     * every referenced state must have been declared by the time build() is called.
+     */
+    public static class Builder {
+        private final Map<String, Integer> stateIds = new HashMap<>();
+        private final List<String> stateNames = new ArrayList<>();
+        private final BitSet declared = new BitSet();
+        private final BitSet initial = new BitSet();
+        private final List<int[]> stateLabels = new ArrayList<>();
+
+        private final Map<String, Integer> labelIds = new HashMap<>();
+        private final List<String> labelNames = new ArrayList<>();
+        private final Map<String, Integer> actionIds = new HashMap<>();
+        private final List<String> actionNames = new ArrayList<>();
+        private final Map<ActionSetKey, Integer> actionSetIds = new HashMap<>();
+        private final List<int[]> actionSets = new ArrayList<>();
+
+        private final IntList edgeSources = new IntList();
+        private final IntList edgeTargets = new IntList();
+        private final IntList edgeActionSets = new IntList();
+
+        /**
+         * Declares a state.
+         *
+         * @param name
+         *            - unique name of the state
+         * @param init
+         *            - whether the state is initial
+         * @param labels
+         *            - atomic propositions holding in the state, may be null
+         * @return id given to the state
+         */
+        public int addState(String name, boolean init, String[] labels) {
+            int id = stateId(name);
+
+            if (declared.get(id))
+                throw new IllegalArgumentException("State " + name + " is declared twice");
+            declared.set(id);
+            initial.set(id, init);
+
+            int[] ids = new int[labels == null ? 0 : labels.length];
+            for (int i = 0; i < ids.length; i++)
+                ids[i] = intern(labels[i], labelIds, labelNames);
+            stateLabels.set(id, ids);
+
+            return id;
+        }
+
+        /**
+         * Adds a transition between two states.
+         *
+         * @param source
+         *            - name of the source state
+         * @param target
+         *            - name of the target state
+         * @param actions
+         *            - actions performed by the transition, may be null
+         */
+        public void addTransition(String source, String target, String[] actions) {
+            edgeSources.add(stateId(source));
+            edgeTargets.add(stateId(target));
+            edgeActionSets.add(actionSetId(actions));
+        }
+
+        public int getStateCount() {
+            return stateNames.size();
+        }
+
+        public int getEdgeCount() {
+            return edgeSources.size();
+        }
+
+        public CompiledModel build() {
+            int stateCount = stateNames.size();
+
+            if (declared.cardinality() != stateCount) {
+                String name = stateNames.get(declared.nextClearBit(0));
+                throw new IllegalArgumentException("A transition refers to the unknown state " + name);
+            }
+
+            StateSet initialStates = new StateSet(stateCount);
+            for (int s = initial.nextSetBit(0); s >= 0; s = initial.nextSetBit(s + 1))
+                initialStates.add(s);
+
+            int[] labelOffsets = new int[stateCount + 1];
+            for (int s = 0; s < stateCount; s++)
+                labelOffsets[s + 1] = labelOffsets[s] + stateLabels.get(s).length;
+            int[] labels = new int[labelOffsets[stateCount]];
+            for (int s = 0; s < stateCount; s++)
+                System.arraycopy(stateLabels.get(s), 0, labels, labelOffsets[s], stateLabels.get(s).length);
+
+            // Sort the edges on their source, keeping the order in which they were added for each source:
+            int edgeCount = edgeSources.size();
+            int[] outOffsets = new int[stateCount + 1];
+            for (int e = 0; e < edgeCount; e++)
+                outOffsets[edgeSources.get(e) + 1]++;
+            for (int s = 0; s < stateCount; s++)
+                outOffsets[s + 1] += outOffsets[s];
+
+            int[] next = Arrays.copyOf(outOffsets, stateCount);
+            int[] outTargets = new int[edgeCount];
+            int[] outActionSets = new int[edgeCount];
+            for (int e = 0; e < edgeCount; e++) {
+                int position = next[edgeSources.get(e)]++;
+                outTargets[position] = edgeTargets.get(e);
+                outActionSets[position] = edgeActionSets.get(e);
+            }
+
+            int[][] in = reverse(stateCount, outOffsets, outTargets);
+
+            return new CompiledModel(NameTable.of(stateNames.toArray(new String[0])), initialStates,
+                    labelNames.toArray(new String[0]), labelOffsets, labels, actionNames.toArray(new String[0]),
+                    actionSets.toArray(new int[0][]), outOffsets, outTargets, outActionSets, in[0], in[1], in[2]);
+        }
+
+        private int stateId(String name) {
+            Integer id = stateIds.get(name);
+            if (id == null) {
+                id = stateNames.size();
+                stateIds.put(name, id);
+                stateNames.add(name);
+                stateLabels.add(null);
+            }
+            return id;
+        }
+
+        private int actionSetId(String[] actions) {
+            int[] ids = new int[actions == null ? 0 : actions.length];
+            for (int i = 0; i < ids.length; i++)
+                ids[i] = intern(actions[i], actionIds, actionNames);
+
+            // Action sets are compared as sorted sets of action ids:
+            Arrays.sort(ids);
+            int distinct = 0;
+            for (int i = 0; i < ids.length; i++) {
+                if (i == 0 || ids[i] != ids[i - 1])
+                    ids[distinct++] = ids[i];
+            }
+
+            ActionSetKey key = new ActionSetKey(Arrays.copyOf(ids, distinct));
+            Integer id = actionSetIds.get(key);
+            if (id == null) {
+                id = actionSets.size();
+                actionSetIds.put(key, id);
+                actionSets.add(key.actions);
+            }
+            return id;
+        }
+
+        private static int intern(String name, Map<String, Integer> ids, List<String> names) {
+            Integer id = ids.get(name);
+            if (id == null) {
+                id = names.size();
+                ids.put(name, id);
+                names.add(name);
+            }
+            return id;
+        }
+    }
+
+    private static class ActionSetKey {
+        private final int[] actions;
+        private final int hash;
+
+        ActionSetKey(int[] actions) {
+            this.actions = actions;
+            this.hash = Arrays.hashCode(actions);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof ActionSetKey && Arrays.equals(actions, ((ActionSetKey) other).actions);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+}
@@ -0,0 +1,94 @@
+package model;
+
+/**
+ * A set of edges of a compiled model, stored as a bitset over the edge ids numbered by the forward adjacency. Edge
+ * sets are the masks of the edges performing some actions (CompiledModel.getAllowedEdges) and the edges kept by a
+ * RestrictedModel.
+ */
+public class EdgeSet extends Bitset {
+
+    /**
+     * Creates an empty set over the edge ids 0 to size - 1.
+     *
+     * @param size
+     *            - number of edge ids of the model
+     */
+    public EdgeSet(int size) {
+        super(size);
+    }
+
+    /**
+     * Creates the set of all the edges of a model.
+     *
+     * @param size
+     *            - number of edge ids of the model
+     * @return the set containing every id from 0 to size - 1
+     */
+    public static EdgeSet full(int size) {
+        EdgeSet set = new EdgeSet(size);
+        set.fill();
+        return set;
+    }
+
+    /**
+     * Union, adds every edge of the other set to this one.
+     */
+    public EdgeSet addAll(EdgeSet other) {
+        or(other);
+        return this;
+    }
+
+    /**
+     * Intersection, keeps only the edges which are also in the other set.
+     */
+    public EdgeSet retainAll(EdgeSet other) {
+        and(other);
+        return this;
+    }
+
+    /**
+     * Difference, removes every edge of the other set from this one.
+     */
+    public EdgeSet removeAll(EdgeSet other) {
+        andNot(other);
+        return this;
+    }
+
+    /**
+     * Complement with respect to all the edges of the model.
+     */
+    public EdgeSet complement() {
+        flip();
+        return this;
+    }
+
+    public EdgeSet copy() {
+        return copyInto(new EdgeSet(size));
+    }
+
+    /**
+     * Returns a copy of the set over a larger id space, as when edges are added to a model. The new ids are not in
+     * the copy.
+     *
+     * @param size
+     *            - number of edge ids of the larger model, at least the size of this set
+     * @return the new set
+     */
+    public EdgeSet resize(int size) {
+        if (size < this.size)
+            throw new IllegalArgumentException("Cannot shrink a set of " + this.size + " edges to " + size);
+        return copyInto(new EdgeSet(size));
+    }
+
+    /**
+     * Returns the first edge of the set with an id greater than or equal to the given one.
+     *
+     * @param from
+     *            - id to start looking from
+     * @return id of the next edge in the set, or -1 if there is none
+     */
+    public int nextEdge(int from) {
+        return next(from);
+    }
+
+}
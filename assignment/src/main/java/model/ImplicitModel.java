@@ -0,0 +1,80 @@
+package model;
+
+import java.util.*;
+
+/**
+ * Transition system exploring a StateSpace lazily. States are stored in a StateStore as they are generated, so only
+ * the states a model checker reaches are ever held in memory, and their successors are generated again each time
+ * they are asked for rather than kept.
+ */
+public class ImplicitModel implements TransitionSystem {
+    private final StateSpace space;
+    private final StateStore store;
+    private int[] initial;
+
+    private final Map<Set<String>, Integer> actionSetIds = new HashMap<>();
+    private final List<Set<String>> actionSets = new ArrayList<>();
+
+    public ImplicitModel(StateSpace space) {
+        this.space = space;
+        this.store = new StateStore(space.getVectorLength());
+    }
+
+    @Override
+    public int[] initialStates() {
+        if (initial == null) {
+            List<int[]> states = space.initialStates();
+            int[] ids = new int[states.size()];
+            for (int i = 0; i < ids.length; i++)
+                ids[i] = store.add(states.get(i));
+            initial = Arrays.stream(ids).sorted().distinct().toArray();
+        }
+        return initial.clone();
+    }
+
+    @Override
+    public void successors(int state, IntList targets, IntList actionSets) {
+        space.successors(store.get(state), (target, actions) -> {
+            targets.add(store.add(target));
+            actionSets.add(actionSetId(actions));
+        });
+    }
+
+    @Override
+    public Set<String> actions(int actionSet) {
+        return actionSets.get(actionSet);
+    }
+
+    @Override
+    public boolean hasLabel(int state, String label) {
+        return space.hasLabel(store.get(state), label);
+    }
+
+    @Override
+    public String stateName(int state) {
+        return space.getName(store.get(state));
+    }
+
+    /**
+     * Returns the number of distinct states generated so far.
+     */
+    public int getStateCount() {
+        return store.size();
+    }
+
+    public StateStore getStore() {
+        return store;
+    }
+
+    private int actionSetId(String[] actions) {
+        Set<String> actionSet = new HashSet<>(actions == null ? Collections.<String>emptyList() : Arrays.asList(actions));
+        Integer id = actionSetIds.get(actionSet);
+        if (id == null) {
+            id = actionSets.size();
+            actionSetIds.put(actionSet, id);
+            actionSets.add(Collections.unmodifiableSet(actionSet));
+        }
+        return id;
+    }
+
+}
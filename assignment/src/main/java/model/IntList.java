@@ -0,0 +1,70 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * Growable list of primitive ints, used while building compiled models so that no boxing happens per state or edge.
+ */
+public class IntList {
+    private int[] values;
+    private int size;
+
+    public IntList() {
+        this(16);
+    }
+
+    public IntList(int capacity) {
+        values = new int[Math.max(capacity, 1)];
+    }
+
+    public void add(int value) {
+        if (size == values.length)
+            values = Arrays.copyOf(values, size + (size >> 1) + 1);
+        values[size++] = value;
+    }
+
+    public void addAll(IntList other) {
+        if (size + other.size > values.length)
+            values = Arrays.copyOf(values, Math.max(size + other.size, size + (size >> 1) + 1));
+        System.arraycopy(other.values, 0, values, size, other.size);
+        size += other.size;
+    }
+
+    public int get(int index) {
+        return values[index];
+    }
+
+    public void set(int index, int value) {
+        values[index] = value;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Removes and returns the last value, so that the list can be used as a stack.
+     *
+     * @return the value added last
+     */
+    public int pop() {
+        return values[--size];
+    }
+
+    public int peek() {
+        return values[size - 1];
+    }
+
+    public int[] toArray() {
+        return Arrays.copyOf(values, size);
+    }
+
+}
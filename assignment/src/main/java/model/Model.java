@@ -2,23 +2,29 @@ package model;
 
 import java.io.FileReader;
 import java.io.IOException;
+import java.util.*;
 
 import com.google.gson.Gson;
 
 /**
  * A model is consist of states and transitions
+ *
+ * A model is also the materialised implementation of TransitionSystem, a state being identified by its position in
+ * the list of states. The outgoing transitions of each state are grouped on first use.
  */
-public class Model {
+public class Model implements TransitionSystem {
     State[] states;
     Transition[] transitions;
 
+    // Index of the transitions by source state and of the distinct action sets, built on first use:
+    private transient volatile Index index;
+    // Whether the states and transitions know their position, however the model was deserialised:
+    private transient volatile boolean numbered;
+
     public static Model parseModel(String filePath) throws IOException {
         Gson gson = new Gson();
         Model model = gson.fromJson(new FileReader(filePath), Model.class);
-        for (Transition t : model.transitions) {
-            System.out.println(t);
-            ;
-        }
+        model.number();
         return model;
     }
 
@@ -28,6 +34,7 @@ public class Model {
      * @return list of state for the given model
      */
     public State[] getStates() {
+        number();
         return states;
     }
 
@@ -37,6 +44,121 @@ public class Model {
      * @return list of transition for the given model
      */
     public Transition[] getTransitions() {
+        number();
         return transitions;
     }
+
+    /**
+     * Gives each state and transition its position in the model as id, once, so that models built otherwise than by
+     * parseModel, such as by Gson directly, have ids as well.
+     */
+    private void number() {
+        if (numbered)
+            return;
+        synchronized (this) {
+            if (numbered)
+                return;
+            for (int i = 0; i < states.length; i++)
+                states[i].setId(i);
+            for (int i = 0; i < transitions.length; i++)
+                transitions[i].setId(i);
+            numbered = true;
+        }
+    }
+
+    @Override
+    public int[] initialStates() {
+        IntList initial = new IntList();
+        for (int s = 0; s < states.length; s++) {
+            if (states[s].isInit())
+                initial.add(s);
+        }
+        return initial.toArray();
+    }
+
+    @Override
+    public void successors(int state, IntList targets, IntList actionSets) {
+        Index index = index();
+        for (int i = index.outOffsets[state]; i < index.outOffsets[state + 1]; i++) {
+            targets.add(index.outTargets[i]);
+            actionSets.add(index.outActionSets[i]);
+        }
+    }
+
+    @Override
+    public Set<String> actions(int actionSet) {
+        return index().actionSets.get(actionSet);
+    }
+
+    @Override
+    public boolean hasLabel(int state, String label) {
+        String[] labels = states[state].getLabel();
+        return labels != null && Arrays.asList(labels).contains(label);
+    }
+
+    @Override
+    public String stateName(int state) {
+        return states[state].getName();
+    }
+
+    Index index() {
+        Index current = index;
+        if (current == null)
+            index = current = new Index(states, transitions);
+        return current;
+    }
+
+    static class Index {
+        final int[] outOffsets;
+        final int[] outTargets;
+        final int[] outActionSets;
+        final List<Set<String>> actionSets = new ArrayList<>();
+
+        Index(State[] states, Transition[] transitions) {
+            Map<String, Integer> ids = new HashMap<>();
+            for (int s = 0; s < states.length; s++)
+                ids.put(states[s].getName(), s);
+
+            Map<Set<String>, Integer> actionSetIds = new HashMap<>();
+            int[] sources = new int[transitions.length];
+            int[] targets = new int[transitions.length];
+            int[] sets = new int[transitions.length];
+            for (int t = 0; t < transitions.length; t++) {
+                sources[t] = stateId(ids, transitions[t].getSource());
+                targets[t] = stateId(ids, transitions[t].getTarget());
+                String[] actions = transitions[t].getActions();
+                Set<String> actionSet = Collections.unmodifiableSet(
+                        new HashSet<>(actions == null ? Collections.<String>emptyList() : Arrays.asList(actions)));
+                Integer id = actionSetIds.get(actionSet);
+                if (id == null) {
+                    id = actionSets.size();
+                    actionSetIds.put(actionSet, id);
+                    actionSets.add(actionSet);
+                }
+                sets[t] = id;
+            }
+
+            // Counting sort on the source, keeping the order of the transitions of each state:
+            outOffsets = new int[states.length + 1];
+            for (int source : sources)
+                outOffsets[source + 1]++;
+            for (int s = 0; s < states.length; s++)
+                outOffsets[s + 1] += outOffsets[s];
+            int[] next = Arrays.copyOf(outOffsets, states.length);
+            outTargets = new int[transitions.length];
+            outActionSets = new int[transitions.length];
+            for (int t = 0; t < transitions.length; t++) {
+                int position = next[sources[t]]++;
+                outTargets[position] = targets[t];
+                outActionSets[position] = sets[t];
+            }
+        }
+
+        private static int stateId(Map<String, Integer> ids, String name) {
+            Integer id = ids.get(name);
+            if (id == null)
+                throw new IllegalArgumentException("A transition refers to the unknown state " + name);
+            return id;
+        }
+    }
 }
@@ -0,0 +1,28 @@
+package model;
+
+import java.io.IOException;
+
+/**
+ * Command line converter from the JSON model format to the binary format of BinaryModelFormat.
+ *
+ * Usage: java model.ModelConverter model.json model.bin
+ */
+public class ModelConverter {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: java model.ModelConverter <model.json> <model.bin>");
+            System.exit(1);
+        }
+
+        ModelLoader loader = new ModelLoader();
+        CompiledModel model = loader.load(args[0]);
+        System.out.println("Loaded " + model.getStateCount() + " states and " + model.getEdgeCount()
+                + " transitions: " + loader);
+
+        long start = System.nanoTime();
+        BinaryModelFormat.write(model, args[1]);
+        System.out.printf("Wrote %s in %.1f ms%n", args[1], (System.nanoTime() - start) / 1e6);
+    }
+
+}
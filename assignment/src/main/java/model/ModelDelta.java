@@ -0,0 +1,479 @@
+package model;
+
+import java.util.*;
+
+/**
+ * A small edit of a model: states added, redefined or removed and transitions added or removed, all referred to by
+ * name. Applying a delta to a compiled model gives a new compiled model in which every state keeps its id, so that
+ * the sets of states computed on the previous version stay meaningful: new states are numbered after the existing
+ * ones, and removed states are kept without labels nor transitions (see CompiledModel.isRemoved).
+ *
+ * Adding a state which exists redefines its labels and initial flag and keeps its transitions. Removing a state
+ * removes every transition entering or leaving it. Of an addition and a removal of the same state, the last one
+ * made counts.
+ */
+public class ModelDelta {
+    private final Map<String, String[]> definedStates = new LinkedHashMap<>();
+    private final Map<String, Boolean> initialStates = new HashMap<>();
+    private final Set<String> removedStates = new LinkedHashSet<>();
+    // States added by the delta then removed, which may not exist in the model the delta is applied to:
+    private final Set<String> withdrawnStates = new HashSet<>();
+    // Transitions as their source, their target and their actions:
+    private final List<String[]> addedTransitions = new ArrayList<>();
+    private final List<String[]> removedTransitions = new ArrayList<>();
+
+    /**
+     * Adds a state, or redefines the labels and initial flag of an existing one.
+     *
+     * @param name
+     *            - name of the state
+     * @param init
+     *            - whether the state is initial
+     * @param labels
+     *            - atomic propositions holding in the state
+     * @return this delta
+     */
+    public ModelDelta addState(String name, boolean init, String... labels) {
+        removedStates.remove(name);
+        definedStates.put(name, labels == null ? new String[0] : labels.clone());
+        initialStates.put(name, init);
+        return this;
+    }
+
+    /**
+     * Removes a state along with the transitions entering or leaving it, including the ones this delta adds.
+     *
+     * @param name
+     *            - name of an existing state
+     * @return this delta
+     */
+    public ModelDelta removeState(String name) {
+        if (definedStates.remove(name) != null)
+            withdrawnStates.add(name);
+        initialStates.remove(name);
+        removedStates.add(name);
+        Iterator<String[]> transitions = addedTransitions.iterator();
+        while (transitions.hasNext()) {
+            String[] transition = transitions.next();
+            if (transition[0].equals(name) || transition[1].equals(name))
+                transitions.remove();
+        }
+        return this;
+    }
+
+    public ModelDelta addTransition(String source, String target, String... actions) {
+        addedTransitions.add(transition(source, target, actions));
+        return this;
+    }
+
+    /**
+     * Removes one transition between two states performing exactly the given actions.
+     *
+     * @param source
+     *            - name of the source state
+     * @param target
+     *            - name of the target state
+     * @param actions
+     *            - actions of the transition, in any order
+     * @return this delta
+     */
+    public ModelDelta removeTransition(String source, String target, String... actions) {
+        removedTransitions.add(transition(source, target, actions));
+        return this;
+    }
+
+    /**
+     * Returns the number of states and transitions the delta adds, redefines or removes.
+     */
+    public int size() {
+        return definedStates.size() + removedStates.size() + addedTransitions.size() + removedTransitions.size();
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Computes the delta between a compiled model and a new version of it, parsed again after an edit. States are
+     * matched by name and transitions by source, target and actions, a transition occurring several times being
+     * matched as many times.
+     *
+     * @param base
+     *            - the previous version
+     * @param updated
+     *            - the new version
+     * @return the delta turning the previous version into the new one
+     */
+    public static ModelDelta diff(CompiledModel base, Model updated) {
+        ModelDelta delta = new ModelDelta();
+        Set<String> names = new HashSet<>();
+        for (State state : updated.getStates()) {
+            names.add(state.getName());
+            String[] labels = state.getLabel() == null ? new String[0] : state.getLabel();
+            int id = base.getStateId(state.getName());
+            if (id < 0 || base.isInitial(id) != state.isInit() || !sameLabels(base.getLabels(id), labels))
+                delta.addState(state.getName(), state.isInit(), labels);
+        }
+        for (int s = 0; s < base.getStateCount(); s++) {
+            if (!base.isRemoved(s) && !names.contains(base.getStateName(s)))
+                delta.removeState(base.getStateName(s));
+        }
+
+        // Count the transitions of the new version by source, those of removed states go with them:
+        Map<String, Map<List<String>, Integer>> counts = new HashMap<>();
+        for (Transition transition : updated.getTransitions()) {
+            Map<List<String>, Integer> bySource = counts.get(transition.getSource());
+            if (bySource == null)
+                counts.put(transition.getSource(), bySource = new HashMap<>());
+            List<String> key = key(transition.getTarget(), transition.getActions());
+            Integer count = bySource.get(key);
+            bySource.put(key, count == null ? 1 : count + 1);
+        }
+
+        for (int s = 0; s < base.getStateCount(); s++) {
+            String source = base.getStateName(s);
+            if (base.isRemoved(s) || delta.removedStates.contains(source))
+                continue;
+            Map<List<String>, Integer> bySource = counts.remove(source);
+            for (int e = base.outBegin(s); e < base.outEnd(s); e++) {
+                String target = base.getStateName(base.target(e));
+                if (delta.removedStates.contains(target))
+                    continue;
+                List<String> key = key(target, base.actions(base.actionSet(e)).toArray(new String[0]));
+                Integer count = bySource == null ? null : bySource.get(key);
+                if (count == null)
+                    delta.removeTransition(source, target, actions(key));
+                else if (count == 1)
+                    bySource.remove(key);
+                else
+                    bySource.put(key, count - 1);
+            }
+            if (bySource != null)
+                counts.put(source, bySource);
+        }
+
+        for (Map.Entry<String, Map<List<String>, Integer>> bySource : counts.entrySet()) {
+            for (Map.Entry<List<String>, Integer> entry : bySource.getValue().entrySet()) {
+                for (int i = 0; i < entry.getValue(); i++)
+                    delta.addTransition(bySource.getKey(), entry.getKey().get(0), actions(entry.getKey()));
+            }
+        }
+
+        return delta;
+    }
+
+    /**
+     * Applies the delta to a compiled model, which is left unchanged. Only the rows of the states the delta touches
+     * are rewritten, layered over the arrays of the previous version: the transitions of the states which gain or lose
+     * one, the reverse rows of the targets of those transitions, and the labels of the states added, redefined or
+     * removed. Sets of states over the ids of the model, such as the initial states and the states of each label the
+     * delta changes, are copied whole.
+     *
+     * @param base
+     *            - the model to edit
+     * @return the new version of the model, with the states and transitions the edit touched
+     * @throws IllegalArgumentException
+     *             if the delta refers to a state or removes a transition which does not exist
+     */
+    public ModelUpdate applyTo(CompiledModel base) {
+        int oldCount = base.getStateCount();
+
+        // Existing states keep their id, removed ones included, and new states are numbered after them:
+        List<String> newNames = new ArrayList<>();
+        for (String name : definedStates.keySet()) {
+            if (base.findState(name) < 0)
+                newNames.add(name);
+        }
+        RowPatch.Editor editor = new RowPatch.Editor(base, newNames.size());
+        Map<String, Integer> newIds = new HashMap<>();
+        for (String name : newNames)
+            newIds.put(name, editor.addState(name));
+        int stateCount = editor.getStateCount();
+
+        StateSet removed = base.removedStates == null ? new StateSet(stateCount)
+                : base.removedStates.resize(stateCount);
+        StateSet changed = new StateSet(stateCount);
+        StateSet touched = new StateSet(stateCount);
+        IntList newlyRemoved = new IntList();
+        for (String name : removedStates) {
+            int id = base.getStateId(name);
+            if (id < 0 && withdrawnStates.contains(name))
+                continue;
+            if (id < 0)
+                throw new IllegalArgumentException("Cannot remove the unknown state " + name);
+            removed.add(id);
+            newlyRemoved.add(id);
+            changed.add(id);
+        }
+
+        // Labels, new atomic propositions being interned after the existing ones:
+        List<String> labelNames = new ArrayList<>(Arrays.asList(base.labelNames));
+        Map<String, Integer> labelIds = new HashMap<>();
+        for (int i = 0; i < labelNames.size(); i++)
+            labelIds.put(labelNames.get(i), i);
+        List<StateSet> labelStates = new ArrayList<>(Arrays.asList(base.labelStates));
+        // Sets of the labels copied on their first change, or all at once when the delta adds states:
+        boolean[] copied = new boolean[labelStates.size()];
+        if (stateCount > oldCount) {
+            for (int label = 0; label < labelStates.size(); label++)
+                labelStates.set(label, labelStates.get(label).resize(stateCount));
+            Arrays.fill(copied, true);
+        }
+
+        StateSet initial = base.initialStates.resize(stateCount);
+        for (int i = 0; i < newlyRemoved.size(); i++) {
+            int id = newlyRemoved.get(i);
+            initial.remove(id);
+            for (int position = base.labelBegin(id); position < base.labelEnd(id); position++)
+                labelSet(labelStates, copied, base.labelId(position)).remove(id);
+            editor.setLabels(id, new IntList());
+        }
+        for (Map.Entry<String, String[]> state : definedStates.entrySet()) {
+            int id = newIds.containsKey(state.getKey()) ? newIds.get(state.getKey()) : base.findState(state.getKey());
+            if (id < oldCount && !base.isRemoved(id)) {
+                for (int position = base.labelBegin(id); position < base.labelEnd(id); position++)
+                    labelSet(labelStates, copied, base.labelId(position)).remove(id);
+            }
+            removed.remove(id);
+            changed.add(id);
+            IntList ids = new IntList();
+            for (String label : state.getValue()) {
+                int labelId = intern(label, labelIds, labelNames);
+                if (labelId == labelStates.size())
+                    labelStates.add(new StateSet(stateCount));
+                labelSet(labelStates, copied, labelId).add(id);
+                ids.add(labelId);
+            }
+            editor.setLabels(id, ids);
+            if (initialStates.get(state.getKey()))
+                initial.add(id);
+            else
+                initial.remove(id);
+        }
+
+        // Action sets, new ones being interned after the existing ones:
+        List<String> actionNames = new ArrayList<>(Arrays.asList(base.actionNames));
+        Map<String, Integer> actionIds = new HashMap<>();
+        for (int i = 0; i < actionNames.size(); i++)
+            actionIds.put(actionNames.get(i), i);
+        List<int[]> actionSets = new ArrayList<>(Arrays.asList(base.actionSets));
+        Map<List<Integer>, Integer> actionSetIds = new HashMap<>();
+        for (int i = 0; i < actionSets.size(); i++)
+            actionSetIds.put(key(actionSets.get(i)), i);
+
+        // Transitions removed explicitly, then the ones of the removed states, by source:
+        Map<Integer, Set<Integer>> removedEdges = new HashMap<>();
+        for (String[] transition : removedTransitions) {
+            int source = base.getStateId(transition[0]);
+            int target = base.getStateId(transition[1]);
+            Integer actionSet = actionSetIds.get(key(actionIds(transition, actionIds, null)));
+            int edge = -1;
+            if (source >= 0 && target >= 0 && actionSet != null) {
+                for (int e = base.outBegin(source); e < base.outEnd(source) && edge < 0; e++) {
+                    if (base.target(e) == target && base.actionSet(e) == actionSet
+                            && !edges(removedEdges, source).contains(e))
+                        edge = e;
+                }
+            }
+            if (edge < 0)
+                throw new IllegalArgumentException("No transition " + Arrays.toString(transition) + " to remove");
+            edges(removedEdges, source).add(edge);
+            touched.add(source);
+        }
+        for (int i = 0; i < newlyRemoved.size(); i++) {
+            int s = newlyRemoved.get(i);
+            for (int position = base.inBegin(s); position < base.inEnd(s); position++) {
+                edges(removedEdges, base.inSource(position)).add(base.inEdge(position));
+                touched.add(base.inSource(position));
+            }
+            touched.add(s);
+        }
+
+        Map<Integer, IntList> added = new HashMap<>();
+        for (String[] transition : addedTransitions) {
+            int source = liveState(transition[0], base, newIds, removed);
+            int target = liveState(transition[1], base, newIds, removed);
+            List<Integer> key = key(actionIds(transition, actionIds, actionNames));
+            Integer actionSet = actionSetIds.get(key);
+            if (actionSet == null) {
+                actionSet = actionSets.size();
+                actionSetIds.put(key, actionSet);
+                actionSets.add(toArray(key));
+            }
+            if (!added.containsKey(source))
+                added.put(source, new IntList());
+            added.get(source).add(target);
+            added.get(source).add(actionSet);
+            touched.add(source);
+        }
+
+        /*
+         Forward rows of the touched states, each one keeping the order of its remaining transitions before the added
+         ones. Their edges get new ids, so the reverse rows of their old and new targets are rewritten too:
+         */
+        Map<Integer, IntList> entries = new TreeMap<>();
+        for (int s = touched.nextState(0); s >= 0; s = touched.nextState(s + 1)) {
+            IntList targets = new IntList();
+            IntList sets = new IntList();
+            if (s < oldCount) {
+                Set<Integer> dropped = removed.contains(s) ? null : removedEdges.get(s);
+                for (int e = base.outBegin(s); e < base.outEnd(s); e++) {
+                    entries(entries, base.target(e));
+                    if (!removed.contains(s) && (dropped == null || !dropped.contains(e))) {
+                        targets.add(base.target(e));
+                        sets.add(base.actionSet(e));
+                    }
+                }
+            }
+            IntList additions = added.get(s);
+            for (int i = 0; additions != null && i < additions.size(); i += 2) {
+                targets.add(additions.get(i));
+                sets.add(additions.get(i + 1));
+            }
+            int first = editor.setOutRow(s, targets, sets);
+            for (int i = 0; i < targets.size(); i++) {
+                entries(entries, targets.get(i)).add(s);
+                entries(entries, targets.get(i)).add(first + i);
+            }
+        }
+
+        // Reverse rows ordered on the source then the edge, as in a flat model:
+        for (Map.Entry<Integer, IntList> row : entries.entrySet()) {
+            int t = row.getKey();
+            IntList rewritten = row.getValue();
+            int kept = 0;
+            if (t < oldCount) {
+                for (int position = base.inBegin(t); position < base.inEnd(t); position++) {
+                    if (!touched.contains(base.inSource(position)))
+                        kept++;
+                }
+            }
+            long[] pairs = new long[kept + rewritten.size() / 2];
+            int count = 0;
+            if (t < oldCount) {
+                for (int position = base.inBegin(t); position < base.inEnd(t); position++) {
+                    if (!touched.contains(base.inSource(position)))
+                        pairs[count++] = ((long) base.inSource(position) << 32) | base.inEdge(position);
+                }
+            }
+            for (int i = 0; i < rewritten.size(); i += 2)
+                pairs[count++] = ((long) rewritten.get(i) << 32) | rewritten.get(i + 1);
+            Arrays.sort(pairs);
+            IntList sources = new IntList(pairs.length);
+            IntList edges = new IntList(pairs.length);
+            for (long pair : pairs) {
+                sources.add((int) (pair >>> 32));
+                edges.add((int) pair);
+            }
+            editor.setInRow(t, sources, edges);
+        }
+
+        RowPatch patch = editor.build();
+        CompiledModel model = new CompiledModel(patch, patch.stateNames(), initial, labelNames.toArray(new String[0]),
+                labelStates.toArray(new StateSet[0]), actionNames.toArray(new String[0]),
+                actionSets.toArray(new int[0][]), removed.isEmpty() ? null : removed);
+        // Once the rewritten rows are as large as the arrays they patch, the edits are folded into new arrays:
+        if (patch.isLarge())
+            model = model.flatten();
+
+        return new ModelUpdate(base, model, changed, touched);
+    }
+
+    // Copies the set of a label the first time this delta changes it:
+    private static StateSet labelSet(List<StateSet> labelStates, boolean[] copied, int label) {
+        if (label < copied.length && !copied[label]) {
+            labelStates.set(label, labelStates.get(label).copy());
+            copied[label] = true;
+        }
+        return labelStates.get(label);
+    }
+
+    private static Set<Integer> edges(Map<Integer, Set<Integer>> removedEdges, int source) {
+        Set<Integer> edges = removedEdges.get(source);
+        if (edges == null)
+            removedEdges.put(source, edges = new HashSet<>());
+        return edges;
+    }
+
+    private static IntList entries(Map<Integer, IntList> entries, int target) {
+        IntList rewritten = entries.get(target);
+        if (rewritten == null)
+            entries.put(target, rewritten = new IntList());
+        return rewritten;
+    }
+
+    private static String[] transition(String source, String target, String[] actions) {
+        String[] transition = new String[2 + (actions == null ? 0 : actions.length)];
+        transition[0] = source;
+        transition[1] = target;
+        for (int i = 2; i < transition.length; i++)
+            transition[i] = actions[i - 2];
+        return transition;
+    }
+
+    /**
+     * Resolves the action ids of a transition, interning the unknown actions when a list of names is given and
+     * otherwise returning null to tell that no existing transition can perform them.
+     */
+    private static int[] actionIds(String[] transition, Map<String, Integer> ids, List<String> names) {
+        int[] actions = new int[transition.length - 2];
+        for (int i = 0; i < actions.length; i++) {
+            Integer id = ids.get(transition[i + 2]);
+            if (id == null && names == null)
+                return null;
+            actions[i] = id == null ? intern(transition[i + 2], ids, names) : id;
+        }
+        return actions;
+    }
+
+    private static int liveState(String name, CompiledModel base, Map<String, Integer> newIds, StateSet removed) {
+        Integer id = newIds.containsKey(name) ? newIds.get(name) : base.findState(name);
+        if (id < 0 || removed.contains(id))
+            throw new IllegalArgumentException("A transition refers to the unknown state " + name);
+        return id;
+    }
+
+    private static int intern(String name, Map<String, Integer> ids, List<String> names) {
+        Integer id = ids.get(name);
+        if (id == null) {
+            id = names.size();
+            ids.put(name, id);
+            names.add(name);
+        }
+        return id;
+    }
+
+    // Action sets are compared as sorted lists of distinct action ids:
+    private static List<Integer> key(int[] actions) {
+        if (actions == null)
+            return null;
+        TreeSet<Integer> sorted = new TreeSet<>();
+        for (int action : actions)
+            sorted.add(action);
+        return new ArrayList<>(sorted);
+    }
+
+    private static int[] toArray(List<Integer> key) {
+        int[] array = new int[key.size()];
+        for (int i = 0; i < array.length; i++)
+            array[i] = key.get(i);
+        return array;
+    }
+
+    private static List<String> key(String target, String[] actions) {
+        List<String> key = new ArrayList<>();
+        key.add(target);
+        if (actions != null)
+            key.addAll(new TreeSet<>(Arrays.asList(actions)));
+        return key;
+    }
+
+    private static String[] actions(List<String> key) {
+        return key.subList(1, key.size()).toArray(new String[0]);
+    }
+
+    private static boolean sameLabels(String[] labels, String[] others) {
+        return new HashSet<>(Arrays.asList(labels)).equals(new HashSet<>(Arrays.asList(others)));
+    }
+
+}
@@ -0,0 +1,480 @@
+package model;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Generator of synthetic models at controlled scales, for benchmarks and stress tests. A generator enumerates its
+ * states by dense ids and produces the transitions of a state on demand, so that the JSON form of a model is streamed
+ * to disk without the model ever being held in memory. The compiled form, and hence the binary one, only holds the
+ * int arrays of the compiled model, the state names being generated again when asked for.
+ *
+ * Random graphs and grids are computed from the state ids, models of protocols are explored from a StateSpace once,
+ * their states being kept in a StateStore.
+ *
+ * Usage: java model.ModelGenerator random|grid|mutex|philosophers size output.json|output.bin [branching] [seed]
+ */
+public abstract class ModelGenerator {
+
+    /**
+     * Receives the transitions leaving a state.
+     */
+    public interface Transitions {
+        void add(int target, String... actions);
+    }
+
+    public abstract int getStateCount();
+
+    public abstract boolean isInitial(int state);
+
+    /**
+     * Returns the atomic propositions holding in a state.
+     */
+    public abstract String[] getLabels(int state);
+
+    /**
+     * Generates the transitions leaving a state, the same ones in the same order on every call.
+     *
+     * @param state
+     *            - id of the state
+     * @param transitions
+     *            - receiver of the transitions
+     */
+    public abstract void transitions(int state, Transitions transitions);
+
+    public String getStateName(int state) {
+        return "s" + state;
+    }
+
+    /**
+     * Writes the model in the JSON format read by Model.parseModel.
+     *
+     * @param filePath
+     *            - path of the file, replaced if it exists
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    public void writeJson(String filePath) throws IOException {
+        try (Writer out = new BufferedWriter(
+                new OutputStreamWriter(new FileOutputStream(filePath), StandardCharsets.UTF_8), 1 << 16)) {
+            writeJson(out);
+        }
+    }
+
+    public void writeJson(Writer out) throws IOException {
+        int stateCount = getStateCount();
+
+        out.write("{\"states\":[");
+        for (int s = 0; s < stateCount; s++) {
+            out.write(s == 0 ? "\n" : ",\n");
+            out.write("{\"init\":" + isInitial(s) + ",\"name\":" + quote(getStateName(s)) + ",\"label\":");
+            writeArray(out, getLabels(s));
+            out.write("}");
+        }
+
+        out.write("],\"transitions\":[");
+        IntList targets = new IntList();
+        List<String[]> actions = new ArrayList<>();
+        boolean first = true;
+        for (int s = 0; s < stateCount; s++) {
+            targets.clear();
+            actions.clear();
+            transitions(s, (target, names) -> {
+                targets.add(target);
+                actions.add(names);
+            });
+
+            for (int i = 0; i < targets.size(); i++) {
+                out.write(first ? "\n" : ",\n");
+                first = false;
+                out.write("{\"source\":" + quote(getStateName(s)) + ",\"target\":"
+                        + quote(getStateName(targets.get(i))) + ",\"actions\":");
+                writeArray(out, actions.get(i));
+                out.write("}");
+            }
+        }
+        out.write("]}\n");
+    }
+
+    /**
+     * Builds the compiled form of the model directly from the state ids, without the name lookups of
+     * CompiledModel.Builder. The state names of the compiled model are generated by this generator.
+     *
+     * @return the compiled model
+     */
+    public CompiledModel compile() {
+        int stateCount = getStateCount();
+        StateSet initialStates = new StateSet(stateCount);
+
+        Map<String, Integer> labelIds = new HashMap<>();
+        List<String> labelNames = new ArrayList<>();
+        int[] labelOffsets = new int[stateCount + 1];
+        IntList labels = new IntList();
+
+        Map<String, Integer> actionIds = new HashMap<>();
+        List<String> actionNames = new ArrayList<>();
+        Map<Set<String>, Integer> actionSetIds = new HashMap<>();
+        List<int[]> actionSets = new ArrayList<>();
+        int[] outOffsets = new int[stateCount + 1];
+        IntList outTargets = new IntList();
+        IntList outActionSets = new IntList();
+
+        for (int s = 0; s < stateCount; s++) {
+            if (isInitial(s))
+                initialStates.add(s);
+
+            for (String label : getLabels(s))
+                labels.add(intern(label, labelIds, labelNames));
+            labelOffsets[s + 1] = labels.size();
+
+            transitions(s, (target, names) -> {
+                Set<String> actions = new HashSet<>(Arrays.asList(names));
+                Integer id = actionSetIds.get(actions);
+                if (id == null) {
+                    // Action sets are stored as sorted arrays of action ids:
+                    int[] ids = new int[actions.size()];
+                    int i = 0;
+                    for (String action : actions)
+                        ids[i++] = intern(action, actionIds, actionNames);
+                    Arrays.sort(ids);
+                    id = actionSets.size();
+                    actionSetIds.put(actions, id);
+                    actionSets.add(ids);
+                }
+                outTargets.add(target);
+                outActionSets.add(id);
+            });
+            outOffsets[s + 1] = outTargets.size();
+        }
+
+        int[] targets = outTargets.toArray();
+        int[][] in = CompiledModel.reverse(stateCount, outOffsets, targets);
+        return new CompiledModel(new GeneratedNames(this), initialStates, labelNames.toArray(new String[0]),
+                labelOffsets, labels.toArray(), actionNames.toArray(new String[0]), actionSets.toArray(new int[0][]),
+                outOffsets, targets, outActionSets.toArray(), in[0], in[1], in[2]);
+    }
+
+    /**
+     * Writes the model in the binary format of BinaryModelFormat.
+     *
+     * @param filePath
+     *            - path of the file, replaced if it exists
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    public void writeBinary(String filePath) throws IOException {
+        BinaryModelFormat.write(compile(), filePath);
+    }
+
+    /**
+     * Creates a random graph in which every state has the same number of transitions. The first transition of each
+     * state leads to the next state, so that every state is reachable from the initial state s0; the other ones lead
+     * to random states. Each state holds each label with probability one half, and each transition performs one
+     * random action.
+     *
+     * @param states
+     *            - number of states
+     * @param branching
+     *            - number of transitions leaving each state, at least 1
+     * @param labels
+     *            - number of atomic propositions, named p0, p1...
+     * @param actions
+     *            - number of actions, named act0, act1...
+     * @param seed
+     *            - seed of the graph, the same seed giving the same graph
+     * @return the generator
+     */
+    public static ModelGenerator randomGraph(int states, int branching, int labels, int actions, long seed) {
+        if (states < 1 || branching < 1 || labels < 0 || actions < 1)
+            throw new IllegalArgumentException("A random graph needs a state, a transition per state and an action");
+        return new RandomGraph(states, branching, names("p", labels), names("act", actions), seed);
+    }
+
+    /**
+     * Creates a grid of width x height states starting in its top left corner, from which every state can move one
+     * step north, south, east or west within the grid. The states on the border are labelled border, the start and
+     * the opposite corner are labelled start and goal, and the states of the diagonal are labelled diagonal.
+     *
+     * @param width
+     *            - number of columns
+     * @param height
+     *            - number of rows
+     * @return the generator
+     */
+    public static ModelGenerator grid(int width, int height) {
+        if (width < 1 || height < 1 || (long) width * height > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("A grid has between 1 and 2^31 - 1 states");
+        return new Grid(width, height);
+    }
+
+    /**
+     * Creates the model of n processes competing for a critical section, see Protocols.mutualExclusion.
+     */
+    public static ModelGenerator mutualExclusion(int processes) {
+        return explore(Protocols.mutualExclusion(processes), Protocols.mutualExclusionLabels(processes));
+    }
+
+    /**
+     * Creates the model of n dining philosophers, see Protocols.diningPhilosophers.
+     */
+    public static ModelGenerator diningPhilosophers(int philosophers) {
+        return explore(Protocols.diningPhilosophers(philosophers), Protocols.diningPhilosophersLabels(philosophers));
+    }
+
+    /**
+     * Explores every state of a state space reachable from its initial states, numbering them in breadth-first order.
+     *
+     * @param space
+     *            - the state space, which must be finite
+     * @param labels
+     *            - the atomic propositions to evaluate in each state
+     * @return the generator
+     */
+    public static ModelGenerator explore(StateSpace space, List<String> labels) {
+        return new Explored(space, labels);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.err.println("Usage: java model.ModelGenerator random|grid|mutex|philosophers <size> "
+                    + "<output.json|output.bin> [branching] [seed]");
+            System.err.println("The size is the number of states of random graphs and grids, and the number of "
+                    + "processes of mutex and philosophers");
+            System.exit(1);
+        }
+
+        int size = Integer.parseInt(args[1]);
+        int branching = args.length > 3 ? Integer.parseInt(args[3]) : 3;
+        long seed = args.length > 4 ? Long.parseLong(args[4]) : 0;
+        ModelGenerator generator;
+        switch (args[0]) {
+        case "random":
+            generator = randomGraph(size, branching, 8, 8, seed);
+            break;
+        case "grid":
+            int side = (int) Math.ceil(Math.sqrt(size));
+            generator = grid(side, side);
+            break;
+        case "mutex":
+            generator = mutualExclusion(size);
+            break;
+        case "philosophers":
+            generator = diningPhilosophers(size);
+            break;
+        default:
+            throw new IllegalArgumentException("Unknown topology " + args[0]);
+        }
+
+        long start = System.nanoTime();
+        if (args[2].endsWith(".bin"))
+            generator.writeBinary(args[2]);
+        else
+            generator.writeJson(args[2]);
+        System.out.printf("Wrote %d states to %s in %.1f ms%n", generator.getStateCount(), args[2],
+                (System.nanoTime() - start) / 1e6);
+    }
+
+    private static String[] names(String prefix, int count) {
+        String[] names = new String[count];
+        for (int i = 0; i < count; i++)
+            names[i] = prefix + i;
+        return names;
+    }
+
+    private static int intern(String name, Map<String, Integer> ids, List<String> names) {
+        Integer id = ids.get(name);
+        if (id == null) {
+            id = names.size();
+            ids.put(name, id);
+            names.add(name);
+        }
+        return id;
+    }
+
+    private static void writeArray(Writer out, String[] values) throws IOException {
+        out.write("[");
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0)
+                out.write(",");
+            out.write(quote(values[i]));
+        }
+        out.write("]");
+    }
+
+    private static String quote(String value) {
+        return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+    /**
+     * Names of the states of a compiled model, generated again whenever one is asked for.
+     */
+    private static class GeneratedNames extends NameTable {
+        private final ModelGenerator generator;
+        private final int size;
+
+        GeneratedNames(ModelGenerator generator) {
+            this.generator = generator;
+            this.size = generator.getStateCount();
+        }
+
+        @Override
+        int size() {
+            return size;
+        }
+
+        @Override
+        String get(int index) {
+            return generator.getStateName(index);
+        }
+    }
+
+    private static class RandomGraph extends ModelGenerator {
+        private final int states;
+        private final int branching;
+        private final String[] labels;
+        private final String[][] actions;
+        private final long seed;
+
+        RandomGraph(int states, int branching, String[] labels, String[] actions, long seed) {
+            this.states = states;
+            this.branching = branching;
+            this.labels = labels;
+            this.actions = new String[actions.length][];
+            for (int i = 0; i < actions.length; i++)
+                this.actions[i] = new String[] { actions[i] };
+            this.seed = seed;
+        }
+
+        @Override
+        public int getStateCount() {
+            return states;
+        }
+
+        @Override
+        public boolean isInitial(int state) {
+            return state == 0;
+        }
+
+        @Override
+        public String[] getLabels(int state) {
+            // Each state draws from its own generator, so that its labels and transitions never depend on the order
+            // in which states are asked for:
+            SplittableRandom random = random(state, 0);
+            List<String> holding = new ArrayList<>();
+            for (String label : labels) {
+                if (random.nextBoolean())
+                    holding.add(label);
+            }
+            return holding.toArray(new String[0]);
+        }
+
+        @Override
+        public void transitions(int state, Transitions transitions) {
+            SplittableRandom random = random(state, 1);
+            for (int i = 0; i < branching; i++) {
+                int target = i == 0 ? (state + 1) % states : random.nextInt(states);
+                transitions.add(target, actions[random.nextInt(actions.length)]);
+            }
+        }
+
+        private SplittableRandom random(int state, int stream) {
+            return new SplittableRandom(seed * 0x9E3779B97F4A7C15L + 2L * state + stream);
+        }
+    }
+
+    private static class Grid extends ModelGenerator {
+        private final int width;
+        private final int height;
+
+        Grid(int width, int height) {
+            this.width = width;
+            this.height = height;
+        }
+
+        @Override
+        public int getStateCount() {
+            return width * height;
+        }
+
+        @Override
+        public boolean isInitial(int state) {
+            return state == 0;
+        }
+
+        @Override
+        public String[] getLabels(int state) {
+            int x = state % width, y = state / width;
+            List<String> labels = new ArrayList<>();
+            if (x == 0 || y == 0 || x == width - 1 || y == height - 1)
+                labels.add("border");
+            if (x == y)
+                labels.add("diagonal");
+            if (state == 0)
+                labels.add("start");
+            if (state == width * height - 1)
+                labels.add("goal");
+            return labels.toArray(new String[0]);
+        }
+
+        @Override
+        public void transitions(int state, Transitions transitions) {
+            int x = state % width, y = state / width;
+            if (y > 0)
+                transitions.add(state - width, "north");
+            if (y < height - 1)
+                transitions.add(state + width, "south");
+            if (x < width - 1)
+                transitions.add(state + 1, "east");
+            if (x > 0)
+                transitions.add(state - 1, "west");
+        }
+    }
+
+    private static class Explored extends ModelGenerator {
+        private final StateSpace space;
+        private final String[] labels;
+        private final StateStore store;
+        private final BitSet initial = new BitSet();
+
+        Explored(StateSpace space, List<String> labels) {
+            this.space = space;
+            this.labels = labels.toArray(new String[0]);
+            this.store = new StateStore(space.getVectorLength());
+
+            for (int[] state : space.initialStates())
+                initial.set(store.add(state));
+            // The store numbers states as they are found, its ids are the queue of the breadth-first search:
+            for (int s = 0; s < store.size(); s++)
+                space.successors(store.get(s), (target, actions) -> store.add(target));
+        }
+
+        @Override
+        public int getStateCount() {
+            return store.size();
+        }
+
+        @Override
+        public boolean isInitial(int state) {
+            return initial.get(state);
+        }
+
+        @Override
+        public String[] getLabels(int state) {
+            int[] vector = store.get(state);
+            List<String> holding = new ArrayList<>();
+            for (String label : labels) {
+                if (space.hasLabel(vector, label))
+                    holding.add(label);
+            }
+            return holding.toArray(new String[0]);
+        }
+
+        @Override
+        public void transitions(int state, Transitions transitions) {
+            space.successors(store.get(state), (target, actions) -> transitions.add(store.indexOf(target),
+                    actions == null ? new String[0] : actions));
+        }
+    }
+
+}
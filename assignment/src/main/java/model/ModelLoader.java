@@ -0,0 +1,233 @@
+package model;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+/**
+ * Loads a model in the JSON format read by Model.parseModel straight into a compiled model. The file is read token by
+ * token in a single pass, so neither the JSON tree nor the State and Transition objects are ever materialised.
+ */
+public class ModelLoader {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private long bytesRead;
+    private long loadNanos;
+    private long peakMemory;
+
+    /**
+     * Loads and compiles the model stored in a JSON file.
+     *
+     * @param filePath
+     *            - path of the JSON model
+     * @return the compiled model
+     * @throws IOException
+     *             if the file cannot be read or is not a valid model
+     */
+    public CompiledModel load(String filePath) throws IOException {
+        return load(filePath, null);
+    }
+
+    /**
+     * Loads and compiles the model stored in a JSON file, updating a digest with the bytes of the file as they are
+     * read, so that a file both digested and loaded is only read once.
+     *
+     * @param filePath
+     *            - path of the JSON model
+     * @param digest
+     *            - digest updated with every byte of the file, or null
+     * @return the compiled model
+     * @throws IOException
+     *             if the file cannot be read or is not a valid model
+     */
+    public CompiledModel load(String filePath, MessageDigest digest) throws IOException {
+        List<MemoryPoolMXBean> heapPools = heapPools();
+        for (MemoryPoolMXBean pool : heapPools)
+            pool.resetPeakUsage();
+
+        long start = System.nanoTime();
+        File file = new File(filePath);
+        CompiledModel model;
+
+        InputStream in = new FileInputStream(file);
+        if (digest != null)
+            in = new DigestInputStream(in, digest);
+        try (JsonReader reader = new JsonReader(new BufferedReader(
+                new InputStreamReader(in, StandardCharsets.UTF_8), BUFFER_SIZE))) {
+            model = read(reader);
+            // The bytes after the model are digested too:
+            if (digest != null) {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                while (in.read(buffer) >= 0)
+                    continue;
+            }
+        } catch (IllegalStateException | IllegalArgumentException e) {
+            throw new IOException("Invalid model " + filePath + ": " + e.getMessage(), e);
+        }
+
+        loadNanos = System.nanoTime() - start;
+        bytesRead = file.length();
+        peakMemory = 0;
+        for (MemoryPoolMXBean pool : heapPools)
+            peakMemory += pool.getPeakUsage().getUsed();
+
+        return model;
+    }
+
+    private CompiledModel read(JsonReader reader) throws IOException {
+        CompiledModel.Builder builder = new CompiledModel.Builder();
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (name.equals("states")) {
+                reader.beginArray();
+                while (reader.hasNext())
+                    readState(reader, builder);
+                reader.endArray();
+            } else if (name.equals("transitions")) {
+                reader.beginArray();
+                while (reader.hasNext())
+                    readTransition(reader, builder);
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        return builder.build();
+    }
+
+    private void readState(JsonReader reader, CompiledModel.Builder builder) throws IOException {
+        boolean init = false;
+        String name = null;
+        String[] labels = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+            case "init":
+                init = reader.nextBoolean();
+                break;
+            case "name":
+                name = reader.nextString();
+                break;
+            case "label":
+                labels = readStrings(reader);
+                break;
+            default:
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (name == null)
+            throw new IOException("State without a name at " + reader);
+        builder.addState(name, init, labels);
+    }
+
+    private void readTransition(JsonReader reader, CompiledModel.Builder builder) throws IOException {
+        String source = null;
+        String target = null;
+        String[] actions = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+            case "source":
+                source = reader.nextString();
+                break;
+            case "target":
+                target = reader.nextString();
+                break;
+            case "actions":
+                actions = readStrings(reader);
+                break;
+            default:
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (source == null || target == null)
+            throw new IOException("Transition without a source or target at " + reader);
+        builder.addTransition(source, target, actions);
+    }
+
+    private String[] readStrings(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+
+        List<String> strings = new ArrayList<>(4);
+        reader.beginArray();
+        while (reader.hasNext())
+            strings.add(reader.nextString());
+        reader.endArray();
+        return strings.toArray(new String[0]);
+    }
+
+    private static List<MemoryPoolMXBean> heapPools() {
+        List<MemoryPoolMXBean> pools = new ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isValid())
+                pools.add(pool);
+        }
+        return pools;
+    }
+
+    /**
+     * Returns the size of the file read by the last load.
+     *
+     * @return number of bytes
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * Returns the time taken by the last load.
+     *
+     * @return load time in milliseconds
+     */
+    public double getLoadMillis() {
+        return loadNanos / 1e6;
+    }
+
+    /**
+     * Returns the rate at which the last model was loaded.
+     *
+     * @return load rate in MB/s
+     */
+    public double getLoadRate() {
+        return loadNanos == 0 ? 0 : (bytesRead / (1024.0 * 1024.0)) / (loadNanos / 1e9);
+    }
+
+    /**
+     * Returns the peak heap usage during the last load, summed over the heap memory pools of the JVM. The peak is
+     * measured from the start of the load, so it includes whatever was already live on the heap.
+     *
+     * @return peak heap usage in bytes
+     */
+    public long getPeakMemory() {
+        return peakMemory;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d bytes in %.1f ms (%.1f MB/s), peak heap %.1f MB", bytesRead, getLoadMillis(),
+                getLoadRate(), peakMemory / (1024.0 * 1024.0));
+    }
+
+}
@@ -0,0 +1,48 @@
+package model;
+
+/**
+ * Outcome of applying a ModelDelta: the new version of a compiled model, along with the states whose own definition
+ * changed and the states whose outgoing transitions changed. Both sets range over the ids of the new version, which
+ * extend the ids of the previous one.
+ */
+public class ModelUpdate {
+    private final CompiledModel previous;
+    private final CompiledModel model;
+    private final StateSet changedStates;
+    private final StateSet touchedStates;
+
+    ModelUpdate(CompiledModel previous, CompiledModel model, StateSet changedStates, StateSet touchedStates) {
+        this.previous = previous;
+        this.model = model;
+        this.changedStates = changedStates;
+        this.touchedStates = touchedStates;
+    }
+
+    public CompiledModel getPrevious() {
+        return previous;
+    }
+
+    public CompiledModel getModel() {
+        return model;
+    }
+
+    /**
+     * Returns the states added, removed or redefined, whose labels or initial flag may differ from the previous
+     * version.
+     *
+     * @return a copy of the set of changed states
+     */
+    public StateSet getChangedStates() {
+        return changedStates.copy();
+    }
+
+    /**
+     * Returns the states which gained or lost an outgoing transition.
+     *
+     * @return a copy of the set of touched states
+     */
+    public StateSet getTouchedStates() {
+        return touchedStates.copy();
+    }
+
+}
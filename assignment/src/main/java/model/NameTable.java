@@ -0,0 +1,70 @@
+package model;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Table of the state names of a compiled model. Names may be held as strings or decoded on demand from the string
+ * table of a binary model file.
+ */
+abstract class NameTable {
+
+    abstract int size();
+
+    abstract String get(int index);
+
+    /**
+     * Builds the reverse lookup from name to index, decoding every name.
+     */
+    Map<String, Integer> index() {
+        Map<String, Integer> ids = new HashMap<>(size() * 2);
+        for (int i = 0; i < size(); i++)
+            ids.put(get(i), i);
+        return ids;
+    }
+
+    /**
+     * Appends names after the ones of a table, which is left unchanged. The array of names may be longer than the
+     * count and extended later on, as it is shared by the successive versions of a model edited by ModelDeltas.
+     */
+    static NameTable append(NameTable table, String[] names, int count) {
+        return new Appended(table, names, count);
+    }
+
+    static NameTable of(final String[] names) {
+        return new NameTable() {
+            @Override
+            int size() {
+                return names.length;
+            }
+
+            @Override
+            String get(int index) {
+                return names[index];
+            }
+        };
+    }
+
+    private static final class Appended extends NameTable {
+        private final NameTable table;
+        private final String[] names;
+        private final int count;
+
+        Appended(NameTable table, String[] names, int count) {
+            this.table = table;
+            this.names = names;
+            this.count = count;
+        }
+
+        @Override
+        int size() {
+            return table.size() + count;
+        }
+
+        @Override
+        String get(int index) {
+            return index < table.size() ? table.get(index) : names[index - table.size()];
+        }
+    }
+
+}
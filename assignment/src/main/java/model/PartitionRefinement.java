@@ -0,0 +1,316 @@
+package model;
+
+import java.util.*;
+
+/**
+ * Paige-Tarjan partition refinement computing the coarsest strong bisimulation of a compiled model, respecting both
+ * the labels of the states and the action sets of the transitions.
+ *
+ * The labelled transitions are first turned into an unlabelled graph: every edge s -> t becomes a node of its own
+ * between s and t, starting in the block of its action set. Two states are then bisimilar in the model exactly when
+ * they end up in the same block of the coarsest stable partition of that graph. Refinement follows Paige and Tarjan:
+ * a block B is split off a compound block S with |B| <= |S| / 2, and the blocks are split against both B and S - B,
+ * the predecessors of S - B being found by keeping, for every node, the number of its successors in each compound
+ * block. Every node is thus in a splitter O(log n) times and the whole refinement runs in O(m log n).
+ */
+class PartitionRefinement {
+    private final int stateCount;
+    private final int nodeCount;
+
+    // Reverse adjacency of the encoded graph, with the id of each encoded edge:
+    private final int[] predOffsets;
+    private final int[] predNodes;
+    private final int[] predEdges;
+
+    // Blocks are ranges of the elements array, the marked elements of a block being at the start of its range:
+    private final int[] elements;
+    private final int[] position;
+    private final int[] blockOf;
+    private final int[] blockBegin;
+    private final int[] blockEnd;
+    private final int[] blockMarked;
+    private int blockCount;
+    private final IntList touched = new IntList();
+
+    // Compound blocks are linked lists of blocks, the ones with at least two blocks are waiting as splitters:
+    private final int[] blockCompound;
+    private final int[] blockNext;
+    private final int[] blockPrev;
+    private final int[] compoundHead;
+    private final int[] compoundSize;
+    private int compoundCount;
+    private final IntList splitters = new IntList();
+
+    // For each encoded edge x -> y, the counter of the successors of x in the compound block of y:
+    private final int[] edgeCount;
+    private final IntList countValues = new IntList();
+    private final IntList freeCounts = new IntList();
+
+    // Counters of the successors in the current splitter, and one edge into it, for each of its predecessors:
+    private final int[] splitCount;
+    private final int[] splitEdge;
+    private final IntList predecessors = new IntList();
+
+    PartitionRefinement(CompiledModel model) {
+        stateCount = model.getStateCount();
+        int edges = model.getEdgeCount();
+        nodeCount = stateCount + edges;
+
+        /*
+         Encoded edge e goes from the source of edge e to node stateCount + e, and encoded edge edges + e from node
+         stateCount + e to the target of edge e:
+         */
+        predOffsets = new int[nodeCount + 1];
+        predNodes = new int[2 * edges];
+        predEdges = new int[2 * edges];
+        int p = 0;
+        for (int t = 0; t < stateCount; t++) {
+            predOffsets[t] = p;
+            for (int i = model.inBegin(t); i < model.inEnd(t); i++) {
+                predNodes[p] = stateCount + model.inEdge(i);
+                predEdges[p++] = edges + model.inEdge(i);
+            }
+        }
+        for (int s = 0; s < stateCount; s++) {
+            for (int e = model.outBegin(s); e < model.outEnd(s); e++) {
+                predOffsets[stateCount + e] = p;
+                predNodes[p] = s;
+                predEdges[p++] = e;
+            }
+        }
+        predOffsets[nodeCount] = p;
+
+        elements = new int[nodeCount];
+        position = new int[nodeCount];
+        blockOf = new int[nodeCount];
+        blockBegin = new int[nodeCount + 1];
+        blockEnd = new int[nodeCount + 1];
+        blockMarked = new int[nodeCount + 1];
+        blockCompound = new int[nodeCount + 1];
+        blockNext = new int[nodeCount + 1];
+        blockPrev = new int[nodeCount + 1];
+        compoundHead = new int[nodeCount + 1];
+        compoundSize = new int[nodeCount + 1];
+        edgeCount = new int[2 * edges];
+        splitCount = new int[nodeCount];
+        splitEdge = new int[nodeCount];
+        Arrays.fill(splitCount, -1);
+
+        initialPartition(model);
+    }
+
+    /**
+     * Splits the nodes by kind, states by their labels and whether they have a successor, edges by their action set.
+     * This partition is stable with respect to the single compound block holding every node.
+     */
+    private void initialPartition(CompiledModel model) {
+        int[] initialBlock = new int[nodeCount];
+        Map<List<Integer>, Integer> stateKeys = new HashMap<>();
+        for (int s = 0; s < stateCount; s++) {
+            List<Integer> key = new ArrayList<>();
+            key.add(model.outDegree(s) > 0 ? 1 : 0);
+            int[] labels = new int[model.labelEnd(s) - model.labelBegin(s)];
+            for (int i = 0; i < labels.length; i++)
+                labels[i] = model.labelId(model.labelBegin(s) + i);
+            Arrays.sort(labels);
+            for (int label : labels)
+                key.add(label);
+            Integer block = stateKeys.get(key);
+            if (block == null)
+                stateKeys.put(key, block = stateKeys.size());
+            initialBlock[s] = block;
+        }
+        for (int e = 0; e < nodeCount - stateCount; e++)
+            initialBlock[stateCount + e] = stateKeys.size() + model.actionSet(e);
+
+        // Counting sort of the nodes on their initial block, dropping the action sets no edge uses:
+        int[] sizes = new int[stateKeys.size() + model.getActionSetCount()];
+        for (int x = 0; x < nodeCount; x++)
+            sizes[initialBlock[x]]++;
+        int[] ids = new int[sizes.length];
+        int begin = 0;
+        for (int key = 0; key < sizes.length; key++) {
+            if (sizes[key] == 0)
+                continue;
+            ids[key] = blockCount;
+            blockBegin[blockCount] = begin;
+            blockEnd[blockCount] = begin;
+            begin += sizes[key];
+            blockCount++;
+        }
+        for (int x = 0; x < nodeCount; x++) {
+            int block = ids[initialBlock[x]];
+            blockOf[x] = block;
+            position[x] = blockEnd[block];
+            elements[blockEnd[block]++] = x;
+        }
+
+        compoundCount = 1;
+        compoundHead[0] = blockCount > 0 ? 0 : -1;
+        compoundSize[0] = blockCount;
+        for (int b = 0; b < blockCount; b++) {
+            blockCompound[b] = 0;
+            blockPrev[b] = b - 1;
+            blockNext[b] = b + 1 < blockCount ? b + 1 : -1;
+        }
+        if (blockCount >= 2)
+            splitters.add(0);
+
+        // Every node starts with one counter, of its successors in the compound block of all the nodes:
+        for (int y = 0; y < nodeCount; y++) {
+            for (int i = predOffsets[y]; i < predOffsets[y + 1]; i++) {
+                int x = predNodes[i];
+                if (splitCount[x] < 0)
+                    splitCount[x] = newCount();
+                countValues.set(splitCount[x], countValues.get(splitCount[x]) + 1);
+                edgeCount[predEdges[i]] = splitCount[x];
+            }
+        }
+        Arrays.fill(splitCount, -1);
+    }
+
+    /**
+     * Refines the partition until it is stable.
+     *
+     * @return for each state of the model, the id of its block
+     */
+    int[] run() {
+        while (!splitters.isEmpty()) {
+            int compound = splitters.pop();
+
+            // Split the smaller of the first two blocks off the compound block:
+            int first = compoundHead[compound];
+            int second = blockNext[first];
+            int splitter = size(first) <= size(second) ? first : second;
+            unlink(splitter);
+            if (compoundSize[compound] >= 2)
+                splitters.add(compound);
+            int own = compoundCount++;
+            compoundHead[own] = splitter;
+            compoundSize[own] = 1;
+            blockCompound[splitter] = own;
+            blockPrev[splitter] = -1;
+            blockNext[splitter] = -1;
+
+            // The range of the splitter keeps the same elements while blocks are split, only their order changes:
+            int begin = blockBegin[splitter];
+            int end = blockEnd[splitter];
+
+            predecessors.clear();
+            for (int i = begin; i < end; i++) {
+                int y = elements[i];
+                for (int j = predOffsets[y]; j < predOffsets[y + 1]; j++) {
+                    int x = predNodes[j];
+                    if (splitCount[x] < 0) {
+                        splitCount[x] = newCount();
+                        splitEdge[x] = predEdges[j];
+                        predecessors.add(x);
+                    }
+                    countValues.set(splitCount[x], countValues.get(splitCount[x]) + 1);
+                }
+            }
+
+            // Split against the splitter, then against the rest of the compound block it was taken from:
+            for (int i = 0; i < predecessors.size(); i++)
+                mark(predecessors.get(i));
+            splitMarked();
+
+            for (int i = 0; i < predecessors.size(); i++) {
+                int x = predecessors.get(i);
+                if (countValues.get(splitCount[x]) == countValues.get(edgeCount[splitEdge[x]]))
+                    mark(x);
+            }
+            splitMarked();
+
+            // Edges into the splitter now count towards the counter of the splitter:
+            for (int i = begin; i < end; i++) {
+                int y = elements[i];
+                for (int j = predOffsets[y]; j < predOffsets[y + 1]; j++) {
+                    int edge = predEdges[j];
+                    int count = edgeCount[edge];
+                    countValues.set(count, countValues.get(count) - 1);
+                    if (countValues.get(count) == 0)
+                        freeCounts.add(count);
+                    edgeCount[edge] = splitCount[predNodes[j]];
+                }
+            }
+            for (int i = 0; i < predecessors.size(); i++)
+                splitCount[predecessors.get(i)] = -1;
+        }
+
+        int[] states = new int[stateCount];
+        System.arraycopy(blockOf, 0, states, 0, stateCount);
+        return states;
+    }
+
+    private int size(int block) {
+        return blockEnd[block] - blockBegin[block];
+    }
+
+    private int newCount() {
+        if (!freeCounts.isEmpty()) {
+            int count = freeCounts.pop();
+            countValues.set(count, 0);
+            return count;
+        }
+        countValues.add(0);
+        return countValues.size() - 1;
+    }
+
+    private void unlink(int block) {
+        int compound = blockCompound[block];
+        if (blockPrev[block] >= 0)
+            blockNext[blockPrev[block]] = blockNext[block];
+        else
+            compoundHead[compound] = blockNext[block];
+        if (blockNext[block] >= 0)
+            blockPrev[blockNext[block]] = blockPrev[block];
+        compoundSize[compound]--;
+    }
+
+    private void mark(int x) {
+        int block = blockOf[x];
+        if (blockMarked[block] == 0)
+            touched.add(block);
+
+        int target = blockBegin[block] + blockMarked[block]++;
+        int other = elements[target];
+        elements[position[x]] = other;
+        position[other] = position[x];
+        elements[target] = x;
+        position[x] = target;
+    }
+
+    /**
+     * Splits the marked elements off every block holding some, the new blocks joining the compound block of the
+     * block they come from.
+     */
+    private void splitMarked() {
+        for (int i = 0; i < touched.size(); i++) {
+            int block = touched.get(i);
+            int marked = blockMarked[block];
+            blockMarked[block] = 0;
+            if (marked == size(block))
+                continue;
+
+            int split = blockCount++;
+            blockBegin[split] = blockBegin[block];
+            blockEnd[split] = blockBegin[block] + marked;
+            blockBegin[block] += marked;
+            for (int j = blockBegin[split]; j < blockEnd[split]; j++)
+                blockOf[elements[j]] = split;
+
+            int compound = blockCompound[block];
+            blockCompound[split] = compound;
+            blockPrev[split] = block;
+            blockNext[split] = blockNext[block];
+            if (blockNext[block] >= 0)
+                blockPrev[blockNext[block]] = split;
+            blockNext[block] = split;
+            if (++compoundSize[compound] == 2)
+                splitters.add(compound);
+        }
+        touched.clear();
+    }
+
+}
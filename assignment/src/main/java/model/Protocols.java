@@ -0,0 +1,176 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * State spaces of classic concurrent protocols with a parameterised number of processes, whose number of states grows
+ * exponentially with it. They can be checked implicitly through ImplicitModel, or enumerated by ModelGenerator.
+ */
+public final class Protocols {
+    // Phases of a process competing for the critical section:
+    private static final int IDLE = 0, WAITING = 1, CRITICAL = 2;
+    // Phases of a philosopher:
+    private static final int THINKING = 0, HUNGRY = 1, EATING = 2;
+
+    private Protocols() {
+    }
+
+    /**
+     * Mutual exclusion between n processes, generalising MutualModel.json. Process i is idle (labelled idle<i>),
+     * waiting (wait<i>) or critical (crit<i>), moving from one phase to the next with the actions try<i>, enter<i>
+     * and leave<i>. A process can only enter the critical section while no other process is in it, and y holds
+     * while one is. The space has 2^n + n * 2^(n - 1) states.
+     *
+     * @param processes
+     *            - number of processes, at least 1
+     * @return the state space, a state being the phase of each process
+     */
+    public static StateSpace mutualExclusion(final int processes) {
+        if (processes < 1 || processes > 20)
+            throw new IllegalArgumentException("Mutual exclusion is generated for 1 to 20 processes");
+
+        return new StateSpace() {
+            @Override
+            public int getVectorLength() {
+                return processes;
+            }
+
+            @Override
+            public List<int[]> initialStates() {
+                return Collections.singletonList(new int[processes]);
+            }
+
+            @Override
+            public void successors(int[] state, Successors successors) {
+                boolean taken = critical(state);
+                for (int i = 0; i < processes; i++) {
+                    if (state[i] == CRITICAL)
+                        successors.add(with(state, i, IDLE), "leave" + i);
+                    else if (state[i] == IDLE)
+                        successors.add(with(state, i, WAITING), "try" + i);
+                    else if (!taken)
+                        successors.add(with(state, i, CRITICAL), "enter" + i);
+                }
+            }
+
+            @Override
+            public boolean hasLabel(int[] state, String label) {
+                if (label.equals("y"))
+                    return critical(state);
+                return hasPhase(state, label, "idle", IDLE) || hasPhase(state, label, "wait", WAITING)
+                        || hasPhase(state, label, "crit", CRITICAL);
+            }
+
+            private boolean critical(int[] state) {
+                for (int phase : state) {
+                    if (phase == CRITICAL)
+                        return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public static List<String> mutualExclusionLabels(int processes) {
+        List<String> labels = new ArrayList<>();
+        for (int i = 0; i < processes; i++) {
+            labels.add("idle" + i);
+            labels.add("wait" + i);
+            labels.add("crit" + i);
+        }
+        labels.add("y");
+        return labels;
+    }
+
+    /**
+     * Dining philosophers around a table with one fork between each pair of neighbours. Philosopher i thinks
+     * (labelled think<i>), picks up the fork on its left with action left<i> and becomes hungry (hungry<i>), then
+     * picks up the fork on its right with right<i> and eats (eat<i>), and finally puts both down with release<i>. A
+     * fork can only be picked up while nobody holds it. When every philosopher holds its left fork, none of them can
+     * move: that state is labelled deadlock and has no transition.
+     *
+     * @param philosophers
+     *            - number of philosophers, at least 2
+     * @return the state space, a state being the phase of each philosopher
+     */
+    public static StateSpace diningPhilosophers(final int philosophers) {
+        if (philosophers < 2 || philosophers > 18)
+            throw new IllegalArgumentException("Dining philosophers are generated for 2 to 18 philosophers");
+
+        return new StateSpace() {
+            @Override
+            public int getVectorLength() {
+                return philosophers;
+            }
+
+            @Override
+            public List<int[]> initialStates() {
+                return Collections.singletonList(new int[philosophers]);
+            }
+
+            @Override
+            public void successors(int[] state, Successors successors) {
+                for (int i = 0; i < philosophers; i++) {
+                    if (state[i] == THINKING && !held(state, i))
+                        successors.add(with(state, i, HUNGRY), "left" + i);
+                    else if (state[i] == HUNGRY && !held(state, (i + 1) % philosophers))
+                        successors.add(with(state, i, EATING), "right" + i);
+                    else if (state[i] == EATING)
+                        successors.add(with(state, i, THINKING), "release" + i);
+                }
+            }
+
+            @Override
+            public boolean hasLabel(int[] state, String label) {
+                if (label.equals("deadlock")) {
+                    for (int phase : state) {
+                        if (phase != HUNGRY)
+                            return false;
+                    }
+                    return true;
+                }
+                return hasPhase(state, label, "think", THINKING) || hasPhase(state, label, "hungry", HUNGRY)
+                        || hasPhase(state, label, "eat", EATING);
+            }
+
+            // Fork i lies between philosopher i - 1, whose right fork it is, and philosopher i, whose left fork it is:
+            private boolean held(int[] state, int fork) {
+                return state[fork] != THINKING || state[(fork + philosophers - 1) % philosophers] == EATING;
+            }
+        };
+    }
+
+    public static List<String> diningPhilosophersLabels(int philosophers) {
+        List<String> labels = new ArrayList<>();
+        for (int i = 0; i < philosophers; i++) {
+            labels.add("think" + i);
+            labels.add("hungry" + i);
+            labels.add("eat" + i);
+        }
+        labels.add("deadlock");
+        return labels;
+    }
+
+    private static int[] with(int[] state, int process, int phase) {
+        int[] next = state.clone();
+        next[process] = phase;
+        return next;
+    }
+
+    /**
+     * Evaluates a label made of a prefix and a process number, such as wait3.
+     */
+    private static boolean hasPhase(int[] state, String label, String prefix, int phase) {
+        if (!label.startsWith(prefix) || label.length() == prefix.length())
+            return false;
+        try {
+            int process = Integer.parseInt(label.substring(prefix.length()));
+            return process >= 0 && process < state.length && state[process] == phase;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+}
@@ -0,0 +1,203 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * Preprocessing pass dropping the states of a compiled model which cannot be reached from an initial state. The
+ * reachable states are found with a breadth-first search over the forward adjacency, then copied with their edges
+ * into a smaller compiled model. Every CTL formula holds in a reachable state of the pruned model exactly when it
+ * holds in that state of the original one, as the successors of a reachable state are reachable too.
+ *
+ * Reachable states keep their relative order, so ids can be translated back and forth with getOriginalId and
+ * getPrunedId. Labels and action sets are shared with the original model.
+ */
+public class ReachabilityPruning {
+    private final CompiledModel original;
+    private final CompiledModel pruned;
+    private final int[] originalIds;
+    private final int[] prunedIds;
+    private final long nanos;
+
+    private ReachabilityPruning(CompiledModel original, CompiledModel pruned, int[] originalIds, int[] prunedIds,
+            long nanos) {
+        this.original = original;
+        this.pruned = pruned;
+        this.originalIds = originalIds;
+        this.prunedIds = prunedIds;
+        this.nanos = nanos;
+    }
+
+    /**
+     * Computes the states reachable from the initial states of a model.
+     *
+     * @param model
+     *            - the compiled model
+     * @return the set of reachable states, initial states included
+     */
+    public static StateSet reachableStates(CompiledModel model) {
+        StateSet reached = model.getInitialStates();
+        int[] queue = new int[model.getStateCount()];
+        int head = 0, tail = 0;
+
+        for (int s = reached.nextState(0); s >= 0; s = reached.nextState(s + 1))
+            queue[tail++] = s;
+
+        while (head < tail) {
+            int s = queue[head++];
+            for (int e = model.outBegin(s); e < model.outEnd(s); e++) {
+                if (reached.addIfAbsent(model.target(e)))
+                    queue[tail++] = model.target(e);
+            }
+        }
+
+        return reached;
+    }
+
+    /**
+     * Computes the states reachable from the initial states of a model over the transitions it groups by source
+     * state, without compiling it.
+     *
+     * @param model
+     *            - the model
+     * @return the set of reachable states, by position in the model, initial states included
+     */
+    public static StateSet reachableStates(Model model) {
+        Model.Index index = model.index();
+        int stateCount = model.getStates().length;
+        StateSet reached = new StateSet(stateCount);
+        int[] queue = new int[stateCount];
+        int head = 0, tail = 0;
+
+        for (int s : model.initialStates()) {
+            reached.add(s);
+            queue[tail++] = s;
+        }
+
+        while (head < tail) {
+            int s = queue[head++];
+            for (int i = index.outOffsets[s]; i < index.outOffsets[s + 1]; i++) {
+                if (reached.addIfAbsent(index.outTargets[i]))
+                    queue[tail++] = index.outTargets[i];
+            }
+        }
+
+        return reached;
+    }
+
+    /**
+     * Prunes the unreachable states of a model.
+     *
+     * @param model
+     *            - the compiled model
+     * @return the pruning, holding the model restricted to its reachable states
+     */
+    public static ReachabilityPruning prune(CompiledModel model) {
+        long start = System.nanoTime();
+        StateSet reached = reachableStates(model);
+        int stateCount = model.getStateCount();
+        int keptCount = reached.cardinality();
+
+        if (keptCount == stateCount) {
+            int[] ids = new int[stateCount];
+            for (int s = 0; s < stateCount; s++)
+                ids[s] = s;
+            return new ReachabilityPruning(model, model, ids, ids, System.nanoTime() - start);
+        }
+
+        int[] originalIds = new int[keptCount];
+        int[] prunedIds = new int[stateCount];
+        Arrays.fill(prunedIds, -1);
+        int kept = 0;
+        for (int s = reached.nextState(0); s >= 0; s = reached.nextState(s + 1)) {
+            originalIds[kept] = s;
+            prunedIds[s] = kept++;
+        }
+
+        String[] names = new String[keptCount];
+        StateSet initialStates = new StateSet(keptCount);
+        int[] labelOffsets = new int[keptCount + 1];
+        int[] outOffsets = new int[keptCount + 1];
+        for (int i = 0; i < keptCount; i++) {
+            int s = originalIds[i];
+            names[i] = model.getStateName(s);
+            if (model.isInitial(s))
+                initialStates.add(i);
+            labelOffsets[i + 1] = labelOffsets[i] + model.labelEnd(s) - model.labelBegin(s);
+            outOffsets[i + 1] = outOffsets[i] + model.outDegree(s);
+        }
+
+        // Every target of a reachable state is reachable, so the edges are copied whole and only renumbered:
+        int[] labelIds = new int[labelOffsets[keptCount]];
+        int[] outTargets = new int[outOffsets[keptCount]];
+        int[] outActionSets = new int[outOffsets[keptCount]];
+        for (int i = 0; i < keptCount; i++) {
+            int s = originalIds[i];
+            for (int position = model.labelBegin(s), copy = labelOffsets[i]; position < model.labelEnd(s); position++)
+                labelIds[copy++] = model.labelId(position);
+            for (int e = model.outBegin(s), copy = outOffsets[i]; e < model.outEnd(s); e++, copy++) {
+                outTargets[copy] = prunedIds[model.target(e)];
+                outActionSets[copy] = model.actionSet(e);
+            }
+        }
+
+        int[][] in = CompiledModel.reverse(keptCount, outOffsets, outTargets);
+        CompiledModel pruned = new CompiledModel(NameTable.of(names), initialStates, model.labelNames, labelOffsets,
+                labelIds, model.actionNames, model.actionSets, outOffsets, outTargets, outActionSets, in[0], in[1],
+                in[2]);
+
+        return new ReachabilityPruning(model, pruned, originalIds, prunedIds, System.nanoTime() - start);
+    }
+
+    public CompiledModel getOriginal() {
+        return original;
+    }
+
+    /**
+     * Returns the model restricted to its reachable states, which is the original model itself when every state is
+     * reachable.
+     *
+     * @return the pruned model
+     */
+    public CompiledModel getModel() {
+        return pruned;
+    }
+
+    public int getOriginalId(int prunedId) {
+        return originalIds[prunedId];
+    }
+
+    /**
+     * Translates the id of a state of the original model.
+     *
+     * @param originalId
+     *            - id in the original model
+     * @return id in the pruned model, or -1 if the state is unreachable
+     */
+    public int getPrunedId(int originalId) {
+        return prunedIds[originalId];
+    }
+
+    public boolean isReachable(int originalId) {
+        return prunedIds[originalId] >= 0;
+    }
+
+    public int getDroppedStates() {
+        return original.getStateCount() - pruned.getStateCount();
+    }
+
+    public int getDroppedEdges() {
+        return original.getEdgeCount() - pruned.getEdgeCount();
+    }
+
+    public double getMillis() {
+        return nanos / 1e6;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Kept %d of %d states and %d of %d edges, dropped %d states and %d edges in %.1f ms",
+                pruned.getStateCount(), original.getStateCount(), pruned.getEdgeCount(), original.getEdgeCount(),
+                getDroppedStates(), getDroppedEdges(), getMillis());
+    }
+
+}
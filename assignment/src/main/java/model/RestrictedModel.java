@@ -0,0 +1,158 @@
+package model;
+
+import java.util.Collections;
+
+/**
+ * Immutable view of a compiled model restricted to some of its states and edges. The view only holds a state mask
+ * and an edge mask layered over the compiled graph, which is never modified: any number of views, for instance one
+ * per constraint, can share the same compiled model and be checked concurrently.
+ *
+ * An edge of the view always has both its endpoints in the view. The edge mask is an EdgeSet over the edge ids of
+ * the compiled model.
+ */
+public final class RestrictedModel {
+    private final CompiledModel base;
+    private final StateSet states;
+    private final EdgeSet edges;
+    // Number of edges of the view leaving each state, counted on first use:
+    private volatile int[] outDegrees;
+
+    private RestrictedModel(CompiledModel base, StateSet states, EdgeSet edges) {
+        this.base = base;
+        this.states = states;
+        this.edges = edges;
+    }
+
+    /**
+     * Creates the view containing every state and edge of a compiled model.
+     *
+     * @param base
+     *            - the compiled model
+     * @return the unrestricted view
+     */
+    public static RestrictedModel of(CompiledModel base) {
+        return new RestrictedModel(base, StateSet.full(base.getStateCount()),
+                base.getAllowedEdges(Collections.<String> emptySet()));
+    }
+
+    /**
+     * Restricts the view further to the given states, dropping every edge leaving or entering another state.
+     *
+     * @param kept
+     *            - the states to keep, states already outside the view stay outside
+     * @return the new view, this one is left unchanged
+     */
+    public RestrictedModel restrictStates(StateSet kept) {
+        StateSet newStates = states.copy().retainAll(kept);
+        EdgeSet newEdges = new EdgeSet(edges.size());
+        for (int s = newStates.nextState(0); s >= 0; s = newStates.nextState(s + 1)) {
+            for (int e = base.outBegin(s); e < base.outEnd(s); e++) {
+                if (edges.contains(e) && newStates.contains(base.target(e)))
+                    newEdges.add(e);
+            }
+        }
+        return new RestrictedModel(base, newStates, newEdges);
+    }
+
+    /**
+     * Restricts the view further to the given edges, keeping every state.
+     *
+     * @param kept
+     *            - set over the edge ids of the compiled model, edges already outside the view stay outside
+     * @return the new view, this one is left unchanged
+     */
+    public RestrictedModel restrictEdges(EdgeSet kept) {
+        return new RestrictedModel(base, states, edges.copy().retainAll(kept));
+    }
+
+    public CompiledModel getBase() {
+        return base;
+    }
+
+    public boolean containsState(int state) {
+        return states.contains(state);
+    }
+
+    public boolean containsEdge(int edge) {
+        return edges.contains(edge);
+    }
+
+    /**
+     * Pre-image operator within the view, see CompiledModel.preExists.
+     *
+     * @param targets
+     *            - the states to reach
+     * @param edgeMask
+     *            - the edges which may be taken, edges outside the view are never taken
+     * @return the new set of sources
+     */
+    public StateSet preExists(StateSet targets, EdgeSet edgeMask) {
+        return base.preExists(targets, edgeMask, edges);
+    }
+
+    /**
+     * Universal pre-image operator within the view, see CompiledModel.preForAll. Only the edges of the view count:
+     * a state qualifies when it has an edge in the view and each of its edges in the view is in the mask and leads
+     * into the targets.
+     *
+     * @param targets
+     *            - the states every edge must reach
+     * @param edgeMask
+     *            - the edges which may be taken
+     * @return the new set of sources
+     */
+    public StateSet preForAll(StateSet targets, EdgeSet edgeMask) {
+        return base.preForAll(targets, edgeMask, edges, outDegrees());
+    }
+
+    private int[] outDegrees() {
+        int[] degrees = outDegrees;
+        if (degrees == null) {
+            degrees = new int[base.getStateCount()];
+            for (int s = states.nextState(0); s >= 0; s = states.nextState(s + 1)) {
+                for (int e = base.outBegin(s); e < base.outEnd(s); e++) {
+                    if (edges.contains(e))
+                        degrees[s]++;
+                }
+            }
+            outDegrees = degrees;
+        }
+        return degrees;
+    }
+
+    /**
+     * Returns the states of the view.
+     *
+     * @return a copy of the state mask
+     */
+    public StateSet getStates() {
+        return states.copy();
+    }
+
+    /**
+     * Returns the edges of the view.
+     *
+     * @return a copy of the edge mask, over the edge ids of the compiled model
+     */
+    public EdgeSet getEdges() {
+        return edges.copy();
+    }
+
+    /**
+     * Returns the initial states of the compiled model which are in the view.
+     *
+     * @return a new set of initial states
+     */
+    public StateSet getInitialStates() {
+        return base.getInitialStates().retainAll(states);
+    }
+
+    public int getStateCount() {
+        return states.cardinality();
+    }
+
+    public int getEdgeCount() {
+        return edges.cardinality();
+    }
+
+}
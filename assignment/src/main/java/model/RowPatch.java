@@ -0,0 +1,355 @@
+package model;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Rows of a compiled model rewritten by ModelDelta, layered over the compressed sparse rows of the flat model the
+ * deltas started from, the root. A delta does not copy the arrays of the root: it writes again, at the end of
+ * append-only arrays, the forward row of each state whose transitions changed, the reverse rows of the targets of
+ * its old and new edges, and the labels of each redefined state. The edges of a rewritten forward row get new ids
+ * after those of the root, the ids of its previous edges being left unused. A table with one chunk per 256 states
+ * tells where the rewritten rows are, the other rows being read from the root.
+ *
+ * The append-only arrays are shared by the successive versions of a model, each version reading them up to its own
+ * lengths: the last version extends them in place, and a delta applied to an older version copies them first. Once
+ * the rewritten rows are as large as the root, ModelDelta compacts the model into new flat arrays.
+ */
+final class RowPatch {
+    private static final int CHUNK_BITS = 8;
+    private static final int CHUNK_MASK = (1 << CHUNK_BITS) - 1;
+    // For each state of a chunk, the begin and end of its forward row, of its reverse row and of its labels:
+    private static final int FIELDS = 6;
+    static final int OUT = 0;
+    static final int IN = 2;
+    static final int LABELS = 4;
+
+    final CompiledModel root;
+    private final int[][] chunks;
+    final int stateCount;
+    final int edgeCount;
+
+    // Entries appended after those of the root, and the number of them this version reads:
+    final int[] targets;
+    final int[] actionSets;
+    final int appendedEdges;
+    final int[] inSources;
+    final int[] inEdges;
+    final int appendedIn;
+    final int[] labelIds;
+    final int appendedLabels;
+    final String[] names;
+    final int appendedNames;
+    // Ranges of edge ids left unused by rewritten rows, as pairs of begin and end:
+    private final int[] unusedEdges;
+    private final int unusedRanges;
+    private final Tail tail;
+
+    private RowPatch(Editor editor) {
+        Tail tail = editor.tail;
+        this.root = editor.root;
+        this.chunks = editor.chunks;
+        this.stateCount = editor.stateCount;
+        this.edgeCount = editor.edgeCount;
+        this.targets = tail.targets;
+        this.actionSets = tail.actionSets;
+        this.appendedEdges = tail.edges;
+        this.inSources = tail.inSources;
+        this.inEdges = tail.inEdges;
+        this.appendedIn = tail.in;
+        this.labelIds = tail.labelIds;
+        this.appendedLabels = tail.labels;
+        this.names = tail.names;
+        this.appendedNames = tail.nameCount;
+        this.unusedEdges = tail.unused;
+        this.unusedRanges = tail.unusedCount;
+        this.tail = tail;
+    }
+
+    /**
+     * Returns the begin (field) or end (field + 1) of a rewritten row of a state.
+     *
+     * @return the position, or -1 if the row is the one of the root
+     */
+    int get(int state, int field) {
+        int[] chunk = chunks[state >>> CHUNK_BITS];
+        return chunk == null ? -1 : chunk[(state & CHUNK_MASK) * FIELDS + field];
+    }
+
+    NameTable stateNames() {
+        return NameTable.append(root.stateNames, names, appendedNames);
+    }
+
+    int findState(String name) {
+        int id = root.findState(name);
+        if (id >= 0)
+            return id;
+        Integer appended = tail.nameIds.get(name);
+        return appended != null && appended < stateCount ? appended : -1;
+    }
+
+    /**
+     * Removes from a set of edges the ids left unused by the rewritten rows.
+     */
+    void removeUnusedEdges(EdgeSet edges) {
+        for (int i = 0; i < unusedRanges; i++) {
+            for (int e = unusedEdges[2 * i]; e < unusedEdges[2 * i + 1]; e++)
+                edges.remove(e);
+        }
+    }
+
+    /**
+     * Tells whether the rewritten rows take as much room as the root, so that the model is better compacted.
+     */
+    boolean isLarge() {
+        return appendedEdges + appendedIn + appendedLabels > root.getEdgeCount() * 2 + root.labelIds.length
+                + root.getStateCount();
+    }
+
+    /**
+     * Append-only arrays shared by successive versions. Only the version which owns them may extend them in place.
+     */
+    private static final class Tail {
+        private Object owner;
+        int[] targets;
+        int[] actionSets;
+        int edges;
+        int[] inSources;
+        int[] inEdges;
+        int in;
+        int[] labelIds;
+        int labels;
+        String[] names;
+        int nameCount;
+        int[] unused;
+        int unusedCount;
+        final Map<String, Integer> nameIds = new ConcurrentHashMap<>();
+
+        Tail(RowPatch from) {
+            int edgeCapacity = 16;
+            int nameCapacity = 4;
+            if (from == null) {
+                targets = new int[edgeCapacity];
+                actionSets = new int[edgeCapacity];
+                inSources = new int[edgeCapacity];
+                inEdges = new int[edgeCapacity];
+                labelIds = new int[edgeCapacity];
+                names = new String[nameCapacity];
+                unused = new int[edgeCapacity];
+                return;
+            }
+            targets = Arrays.copyOf(from.targets, Math.max(from.appendedEdges, edgeCapacity));
+            actionSets = Arrays.copyOf(from.actionSets, targets.length);
+            edges = from.appendedEdges;
+            inSources = Arrays.copyOf(from.inSources, Math.max(from.appendedIn, edgeCapacity));
+            inEdges = Arrays.copyOf(from.inEdges, inSources.length);
+            in = from.appendedIn;
+            labelIds = Arrays.copyOf(from.labelIds, Math.max(from.appendedLabels, edgeCapacity));
+            labels = from.appendedLabels;
+            names = Arrays.copyOf(from.names, Math.max(from.appendedNames, nameCapacity));
+            nameCount = from.appendedNames;
+            unused = Arrays.copyOf(from.unusedEdges, Math.max(2 * from.unusedRanges, edgeCapacity));
+            unusedCount = from.unusedRanges;
+            int first = from.root.getStateCount();
+            for (int i = 0; i < nameCount; i++)
+                nameIds.put(names[i], first + i);
+        }
+
+        /**
+         * Hands the arrays over to an editor of a version, if that version owns them, and otherwise copies them.
+         */
+        static Tail claim(RowPatch from, Object editor) {
+            if (from != null) {
+                synchronized (from.tail) {
+                    if (from.tail.owner == from) {
+                        from.tail.owner = editor;
+                        return from.tail;
+                    }
+                }
+            }
+            Tail tail = new Tail(from);
+            tail.owner = editor;
+            return tail;
+        }
+
+        synchronized void release(RowPatch patch) {
+            owner = patch;
+        }
+
+        int appendEdge(int target, int actionSet) {
+            if (edges == targets.length) {
+                targets = Arrays.copyOf(targets, grow(edges));
+                actionSets = Arrays.copyOf(actionSets, targets.length);
+            }
+            targets[edges] = target;
+            actionSets[edges] = actionSet;
+            return edges++;
+        }
+
+        int appendIn(int source, int edge) {
+            if (in == inSources.length) {
+                inSources = Arrays.copyOf(inSources, grow(in));
+                inEdges = Arrays.copyOf(inEdges, inSources.length);
+            }
+            inSources[in] = source;
+            inEdges[in] = edge;
+            return in++;
+        }
+
+        int appendLabel(int label) {
+            if (labels == labelIds.length)
+                labelIds = Arrays.copyOf(labelIds, grow(labels));
+            labelIds[labels] = label;
+            return labels++;
+        }
+
+        void appendUnused(int begin, int end) {
+            if (2 * unusedCount == unused.length)
+                unused = Arrays.copyOf(unused, grow(unused.length));
+            unused[2 * unusedCount] = begin;
+            unused[2 * unusedCount++ + 1] = end;
+        }
+
+        void appendName(String name, int id) {
+            if (nameCount == names.length)
+                names = Arrays.copyOf(names, grow(nameCount));
+            names[nameCount++] = name;
+            nameIds.put(name, id);
+        }
+
+        private static int grow(int size) {
+            return size + (size >> 1) + 16;
+        }
+    }
+
+    /**
+     * Builds the next version of a compiled model by rewriting some of its rows. Rows are rewritten whole, and at most
+     * once by the same editor.
+     */
+    static final class Editor {
+        private final CompiledModel from;
+        private final CompiledModel root;
+        private final Tail tail;
+        private int[][] chunks;
+        private final boolean[] copied;
+        private int stateCount;
+        private int edgeCount;
+        private final int rootEdges;
+        private final int rootIn;
+        private final int rootLabels;
+
+        /**
+         * Starts editing a version of a model, which is left unchanged.
+         *
+         * @param from
+         *            - the version to edit, flat or patched
+         * @param addedStates
+         *            - the number of states the edit adds
+         */
+        Editor(CompiledModel from, int addedStates) {
+            RowPatch patch = from.patch;
+            this.from = from;
+            this.root = patch == null ? from : patch.root;
+            this.tail = Tail.claim(patch, this);
+            this.stateCount = from.getStateCount();
+            this.edgeCount = from.getEdgeCount();
+            this.rootEdges = root.outTargets.length;
+            this.rootIn = root.inSources.length;
+            this.rootLabels = root.labelIds.length;
+
+            int chunkCount = (stateCount + addedStates + CHUNK_MASK) >>> CHUNK_BITS;
+            this.chunks = patch == null ? new int[chunkCount][] : Arrays.copyOf(patch.chunks, chunkCount);
+            this.copied = new boolean[chunkCount];
+        }
+
+        int getStateCount() {
+            return stateCount;
+        }
+
+        /**
+         * Adds a state without labels nor transitions.
+         *
+         * @return id of the state, numbered after the existing ones
+         */
+        int addState(String name) {
+            int id = stateCount++;
+            tail.appendName(name, id);
+            int[] chunk = chunk(id);
+            int slot = (id & CHUNK_MASK) * FIELDS;
+            chunk[slot + OUT] = chunk[slot + OUT + 1] = rootEdges + tail.edges;
+            chunk[slot + IN] = chunk[slot + IN + 1] = rootIn + tail.in;
+            chunk[slot + LABELS] = chunk[slot + LABELS + 1] = rootLabels + tail.labels;
+            return id;
+        }
+
+        /**
+         * Rewrites the forward row of a state, the ids of its previous edges being left unused.
+         *
+         * @return id of the first edge of the new row, the others following it
+         */
+        int setOutRow(int state, IntList targets, IntList actionSets) {
+            if (state < from.getStateCount() && from.outDegree(state) > 0) {
+                tail.appendUnused(from.outBegin(state), from.outEnd(state));
+                edgeCount -= from.outDegree(state);
+            }
+            int begin = rootEdges + tail.edges;
+            for (int i = 0; i < targets.size(); i++)
+                tail.appendEdge(targets.get(i), actionSets.get(i));
+            set(state, OUT, begin, rootEdges + tail.edges);
+            edgeCount += targets.size();
+            return begin;
+        }
+
+        /**
+         * Rewrites the reverse row of a state from its entries, as sources and forward edges.
+         */
+        void setInRow(int state, IntList sources, IntList edges) {
+            int begin = rootIn + tail.in;
+            for (int i = 0; i < sources.size(); i++)
+                tail.appendIn(sources.get(i), edges.get(i));
+            set(state, IN, begin, rootIn + tail.in);
+        }
+
+        void setLabels(int state, IntList labels) {
+            int begin = rootLabels + tail.labels;
+            for (int i = 0; i < labels.size(); i++)
+                tail.appendLabel(labels.get(i));
+            set(state, LABELS, begin, rootLabels + tail.labels);
+        }
+
+        /**
+         * Ends the edit, after which the new version owns the append-only arrays.
+         */
+        RowPatch build() {
+            RowPatch patch = new RowPatch(this);
+            tail.release(patch);
+            return patch;
+        }
+
+        private void set(int state, int field, int begin, int end) {
+            int[] chunk = chunk(state);
+            int slot = (state & CHUNK_MASK) * FIELDS;
+            chunk[slot + field] = begin;
+            chunk[slot + field + 1] = end;
+        }
+
+        // Copies the chunk of a state on its first change, the chunks of the version edited being shared:
+        private int[] chunk(int state) {
+            int index = state >>> CHUNK_BITS;
+            if (!copied[index]) {
+                int[] chunk = chunks[index];
+                if (chunk == null) {
+                    chunk = new int[FIELDS << CHUNK_BITS];
+                    Arrays.fill(chunk, -1);
+                } else {
+                    chunk = chunk.clone();
+                }
+                chunks[index] = chunk;
+                copied[index] = true;
+            }
+            return chunks[index];
+        }
+    }
+
+}
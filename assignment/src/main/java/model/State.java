@@ -8,6 +8,7 @@ import java.util.List;
  * */
 public class State {
     private boolean init;
+    private transient int id;
     private String name;
     private String [] label;
     private List<Transition> transitions = new ArrayList<>();
@@ -21,6 +22,18 @@ public class State {
 	return init;
     }
 	
+    /**
+     * Returns the dense index of the state, given in load order
+     * @return int id between 0 and the number of states - 1
+     * */
+    public int getId() {
+	return id;
+    }
+
+    void setId(int id) {
+	this.id = id;
+    }
+
     /**
      * Returns the name of the state
      * @return String name 
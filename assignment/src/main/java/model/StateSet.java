@@ -0,0 +1,94 @@
+package model;
+
+/**
+ * A set of states of a model, stored as a bitset over the dense state ids given to the states when the model is
+ * loaded. Membership costs one bit per state and the bulk operations work on 64 states at a time.
+ */
+public class StateSet extends Bitset {
+
+    /**
+     * Creates an empty set over the ids 0 to size - 1.
+     *
+     * @param size
+     *            - number of states in the model
+     */
+    public StateSet(int size) {
+        super(size);
+    }
+
+    /**
+     * Creates the set of all the states of a model.
+     *
+     * @param size
+     *            - number of states in the model
+     * @return the set containing every id from 0 to size - 1
+     */
+    public static StateSet full(int size) {
+        StateSet set = new StateSet(size);
+        set.fill();
+        return set;
+    }
+
+    /**
+     * Union, adds every state of the other set to this one.
+     */
+    public StateSet addAll(StateSet other) {
+        or(other);
+        return this;
+    }
+
+    /**
+     * Intersection, keeps only the states which are also in the other set.
+     */
+    public StateSet retainAll(StateSet other) {
+        and(other);
+        return this;
+    }
+
+    /**
+     * Difference, removes every state of the other set from this one.
+     */
+    public StateSet removeAll(StateSet other) {
+        andNot(other);
+        return this;
+    }
+
+    /**
+     * Complement with respect to all the states of the model.
+     */
+    public StateSet complement() {
+        flip();
+        return this;
+    }
+
+    public StateSet copy() {
+        return copyInto(new StateSet(size));
+    }
+
+    /**
+     * Returns a copy of the set over a larger id space, as when states are added to a model. The new ids are not in
+     * the copy.
+     *
+     * @param size
+     *            - number of states in the larger model, at least the size of this set
+     * @return the new set
+     */
+    public StateSet resize(int size) {
+        if (size < this.size)
+            throw new IllegalArgumentException("Cannot shrink a set of " + this.size + " states to " + size);
+        return copyInto(new StateSet(size));
+    }
+
+    /**
+     * Returns the first state of the set with an id greater than or equal to the given one. Iterate over the set with
+     * {@code for (int s = set.nextState(0); s >= 0; s = set.nextState(s + 1))}.
+     *
+     * @param from
+     *            - id to start looking from
+     * @return id of the next state in the set, or -1 if there is none
+     */
+    public int nextState(int from) {
+        return next(from);
+    }
+
+}
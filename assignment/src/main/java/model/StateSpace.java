@@ -0,0 +1,64 @@
+package model;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Description of a model by the rules generating its states, for systems too large to be enumerated up front. A
+ * state is a fixed-length vector of ints, for instance the values of the variables of a parameterised system.
+ * ImplicitModel explores a state space on demand and numbers the states it reaches.
+ */
+public interface StateSpace {
+
+    /**
+     * Receives the transitions generated from a state.
+     */
+    interface Successors {
+
+        /**
+         * Adds a transition.
+         *
+         * @param target
+         *            - vector of the target state, which may be reused by the caller once added
+         * @param actions
+         *            - actions performed by the transition
+         */
+        void add(int[] target, String... actions);
+    }
+
+    /**
+     * Returns the length of the state vectors.
+     */
+    int getVectorLength();
+
+    List<int[]> initialStates();
+
+    /**
+     * Generates the transitions leaving a state.
+     *
+     * @param state
+     *            - vector of the state, which must not be modified
+     * @param successors
+     *            - receiver of the transitions
+     */
+    void successors(int[] state, Successors successors);
+
+    /**
+     * Evaluates an atomic proposition in a state.
+     *
+     * @param state
+     *            - vector of the state
+     * @param label
+     *            - the atomic proposition
+     * @return true if the state is labelled with it
+     */
+    boolean hasLabel(int[] state, String label);
+
+    /**
+     * Returns the name of a state, used in traces.
+     */
+    default String getName(int[] state) {
+        return Arrays.toString(state);
+    }
+
+}
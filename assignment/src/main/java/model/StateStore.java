@@ -0,0 +1,135 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * Compact hashed store of visited states, each state being a fixed-length vector of ints. The vectors are packed one
+ * after the other in a single array and numbered densely in the order they are added, and an open-addressing table of
+ * ids finds the id of a vector. A state thus costs its vector plus two ints, and no object per state.
+ */
+public class StateStore {
+    private final int width;
+    private int[] vectors;
+    private int[] hashes;
+    // Open-addressing table with linear probing, holding id + 1 or 0 for an empty slot:
+    private int[] table;
+    private int size;
+
+    /**
+     * Creates an empty store.
+     *
+     * @param width
+     *            - length of the state vectors
+     */
+    public StateStore(int width) {
+        if (width < 1)
+            throw new IllegalArgumentException("State vectors must have at least one component");
+        this.width = width;
+        vectors = new int[16 * width];
+        hashes = new int[16];
+        table = new int[32];
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Adds a state vector unless it is stored already.
+     *
+     * @param vector
+     *            - the state vector
+     * @return the id of the vector, new ids being given in increasing order
+     */
+    public int add(int[] vector) {
+        checkWidth(vector);
+        int hash = hash(vector);
+        int slot = find(vector, hash);
+        if (table[slot] != 0)
+            return table[slot] - 1;
+
+        if (size == hashes.length) {
+            vectors = Arrays.copyOf(vectors, 2 * vectors.length);
+            hashes = Arrays.copyOf(hashes, 2 * hashes.length);
+        }
+        int id = size++;
+        System.arraycopy(vector, 0, vectors, id * width, width);
+        hashes[id] = hash;
+        table[slot] = id + 1;
+
+        // Keep the table at most half full, so probe sequences stay short:
+        if (2 * size > table.length)
+            rehash();
+        return id;
+    }
+
+    /**
+     * Looks a state vector up.
+     *
+     * @param vector
+     *            - the state vector
+     * @return its id, or -1 if it is not stored
+     */
+    public int indexOf(int[] vector) {
+        checkWidth(vector);
+        return table[find(vector, hash(vector))] - 1;
+    }
+
+    /**
+     * Returns a copy of a stored vector.
+     *
+     * @param id
+     *            - id of the state
+     * @return the state vector
+     */
+    public int[] get(int id) {
+        if (id < 0 || id >= size)
+            throw new IllegalArgumentException("No state has id " + id);
+        return Arrays.copyOfRange(vectors, id * width, (id + 1) * width);
+    }
+
+    private int find(int[] vector, int hash) {
+        int mask = table.length - 1;
+        for (int slot = hash & mask;; slot = (slot + 1) & mask) {
+            int id = table[slot] - 1;
+            if (id < 0 || (hashes[id] == hash && matches(id, vector)))
+                return slot;
+        }
+    }
+
+    private boolean matches(int id, int[] vector) {
+        for (int i = 0, offset = id * width; i < width; i++) {
+            if (vectors[offset + i] != vector[i])
+                return false;
+        }
+        return true;
+    }
+
+    private void rehash() {
+        table = new int[2 * table.length];
+        int mask = table.length - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = hashes[id] & mask;
+            while (table[slot] != 0)
+                slot = (slot + 1) & mask;
+            table[slot] = id + 1;
+        }
+    }
+
+    private void checkWidth(int[] vector) {
+        if (vector.length != width)
+            throw new IllegalArgumentException("State vectors must have " + width + " components");
+    }
+
+    private static int hash(int[] vector) {
+        int hash = 0x811C9DC5;
+        for (int value : vector)
+            hash = (hash ^ value) * 0x01000193;
+        return hash ^ (hash >>> 16);
+    }
+
+}
@@ -7,10 +7,23 @@ import java.util.Arrays;
  * 
  **/
 public class  Transition {
+    private transient int id;
     private String source;
     private String target;
     private String[] actions;
 
+    /**
+     * Returns the position of the transition in the model, given in load order
+     * @return int id between 0 and the number of transitions - 1
+     * */
+    public int getId() {
+	return id;
+    }
+
+    void setId(int id) {
+	this.id = id;
+    }
+
     /**
      * Returns the source state of a transition.
      * @return the id of the source state
@@ -0,0 +1,47 @@
+package model;
+
+import java.util.Set;
+
+/**
+ * A model given by its successor function, for model checkers which only explore the states they need. States are
+ * identified by dense int ids, and transitions carry action sets identified by int ids, so that the same set of
+ * actions is only compared once.
+ *
+ * CompiledModel is the materialised implementation; an implementation may also generate states on demand and hand
+ * out their ids as they are discovered.
+ */
+public interface TransitionSystem {
+
+    /**
+     * Returns the initial states, in increasing order of id.
+     *
+     * @return ids of the initial states
+     */
+    int[] initialStates();
+
+    /**
+     * Appends the transitions leaving a state to two lists, one entry per transition.
+     *
+     * @param state
+     *            - id of the state
+     * @param targets
+     *            - list receiving the ids of the target states
+     * @param actionSets
+     *            - list receiving the ids of the action sets of the transitions
+     */
+    void successors(int state, IntList targets, IntList actionSets);
+
+    /**
+     * Returns the actions of an action set given by successors.
+     *
+     * @param actionSet
+     *            - id of the action set
+     * @return the actions performed by transitions labelled with that set
+     */
+    Set<String> actions(int actionSet);
+
+    boolean hasLabel(int state, String label);
+
+    String stateName(int state);
+
+}
@@ -0,0 +1,135 @@
+package modelChecker;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import formula.stateFormula.StateFormula;
+import model.CompiledModel;
+import model.RestrictedModel;
+
+/**
+ * Checks many queries against one compiled model under one constraint. The constraint is applied once when the
+ * session is opened, and every query then shares the compiled graph and the satisfaction sets already computed for
+ * its subformulas, including the ones of the constraint.
+ *
+ * Sessions are thread-safe: queries may be submitted from several threads at once, each of them being checked on
+ * the calling thread (and on the pool of the session if it has one). The model must not change while the session is
+ * in use.
+ */
+public class CheckingSession {
+    private final FixpointModelChecker checker;
+    private final CompiledModel model;
+    private final StateFormula constraint;
+    private final FairnessConstraint fairness;
+    private final long constraintNanos;
+
+    /**
+     * Opens a session checking every query sequentially.
+     *
+     * @param model
+     *            - compiled model to verify
+     * @param constraint
+     *            - the constraint applied to the model before verification against the queries
+     */
+    public CheckingSession(CompiledModel model, StateFormula constraint) {
+        this(model, constraint, 1);
+    }
+
+    /**
+     * Opens a session checking the queries of large models on the given number of threads.
+     *
+     * @param model
+     *            - compiled model to verify
+     * @param constraint
+     *            - the constraint applied to the model before verification against the queries
+     * @param parallelism
+     *            - number of threads, 1 to check sequentially
+     */
+    public CheckingSession(CompiledModel model, StateFormula constraint, int parallelism) {
+        this(model, constraint, null, parallelism);
+    }
+
+    /**
+     * Opens a session in which the path quantifiers of the queries only range over fair paths.
+     *
+     * @param model
+     *            - compiled model to verify
+     * @param constraint
+     *            - the constraint applied to the model before verification against the queries
+     * @param fairness
+     *            - the fairness constraint, or null to take every path into account
+     * @param parallelism
+     *            - number of threads, 1 to check sequentially
+     */
+    public CheckingSession(CompiledModel model, StateFormula constraint, FairnessConstraint fairness,
+            int parallelism) {
+        long start = System.nanoTime();
+        this.checker = new FixpointModelChecker(parallelism);
+        this.model = model;
+        this.constraint = checker.intern(constraint);
+        this.fairness = fairness;
+        checker.restrict(model, this.constraint, fairness);
+        this.constraintNanos = System.nanoTime() - start;
+    }
+
+    /**
+     * Verifies whether the model satisfies a query under the constraint of the session.
+     *
+     * @param query
+     *            - the state formula to verify the model against
+     * @return the verdict, trace and time taken
+     */
+    public QueryResult check(StateFormula query) {
+        long start = System.nanoTime();
+        StateFormula canonical = checker.intern(query);
+        int violating = checker.findViolation(canonical);
+        Trace trace = violating < 0 ? null : checker.counterexample(canonical, violating).toTrace(model);
+        return new QueryResult(canonical, violating < 0, trace, System.nanoTime() - start);
+    }
+
+    /**
+     * Verifies a batch of queries one after the other. Subformulas shared between the queries are computed for the
+     * first one needing them only.
+     *
+     * @param queries
+     *            - the state formulas to verify the model against
+     * @return the results, in the order of the queries
+     */
+    public List<QueryResult> checkAll(List<StateFormula> queries) {
+        List<QueryResult> results = new ArrayList<>(queries.size());
+        for (StateFormula query : queries)
+            results.add(check(query));
+        return results;
+    }
+
+    public CompiledModel getModel() {
+        return model;
+    }
+
+    /**
+     * Returns the view of the model restricted to the states satisfying the constraint.
+     *
+     * @return the immutable restricted view the queries are checked on
+     */
+    public RestrictedModel getView() {
+        return checker.getView();
+    }
+
+    public StateFormula getConstraint() {
+        return constraint;
+    }
+
+    public FairnessConstraint getFairness() {
+        return fairness;
+    }
+
+    /**
+     * Returns the time spent compiling the constraint and restricting the model when the session was opened.
+     *
+     * @return time in nanoseconds
+     */
+    public long getConstraintNanos() {
+        return constraintNanos;
+    }
+
+}
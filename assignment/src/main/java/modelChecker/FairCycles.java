@@ -0,0 +1,135 @@
+package modelChecker;
+
+import model.CompiledModel;
+import model.IntList;
+import model.RestrictedModel;
+import model.StateSet;
+
+/**
+ * Finds the fair strongly connected components of a subgraph of a restricted model, the heart of the fair EG
+ * algorithm. A component is fair when it holds a cycle, that is it has more than one state or a self-loop, and meets
+ * every fairness set: an infinite path can then stay in it forever while visiting each fairness set infinitely often.
+ *
+ * Components are found with Tarjan's algorithm in time linear in the size of the subgraph. The depth-first search is
+ * driven by explicit stacks instead of recursion, so chains of millions of states do not overflow the call stack.
+ */
+class FairCycles {
+
+    private FairCycles() {
+    }
+
+    /**
+     * Returns the states of the fair components of a subgraph.
+     *
+     * @param view
+     *            - the restricted model, only its edges are followed
+     * @param states
+     *            - states of the subgraph
+     * @param allowed
+     *            - action sets of the edges of the subgraph, indexed by action set id
+     * @param fairnessSets
+     *            - sets each fair component must meet
+     * @return the set of states belonging to a fair component
+     */
+    static StateSet find(RestrictedModel view, StateSet states, boolean[] allowed, StateSet[] fairnessSets) {
+        CompiledModel model = view.getBase();
+        int stateCount = model.getStateCount();
+        StateSet result = new StateSet(stateCount);
+
+        // Tarjan numbering, 0 meaning not visited yet:
+        int[] index = new int[stateCount];
+        int[] low = new int[stateCount];
+        int counter = 0;
+        StateSet onStack = new StateSet(stateCount);
+        IntList stack = new IntList();
+
+        // Explicit call stack of the depth-first search, the state and the next of its edges to look at:
+        int[] callStates = new int[stateCount];
+        int[] callEdges = new int[stateCount];
+        IntList component = new IntList();
+
+        for (int root = states.nextState(0); root >= 0; root = states.nextState(root + 1)) {
+            if (index[root] != 0)
+                continue;
+
+            int depth = 0;
+            index[root] = low[root] = ++counter;
+            stack.add(root);
+            onStack.add(root);
+            callStates[depth] = root;
+            callEdges[depth++] = model.outBegin(root);
+
+            while (depth > 0) {
+                int v = callStates[depth - 1];
+                int e = callEdges[depth - 1];
+
+                if (e < model.outEnd(v)) {
+                    callEdges[depth - 1]++;
+                    int w = model.target(e);
+                    if (!view.containsEdge(e) || !allowed[model.actionSet(e)] || !states.contains(w))
+                        continue;
+
+                    if (index[w] == 0) {
+                        index[w] = low[w] = ++counter;
+                        stack.add(w);
+                        onStack.add(w);
+                        callStates[depth] = w;
+                        callEdges[depth++] = model.outBegin(w);
+                    } else if (onStack.contains(w)) {
+                        low[v] = Math.min(low[v], index[w]);
+                    }
+                    continue;
+                }
+
+                // Every edge of v was followed, return to the caller:
+                depth--;
+                if (depth > 0) {
+                    int u = callStates[depth - 1];
+                    low[u] = Math.min(low[u], low[v]);
+                }
+
+                if (low[v] == index[v]) {
+                    component.clear();
+                    int w;
+                    do {
+                        w = stack.pop();
+                        onStack.remove(w);
+                        component.add(w);
+                    } while (w != v);
+
+                    if (isFair(view, allowed, component, fairnessSets)) {
+                        for (int i = 0; i < component.size(); i++)
+                            result.add(component.get(i));
+                    }
+                }
+            }
+        }
+
+        return result;
+    }
+
+    private static boolean isFair(RestrictedModel view, boolean[] allowed, IntList component,
+            StateSet[] fairnessSets) {
+        if (component.size() == 1 && !hasSelfLoop(view, component.get(0), allowed))
+            return false;
+
+        for (StateSet fairnessSet : fairnessSets) {
+            boolean meets = false;
+            for (int i = 0; i < component.size() && !meets; i++)
+                meets = fairnessSet.contains(component.get(i));
+            if (!meets)
+                return false;
+        }
+        return true;
+    }
+
+    private static boolean hasSelfLoop(RestrictedModel view, int state, boolean[] allowed) {
+        CompiledModel model = view.getBase();
+        for (int e = model.outBegin(state); e < model.outEnd(state); e++) {
+            if (model.target(e) == state && view.containsEdge(e) && allowed[model.actionSet(e)])
+                return true;
+        }
+        return false;
+    }
+
+}
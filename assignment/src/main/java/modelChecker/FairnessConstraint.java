@@ -0,0 +1,47 @@
+package modelChecker;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import formula.stateFormula.StateFormula;
+
+/**
+ * Fairness constraint of fair CTL: a set of state formulas which must each hold infinitely often along a path for
+ * the path to be fair. Path quantifiers only range over fair paths when a check is given a fairness constraint, so a
+ * fair path is always infinite. A constraint without any formula keeps every infinite path.
+ */
+public class FairnessConstraint {
+    private final List<StateFormula> conditions;
+
+    /**
+     * Creates a fairness constraint.
+     *
+     * @param conditions
+     *            - the state formulas which must hold infinitely often on a fair path
+     */
+    public FairnessConstraint(StateFormula... conditions) {
+        this(Arrays.asList(conditions));
+    }
+
+    public FairnessConstraint(List<StateFormula> conditions) {
+        this.conditions = Collections.unmodifiableList(new ArrayList<>(conditions));
+    }
+
+    public List<StateFormula> getConditions() {
+        return conditions;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (StateFormula condition : conditions) {
+            if (sb.length() > 0)
+                sb.append(" && ");
+            sb.append("GF ").append(condition);
+        }
+        return sb.length() == 0 ? "infinite paths" : sb.toString();
+    }
+
+}
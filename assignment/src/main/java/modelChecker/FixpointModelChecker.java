@@ -0,0 +1,862 @@
+package modelChecker;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import model.*;
+import formula.FormulaFactory;
+import formula.pathFormula.*;
+import formula.stateFormula.*;
+
+/**
+ * Model checker based on bottom-up CTL labelling. The set of states satisfying each subformula is computed once for
+ * the whole model, and the temporal operators are evaluated as backward fixpoints from the states satisfying their
+ * operands. Every subformula therefore costs time linear in the size of the model, the whole check runs in
+ * O(|model| x |formula|) and no path is ever cut short.
+ *
+ * Path formulas respect their action sets: on a path satisfying (phi aUb psi) every step taken while phi holds is
+ * labelled with an action of a and the step into the psi state with an action of b. An empty action set allows any
+ * action. Paths are maximal, so a path may end in a state without outgoing transitions.
+ *
+ * The constraint restricts the model to the states satisfying it: only paths along which the constraint holds in
+ * every state are taken into account when checking the query. The restriction is a RestrictedModel view over the
+ * compiled model, which stays untouched and can be shared with other checkers.
+ *
+ * Given a FairnessConstraint, path quantifiers only range over fair paths, which visit each of its formulas
+ * infinitely often. EG is then computed from the fair strongly connected components found by FairCycles, and the
+ * other operators are reduced to it and to fixpoints ending in fair states, in time linear in the size of the model.
+ *
+ * Given a parallelism above one, large models are checked on a ForkJoinPool of that many threads: the independent
+ * subformulas of the formula DAG are evaluated concurrently, and the EU, AU and EG fixpoints are themselves computed
+ * by ParallelFixpoints. The verdicts do not depend on the parallelism.
+ *
+ * Formulas are interned by a FormulaFactory, so a subformula occurring several times is a single node of the DAG.
+ * Its satisfaction set is cached by id for as long as the same compiled model is checked, so subformulas shared by
+ * the constraint and the query, or by successive queries, are computed once.
+ *
+ * When a check fails, a TraceGenerator builds a shortest counterexample from the violating initial state out of the
+ * cached satisfaction sets, as a separate stage after the verdict.
+ */
+public class FixpointModelChecker implements ModelChecker {
+    // Models smaller than this are checked sequentially, splitting their fixpoints would cost more than it saves:
+    private static final int PARALLEL_THRESHOLD = 1 << 14;
+
+    private final ForkJoinPool pool;
+    private final int parallelThreshold;
+    private ParallelFixpoints parallel;
+
+    // Canonical formulas, their satisfaction sets are cached by id as long as the same model is checked:
+    private final FormulaFactory factory = new FormulaFactory();
+    private ResultCache cache;
+
+    private CompiledModel model;
+    private int stateCount;
+
+    // States and edges which are taken into account, all of them while checking the constraint:
+    private RestrictedModel view;
+    // Id of the constraint and fairness constraint, the key of the temporal results in the cache:
+    private int restriction;
+    // Sets of states which fair paths visit infinitely often and states starting a fair path, null without fairness:
+    private StateSet[] fairnessSets;
+    private StateSet fair;
+    // Counterexample of the last failed check, as a path of the model checked and with the names of the states:
+    private TraceGenerator.Path violation;
+    private Trace trace;
+    private ReachabilityPruning pruning;
+    // Whether models are minimised up to bisimulation before being checked, and the last quotient computed:
+    private boolean minimize;
+    private BisimulationQuotient quotient;
+
+    /**
+     * Creates a checker computing every fixpoint on the calling thread.
+     */
+    public FixpointModelChecker() {
+        this(1);
+    }
+
+    /**
+     * Creates a checker computing the fixpoints of large models on the given number of threads.
+     *
+     * @param parallelism
+     *            - number of threads, 1 to check sequentially
+     */
+    public FixpointModelChecker(int parallelism) {
+        this(parallelism, PARALLEL_THRESHOLD);
+    }
+
+    /**
+     * Creates a checker computing the fixpoints of models of at least the given size on the given number of threads.
+     *
+     * @param parallelism
+     *            - number of threads, 1 to check sequentially
+     * @param parallelThreshold
+     *            - number of states from which a model is checked in parallel
+     */
+    FixpointModelChecker(int parallelism, int parallelThreshold) {
+        if (parallelism < 1)
+            throw new IllegalArgumentException("Parallelism must be at least 1");
+        pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+        this.parallelThreshold = parallelThreshold;
+    }
+
+    /**
+     * Compiles the model, prunes its unreachable states and checks the query on the reachable part only. When
+     * minimisation is enabled, the query is checked on the bisimulation quotient of the reachable part instead, and
+     * the trace names an original state.
+     */
+    @Override
+    public boolean check(Model model, StateFormula constraint, StateFormula query) {
+        pruning = ReachabilityPruning.prune(CompiledModel.compile(model));
+        if (!minimize)
+            return check(pruning.getModel(), constraint, query);
+
+        quotient = BisimulationQuotient.minimize(pruning.getModel());
+        CompiledModel minimized = quotient.getModel();
+        if (check(minimized, constraint, query))
+            return true;
+
+        // The counterexample goes through classes of states, replay it from a state the original model starts in:
+        trace = TraceGenerator.concretize(violation, quotient).toTrace(pruning.getModel());
+        return false;
+    }
+
+    /**
+     * Verifies whether a compiled model satisfies the query under the given constraint.
+     *
+     * @param model
+     *            - compiled model to verify
+     * @param constraint
+     *            - the constraint applied to the model before verification against the query
+     * @param query
+     *            - the state formula to verify the model against
+     * @return - true if every initial state satisfying the constraint satisfies the query
+     */
+    public boolean check(CompiledModel model, StateFormula constraint, StateFormula query) {
+        return check(model, constraint, null, query);
+    }
+
+    /**
+     * Verifies whether a compiled model satisfies the query under the given constraint, the path quantifiers of the
+     * query only ranging over the paths which are fair.
+     *
+     * @param model
+     *            - compiled model to verify
+     * @param constraint
+     *            - the constraint applied to the model before verification against the query
+     * @param fairness
+     *            - the fairness constraint, or null to take every path into account
+     * @param query
+     *            - the state formula to verify the model against
+     * @return - true if every initial state satisfying the constraint satisfies the query
+     */
+    public boolean check(CompiledModel model, StateFormula constraint, FairnessConstraint fairness,
+            StateFormula query) {
+        violation = null;
+        trace = null;
+        restrict(model, constraint, fairness);
+
+        StateFormula canonical = intern(query);
+        int violating = findViolation(canonical);
+        if (violating >= 0) {
+            violation = counterexample(canonical, violating);
+            trace = violation.toTrace(model);
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Labels the model with the constraint and restricts a view of it to the states satisfying the constraint, the
+     * compiled model itself is never modified. The fairness conditions are then evaluated on that view, and the fair
+     * states computed. Once restricted, the checker only reads its fields, so queries can be checked with
+     * findViolation from several threads at once.
+     */
+    void restrict(CompiledModel model, StateFormula constraint, FairnessConstraint fairness) {
+        this.model = model;
+        this.stateCount = model.getStateCount();
+        if (cache == null || cache.getModel() != model)
+            cache = new ResultCache(model);
+
+        constraint = intern(constraint);
+        List<Integer> key = new ArrayList<>();
+        key.add(factory.getId(constraint));
+
+        view = RestrictedModel.of(model);
+        restriction = ResultCache.NO_RESTRICTION;
+        fairnessSets = null;
+        fair = null;
+        parallel = parallelFixpoints();
+        StateSet satisfying = sat(constraint);
+        if (satisfying.cardinality() < stateCount) {
+            view = view.restrictStates(satisfying);
+            restriction = cache.restriction(key);
+        }
+        parallel = parallelFixpoints();
+
+        if (fairness != null) {
+            StateSet[] sets = new StateSet[fairness.getConditions().size()];
+            key.add(-1);
+            for (int i = 0; i < sets.length; i++) {
+                StateFormula condition = intern(fairness.getConditions().get(i));
+                sets[i] = sat(condition);
+                key.add(factory.getId(condition));
+            }
+
+            // A state starts a fair path when it can reach a fair component of the view, E_fair G TRUE:
+            Set<String> anyAction = Collections.emptySet();
+            StateSet cycles = FairCycles.find(view, view.getStates(), model.allowedActionSets(anyAction), sets);
+            fair = existsUntil(StateSet.full(stateCount), cycles, anyAction, anyAction);
+            fairnessSets = sets;
+            restriction = cache.restriction(key);
+        }
+    }
+
+    /**
+     * Returns the satisfaction sets cached for the model checked last.
+     */
+    ResultCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Returns the view of the model the queries are checked on, restricted by the last constraint.
+     */
+    RestrictedModel getView() {
+        return view;
+    }
+
+    StateFormula intern(StateFormula formula) {
+        return factory.intern(formula);
+    }
+
+    /**
+     * Looks for an initial state of the restricted model which does not satisfy the query.
+     *
+     * @param query
+     *            - the canonical query to check
+     * @return id of the first initial state violating the query, or -1 if the model satisfies it
+     */
+    int findViolation(StateFormula query) {
+        StateSet satisfying = sat(query);
+        StateSet initial = view.getInitialStates();
+
+        for (int s = initial.nextState(0); s >= 0; s = initial.nextState(s + 1)) {
+            if (!satisfying.contains(s))
+                return s;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Builds a shortest counterexample of a query from a state violating it, once the query has been checked. The
+     * satisfaction sets of its subformulas are all cached by then, so only the path searches are left to do.
+     *
+     * @param query
+     *            - the canonical query checked
+     * @param violating
+     *            - id of a state of the restricted model violating the query
+     * @return the path from that state showing why it violates the query
+     */
+    TraceGenerator.Path counterexample(StateFormula query, int violating) {
+        return new TraceGenerator(model, view, fairnessSets != null, this::sat).counterexample(query, violating);
+    }
+
+    /**
+     * Returns the counterexample of the last check, with the actions taken at each step.
+     *
+     * @return the trace, or null if the last check succeeded
+     */
+    public Trace getCounterexample() {
+        return trace;
+    }
+
+    /**
+     * Returns the pruning done by the last check of a Model, with the number of unreachable states and edges dropped.
+     *
+     * @return the pruning, or null if no Model was checked yet
+     */
+    public ReachabilityPruning getPruning() {
+        return pruning;
+    }
+
+    /**
+     * Enables or disables the minimisation of the models given to check(Model, ...) up to bisimulation, which is off
+     * by default. It pays off on models with many equivalent states, checked against large or many formulas.
+     *
+     * @param minimize
+     *            - true to check the bisimulation quotient of each model
+     */
+    public void setMinimize(boolean minimize) {
+        this.minimize = minimize;
+    }
+
+    /**
+     * Returns the quotient computed by the last check of a Model with minimisation enabled.
+     *
+     * @return the quotient, or null if no Model was minimised yet
+     */
+    public BisimulationQuotient getQuotient() {
+        return quotient;
+    }
+
+    /**
+     * Forgets the satisfaction sets computed so far. They are otherwise kept until a different model is checked.
+     */
+    public void clearCache() {
+        if (cache != null)
+            cache.clear();
+    }
+
+    private ParallelFixpoints parallelFixpoints() {
+        if (pool == null || stateCount < parallelThreshold)
+            return null;
+        return new ParallelFixpoints(pool, view);
+    }
+
+    /**
+     * Computes the set of states satisfying a state formula, labelling its subformulas bottom-up. Each node of the
+     * formula DAG is evaluated once all its operands are, so that with a pool the independent subformulas, such as
+     * the conjuncts of a query, are evaluated concurrently. Subformulas found in the cache are not evaluated again,
+     * nor are their operands.
+     *
+     * @param formula
+     *            - the canonical state formula to evaluate
+     * @return - the satisfaction set, which may be shared with the cache
+     */
+    private StateSet sat(StateFormula formula) {
+        FormulaDag dag = new FormulaDag(formula);
+        StateSet[] results = new StateSet[dag.size()];
+
+        // Walk down from the root, the operands of a node missing from the cache are needed as well:
+        boolean[] missing = new boolean[dag.size()];
+        boolean[] needed = new boolean[dag.size()];
+        needed[dag.root()] = true;
+        int missingCount = 0;
+        for (int node = dag.root(); node >= 0; node--) {
+            if (!needed[node])
+                continue;
+            results[node] = cache.get(restriction(dag, node), factory.getId(dag.formula(node)));
+            if (results[node] == null) {
+                missing[node] = true;
+                missingCount++;
+                for (int child : dag.children(node))
+                    needed[child] = true;
+            }
+        }
+
+        if (parallel != null && missingCount > 1)
+            return new DagEvaluation(dag, results, missing).run();
+
+        for (int node = 0; node < dag.size(); node++) {
+            if (missing[node])
+                results[node] = label(dag, node, results);
+        }
+        return results[dag.root()];
+    }
+
+    private int restriction(FormulaDag dag, int node) {
+        return dag.isTemporal(node) ? restriction : ResultCache.NO_RESTRICTION;
+    }
+
+    private StateSet label(FormulaDag dag, int node, StateSet[] results) {
+        StateSet result = evaluate(dag, node, results);
+        cache.put(restriction(dag, node), factory.getId(dag.formula(node)), result);
+        return result;
+    }
+
+    /**
+     * Computes the satisfaction set of a node of a formula DAG from the satisfaction sets of its operands, which are
+     * left untouched as other nodes may share them.
+     */
+    private StateSet evaluate(FormulaDag dag, int node, StateSet[] results) {
+        StateFormula formula = dag.formula(node);
+        int[] children = dag.children(node);
+        StateSet[] operands = new StateSet[children.length];
+        for (int i = 0; i < children.length; i++)
+            operands[i] = results[children[i]];
+
+        if (formula instanceof And) {
+
+            return operands[0].copy().retainAll(operands[1]);
+
+        } else if (formula instanceof Or) {
+
+            return operands[0].copy().addAll(operands[1]);
+
+        } else if (formula instanceof Not) {
+
+            return operands[0].copy().complement();
+
+        } else if (formula instanceof AtomicProp) {
+
+            int label = model.getLabelId(((AtomicProp) formula).label);
+            return label >= 0 ? model.getLabelStates(label).copy() : new StateSet(stateCount);
+
+        } else if (formula instanceof BoolProp) {
+
+            return ((BoolProp) formula).value ? StateSet.full(stateCount) : new StateSet(stateCount);
+
+        } else if (formula instanceof ThereExists) {
+
+            return satExists(((ThereExists) formula).pathFormula, operands);
+
+        } else if (formula instanceof ForAll) {
+
+            return satForAll(((ForAll) formula).pathFormula, operands);
+
+        } else {
+            throw new IllegalArgumentException("Unsupported state formula " + formula);
+        }
+    }
+
+    private StateSet satExists(PathFormula formula, StateSet[] operands) {
+        if (fairnessSets != null)
+            return satFairExists(formula, operands);
+
+        if (formula instanceof Until) {
+
+            Until until = (Until) formula;
+            return existsUntil(operands[0], operands[1], until.getLeftActions(), until.getRightActions());
+
+        } else if (formula instanceof Eventually) {
+
+            Eventually eventually = (Eventually) formula;
+            return existsUntil(StateSet.full(stateCount), operands[0], eventually.getLeftActions(),
+                    eventually.getRightActions());
+
+        } else if (formula instanceof Next) {
+
+            return existsNext(operands[0], ((Next) formula).getActions());
+
+        } else if (formula instanceof Always) {
+
+            return existsAlways(operands[0], ((Always) formula).getActions());
+
+        } else {
+            throw new IllegalArgumentException("Unsupported path formula " + formula);
+        }
+    }
+
+    private StateSet satForAll(PathFormula formula, StateSet[] operands) {
+        if (fairnessSets != null)
+            return satFairForAll(formula, operands);
+
+        if (formula instanceof Until) {
+
+            Until until = (Until) formula;
+            return forAllUntil(operands[0], operands[1], until.getLeftActions(), until.getRightActions());
+
+        } else if (formula instanceof Eventually) {
+
+            Eventually eventually = (Eventually) formula;
+            return forAllUntil(StateSet.full(stateCount), operands[0], eventually.getLeftActions(),
+                    eventually.getRightActions());
+
+        } else if (formula instanceof Next) {
+
+            return forAllNext(operands[0], ((Next) formula).getActions());
+
+        } else if (formula instanceof Always) {
+
+            /*
+             A path violates aG phi when a state reached through a-steps only does not satisfy phi, so AaG phi is the
+             negation of E(TRUE aUa !phi):
+             */
+            Set<String> actions = ((Always) formula).getActions();
+            StateSet violating = operands[0].copy().complement();
+            return existsUntil(StateSet.full(stateCount), violating, actions, actions).complement();
+
+        } else {
+            throw new IllegalArgumentException("Unsupported path formula " + formula);
+        }
+    }
+
+    /**
+     * Fair versions of the existential path formulas. A fair path can follow any finite prefix as long as it ends in
+     * a fair state, so the formulas about finite prefixes only need their last state to be fair; EG needs fair cycles.
+     */
+    private StateSet satFairExists(PathFormula formula, StateSet[] operands) {
+        if (formula instanceof Until) {
+
+            Until until = (Until) formula;
+            return existsUntil(operands[0], operands[1].copy().retainAll(fair), until.getLeftActions(),
+                    until.getRightActions());
+
+        } else if (formula instanceof Eventually) {
+
+            Eventually eventually = (Eventually) formula;
+            return existsUntil(StateSet.full(stateCount), operands[0].copy().retainAll(fair),
+                    eventually.getLeftActions(), eventually.getRightActions());
+
+        } else if (formula instanceof Next) {
+
+            return existsNext(operands[0].copy().retainAll(fair), ((Next) formula).getActions());
+
+        } else if (formula instanceof Always) {
+
+            return fairExistsAlways(operands[0], ((Always) formula).getActions());
+
+        } else {
+            throw new IllegalArgumentException("Unsupported path formula " + formula);
+        }
+    }
+
+    /**
+     * Fair versions of the universal path formulas, through their existential duals. States without any fair path
+     * satisfy every universal formula.
+     */
+    private StateSet satFairForAll(PathFormula formula, StateSet[] operands) {
+        if (formula instanceof Until) {
+
+            Until until = (Until) formula;
+            return fairForAllUntil(operands[0], operands[1], until.getLeftActions(), until.getRightActions());
+
+        } else if (formula instanceof Eventually) {
+
+            Eventually eventually = (Eventually) formula;
+            return fairForAllUntil(StateSet.full(stateCount), operands[0], eventually.getLeftActions(),
+                    eventually.getRightActions());
+
+        } else if (formula instanceof Next) {
+
+            // A fair step violates aX phi when it is not in a or leads to a state violating phi:
+            EdgeSet others = model.getAllowedEdges(((Next) formula).getActions()).copy().complement();
+            EdgeSet any = model.getAllowedEdges(Collections.<String> emptySet());
+            StateSet violating = operands[0].copy().complement().retainAll(fair);
+            return view.preExists(violating, any).addAll(view.preExists(fair, others)).complement();
+
+        } else if (formula instanceof Always) {
+
+            Set<String> actions = ((Always) formula).getActions();
+            StateSet violating = operands[0].copy().complement().retainAll(fair);
+            return existsUntil(StateSet.full(stateCount), violating, actions, actions).complement();
+
+        } else {
+            throw new IllegalArgumentException("Unsupported path formula " + formula);
+        }
+    }
+
+    /**
+     * E_fair aG phi holds where a path of a-steps through phi states reaches either a fair component of the phi
+     * states and a-steps, or a phi state with a step outside a into a fair state, after which phi need not hold.
+     */
+    private StateSet fairExistsAlways(StateSet phi, Set<String> actions) {
+        boolean[] allowed = model.allowedActionSets(actions);
+        StateSet states = view.getStates().retainAll(phi);
+        StateSet seeds = FairCycles.find(view, states, allowed, fairnessSets);
+
+        for (int s = states.nextState(0); s >= 0; s = states.nextState(s + 1)) {
+            for (int e = model.outBegin(s); e < model.outEnd(s); e++) {
+                if (view.containsEdge(e) && !allowed[model.actionSet(e)] && fair.contains(model.target(e))) {
+                    seeds.add(s);
+                    break;
+                }
+            }
+        }
+
+        return existsUntil(phi, seeds, actions, actions);
+    }
+
+    /**
+     * A_fair(phi aUb psi) is the complement of the states starting a fair path which violates it. Such a path starts
+     * in a state violating psi and goes on waiting through phi states along a-steps which are not b-steps into psi.
+     * It then either takes a step into a fair state which neither completes the until nor waits, or never stops
+     * waiting within a fair component.
+     */
+    private StateSet fairForAllUntil(StateSet phi, StateSet psi, Set<String> leftActions, Set<String> rightActions) {
+        boolean[] left = model.allowedActionSets(leftActions);
+        boolean[] right = model.allowedActionSets(rightActions);
+        boolean[] any = model.allowedActionSets(Collections.<String> emptySet());
+
+        StateSet waiting = view.getStates().retainAll(phi);
+        EdgeSet continuing = new EdgeSet(model.getEdgeIdCount());
+        StateSet bad = new StateSet(stateCount);
+
+        for (int s = waiting.nextState(0); s >= 0; s = waiting.nextState(s + 1)) {
+            for (int e = model.outBegin(s); e < model.outEnd(s); e++) {
+                int target = model.target(e);
+                int actionSet = model.actionSet(e);
+                if (!view.containsEdge(e) || (right[actionSet] && psi.contains(target)))
+                    continue;
+                if (left[actionSet] && phi.contains(target))
+                    continuing.add(e);
+                else if (fair.contains(target))
+                    bad.add(s);
+            }
+        }
+        bad.addAll(FairCycles.find(view.restrictEdges(continuing), waiting, any, fairnessSets));
+
+        // Waiting states with a continuing step into a bad state are bad as well:
+        int[] queue = new int[stateCount];
+        int head = 0, tail = 0;
+        for (int s = bad.nextState(0); s >= 0; s = bad.nextState(s + 1))
+            queue[tail++] = s;
+        while (head < tail) {
+            int target = queue[head++];
+            for (int i = model.inBegin(target); i < model.inEnd(target); i++) {
+                if (continuing.contains(model.inEdge(i)) && bad.addIfAbsent(model.inSource(i)))
+                    queue[tail++] = model.inSource(i);
+            }
+        }
+
+        return phi.copy().complement().retainAll(fair).addAll(bad).removeAll(psi).complement();
+    }
+
+    /**
+     * Evaluation of the missing nodes of a formula DAG on the pool. Every node counts its missing operands, the task
+     * evaluating the last of them forks the task of the node, and the nodes without missing operands are submitted
+     * first. Work stealing then spreads the independent subformulas across the threads.
+     */
+    private class DagEvaluation {
+        private final FormulaDag dag;
+        private final StateSet[] results;
+        private final boolean[] missing;
+        private final AtomicIntegerArray pending;
+        private final CompletableFuture<StateSet> root = new CompletableFuture<>();
+
+        DagEvaluation(FormulaDag dag, StateSet[] results, boolean[] missing) {
+            this.dag = dag;
+            this.results = results;
+            this.missing = missing;
+            this.pending = new AtomicIntegerArray(dag.size());
+            for (int node = 0; node < dag.size(); node++) {
+                if (!missing[node])
+                    continue;
+                for (int parent : dag.parents(node)) {
+                    if (missing[parent])
+                        pending.incrementAndGet(parent);
+                }
+            }
+        }
+
+        StateSet run() {
+            List<NodeTask> ready = new ArrayList<>();
+            for (int node = 0; node < dag.size(); node++) {
+                if (missing[node] && pending.get(node) == 0)
+                    ready.add(new NodeTask(node));
+            }
+            for (NodeTask task : ready)
+                pool.execute(task);
+
+            try {
+                return root.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while evaluating " + dag.formula(dag.root()), e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException)
+                    throw (RuntimeException) e.getCause();
+                if (e.getCause() instanceof Error)
+                    throw (Error) e.getCause();
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+
+        private class NodeTask extends RecursiveAction {
+            private static final long serialVersionUID = 1L;
+
+            private final int node;
+
+            NodeTask(int node) {
+                this.node = node;
+            }
+
+            @Override
+            protected void compute() {
+                try {
+                    // Results written before the counters are decremented are visible to the task of the parent:
+                    results[node] = label(dag, node, results);
+                } catch (Throwable t) {
+                    root.completeExceptionally(t);
+                    return;
+                }
+
+                if (node == dag.root()) {
+                    root.complete(results[node]);
+                    return;
+                }
+                for (int parent : dag.parents(node)) {
+                    if (missing[parent] && pending.decrementAndGet(parent) == 0)
+                        new NodeTask(parent).fork();
+                }
+            }
+        }
+    }
+
+    /**
+     * E(phi aUb psi) is the least fixpoint of Z = psi | (phi & (EbX psi | EaX Z)). States are added backwards from
+     * the phi states having a b-step into psi, following a-steps into phi states.
+     */
+    private StateSet existsUntil(StateSet phi, StateSet psi, Set<String> leftActions, Set<String> rightActions) {
+        if (parallel != null)
+            return parallel.existsUntil(phi, psi, model.allowedActionSets(leftActions),
+                    model.allowedActionSets(rightActions));
+
+        EdgeSet left = model.getAllowedEdges(leftActions);
+        int[] queue = new int[stateCount];
+        int head = 0, tail = 0;
+
+        StateSet sources = view.getStates().retainAll(phi);
+        StateSet result = existsNext(psi, rightActions).retainAll(sources);
+        for (int s = result.nextState(0); s >= 0; s = result.nextState(s + 1))
+            queue[tail++] = s;
+
+        while (head < tail) {
+            int target = queue[head++];
+            for (int i = model.inBegin(target); i < model.inEnd(target); i++) {
+                int source = model.inSource(i);
+                int edge = model.inEdge(i);
+                if (sources.contains(source) && left.contains(edge) && view.containsEdge(edge)
+                        && result.addIfAbsent(source))
+                    queue[tail++] = source;
+            }
+        }
+
+        return result.addAll(psi);
+    }
+
+    /**
+     * A(phi aUb psi) is the least fixpoint of Z = psi | (phi & some step & every step is either a b-step into psi or
+     * an a-step into Z). Each phi state counts its outgoing steps which are not b-steps into psi and is added once
+     * all of them are known to be a-steps into Z.
+     */
+    private StateSet forAllUntil(StateSet phi, StateSet psi, Set<String> leftActions, Set<String> rightActions) {
+        if (parallel != null)
+            return parallel.forAllUntil(phi, psi, model.allowedActionSets(leftActions),
+                    model.allowedActionSets(rightActions));
+
+        EdgeSet left = model.getAllowedEdges(leftActions);
+        EdgeSet right = model.getAllowedEdges(rightActions);
+
+        StateSet result = new StateSet(stateCount);
+        int[] pending = new int[stateCount];
+        int[] queue = new int[stateCount];
+        int head = 0, tail = 0;
+
+        StateSet sources = view.getStates().retainAll(phi);
+        for (int s = sources.nextState(0); s >= 0; s = sources.nextState(s + 1)) {
+            int degree = 0;
+            for (int e = model.outBegin(s); e < model.outEnd(s); e++) {
+                if (!view.containsEdge(e))
+                    continue;
+                degree++;
+                if (!(psi.contains(model.target(e)) && right.contains(e)))
+                    pending[s]++;
+            }
+
+            if (degree > 0 && pending[s] == 0) {
+                result.add(s);
+                queue[tail++] = s;
+            }
+        }
+
+        while (head < tail) {
+            int target = queue[head++];
+            for (int i = model.inBegin(target); i < model.inEnd(target); i++) {
+                int source = model.inSource(i);
+                int edge = model.inEdge(i);
+                if (sources.contains(source) && !result.contains(source) && view.containsEdge(edge)
+                        && left.contains(edge) && !(psi.contains(target) && right.contains(edge))
+                        && --pending[source] == 0) {
+                    result.add(source);
+                    queue[tail++] = source;
+                }
+            }
+        }
+
+        return result.addAll(psi);
+    }
+
+    /**
+     * EaG phi is the greatest fixpoint of Z = phi & (no step | some step not in a | EaX Z). The complement is built
+     * backwards from the states violating phi: a state is dropped once every one of its steps is an a-step into a
+     * dropped state.
+     */
+    private StateSet existsAlways(StateSet phi, Set<String> actions) {
+        if (parallel != null)
+            return parallel.existsAlways(phi, model.allowedActionSets(actions));
+
+        EdgeSet allowed = model.getAllowedEdges(actions);
+
+        StateSet result = phi.copy();
+        int[] support = new int[stateCount];
+        int[] queue = new int[stateCount];
+        int head = 0, tail = 0;
+
+        for (int s = 0; s < stateCount; s++) {
+            if (!phi.contains(s)) {
+                queue[tail++] = s;
+                continue;
+            }
+
+            int degree = 0;
+            boolean leavesActions = false;
+            for (int e = model.outBegin(s); e < model.outEnd(s); e++) {
+                if (!view.containsEdge(e))
+                    continue;
+                degree++;
+                if (!allowed.contains(e))
+                    leavesActions = true;
+            }
+
+            // States which can stop or leave the action set keep satisfying EaG phi whatever their successors do:
+            support[s] = (degree == 0 || leavesActions) ? -1 : degree;
+        }
+
+        while (head < tail) {
+            int target = queue[head++];
+            for (int i = model.inBegin(target); i < model.inEnd(target); i++) {
+                int source = model.inSource(i);
+                if (view.containsEdge(model.inEdge(i)) && result.contains(source) && support[source] > 0
+                        && --support[source] == 0) {
+                    result.remove(source);
+                    queue[tail++] = source;
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * EaX phi is the pre-image of phi along a-steps. When a is restricted, only the edges performing one of its actions
+     * are visited, through the inverted index of the actions, and otherwise only the edges entering phi.
+     */
+    private StateSet existsNext(StateSet phi, Set<String> actions) {
+        if (actions.isEmpty())
+            return view.preExists(phi, model.getAllowedEdges(actions));
+
+        StateSet result = new StateSet(stateCount);
+        for (String name : actions) {
+            int action = model.getActionId(name);
+            if (action < 0)
+                continue;
+            for (int i = model.actionEdgesBegin(action); i < model.actionEdgesEnd(action); i++) {
+                int edge = model.actionEdge(i);
+                if (phi.contains(model.target(edge)) && view.containsEdge(edge))
+                    result.add(model.actionEdgeSource(i));
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * AaX phi holds in the states with a step, each of whose steps is an a-step into phi.
+     */
+    private StateSet forAllNext(StateSet phi, Set<String> actions) {
+        return view.preForAll(phi, model.getAllowedEdges(actions));
+    }
+
+    @Override
+    public String[] getTrace() {
+        return trace == null ? new String[0] : trace.getStates();
+    }
+
+}
@@ -0,0 +1,151 @@
+package modelChecker;
+
+import java.util.*;
+
+import formula.pathFormula.*;
+import formula.stateFormula.*;
+
+/**
+ * Dependency graph of the state subformulas of a formula. Nodes are numbered so that every node comes after all of
+ * its operands, the root being the last one. A subformula instance reachable along several paths is a single node,
+ * so the graph is a DAG as soon as formulas share subformulas.
+ */
+class FormulaDag {
+    private final List<StateFormula> nodes = new ArrayList<>();
+    private final int[][] children;
+    private final int[][] parents;
+    private final boolean[] temporal;
+
+    FormulaDag(StateFormula root) {
+        Map<StateFormula, Integer> ids = new IdentityHashMap<>();
+        List<int[]> childLists = new ArrayList<>();
+
+        // Iterative post-order traversal, a node is numbered once all its operands are:
+        Deque<StateFormula> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            StateFormula formula = stack.peek();
+            if (ids.containsKey(formula)) {
+                stack.pop();
+                continue;
+            }
+
+            boolean ready = true;
+            for (StateFormula operand : operands(formula)) {
+                if (!ids.containsKey(operand)) {
+                    stack.push(operand);
+                    ready = false;
+                }
+            }
+
+            if (ready) {
+                stack.pop();
+                StateFormula[] operands = operands(formula);
+                int[] operandIds = new int[operands.length];
+                for (int i = 0; i < operands.length; i++)
+                    operandIds[i] = ids.get(operands[i]);
+                ids.put(formula, nodes.size());
+                nodes.add(formula);
+                childLists.add(operandIds);
+            }
+        }
+
+        children = childLists.toArray(new int[0][]);
+
+        // Operands come first, so whether a node contains a path quantifier is known from them:
+        temporal = new boolean[nodes.size()];
+        for (int node = 0; node < nodes.size(); node++) {
+            StateFormula formula = nodes.get(node);
+            temporal[node] = formula instanceof ThereExists || formula instanceof ForAll;
+            for (int child : children[node])
+                temporal[node] |= temporal[child];
+        }
+
+        int[] parentCounts = new int[nodes.size()];
+        for (int[] operandIds : children) {
+            for (int child : distinct(operandIds))
+                parentCounts[child]++;
+        }
+        parents = new int[nodes.size()][];
+        for (int node = 0; node < nodes.size(); node++)
+            parents[node] = new int[parentCounts[node]];
+        for (int node = 0; node < nodes.size(); node++) {
+            for (int child : distinct(children[node]))
+                parents[child][--parentCounts[child]] = node;
+        }
+    }
+
+    /**
+     * Returns the state formulas a state formula is directly computed from. The operands of a path quantifier are the
+     * state formulas of its path formula.
+     *
+     * @param formula
+     *            - the state formula
+     * @return its operands, in the order they are evaluated
+     */
+    static StateFormula[] operands(StateFormula formula) {
+        if (formula instanceof And) {
+            return new StateFormula[] { ((And) formula).left, ((And) formula).right };
+        } else if (formula instanceof Or) {
+            return new StateFormula[] { ((Or) formula).left, ((Or) formula).right };
+        } else if (formula instanceof Not) {
+            return new StateFormula[] { ((Not) formula).stateFormula };
+        } else if (formula instanceof ThereExists) {
+            return operands(((ThereExists) formula).pathFormula);
+        } else if (formula instanceof ForAll) {
+            return operands(((ForAll) formula).pathFormula);
+        } else {
+            return new StateFormula[0];
+        }
+    }
+
+    private static StateFormula[] operands(PathFormula formula) {
+        if (formula instanceof Until) {
+            return new StateFormula[] { ((Until) formula).left, ((Until) formula).right };
+        } else if (formula instanceof Eventually) {
+            return new StateFormula[] { ((Eventually) formula).stateFormula };
+        } else if (formula instanceof Next) {
+            return new StateFormula[] { ((Next) formula).stateFormula };
+        } else if (formula instanceof Always) {
+            return new StateFormula[] { ((Always) formula).stateFormula };
+        } else {
+            throw new IllegalArgumentException("Unsupported path formula " + formula);
+        }
+    }
+
+    private static int[] distinct(int[] ids) {
+        // Operand lists have at most two entries, (p && p) being the only case with a repeated one:
+        if (ids.length == 2 && ids[0] == ids[1])
+            return new int[] { ids[0] };
+        return ids;
+    }
+
+    int size() {
+        return nodes.size();
+    }
+
+    int root() {
+        return nodes.size() - 1;
+    }
+
+    StateFormula formula(int node) {
+        return nodes.get(node);
+    }
+
+    int[] children(int node) {
+        return children[node];
+    }
+
+    /**
+     * Returns whether a node contains a path quantifier, in which case its satisfaction set depends on the paths of
+     * the model and not only on the labels of each state.
+     */
+    boolean isTemporal(int node) {
+        return temporal[node];
+    }
+
+    int[] parents(int node) {
+        return parents[node];
+    }
+
+}
@@ -0,0 +1,537 @@
+package modelChecker;
+
+import java.util.*;
+
+import model.*;
+import formula.FormulaFactory;
+import formula.pathFormula.*;
+import formula.stateFormula.*;
+
+/**
+ * Keeps the verdicts of a set of queries up to date while the model they are checked on is edited by ModelDelta.
+ * The session keeps the satisfaction set of every subformula of the constraint and of the queries, along with the
+ * fixpoint of each EU, AU and AaG, and updates them after each edit instead of checking the queries again.
+ *
+ * Subformulas are updated bottom-up from the states the edit touched: the states whose labels or outgoing transitions
+ * changed, and in the queries the states entering or leaving the constraint. A temporal subformula only recomputes
+ * the region of states whose value may depend on them, found by walking the in-edges back from them and from the
+ * states where its operands changed, through the states its fixpoint can extend to. Outside that region its previous
+ * fixpoint is kept, and within it the fixpoint is computed again with the region's boundary as fixed values. The
+ * boolean operators are recomputed whole, with one pass over the words of their sets.
+ *
+ * The semantics are those of FixpointModelChecker without fairness, which the session does not support, and the
+ * fixpoints are computed on the calling thread. Removed states are kept as states without labels nor transitions
+ * by ModelDelta, so that the sets computed on a version of the model keep their meaning on the next one.
+ */
+public class IncrementalSession {
+    private final FormulaFactory factory = new FormulaFactory();
+    private CompiledModel model;
+    private final StateFormula constraint;
+    // Subformulas of the constraint, checked on the whole model, and of the queries, checked on the constraint:
+    private final Labelling constraintLabelling = new Labelling();
+    private final Labelling queryLabelling = new Labelling();
+    private StateSet view;
+    // Every state of the model, grown with it:
+    private StateSet everything;
+    // Queries checked so far, with their last verdict:
+    private final Map<StateFormula, Boolean> verdicts = new LinkedHashMap<>();
+    // Counters of the fixpoints, only the entries of the states of a region being non-zero between two updates:
+    private int[] counters;
+    private int[] queue;
+    private int lastRegionSize;
+
+    /**
+     * Opens a session on a compiled model under a constraint.
+     *
+     * @param model
+     *            - compiled model to verify
+     * @param constraint
+     *            - the constraint applied to the model before verification against the queries
+     */
+    public IncrementalSession(CompiledModel model, StateFormula constraint) {
+        this.model = model;
+        this.counters = new int[model.getStateCount()];
+        this.queue = new int[model.getStateCount()];
+        this.everything = StateSet.full(model.getStateCount());
+        this.constraint = factory.intern(constraint);
+        this.view = constraintLabelling.add(this.constraint, everything);
+    }
+
+    /**
+     * Verifies whether the current model satisfies a query, which is then kept up to date by apply.
+     *
+     * @param query
+     *            - the state formula to verify the model against
+     * @return the verdict, trace and time taken
+     */
+    public QueryResult check(StateFormula query) {
+        long start = System.nanoTime();
+        StateFormula canonical = factory.intern(query);
+        queryLabelling.add(canonical, view);
+        int state = violatingState(canonical, model.initialStates());
+        verdicts.put(canonical, state < 0);
+        return result(canonical, state, null, start);
+    }
+
+    /**
+     * Applies an edit to the model and updates the verdicts of the queries checked so far.
+     *
+     * @param delta
+     *            - the edit, whose states and transitions are resolved against the current model
+     * @return the results of the queries whose verdict changed, in the order they were first checked
+     * @throws IllegalArgumentException
+     *             if the delta does not apply to the current model
+     */
+    public List<QueryResult> apply(ModelDelta delta) {
+        long start = System.nanoTime();
+        ModelUpdate update = delta.applyTo(model);
+        model = update.getModel();
+        lastRegionSize = 0;
+        if (counters.length < model.getStateCount()) {
+            counters = new int[Math.max(model.getStateCount(), 2 * counters.length)];
+            queue = new int[counters.length];
+        }
+        if (everything.size() < model.getStateCount())
+            everything = StateSet.full(model.getStateCount());
+
+        StateSet dirty = update.getChangedStates().addAll(update.getTouchedStates());
+        constraintLabelling.update(dirty, everything);
+
+        /*
+         A state entering or leaving the constraint changes the steps of its predecessors as well as its own ones, so
+         both are dirty for the queries:
+         */
+        StateSet previousView = view.size() < model.getStateCount() ? view.resize(model.getStateCount()) : view;
+        view = constraintLabelling.value(constraint);
+        StateSet entered = difference(view, previousView).addAll(difference(previousView, view));
+        dirty.addAll(entered).addAll(model.preExists(entered, model.getAllowedEdges(Collections.<String>emptySet())));
+        queryLabelling.update(dirty, view);
+
+        // Only the queries whose verdict changed get a result, sharing the view their traces are generated in:
+        List<QueryResult> changed = new ArrayList<>();
+        int[] initial = model.initialStates();
+        RestrictedModel restricted = null;
+        for (Map.Entry<StateFormula, Boolean> verdict : verdicts.entrySet()) {
+            int state = violatingState(verdict.getKey(), initial);
+            if ((state < 0) == verdict.getValue())
+                continue;
+            verdict.setValue(state < 0);
+            if (state >= 0 && restricted == null)
+                restricted = RestrictedModel.of(model).restrictStates(view);
+            changed.add(result(verdict.getKey(), state, restricted, start));
+        }
+        return changed;
+    }
+
+    public CompiledModel getModel() {
+        return model;
+    }
+
+    /**
+     * Returns the number of states whose temporal subformulas were recomputed by the last edit, each state counting
+     * once per subformula.
+     *
+     * @return the total size of the regions recomputed
+     */
+    public int getLastRegionSize() {
+        return lastRegionSize;
+    }
+
+    /**
+     * Returns the first initial state of the constraint violating a query, or -1 if the query holds.
+     */
+    private int violatingState(StateFormula query, int[] initial) {
+        StateSet value = queryLabelling.value(query);
+        for (int state : initial) {
+            if (view.contains(state) && !value.contains(state))
+                return state;
+        }
+        return -1;
+    }
+
+    /**
+     * Builds the result of a query from its violating state, the trace being generated within the restricted model,
+     * or within a new restriction of the model to the constraint if it is null.
+     */
+    private QueryResult result(StateFormula query, int state, RestrictedModel restricted, long start) {
+        Trace trace = null;
+        if (state >= 0) {
+            if (restricted == null)
+                restricted = RestrictedModel.of(model).restrictStates(view);
+            trace = new TraceGenerator(model, restricted, false, queryLabelling::value).counterexample(query, state)
+                    .toTrace(model);
+        }
+        return new QueryResult(query, state < 0, trace, System.nanoTime() - start);
+    }
+
+    private static StateSet difference(StateSet a, StateSet b) {
+        return a.copy().removeAll(b);
+    }
+
+    /**
+     * Satisfaction sets of the subformulas of some formulas, all checked on the same states, in an order where each
+     * subformula comes after its operands.
+     */
+    private final class Labelling {
+        private final Map<StateFormula, Node> nodes = new IdentityHashMap<>();
+        private final List<Node> order = new ArrayList<>();
+
+        StateSet value(StateFormula formula) {
+            return nodes.get(formula).value;
+        }
+
+        /**
+         * Labels the model with the subformulas of a canonical formula which are not labelled yet.
+         *
+         * @return the satisfaction set of the formula
+         */
+        StateSet add(StateFormula formula, StateSet scope) {
+            FormulaDag dag = new FormulaDag(formula);
+            for (int i = 0; i < dag.size(); i++) {
+                if (nodes.containsKey(dag.formula(i)))
+                    continue;
+                int[] children = dag.children(i);
+                Node[] operands = new Node[children.length];
+                for (int j = 0; j < children.length; j++)
+                    operands[j] = nodes.get(dag.formula(children[j]));
+                Node node = new Node(dag.formula(i), operands);
+                node.value = new StateSet(model.getStateCount());
+                node.waiting = new StateSet(model.getStateCount());
+                node.evaluate(everything, scope);
+                nodes.put(node.formula, node);
+                order.add(node);
+            }
+            return value(formula);
+        }
+
+        /**
+         * Updates the subformulas after an edit, from the states the edit made dirty.
+         */
+        void update(StateSet dirty, StateSet scope) {
+            int stateCount = model.getStateCount();
+            for (Node node : order) {
+                // The sets are only copied when the edit added states, each evaluation replacing them otherwise:
+                StateSet previous = node.value.size() < stateCount ? node.value.resize(stateCount) : node.value;
+                node.value = previous;
+                if (node.waiting.size() < stateCount)
+                    node.waiting = node.waiting.resize(stateCount);
+                if (node.formula instanceof ThereExists || node.formula instanceof ForAll) {
+                    StateSet seeds = dirty.copy();
+                    for (Node operand : node.operands)
+                        seeds.addAll(operand.changed);
+                    if (seeds.isEmpty()) {
+                        node.changed = new StateSet(model.getStateCount());
+                        continue;
+                    }
+                    StateSet region = node.region(seeds, scope);
+                    lastRegionSize += region.cardinality();
+                    node.value = previous.copy();
+                    node.evaluate(region, scope);
+                } else {
+                    node.evaluate(null, scope);
+                }
+                node.changed = difference(node.value, previous).addAll(difference(previous, node.value));
+            }
+        }
+    }
+
+    /**
+     * A subformula with its satisfaction set, the fixpoint of E(phi aUb psi), A(phi aUb psi) or the E(TRUE aUa !phi)
+     * negated by AaG phi, and the states where its satisfaction changed in the last update.
+     */
+    private final class Node {
+        final StateFormula formula;
+        final Node[] operands;
+        StateSet value;
+        StateSet waiting;
+        StateSet changed;
+
+        Node(StateFormula formula, Node[] operands) {
+            this.formula = formula;
+            this.operands = operands;
+        }
+
+        /**
+         * Finds the states whose satisfaction may have changed: the seeds and their predecessors for the next-state
+         * operators, and otherwise every state reaching a seed through states the fixpoint can extend to.
+         */
+        StateSet region(StateSet seeds, StateSet scope) {
+            PathFormula path = formula instanceof ThereExists ? ((ThereExists) formula).pathFormula
+                    : ((ForAll) formula).pathFormula;
+            if (path instanceof Next)
+                return seeds.addAll(model.preExists(seeds, model.getAllowedEdges(Collections.<String>emptySet())));
+
+            // Until and EG only extend through phi states, the others through the whole scope:
+            StateSet through = scope;
+            if (path instanceof Until || (path instanceof Always && formula instanceof ThereExists))
+                through = scope.copy().retainAll(operands[0].value);
+
+            StateSet region = seeds.copy();
+            int head = 0, tail = 0;
+            for (int s = seeds.nextState(0); s >= 0; s = seeds.nextState(s + 1))
+                queue[tail++] = s;
+            while (head < tail) {
+                int target = queue[head++];
+                for (int i = model.inBegin(target); i < model.inEnd(target); i++) {
+                    int source = model.inSource(i);
+                    if (through.contains(source) && region.addIfAbsent(source))
+                        queue[tail++] = source;
+                }
+            }
+            return region;
+        }
+
+        /**
+         * Computes the satisfaction set again within a region, keeping the previous value outside it. The boolean
+         * operators are always recomputed whole, which a null region stands for.
+         */
+        void evaluate(StateSet region, StateSet scope) {
+            int stateCount = model.getStateCount();
+            if (formula instanceof And) {
+                value = operands[0].value.copy().retainAll(operands[1].value);
+            } else if (formula instanceof Or) {
+                value = operands[0].value.copy().addAll(operands[1].value);
+            } else if (formula instanceof Not) {
+                value = operands[0].value.copy().complement();
+            } else if (formula instanceof AtomicProp) {
+                int label = model.getLabelId(((AtomicProp) formula).label);
+                value = label >= 0 ? model.getLabelStates(label).copy() : new StateSet(stateCount);
+            } else if (formula instanceof BoolProp) {
+                value = ((BoolProp) formula).value ? StateSet.full(stateCount) : new StateSet(stateCount);
+            } else if (formula instanceof ThereExists) {
+                evaluateExists(((ThereExists) formula).pathFormula, region, scope);
+            } else if (formula instanceof ForAll) {
+                evaluateForAll(((ForAll) formula).pathFormula, region, scope);
+            } else {
+                throw new IllegalArgumentException("Unsupported state formula " + formula);
+            }
+        }
+
+        private void evaluateExists(PathFormula path, StateSet region, StateSet scope) {
+            if (path instanceof Until) {
+                Until until = (Until) path;
+                waiting = existsUntil(operands[0].value, operands[1].value, until.getLeftActions(),
+                        until.getRightActions(), waiting, region, scope);
+                value = waiting.copy().addAll(operands[1].value);
+            } else if (path instanceof Eventually) {
+                Eventually eventually = (Eventually) path;
+                waiting = existsUntil(null, operands[0].value, eventually.getLeftActions(),
+                        eventually.getRightActions(), waiting, region, scope);
+                value = waiting.copy().addAll(operands[0].value);
+            } else if (path instanceof Next) {
+                boolean[] allowed = model.allowedActionSets(((Next) path).getActions());
+                StateSet phi = operands[0].value;
+                for (int s = region.nextState(0); s >= 0; s = region.nextState(s + 1)) {
+                    value.remove(s);
+                    for (int e = model.outBegin(s); e < model.outEnd(s) && scope.contains(s); e++) {
+                        int target = model.target(e);
+                        if (scope.contains(target) && allowed[model.actionSet(e)] && phi.contains(target)) {
+                            value.add(s);
+                            break;
+                        }
+                    }
+                }
+            } else if (path instanceof Always) {
+                value = existsAlways(operands[0].value, model.allowedActionSets(((Always) path).getActions()), value,
+                        region, scope);
+            } else {
+                throw new IllegalArgumentException("Unsupported path formula " + path);
+            }
+        }
+
+        private void evaluateForAll(PathFormula path, StateSet region, StateSet scope) {
+            if (path instanceof Until) {
+                Until until = (Until) path;
+                waiting = forAllUntil(operands[0].value, operands[1].value, until.getLeftActions(),
+                        until.getRightActions(), waiting, region, scope);
+                value = waiting.copy().addAll(operands[1].value);
+            } else if (path instanceof Eventually) {
+                Eventually eventually = (Eventually) path;
+                waiting = forAllUntil(null, operands[0].value, eventually.getLeftActions(),
+                        eventually.getRightActions(), waiting, region, scope);
+                value = waiting.copy().addAll(operands[0].value);
+            } else if (path instanceof Next) {
+                boolean[] allowed = model.allowedActionSets(((Next) path).getActions());
+                StateSet phi = operands[0].value;
+                for (int s = region.nextState(0); s >= 0; s = region.nextState(s + 1)) {
+                    boolean holds = false;
+                    for (int e = model.outBegin(s); e < model.outEnd(s) && scope.contains(s); e++) {
+                        int target = model.target(e);
+                        if (!scope.contains(target))
+                            continue;
+                        holds = allowed[model.actionSet(e)] && phi.contains(target);
+                        if (!holds)
+                            break;
+                    }
+                    if (holds)
+                        value.add(s);
+                    else
+                        value.remove(s);
+                }
+            } else if (path instanceof Always) {
+                // AaG phi is the negation of E(TRUE aUa !phi), whose fixpoint is kept:
+                Set<String> actions = ((Always) path).getActions();
+                StateSet violating = operands[0].value.copy().complement();
+                waiting = existsUntil(null, violating, actions, actions, waiting, region, scope);
+                value = waiting.copy().addAll(violating).complement();
+            } else {
+                throw new IllegalArgumentException("Unsupported path formula " + path);
+            }
+        }
+    }
+
+    /**
+     * Computes the phi states of E(phi aUb psi) within a region, phi being null for EF. The states of the region with
+     * a b-step into psi, or an a-step into a state left out of the region which the previous fixpoint kept, are added
+     * first, and the fixpoint then grows backwards along a-steps within the region.
+     */
+    private StateSet existsUntil(StateSet phi, StateSet psi, Set<String> leftActions, Set<String> rightActions,
+            StateSet previous, StateSet region, StateSet scope) {
+        boolean[] left = model.allowedActionSets(leftActions);
+        boolean[] right = model.allowedActionSets(rightActions);
+        StateSet result = previous.copy().removeAll(region);
+        int[] queue = new int[region.cardinality()];
+        int head = 0, tail = 0;
+
+        for (int s = region.nextState(0); s >= 0; s = region.nextState(s + 1)) {
+            if (!scope.contains(s) || (phi != null && !phi.contains(s)))
+                continue;
+            for (int e = model.outBegin(s); e < model.outEnd(s); e++) {
+                int target = model.target(e);
+                int actionSet = model.actionSet(e);
+                if (scope.contains(target) && ((right[actionSet] && psi.contains(target))
+                        || (left[actionSet] && !region.contains(target) && result.contains(target)))) {
+                    result.add(s);
+                    queue[tail++] = s;
+                    break;
+                }
+            }
+        }
+
+        while (head < tail) {
+            int target = queue[head++];
+            for (int i = model.inBegin(target); i < model.inEnd(target); i++) {
+                int source = model.inSource(i);
+                if (region.contains(source) && scope.contains(source) && (phi == null || phi.contains(source))
+                        && left[model.actionSet(model.inEdge(i))] && result.addIfAbsent(source))
+                    queue[tail++] = source;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Computes the phi states of A(phi aUb psi) within a region, phi being null for AF. Each state of the region
+     * counts its steps which are neither b-steps into psi nor a-steps into a state left out of the region which the
+     * previous fixpoint kept, and is added once all of them are known to be a-steps into the fixpoint.
+     */
+    private StateSet forAllUntil(StateSet phi, StateSet psi, Set<String> leftActions, Set<String> rightActions,
+            StateSet previous, StateSet region, StateSet scope) {
+        boolean[] left = model.allowedActionSets(leftActions);
+        boolean[] right = model.allowedActionSets(rightActions);
+        StateSet result = previous.copy().removeAll(region);
+        int[] queue = new int[region.cardinality()];
+        int head = 0, tail = 0;
+
+        for (int s = region.nextState(0); s >= 0; s = region.nextState(s + 1)) {
+            if (!scope.contains(s) || (phi != null && !phi.contains(s)))
+                continue;
+            int degree = 0;
+            for (int e = model.outBegin(s); e < model.outEnd(s); e++) {
+                int target = model.target(e);
+                if (!scope.contains(target))
+                    continue;
+                degree++;
+                int actionSet = model.actionSet(e);
+                if (!(right[actionSet] && psi.contains(target))
+                        && !(left[actionSet] && !region.contains(target) && result.contains(target)))
+                    counters[s]++;
+            }
+
+            if (degree > 0 && counters[s] == 0) {
+                result.add(s);
+                queue[tail++] = s;
+            }
+        }
+
+        while (head < tail) {
+            int target = queue[head++];
+            for (int i = model.inBegin(target); i < model.inEnd(target); i++) {
+                int source = model.inSource(i);
+                int actionSet = model.actionSet(model.inEdge(i));
+                if (region.contains(source) && scope.contains(source) && (phi == null || phi.contains(source))
+                        && !result.contains(source) && left[actionSet] && !(right[actionSet] && psi.contains(target))
+                        && --counters[source] == 0) {
+                    result.add(source);
+                    queue[tail++] = source;
+                }
+            }
+        }
+
+        clearCounters(region);
+        return result;
+    }
+
+    /**
+     * Computes EaG phi within a region, keeping the previous value out of it. The phi states of the region are kept
+     * unless each of their steps is an a-step into a state dropped from EaG phi: a step which leaves the action set
+     * or enters a state kept out of the region supports them for good, and the others are counted. States are then
+     * dropped backwards from the states of the region violating phi, as in FixpointModelChecker.
+     */
+    private StateSet existsAlways(StateSet phi, boolean[] allowed, StateSet previous, StateSet region,
+            StateSet scope) {
+        StateSet result = previous.copy().removeAll(region).addAll(phi.copy().retainAll(region));
+        int[] queue = new int[region.cardinality()];
+        int head = 0, tail = 0;
+
+        for (int s = region.nextState(0); s >= 0; s = region.nextState(s + 1)) {
+            if (!phi.contains(s)) {
+                queue[tail++] = s;
+                continue;
+            }
+
+            int degree = 0;
+            boolean supported = false;
+            for (int e = model.outBegin(s); e < model.outEnd(s) && scope.contains(s); e++) {
+                int target = model.target(e);
+                if (!scope.contains(target))
+                    continue;
+                degree++;
+                if (!allowed[model.actionSet(e)] || (!region.contains(target) && result.contains(target)))
+                    supported = true;
+                else if (region.contains(target))
+                    counters[s]++;
+            }
+
+            if (degree == 0 || supported) {
+                counters[s] = -1;
+            } else if (counters[s] == 0) {
+                // Every step enters a state already dropped out of the region:
+                result.remove(s);
+                queue[tail++] = s;
+            }
+        }
+
+        while (head < tail) {
+            int target = queue[head++];
+            for (int i = model.inBegin(target); i < model.inEnd(target); i++) {
+                int source = model.inSource(i);
+                if (region.contains(source) && scope.contains(source) && scope.contains(target)
+                        && result.contains(source) && counters[source] > 0 && --counters[source] == 0) {
+                    result.remove(source);
+                    queue[tail++] = source;
+                }
+            }
+        }
+
+        clearCounters(region);
+        return result;
+    }
+
+    private void clearCounters(StateSet region) {
+        for (int s = region.nextState(0); s >= 0; s = region.nextState(s + 1))
+            counters[s] = 0;
+    }
+
+}
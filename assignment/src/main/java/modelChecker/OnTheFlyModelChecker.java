@@ -0,0 +1,596 @@
+package modelChecker;
+
+import java.util.*;
+
+import formula.FormulaFactory;
+import formula.pathFormula.*;
+import formula.stateFormula.*;
+import model.IntList;
+import model.Model;
+import model.TransitionSystem;
+
+/**
+ * Local model checker, deciding the query in the initial states only and exploring the model on the fly from them.
+ * A formula is evaluated in a state on demand and its value memoised, the boolean operators short-circuit, and each
+ * temporal operator is decided by a depth-first search from the state which stops as soon as the value is known: EU
+ * as soon as a witness path is found, AU as soon as a path escaping the until is, EG as soon as a lasso or a path
+ * ending the a-steps is. The check stops at the first initial state violating the query, so a model is only explored
+ * as far as needed, and models given as a TransitionSystem, such as an ImplicitModel generating its states on demand,
+ * need never be materialised.
+ *
+ * Every search either finds its answer for the whole path on its stack or exhausts the states it reached, which then
+ * all get the opposite answer, so the local values are exactly those of the global fixpoints of FixpointModelChecker
+ * and the verdicts are the same. Each temporal subformula costs at most time linear in the size of the explored part
+ * of the model.
+ *
+ * The trace of a failed check only names the initial state violating the query, which is also the first state of the
+ * counterexample of FixpointModelChecker: the searches keep the values of the states they explored but not the paths
+ * to them, and a shortest path would need the whole satisfaction sets the global checker builds.
+ */
+public class OnTheFlyModelChecker implements ModelChecker {
+    private static final byte UNKNOWN = 0;
+    private static final byte TRUE = 1;
+    private static final byte FALSE = 2;
+
+    private static final Edges NO_EDGES = new Edges(new int[0], new int[0]);
+
+    private final FormulaFactory factory = new FormulaFactory();
+    private final List<String> traceList = new ArrayList<>();
+
+    private TransitionSystem system;
+    // The canonical constraint, null when it holds in every state, and whether formulas are evaluated under it:
+    private StateFormula constraint;
+    private boolean restricted;
+
+    // Values of the formulas, and of the until fixpoints, by formula id, without and with the constraint:
+    private final Memo[] values = { new Memo(), new Memo() };
+    private final Memo[] untilValues = { new Memo(), new Memo() };
+    private final Memo explored = new Memo();
+    private int exploredCount;
+
+    // Marks of the searches in progress, a search started while evaluating an operand being one level deeper:
+    private final List<SearchMarks> marks = new ArrayList<>();
+    private int depth;
+
+    private final IntList targets = new IntList();
+    private final IntList actionSets = new IntList();
+
+    /**
+     * Checks the query locally on the model, which is itself a transition system, without compiling it.
+     */
+    @Override
+    public boolean check(Model model, StateFormula constraint, StateFormula query) {
+        return check((TransitionSystem) model, constraint, query);
+    }
+
+    /**
+     * Verifies whether a transition system satisfies the query under the given constraint, exploring it from its
+     * initial states only as far as needed.
+     *
+     * @param system
+     *            - the transition system to verify
+     * @param constraint
+     *            - the constraint applied to the model before verification against the query
+     * @param query
+     *            - the state formula to verify the model against
+     * @return - true if every initial state satisfying the constraint satisfies the query
+     */
+    public boolean check(TransitionSystem system, StateFormula constraint, StateFormula query) {
+        traceList.clear();
+        this.system = system;
+        for (int mode = 0; mode < 2; mode++) {
+            values[mode].clear();
+            untilValues[mode].clear();
+        }
+        explored.clear();
+        exploredCount = 0;
+
+        constraint = factory.intern(constraint);
+        this.constraint = constraint == factory.bool(true) ? null : constraint;
+        query = factory.intern(query);
+
+        for (int state : system.initialStates()) {
+            if (!inView(state))
+                continue;
+
+            restricted = this.constraint != null;
+            boolean holds = eval(query, state);
+            restricted = false;
+            if (!holds) {
+                traceList.add(system.stateName(state));
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns the number of states whose successors were computed by the last check.
+     */
+    public int getExploredStates() {
+        return exploredCount;
+    }
+
+    private boolean inView(int state) {
+        if (constraint == null)
+            return true;
+
+        boolean saved = restricted;
+        restricted = false;
+        boolean holds = eval(constraint, state);
+        restricted = saved;
+        return holds;
+    }
+
+    /**
+     * Returns the transitions leaving a state which are taken into account, those between states satisfying the
+     * constraint when evaluating under it.
+     */
+    private Edges edges(int state) {
+        if (restricted && !inView(state))
+            return NO_EDGES;
+
+        targets.clear();
+        actionSets.clear();
+        system.successors(state, targets, actionSets);
+        if (explored.get(0, state) == UNKNOWN) {
+            explored.set(0, state, TRUE);
+            exploredCount++;
+        }
+
+        // The constraint may need successors of its own, so the lists are copied before it is evaluated:
+        int[] edgeTargets = targets.toArray();
+        int[] edgeActionSets = actionSets.toArray();
+        if (!restricted)
+            return new Edges(edgeTargets, edgeActionSets);
+
+        int kept = 0;
+        for (int i = 0; i < edgeTargets.length; i++) {
+            if (inView(edgeTargets[i])) {
+                edgeTargets[kept] = edgeTargets[i];
+                edgeActionSets[kept++] = edgeActionSets[i];
+            }
+        }
+        return new Edges(Arrays.copyOf(edgeTargets, kept), Arrays.copyOf(edgeActionSets, kept));
+    }
+
+    private boolean allowed(Set<String> actions, int actionSet) {
+        return actions.isEmpty() || !Collections.disjoint(actions, system.actions(actionSet));
+    }
+
+    private boolean eval(StateFormula formula, int state) {
+        Memo memo = values[restricted ? 1 : 0];
+        int id = factory.getId(formula);
+        byte known = memo.get(id, state);
+        if (known != UNKNOWN)
+            return known == TRUE;
+
+        boolean holds = compute(formula, state);
+        memo.set(id, state, holds ? TRUE : FALSE);
+        return holds;
+    }
+
+    private boolean compute(StateFormula formula, int state) {
+        if (formula instanceof And) {
+
+            And and = (And) formula;
+            return eval(and.left, state) && eval(and.right, state);
+
+        } else if (formula instanceof Or) {
+
+            Or or = (Or) formula;
+            return eval(or.left, state) || eval(or.right, state);
+
+        } else if (formula instanceof Not) {
+
+            return !eval(((Not) formula).stateFormula, state);
+
+        } else if (formula instanceof AtomicProp) {
+
+            return system.hasLabel(state, ((AtomicProp) formula).label);
+
+        } else if (formula instanceof BoolProp) {
+
+            return ((BoolProp) formula).value;
+
+        } else if (formula instanceof ThereExists) {
+
+            return exists(formula, ((ThereExists) formula).pathFormula, state);
+
+        } else if (formula instanceof ForAll) {
+
+            return forAll(formula, ((ForAll) formula).pathFormula, state);
+
+        } else {
+            throw new IllegalArgumentException("Unsupported state formula " + formula);
+        }
+    }
+
+    private boolean exists(StateFormula formula, PathFormula path, int state) {
+        if (path instanceof Until) {
+
+            Until until = (Until) path;
+            return eval(until.right, state) || existsUntil(formula, until.left, until.right,
+                    until.getLeftActions(), until.getRightActions(), state);
+
+        } else if (path instanceof Eventually) {
+
+            Eventually eventually = (Eventually) path;
+            return eval(factory.exists(factory.until(factory.bool(true), eventually.stateFormula,
+                    eventually.getLeftActions(), eventually.getRightActions())), state);
+
+        } else if (path instanceof Next) {
+
+            Next next = (Next) path;
+            Edges edges = edges(state);
+            for (int i = 0; i < edges.targets.length; i++) {
+                if (allowed(next.getActions(), edges.actionSets[i]) && eval(next.stateFormula, edges.targets[i]))
+                    return true;
+            }
+            return false;
+
+        } else if (path instanceof Always) {
+
+            Always always = (Always) path;
+            return existsAlways(formula, always.stateFormula, always.getActions(), state);
+
+        } else {
+            throw new IllegalArgumentException("Unsupported path formula " + path);
+        }
+    }
+
+    private boolean forAll(StateFormula formula, PathFormula path, int state) {
+        if (path instanceof Until) {
+
+            Until until = (Until) path;
+            return eval(until.right, state) || forAllUntil(formula, until.left, until.right,
+                    until.getLeftActions(), until.getRightActions(), state);
+
+        } else if (path instanceof Eventually) {
+
+            Eventually eventually = (Eventually) path;
+            return eval(factory.forAll(factory.until(factory.bool(true), eventually.stateFormula,
+                    eventually.getLeftActions(), eventually.getRightActions())), state);
+
+        } else if (path instanceof Next) {
+
+            Next next = (Next) path;
+            Edges edges = edges(state);
+            for (int i = 0; i < edges.targets.length; i++) {
+                if (!allowed(next.getActions(), edges.actionSets[i]) || !eval(next.stateFormula, edges.targets[i]))
+                    return false;
+            }
+            return edges.targets.length > 0;
+
+        } else if (path instanceof Always) {
+
+            // AaG phi is the negation of E(TRUE aUa !phi):
+            Always always = (Always) path;
+            return !eval(factory.exists(factory.until(factory.bool(true), factory.not(always.stateFormula),
+                    always.getActions(), always.getActions())), state);
+
+        } else {
+            throw new IllegalArgumentException("Unsupported path formula " + path);
+        }
+    }
+
+    /**
+     * Decides whether a state is in the least fixpoint Z = phi & (EbX psi | EaX Z) of E(phi aUb psi), searching for a
+     * path of a-steps through phi states to a state with a b-step into psi. If one is found the states on the path
+     * are in Z; otherwise no state reached is.
+     */
+    private boolean existsUntil(StateFormula formula, StateFormula phi, StateFormula psi, Set<String> leftActions,
+            Set<String> rightActions, int state) {
+        Memo memo = untilValues[restricted ? 1 : 0];
+        int id = factory.getId(formula);
+        byte known = memo.get(id, state);
+        if (known != UNKNOWN)
+            return known == TRUE;
+        if (!eval(phi, state)) {
+            memo.set(id, state, FALSE);
+            return false;
+        }
+
+        SearchMarks search = beginSearch();
+        try {
+            IntList visited = new IntList();
+            Deque<Frame> stack = new ArrayDeque<>();
+            Frame root = new Frame(state, edges(state));
+            search.enter(state);
+            visited.add(state);
+            stack.push(root);
+            boolean found = stepsInto(root.edges, psi, rightActions);
+
+            while (!found && !stack.isEmpty()) {
+                Frame frame = stack.peek();
+                if (frame.next == frame.edges.targets.length) {
+                    stack.pop();
+                    continue;
+                }
+
+                int i = frame.next++;
+                int target = frame.edges.targets[i];
+                if (!allowed(leftActions, frame.edges.actionSets[i]) || search.isVisited(target))
+                    continue;
+                byte value = memo.get(id, target);
+                if (value == TRUE) {
+                    found = true;
+                } else if (value == UNKNOWN) {
+                    search.enter(target);
+                    visited.add(target);
+                    if (!eval(phi, target))
+                        continue;
+                    Frame next = new Frame(target, edges(target));
+                    stack.push(next);
+                    found = stepsInto(next.edges, psi, rightActions);
+                }
+            }
+
+            if (found) {
+                for (Frame frame : stack)
+                    memo.set(id, frame.state, TRUE);
+            } else {
+                for (int i = 0; i < visited.size(); i++)
+                    memo.set(id, visited.get(i), FALSE);
+            }
+            return found;
+        } finally {
+            endSearch();
+        }
+    }
+
+    private boolean stepsInto(Edges edges, StateFormula targetFormula, Set<String> actions) {
+        for (int i = 0; i < edges.targets.length; i++) {
+            if (allowed(actions, edges.actionSets[i]) && eval(targetFormula, edges.targets[i]))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Decides whether a state is in the least fixpoint Z of A(phi aUb psi), whose states satisfy phi, have a step
+     * and only have b-steps into psi or a-steps into Z. The search follows the a-steps which are not b-steps into
+     * psi, looking for a state which is not in Z by itself or for a cycle, along which psi would never be reached.
+     * If one is found the states on the path to it are not in Z; the states whose search finished without finding one
+     * are.
+     */
+    private boolean forAllUntil(StateFormula formula, StateFormula phi, StateFormula psi, Set<String> leftActions,
+            Set<String> rightActions, int state) {
+        Memo memo = untilValues[restricted ? 1 : 0];
+        int id = factory.getId(formula);
+        byte known = memo.get(id, state);
+        if (known != UNKNOWN)
+            return known == TRUE;
+
+        Edges rootEdges = eval(phi, state) ? edges(state) : NO_EDGES;
+        if (rootEdges.targets.length == 0) {
+            memo.set(id, state, FALSE);
+            return false;
+        }
+
+        SearchMarks search = beginSearch();
+        try {
+            IntList visited = new IntList();
+            Deque<Frame> stack = new ArrayDeque<>();
+            search.enter(state);
+            visited.add(state);
+            stack.push(new Frame(state, rootEdges));
+            boolean escapes = false;
+
+            while (!escapes && !stack.isEmpty()) {
+                Frame frame = stack.peek();
+                if (frame.next == frame.edges.targets.length) {
+                    stack.pop();
+                    search.finish(frame.state);
+                    continue;
+                }
+
+                int i = frame.next++;
+                int target = frame.edges.targets[i];
+                int actionSet = frame.edges.actionSets[i];
+                if (allowed(rightActions, actionSet) && eval(psi, target))
+                    continue;
+                if (!allowed(leftActions, actionSet)) {
+                    escapes = true;
+                    continue;
+                }
+
+                byte value = memo.get(id, target);
+                if (value == TRUE || (search.isVisited(target) && !search.isOnStack(target)))
+                    continue;
+                if (value == FALSE || search.isOnStack(target)) {
+                    escapes = true;
+                    continue;
+                }
+
+                Edges edges = eval(phi, target) ? edges(target) : NO_EDGES;
+                if (edges.targets.length == 0) {
+                    memo.set(id, target, FALSE);
+                    escapes = true;
+                    continue;
+                }
+                search.enter(target);
+                visited.add(target);
+                stack.push(new Frame(target, edges));
+            }
+
+            // The states still on the stack lead to the escape, the finished ones cannot escape:
+            for (int i = 0; i < visited.size(); i++)
+                memo.set(id, visited.get(i), search.isOnStack(visited.get(i)) ? FALSE : TRUE);
+            return !escapes;
+        } finally {
+            endSearch();
+        }
+    }
+
+    /**
+     * Decides whether a state satisfies EaG phi, the greatest fixpoint Z = phi & (no step | some step not in a | EaX
+     * Z), searching through phi states along a-steps for a state which can stop or leave the action set, or for a
+     * cycle. If one is found the states on the path to it satisfy the formula; a state whose search finished without
+     * finding one does not.
+     */
+    private boolean existsAlways(StateFormula formula, StateFormula phi, Set<String> actions, int state) {
+        Memo memo = values[restricted ? 1 : 0];
+        int id = factory.getId(formula);
+        if (!eval(phi, state))
+            return false;
+
+        SearchMarks search = beginSearch();
+        try {
+            Deque<Frame> stack = new ArrayDeque<>();
+            Frame root = new Frame(state, edges(state));
+            search.enter(state);
+            stack.push(root);
+            boolean found = ends(root.edges, actions);
+
+            while (!found && !stack.isEmpty()) {
+                Frame frame = stack.peek();
+                if (frame.next == frame.edges.targets.length) {
+                    stack.pop();
+                    search.finish(frame.state);
+                    memo.set(id, frame.state, FALSE);
+                    continue;
+                }
+
+                int target = frame.edges.targets[frame.next++];
+                byte value = memo.get(id, target);
+                if (value == TRUE || search.isOnStack(target)) {
+                    found = true;
+                } else if (value == UNKNOWN && !search.isVisited(target)) {
+                    if (!eval(phi, target)) {
+                        memo.set(id, target, FALSE);
+                        continue;
+                    }
+                    Frame next = new Frame(target, edges(target));
+                    search.enter(target);
+                    stack.push(next);
+                    found = ends(next.edges, actions);
+                }
+            }
+
+            if (found) {
+                for (Frame frame : stack)
+                    memo.set(id, frame.state, TRUE);
+            }
+            return found;
+        } finally {
+            endSearch();
+        }
+    }
+
+    /**
+     * Tests whether a path can stop in a state or leave the action set from it, with the given transitions.
+     */
+    private boolean ends(Edges edges, Set<String> actions) {
+        if (edges.targets.length == 0)
+            return true;
+        for (int i = 0; i < edges.actionSets.length; i++) {
+            if (!allowed(actions, edges.actionSets[i]))
+                return true;
+        }
+        return false;
+    }
+
+    private SearchMarks beginSearch() {
+        if (marks.size() == depth)
+            marks.add(new SearchMarks());
+        SearchMarks search = marks.get(depth++);
+        search.begin();
+        return search;
+    }
+
+    private void endSearch() {
+        depth--;
+    }
+
+    @Override
+    public String[] getTrace() {
+        return traceList.toArray(new String[0]);
+    }
+
+    private static class Edges {
+        final int[] targets;
+        final int[] actionSets;
+
+        Edges(int[] targets, int[] actionSets) {
+            this.targets = targets;
+            this.actionSets = actionSets;
+        }
+    }
+
+    /**
+     * A state on the stack of a depth-first search, with the next of its transitions to follow.
+     */
+    private static class Frame {
+        final int state;
+        final Edges edges;
+        int next;
+
+        Frame(int state, Edges edges) {
+            this.state = state;
+            this.edges = edges;
+        }
+    }
+
+    /**
+     * Values of formulas in states, both indexed by id, growing as states are discovered.
+     */
+    private static class Memo {
+        private final List<byte[]> tables = new ArrayList<>();
+
+        byte get(int formula, int state) {
+            if (formula >= tables.size() || tables.get(formula) == null || state >= tables.get(formula).length)
+                return UNKNOWN;
+            return tables.get(formula)[state];
+        }
+
+        void set(int formula, int state, byte value) {
+            while (tables.size() <= formula)
+                tables.add(null);
+            byte[] table = tables.get(formula);
+            if (table == null || state >= table.length) {
+                int length = table == null ? 0 : table.length;
+                table = Arrays.copyOf(table == null ? new byte[0] : table, Math.max(16, Math.max(state + 1, 2 * length)));
+                tables.set(formula, table);
+            }
+            table[state] = value;
+        }
+
+        void clear() {
+            tables.clear();
+        }
+    }
+
+    /**
+     * States visited by a search and states on its stack. Each search starts a new epoch, so the marks of the
+     * previous searches at the same level are forgotten without clearing them.
+     */
+    private static class SearchMarks {
+        private int[] marks = new int[16];
+        private int epoch;
+
+        void begin() {
+            epoch += 2;
+        }
+
+        boolean isVisited(int state) {
+            return state < marks.length && (marks[state] == epoch || marks[state] == epoch + 1);
+        }
+
+        boolean isOnStack(int state) {
+            return state < marks.length && marks[state] == epoch + 1;
+        }
+
+        void enter(int state) {
+            if (state >= marks.length)
+                marks = Arrays.copyOf(marks, Math.max(state + 1, 2 * marks.length));
+            marks[state] = epoch + 1;
+        }
+
+        void finish(int state) {
+            marks[state] = epoch;
+        }
+    }
+
+}
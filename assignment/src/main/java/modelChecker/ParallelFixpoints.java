@@ -0,0 +1,202 @@
+package modelChecker;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import model.AtomicStateSet;
+import model.CompiledModel;
+import model.IntList;
+import model.RestrictedModel;
+import model.StateSet;
+
+/**
+ * Parallel versions of the backward fixpoints of FixpointModelChecker. Each fixpoint is computed level by level: the
+ * states of the current frontier are split across the tasks of a ForkJoinPool, which look at their predecessors and
+ * add the newly satisfying states to a lock-free AtomicStateSet and to the next frontier. Counters of AU and EG are
+ * decremented atomically, so every state joins or leaves the result exactly once whatever the interleaving.
+ *
+ * A fixpoint has a single solution, so the sets returned do not depend on the number of threads nor on the order in
+ * which the frontier is processed.
+ */
+class ParallelFixpoints {
+    // Number of states or frontier entries handled by a task without splitting it further:
+    private static final int GRAIN = 2048;
+
+    private final ForkJoinPool pool;
+    private final CompiledModel model;
+    private final RestrictedModel view;
+    private final int stateCount;
+
+    ParallelFixpoints(ForkJoinPool pool, RestrictedModel view) {
+        this.pool = pool;
+        this.model = view.getBase();
+        this.view = view;
+        this.stateCount = model.getStateCount();
+    }
+
+    /**
+     * Least fixpoint of Z = psi | (phi & (EbX psi | EaX Z)).
+     */
+    StateSet existsUntil(StateSet phi, StateSet psi, boolean[] left, boolean[] right) {
+        StateSet sources = view.getStates().retainAll(phi);
+        AtomicStateSet result = new AtomicStateSet(stateCount);
+
+        IntList frontier = forEach(stateCount, (s, next) -> {
+            if (!sources.contains(s))
+                return;
+            for (int e = model.outBegin(s); e < model.outEnd(s); e++) {
+                if (view.containsEdge(e) && psi.contains(model.target(e)) && right[model.actionSet(e)]) {
+                    if (result.addIfAbsent(s))
+                        next.add(s);
+                    return;
+                }
+            }
+        });
+
+        while (!frontier.isEmpty()) {
+            IntList current = frontier;
+            frontier = forEach(current.size(), (index, next) -> {
+                int target = current.get(index);
+                for (int i = model.inBegin(target); i < model.inEnd(target); i++) {
+                    int source = model.inSource(i);
+                    int edge = model.inEdge(i);
+                    if (sources.contains(source) && view.containsEdge(edge) && left[model.actionSet(edge)]
+                            && result.addIfAbsent(source))
+                        next.add(source);
+                }
+            });
+        }
+
+        return result.toStateSet().addAll(psi);
+    }
+
+    /**
+     * Least fixpoint of Z = psi | (phi & some step & every step is either a b-step into psi or an a-step into Z).
+     */
+    StateSet forAllUntil(StateSet phi, StateSet psi, boolean[] left, boolean[] right) {
+        StateSet sources = view.getStates().retainAll(phi);
+        AtomicStateSet result = new AtomicStateSet(stateCount);
+        AtomicIntegerArray pending = new AtomicIntegerArray(stateCount);
+
+        IntList frontier = forEach(stateCount, (s, next) -> {
+            if (!sources.contains(s))
+                return;
+            int degree = 0, count = 0;
+            for (int e = model.outBegin(s); e < model.outEnd(s); e++) {
+                if (!view.containsEdge(e))
+                    continue;
+                degree++;
+                if (!(psi.contains(model.target(e)) && right[model.actionSet(e)]))
+                    count++;
+            }
+            pending.set(s, count);
+            if (degree > 0 && count == 0 && result.addIfAbsent(s))
+                next.add(s);
+        });
+
+        while (!frontier.isEmpty()) {
+            IntList current = frontier;
+            frontier = forEach(current.size(), (index, next) -> {
+                int target = current.get(index);
+                for (int i = model.inBegin(target); i < model.inEnd(target); i++) {
+                    int source = model.inSource(i);
+                    int edge = model.inEdge(i);
+                    int actionSet = model.actionSet(edge);
+                    if (sources.contains(source) && view.containsEdge(edge) && left[actionSet]
+                            && !(psi.contains(target) && right[actionSet])
+                            && pending.decrementAndGet(source) == 0 && result.addIfAbsent(source))
+                        next.add(source);
+                }
+            });
+        }
+
+        return result.toStateSet().addAll(psi);
+    }
+
+    /**
+     * Greatest fixpoint of Z = phi & (no step | some step not in a | EaX Z), computed by removing states backwards
+     * from the ones violating phi.
+     */
+    StateSet existsAlways(StateSet phi, boolean[] allowed) {
+        AtomicStateSet result = new AtomicStateSet(phi);
+        AtomicIntegerArray support = new AtomicIntegerArray(stateCount);
+
+        IntList frontier = forEach(stateCount, (s, next) -> {
+            if (!phi.contains(s)) {
+                next.add(s);
+                return;
+            }
+            int degree = 0;
+            boolean leavesActions = false;
+            for (int e = model.outBegin(s); e < model.outEnd(s); e++) {
+                if (!view.containsEdge(e))
+                    continue;
+                degree++;
+                if (!allowed[model.actionSet(e)])
+                    leavesActions = true;
+            }
+            support.set(s, (degree == 0 || leavesActions) ? -1 : degree);
+        });
+
+        while (!frontier.isEmpty()) {
+            IntList current = frontier;
+            frontier = forEach(current.size(), (index, next) -> {
+                int target = current.get(index);
+                for (int i = model.inBegin(target); i < model.inEnd(target); i++) {
+                    int source = model.inSource(i);
+                    if (view.containsEdge(model.inEdge(i)) && support.get(source) > 0
+                            && support.decrementAndGet(source) == 0
+                            && result.removeIfPresent(source))
+                        next.add(source);
+                }
+            });
+        }
+
+        return result.toStateSet();
+    }
+
+    private IntList forEach(int count, Step step) {
+        return pool.invoke(new RangeTask(step, 0, count));
+    }
+
+    /**
+     * Work done for one index of a range, adding the states it discovers to the next frontier.
+     */
+    private interface Step {
+        void apply(int index, IntList next);
+    }
+
+    private static class RangeTask extends RecursiveTask<IntList> {
+        private static final long serialVersionUID = 1L;
+
+        private final Step step;
+        private final int from;
+        private final int to;
+
+        RangeTask(Step step, int from, int to) {
+            this.step = step;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected IntList compute() {
+            if (to - from <= GRAIN) {
+                IntList next = new IntList();
+                for (int i = from; i < to; i++)
+                    step.apply(i, next);
+                return next;
+            }
+
+            int middle = (from + to) >>> 1;
+            RangeTask left = new RangeTask(step, from, middle);
+            left.fork();
+            IntList right = new RangeTask(step, middle, to).compute();
+            IntList next = left.join();
+            next.addAll(right);
+            return next;
+        }
+    }
+
+}
@@ -0,0 +1,61 @@
+package modelChecker;
+
+import formula.stateFormula.StateFormula;
+
+/**
+ * Outcome of checking one query in a CheckingSession or an IncrementalSession, or of looking it up in a VerdictStore.
+ */
+public class QueryResult {
+    private final StateFormula query;
+    private final boolean satisfied;
+    private final Trace trace;
+    private final long nanos;
+
+    QueryResult(StateFormula query, boolean satisfied, Trace trace, long nanos) {
+        this.query = query;
+        this.satisfied = satisfied;
+        this.trace = trace;
+        this.nanos = nanos;
+    }
+
+    public StateFormula getQuery() {
+        return query;
+    }
+
+    public boolean isSatisfied() {
+        return satisfied;
+    }
+
+    /**
+     * Returns the trace of a failed check, starting from the initial state violating the query.
+     *
+     * @return the names of the states of the trace, empty if the query is satisfied
+     */
+    public String[] getTrace() {
+        return trace == null ? new String[0] : trace.getStates();
+    }
+
+    /**
+     * Returns the counterexample of a failed check, with the actions taken at each step.
+     *
+     * @return the trace, or null if the query is satisfied
+     */
+    public Trace getCounterexample() {
+        return trace;
+    }
+
+    public long getNanos() {
+        return nanos;
+    }
+
+    public double getMillis() {
+        return nanos / 1e6;
+    }
+
+    @Override
+    public String toString() {
+        return query + ": " + (satisfied ? "satisfied" : "violated at " + trace.getStates()[0])
+                + String.format(" (%.3f ms)", getMillis());
+    }
+
+}
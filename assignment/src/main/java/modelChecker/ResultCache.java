@@ -0,0 +1,81 @@
+package modelChecker;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import model.CompiledModel;
+import model.StateSet;
+
+/**
+ * Satisfaction sets computed for the canonical subformulas of a FormulaFactory over one compiled model. A set is
+ * keyed by the id of its formula and by the id of the restriction it was computed under, since the states satisfying
+ * a temporal formula depend on which paths the constraint and the fairness constraint leave. Formulas without path
+ * quantifiers do not depend on the restriction and are stored once under NO_RESTRICTION.
+ *
+ * Cached sets are shared, callers must copy them before modifying them.
+ */
+class ResultCache {
+    static final int NO_RESTRICTION = -1;
+
+    private final CompiledModel model;
+    private final ConcurrentHashMap<Long, StateSet> results = new ConcurrentHashMap<>();
+    private final Map<List<Integer>, Integer> restrictions = new HashMap<>();
+    // Number of lookups which found a set:
+    private final AtomicInteger hits = new AtomicInteger();
+
+    ResultCache(CompiledModel model) {
+        this.model = model;
+    }
+
+    CompiledModel getModel() {
+        return model;
+    }
+
+    /**
+     * Returns the id of a restriction, given the ids of its canonical formulas.
+     *
+     * @param formulas
+     *            - the constraint, followed by -1 and the fairness conditions if there is a fairness constraint
+     * @return the same id for the same formulas, different from NO_RESTRICTION
+     */
+    synchronized int restriction(List<Integer> formulas) {
+        Integer id = restrictions.get(formulas);
+        if (id == null) {
+            id = restrictions.size();
+            restrictions.put(new ArrayList<>(formulas), id);
+        }
+        return id;
+    }
+
+    StateSet get(int restriction, int formula) {
+        StateSet result = results.get(key(restriction, formula));
+        if (result != null)
+            hits.incrementAndGet();
+        return result;
+    }
+
+    void put(int restriction, int formula, StateSet result) {
+        results.putIfAbsent(key(restriction, formula), result);
+    }
+
+    int size() {
+        return results.size();
+    }
+
+    int getHits() {
+        return hits.get();
+    }
+
+    void clear() {
+        results.clear();
+    }
+
+    private static long key(int restriction, int formula) {
+        return ((long) restriction << 32) | (formula & 0xFFFFFFFFL);
+    }
+
+}
@@ -11,20 +11,47 @@ import formula.stateFormula.*;
 
 public class SimpleModelChecker implements ModelChecker {
 
-    private static final int MAX_STEP_COUNT = 1000;
-
     private Map<String, State> states = new HashMap<>();
     private List<State> initStates = new ArrayList<>();
     private List<State> invalidStates = new ArrayList<>();
     private List <String> traceList = new ArrayList<>();
     private boolean constraintSwitch = true;
-    private int numberOfSteps = 0;
+    private int stateCount = 0;
+    private StateSet reachable;
+    // States of each label, indexed once per check, and of each atomic proposition of the formulas:
+    private Map<String, StateSet> labelIndex;
+    private Map<AtomicProp, StateSet> labelStates = new IdentityHashMap<>();
+    // Mask of the transitions, by position in the model, performing one of the actions of each action set:
+    private Map<Set<String>, EdgeSet> allowedEdges = new IdentityHashMap<>();
+    private State[] modelStates;
+    private Transition[] modelTransitions;
+    /*
+     Stacks of the until paths being explored: the id of each state on the path, and where its transitions left to
+     check start in the shared stack of transition ids, which holds the transitions of each state in reverse order:
+     */
+    private final IntList untilStates = new IntList();
+    private final IntList untilStarts = new IntList();
+    private final IntList untilTransitions = new IntList();
 
     @Override
     public boolean check(Model model, StateFormula constraint, StateFormula query) {
 
+        // Only the states reachable from an initial state can be on a path, the others are never loaded:
+        stateCount = model.getStates().length;
+        modelStates = model.getStates();
+        modelTransitions = model.getTransitions();
+        untilStates.clear();
+        untilStarts.clear();
+        untilTransitions.clear();
+        reachable = ReachabilityPruning.reachableStates(model);
+        labelIndex = null;
+        labelStates.clear();
+        allowedEdges.clear();
+
         // Get all the states (representing them with a hashmap) get all the initial states to construct valid paths:
         for (State state : model.getStates()) {
+            if (!reachable.contains(state.getId()))
+                continue;
             states.put(state.getName(), state);
             if (state.isInit())
                 initStates.add(state);
@@ -32,67 +59,58 @@ public class SimpleModelChecker implements ModelChecker {
 
         // Populate state transition tables:
         for (Transition transition : model.getTransitions()) {
-            String source = transition.getSource();
-            states.get(source).addTransition(transition);
+            State source = states.get(transition.getSource());
+            if (source != null)
+                source.addTransition(transition);
         }
 
-        // Try to model check within the defined limited number of recursive steps:
-        try {
-            /*
-            Loop through all initial states testing the constraint, this will evaluate states (and their paths if
-            necessary). In the case of for all the paths that do not satisfy the constraint are removed. For any other
-            constraint such as there exists or holds p the initial state is evaluated and if the constraint does not
-            hold then it is removed.
-             */
-            for (State initState : initStates) {
-                if(!recursiveStateFormulaCheck(constraint, initState))
-                    invalidStates.add(initState);
-            }
-
-            initStates.removeAll(invalidStates);
+        /*
+        Loop through all initial states testing the constraint, this will evaluate states (and their paths if
+        necessary). In the case of for all the paths that do not satisfy the constraint are removed. For any other
+        constraint such as there exists or holds p the initial state is evaluated and if the constraint does not
+        hold then it is removed.
+         */
+        for (State initState : initStates) {
+            if(!recursiveStateFormulaCheck(constraint, initState))
+                invalidStates.add(initState);
+        }
 
-            /*
-            Loop through every state and their transitions. If any transitions contain removed states they must be
-            removed as those states are no longer accessible. This is done through use of the state class functions:
-             */
-            for (Map.Entry<String, State> entry : states.entrySet()) {
-                State value = entry.getValue();
+        initStates.removeAll(invalidStates);
 
-                for (State invalid : invalidStates)
-                    value.removeInvalidStateOccurrence(invalid.getName());
+        /*
+        Loop through every state and their transitions. If any transitions contain removed states they must be
+        removed as those states are no longer accessible. This is done through use of the state class functions:
+         */
+        for (Map.Entry<String, State> entry : states.entrySet()) {
+            State value = entry.getValue();
 
-                value.removeInvalidTransitions();
-            }
+            for (State invalid : invalidStates)
+                value.removeInvalidStateOccurrence(invalid.getName());
 
-            // Remove all invalid states from the states list:
-            for (State invalidState : invalidStates) {
-                states.remove(invalidState.getName());
-            }
+            value.removeInvalidTransitions();
+        }
 
-            /*
-             Evaluating the model against the constraint has finished so we may switch functionality to evaluating the
-             query:
-             */
-            constraintSwitch = false;
+        // Remove all invalid states from the states list:
+        for (State invalidState : invalidStates) {
+            states.remove(invalidState.getName());
+        }
 
-            // Evaluate the query against the initial states and their paths (if necessary):
-            for (State initState : initStates) {
-                if (!recursiveStateFormulaCheck(query, initState))
-                    return false;
-            }
+        /*
+         Evaluating the model against the constraint has finished so we may switch functionality to evaluating the
+         query:
+         */
+        constraintSwitch = false;
 
-            return true;
-        } catch (RuntimeException e) {
-            /*
-            If max number of steps have been reached and the model is still being checked assume that the query/
-            constraint holds and return true:
-             */
-            System.out.println(e.toString());
-            return true;
+        // Evaluate the query against the initial states and their paths (if necessary):
+        for (State initState : initStates) {
+            if (!recursiveStateFormulaCheck(query, initState))
+                return false;
         }
+
+        return true;
     }
 
-    private boolean recursiveStateFormulaCheck(StateFormula formula, State state) throws RuntimeException {
+    private boolean recursiveStateFormulaCheck(StateFormula formula, State state) {
         /*
          Evaluate State Formula, the cases of recursion the step count is incremented and checked for being max:
          */
@@ -101,8 +119,6 @@ public class SimpleModelChecker implements ModelChecker {
             StateFormula leftChild = ((And) formula).left;
             StateFormula rightChild = ((And) formula).right;
 
-            checkStepCount();
-
             return recursiveStateFormulaCheck(leftChild, state) && recursiveStateFormulaCheck(rightChild, state);
 
         } else if (formula instanceof Or) {
@@ -110,8 +126,6 @@ public class SimpleModelChecker implements ModelChecker {
             StateFormula leftChild = ((Or) formula).left;
             StateFormula rightChild = ((Or) formula).right;
 
-            checkStepCount();
-
             return recursiveStateFormulaCheck(leftChild, state) || recursiveStateFormulaCheck(rightChild, state);
 
         } else if (formula instanceof ThereExists) {
@@ -136,8 +150,6 @@ public class SimpleModelChecker implements ModelChecker {
 
             StateFormula child = ((Not) formula).stateFormula;
 
-            checkStepCount();
-
             return !(recursiveStateFormulaCheck(child, state));
 
         } else if (formula instanceof AtomicProp) {
@@ -153,13 +165,13 @@ public class SimpleModelChecker implements ModelChecker {
         }
     }
 
-    private boolean recursivePathConversion(PathFormula formula, State state, boolean isExists) throws RuntimeException {
+    private boolean recursivePathConversion(PathFormula formula, State state, boolean isExists) {
         if (formula instanceof Until) {
 
             //Evaluates until:
 
-            List<String> loopStates = new ArrayList<>();
-            List<String> visitedStates = new ArrayList<>();
+            StateSet loopStates = new StateSet(stateCount);
+            StateSet visitedStates = new StateSet(stateCount);
             StateFormula left = ((Until) formula).left;
             StateFormula right = ((Until) formula).right;
 
@@ -188,7 +200,7 @@ public class SimpleModelChecker implements ModelChecker {
                     states (via the transitions) to see whether or not the formula holds for one of the paths (any match):
                     */
 
-                    return state.getTransitions().stream().anyMatch(n -> recursiveUntil(formula, n, visitedStates, loopStates, true));
+                    return state.getTransitions().stream().anyMatch(n -> checkUntil(formula, n, visitedStates, loopStates, true));
 
                 } else {
 
@@ -197,7 +209,7 @@ public class SimpleModelChecker implements ModelChecker {
                     states (via the transitions) to see whether or not the formula holds for all of the paths (all match):
                     */
 
-                    boolean outcome = state.getTransitions().stream().allMatch(n -> recursiveUntil(formula, n, visitedStates, loopStates, false));
+                    boolean outcome = state.getTransitions().stream().allMatch(n -> checkUntil(formula, n, visitedStates, loopStates, false));
 
                     /*
                      If we are checking the constraint then return true in order to prevent the initial state from being
@@ -251,8 +263,8 @@ public class SimpleModelChecker implements ModelChecker {
              path being checked:
              */
 
-            List<String> loopStates = new ArrayList<>();
-            List<String> visitedStates = new ArrayList<>();
+            StateSet loopStates = new StateSet(stateCount);
+            StateSet visitedStates = new StateSet(stateCount);
             BoolProp left = new BoolProp(false);
             StateFormula right = ((Next) formula).stateFormula;
 
@@ -269,11 +281,11 @@ public class SimpleModelChecker implements ModelChecker {
                 for one path (any match):
                 */
 
-                return state.getTransitions().stream().anyMatch(n -> recursiveUntil(next, n, visitedStates, loopStates,  true));
+                return state.getTransitions().stream().anyMatch(n -> checkUntil(next, n, visitedStates, loopStates,  true));
 
             } else {
 
-                boolean outcome = state.getTransitions().stream().allMatch(n -> recursiveUntil(next, n, visitedStates, loopStates, false));
+                boolean outcome = state.getTransitions().stream().allMatch(n -> checkUntil(next, n, visitedStates, loopStates, false));
 
                  /*
                  If we are checking the constraint then return true in order to prevent the initial state from being
@@ -297,15 +309,64 @@ public class SimpleModelChecker implements ModelChecker {
         }
     }
 
-    private boolean recursiveUntil(PathFormula formula, Transition transition, List<String> visitedStates, List<String> loopStates, Boolean isExists) throws RuntimeException {
+    private boolean checkUntil(PathFormula formula, Transition transition, StateSet visitedStates, StateSet loopStates, boolean isExists) {
+        /*
+         Paths are explored depth first with an explicit stack of the states whose transitions are being checked, so
+         the length of a path is only limited by the heap. A state is left as soon as one of its transitions decides
+         the outcome (any match for exists, all match for for all), exactly as the streams below would:
+         */
+        // The stacks are shared with the untils of nested formulas, whose paths are explored above this one's:
+        int base = untilStates.size();
+        Boolean outcome = enterUntil((Until) formula, transition, visitedStates, loopStates, isExists);
+
+        while (untilStates.size() > base) {
+            int start = untilStarts.peek();
+
+            if (outcome != null && outcome == isExists) {
+
+                /*
+                 One path decided the outcome of this state. In the case of for all a failing path also adds the state
+                 to the fail trace if we are evaluating the query:
+                 */
+
+                int state = untilStates.pop();
+                untilStarts.pop();
+                while (untilTransitions.size() > start)
+                    untilTransitions.pop();
+                if (!isExists && !constraintSwitch)
+                    traceList.add(modelStates[state].getName());
+
+            } else if (untilTransitions.size() > start) {
+
+                outcome = enterUntil((Until) formula, modelTransitions[untilTransitions.pop()], visitedStates,
+                        loopStates, isExists);
+
+            } else {
+
+                // No path decided the outcome, so no path holds for exists and every path holds for for all:
+                untilStates.pop();
+                untilStarts.pop();
+                outcome = !isExists;
+
+            }
+        }
+
+        return outcome;
+    }
+
+    /**
+     * Follows a transition of an until path. Returns the outcome when the target state decides it, or null after
+     * pushing the target state and its transitions to check onto the stacks.
+     */
+    private Boolean enterUntil(Until formula, Transition transition, StateSet visitedStates, StateSet loopStates, boolean isExists) {
         // Get the state needed from the transition:
         State target = states.get(transition.getTarget());
 
         //Add the current state to the list of visited to prevent it being checked again.
-        visitedStates.add(target.getName());
+        visitedStates.add(target.getId());
 
-        StateFormula left = ((Until) formula).left;
-        StateFormula right = ((Until) formula).right;
+        StateFormula left = formula.left;
+        StateFormula right = formula.right;
 
         if (recursiveStateFormulaCheck(right, target)) {
 
@@ -314,7 +375,7 @@ public class SimpleModelChecker implements ModelChecker {
             transition that got us here to check whether or not the path is valid:
             */
 
-            boolean outcome = checkActions(((Until) formula).getRightActions(), transition.getActions());
+            boolean outcome = checkActions(formula.getRightActions(), transition);
 
             if (constraintSwitch && !outcome)   // If the outcome is false and we are testing the constraint then this transition is invalid.
                 target.addInvalidTransition(transition);
@@ -330,56 +391,41 @@ public class SimpleModelChecker implements ModelChecker {
             transition that got us here to check whether or not the path is valid. Furthermore we prevent
             */
 
-            if (checkActions(((Until) formula).getLeftActions(), transition.getActions())) {
-
-                checkStepCount();
+            if (checkActions(formula.getLeftActions(), transition)) {
 
                 /*
                  The following code is implemented as an extension in order to reduce the number of recursions and
                  improve efficiency. For more detail please refer to the report.
                  */
 
-                ArrayList<Transition> transitionsToCheck = new ArrayList<>();
+                int start = untilTransitions.size();
 
                 // For all transitions of this state get the ones which lead to states that we've not seen:
                 for (Transition t : target.getTransitions()) {
                     // Ensures that loop states get checked once:
-                    if (target.getName().equals(t.getTarget()) && !loopStates.contains(target.getName())) {
-                        transitionsToCheck.add(t);
-                        loopStates.add(target.getName());
+                    if (target.getName().equals(t.getTarget()) && !loopStates.contains(target.getId())) {
+                        untilTransitions.add(t.getId());
+                        loopStates.add(target.getId());
                     } else {
-                        if (!visitedStates.contains(t.getTarget()))
-                            transitionsToCheck.add(t);
+                        if (!visitedStates.contains(states.get(t.getTarget()).getId()))
+                            untilTransitions.add(t.getId());
                     }
                 }
 
-                if (transitionsToCheck.size() == 0)
+                if (untilTransitions.size() == start)
                     return false;
 
-                if (isExists) {
-
-                    /*
-                    If exists then check the next states (via the transitions) to see whether or not the formula holds
-                    for one path (any match):
-                    */
-
-                    return transitionsToCheck.stream().anyMatch(n -> recursiveUntil(formula, n, visitedStates, loopStates, true));
-
-                } else {
-                    if (!transitionsToCheck.stream().allMatch(n -> recursiveUntil(formula, n, visitedStates, loopStates, false))) {
-
-                        /*
-                        If one paths leading from this state shows false then return false.
-                         */
-
-                        if (!constraintSwitch)  // If we are evaluating the query then add state to fail trace:
-                            traceList.add(target.getName());
-
-                        return false;
-                    } else {
-                        return true;
-                    }
+                // The transitions are taken from the top of the stack, so they are reversed to be checked in order:
+                for (int i = start, j = untilTransitions.size() - 1; i < j; i++, j--) {
+                    int t = untilTransitions.get(i);
+                    untilTransitions.set(i, untilTransitions.get(j));
+                    untilTransitions.set(j, t);
                 }
+
+                // The paths leading from this state are checked next (any match for exists, all match for for all):
+                untilStates.add(target.getId());
+                untilStarts.add(start);
+                return null;
             }
 
         }
@@ -399,77 +445,80 @@ public class SimpleModelChecker implements ModelChecker {
     }
 
     private boolean atomicPropertyCheck(AtomicProp formula, State state) {
-        String[] stateLabels = state.getLabel();
+        StateSet labelled = labelStates.get(formula);
+
+        if (labelled == null) {
+            if (labelIndex == null)
+                labelIndex = indexLabels();
+            labelled = labelIndex.get(formula.label);
+            if (labelled == null)
+                labelled = new StateSet(stateCount);
+            labelStates.put(formula, labelled);
+        }
 
         // Check to see if atomic property passed in is held by current state:
-        for (String label : stateLabels) {
-            if (formula.label.equals(label))
-                return true;
-        }
+        return labelled.contains(state.getId());
+    }
 
-        return false;
+    // Groups the reachable states by label, in one pass over their labels:
+    private Map<String, StateSet> indexLabels() {
+        Map<String, StateSet> index = new HashMap<>();
+        for (int s = reachable.nextState(0); s >= 0; s = reachable.nextState(s + 1)) {
+            String[] labels = modelStates[s].getLabel();
+            if (labels == null)
+                continue;
+            for (String label : labels)
+                index.computeIfAbsent(label, l -> new StateSet(stateCount)).add(s);
+        }
+        return index;
     }
 
-    private boolean checkActions(Set<String> allowedActions, String[] actions) {
+    private boolean checkActions(Set<String> allowedActions, Transition transition) {
         /*
-        If there is no set of actions to check (for example with a normal until) return true. Else loop through the set
-        checking if there is an action from the transition actions which corresponds to the set.
+        If there is no set of actions to check (for example with a normal until) return true. Else look the transition
+        up in the mask of the transitions performing one of the actions, computed once for each action set of the
+        formula:
          */
 
         if (allowedActions.isEmpty())
             return true;
 
-        for (String action : actions) {
-            if (allowedActions.contains(action))
-                return true;
+        EdgeSet allowed = allowedEdges.get(allowedActions);
+        if (allowed == null) {
+            allowed = new EdgeSet(modelTransitions.length);
+            for (Transition t : modelTransitions) {
+                String[] actions = t.getActions();
+                if (actions == null)
+                    continue;
+                for (String action : actions) {
+                    if (allowedActions.contains(action)) {
+                        allowed.add(t.getId());
+                        break;
+                    }
+                }
+            }
+            allowedEdges.put(allowedActions, allowed);
         }
 
-        return false;
+        return allowed.contains(transition.getId());
     }
 
-    private void checkStepCount() throws RuntimeException {
-        /*
-        Checks if the maximum number of reclusive steps has occurred (in order to avoid a stack overflow). If throw
-        RuntimeException:
-         */
-        if (numberOfSteps == MAX_STEP_COUNT)
-            throw new RuntimeException("Maximum number of steps exceeded!");
-        else
-            numberOfSteps++;
+    /**
+     * Returns the states reachable from the initial states in the last check, the only ones loaded.
+     *
+     * @return the reachable states by position in the model, or null if no model was checked yet
+     */
+    public StateSet getReachableStates() {
+        return reachable;
     }
 
     @Override
     public String[] getTrace() {
-        /*
-        If the trace size is greater than 0 it means that a for all error has occurred and a trace is needed
-        otherwise an empty trace should be returned:
-         */
-
-        if (traceList.size() > 0) {
-
-            //Calculate the length of the traces with the inclusion of '->'s:
-            int traceLength = (traceList.size() * 2) - 1;
-            String[] trace = new String[traceLength];
-
-            /*
-            Build trace backwards (as it was populated back to front due to recursion) also include '->' between states:
-            */
-            int i = 0;
-            for (int j = traceList.size() - 1; j >= 0; j--) {
-                trace[i] = traceList.get(j);
-                System.out.println(trace[i]);
-                i++;
-                if (j != 0) {
-                    trace[i] = " -> ";
-                    System.out.println(trace[i]);
-                    i++;
-                }
-            }
-
-            return trace;
-        } else {
-            return new String[0];
-        }
+        // The states were added to the trace back to front as the recursion returned:
+        String[] trace = new String[traceList.size()];
+        for (int i = 0; i < trace.length; i++)
+            trace[i] = traceList.get(trace.length - 1 - i);
+        return trace;
     }
 
 }
@@ -0,0 +1,530 @@
+package modelChecker;
+
+import java.util.*;
+
+import bdd.BddManager;
+import formula.FormulaFactory;
+import formula.pathFormula.*;
+import formula.stateFormula.*;
+import model.CompiledModel;
+import model.Model;
+import model.RestrictedModel;
+import model.StateSet;
+
+/**
+ * Model checker representing sets of states and transitions as BDDs instead of explicit sets, for models too large
+ * to be labelled state by state. A state is encoded by its index in binary, bit i being variable 2i in a current
+ * state and variable 2i + 1 in a next state, so the two copies are interleaved. The labels are BDDs over the current
+ * state variables, and the transition relation is partitioned by action set: one BDD over current and next state
+ * variables per distinct set of actions labelling transitions, which is how action sets are taken into account.
+ *
+ * The BDDs are encoded from a compiled model, which may be mapped from a binary model file rather than held on the
+ * heap. The encoding visits the states and labels in order and holds the codes of the transitions, one long per
+ * transition, until the partitions are built.
+ *
+ * Predecessors are computed with relational products over the partitions allowed by a path formula, without ever
+ * building the whole relation, and the temporal operators are the same fixpoints as in FixpointModelChecker, iterated
+ * on BDDs. When a check fails, the satisfaction sets the trace needs are enumerated into explicit sets and the trace
+ * is built by TraceGenerator, as in FixpointModelChecker. Fairness constraints are not supported.
+ */
+public class SymbolicModelChecker implements ModelChecker {
+    private static final int INITIAL_NODES = 1 << 16;
+    private static final int CACHE_SIZE = 1 << 18;
+
+    private final FormulaFactory factory = new FormulaFactory();
+    private Trace trace;
+
+    private BddManager bdd;
+    // Number of bits of a state, the renamings between current and next state variables and the next state cube:
+    private int bits;
+    private int toNext;
+    private int nextCube;
+
+    // Valid encodings, labels and transition relation partitioned by action set:
+    private int states;
+    private Map<String, Integer> labels;
+    private List<Set<String>> actionSets;
+    private int[] relations;
+
+    // States and partitions of the relation restricted to the constraint, and the states with a step in them:
+    private int view;
+    private int[] restricted;
+    private int successors;
+
+    /**
+     * Compiles the model and checks the query on its compiled form.
+     */
+    @Override
+    public boolean check(Model model, StateFormula constraint, StateFormula query) {
+        return check(CompiledModel.compile(model), constraint, query);
+    }
+
+    /**
+     * Verifies whether a compiled model satisfies the query under the given constraint.
+     *
+     * @param model
+     *            - compiled model to verify
+     * @param constraint
+     *            - the constraint applied to the model before verification against the query
+     * @param query
+     *            - the state formula to verify the model against
+     * @return - true if every initial state satisfying the constraint satisfies the query
+     */
+    public boolean check(CompiledModel model, StateFormula constraint, StateFormula query) {
+        trace = null;
+        encode(model);
+
+        // The constraint is evaluated on the whole model, then every transition leaving it is dropped:
+        view = states;
+        restricted = relations;
+        successors = bdd.ref(preImage(states, allowed(Collections.<String>emptySet())));
+        view = sat(factory.intern(constraint));
+
+        int nextView = bdd.ref(bdd.replace(view, toNext));
+        restricted = new int[relations.length];
+        for (int i = 0; i < relations.length; i++)
+            restricted[i] = bdd.ref(bdd.and(relations[i], bdd.and(view, nextView)));
+        bdd.deref(nextView);
+        bdd.deref(successors);
+        successors = bdd.ref(preImage(states, allowed(Collections.<String>emptySet())));
+        bdd.maybeGc();
+
+        StateFormula canonical = factory.intern(query);
+        int satisfying = sat(canonical);
+        for (int s : model.initialStates()) {
+            if (contains(view, s) && !contains(satisfying, s)) {
+                trace = counterexample(model, canonical, s);
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Builds the trace of a failed check with TraceGenerator, over the explicit sets of the subformulas it asks for.
+     * Each of them is evaluated again and enumerated, which only costs when a check fails.
+     */
+    private Trace counterexample(CompiledModel model, StateFormula query, int violating) {
+        RestrictedModel restrictedView = RestrictedModel.of(model).restrictStates(explicit(view, model));
+        Map<StateFormula, StateSet> explicitSets = new IdentityHashMap<>();
+        TraceGenerator generator = new TraceGenerator(model, restrictedView, false, formula -> {
+            StateSet set = explicitSets.get(formula);
+            if (set == null) {
+                int value = sat(formula);
+                explicitSets.put(formula, set = explicit(value, model));
+                bdd.deref(value);
+            }
+            return set;
+        });
+        return generator.counterexample(query, violating).toTrace(model);
+    }
+
+    /**
+     * Returns the number of BDD nodes used by the last check, garbage included.
+     */
+    public int getNodeCount() {
+        return bdd == null ? 0 : bdd.getNodeCount();
+    }
+
+    /**
+     * Returns the trace of the last check.
+     *
+     * @return the trace, or null if the last check succeeded
+     */
+    public Trace getCounterexample() {
+        return trace;
+    }
+
+    /**
+     * Builds the BDDs of the states, labels and transitions of a compiled model.
+     */
+    private void encode(CompiledModel model) {
+        int stateCount = model.getStateCount();
+        bits = 1;
+        while ((1L << bits) < stateCount)
+            bits++;
+        bdd = new BddManager(2 * bits, INITIAL_NODES, CACHE_SIZE);
+
+        int[] map = new int[2 * bits];
+        int[] nextVars = new int[bits];
+        for (int i = 0; i < bits; i++) {
+            map[2 * i] = map[2 * i + 1] = 2 * i + 1;
+            nextVars[i] = 2 * i + 1;
+        }
+        toNext = bdd.newRenaming(map);
+        nextCube = bdd.ref(bdd.cube(nextVars));
+        states = bdd.ref(below(stateCount, 0));
+
+        // The states of each label come in order, so their codes are sorted:
+        labels = new HashMap<>();
+        for (int label = 0; label < model.getLabelCount(); label++) {
+            StateSet labelStates = model.getLabelStates(label);
+            long[] labelCodes = new long[labelStates.cardinality()];
+            int i = 0;
+            for (int s = labelStates.nextState(0); s >= 0; s = labelStates.nextState(s + 1))
+                labelCodes[i++] = s;
+            labels.put(model.getLabelName(label), bdd.ref(build(labelCodes, 0, labelCodes.length, 0, bits, 2)));
+        }
+
+        // The action sets are interned by the compiled model, each one giving one partition of the relation:
+        actionSets = new ArrayList<>();
+        long[][] pairs = new long[model.getActionSetCount()][];
+        int[] sizes = new int[pairs.length];
+        for (int set = 0; set < pairs.length; set++)
+            actionSets.add(model.actions(set));
+        for (int s = 0; s < stateCount; s++) {
+            for (int e = model.outBegin(s); e < model.outEnd(s); e++)
+                sizes[model.actionSet(e)]++;
+        }
+        for (int i = 0; i < pairs.length; i++)
+            pairs[i] = new long[sizes[i]];
+        Arrays.fill(sizes, 0);
+        for (int s = 0; s < stateCount; s++) {
+            for (int e = model.outBegin(s); e < model.outEnd(s); e++) {
+                int set = model.actionSet(e);
+                pairs[set][sizes[set]++] = interleave(s, model.target(e));
+            }
+        }
+
+        relations = new int[pairs.length];
+        for (int i = 0; i < pairs.length; i++) {
+            Arrays.sort(pairs[i]);
+            int distinct = 0;
+            for (int j = 0; j < pairs[i].length; j++) {
+                if (j == 0 || pairs[i][j] != pairs[i][j - 1])
+                    pairs[i][distinct++] = pairs[i][j];
+            }
+            relations[i] = bdd.ref(build(pairs[i], 0, distinct, 0, 2 * bits, 1));
+            pairs[i] = null;
+        }
+    }
+
+    /**
+     * Builds the BDD of the codes below a bound, the bits from depth on being left to choose.
+     */
+    private int below(long bound, int depth) {
+        if (bound <= 0)
+            return BddManager.ZERO;
+        if (bound >= 1L << (bits - depth))
+            return BddManager.ONE;
+        long half = 1L << (bits - 1 - depth);
+        if (bound <= half)
+            return bdd.mk(2 * depth, below(bound, depth + 1), BddManager.ZERO);
+        return bdd.mk(2 * depth, BddManager.ONE, below(bound - half, depth + 1));
+    }
+
+    /**
+     * Enumerates the states of a set into an explicit set over the states of the model.
+     */
+    private StateSet explicit(int set, CompiledModel model) {
+        StateSet result = new StateSet(model.getStateCount());
+        collect(set, 0, 0, result);
+        return result;
+    }
+
+    private void collect(int set, int depth, long prefix, StateSet result) {
+        if (set == BddManager.ZERO)
+            return;
+        if (depth == bits) {
+            if (prefix < result.size())
+                result.add((int) prefix);
+            return;
+        }
+        boolean tested = set != BddManager.ONE && bdd.getVar(set) == 2 * depth;
+        collect(tested ? bdd.getLow(set) : set, depth + 1, prefix << 1, result);
+        collect(tested ? bdd.getHigh(set) : set, depth + 1, (prefix << 1) | 1, result);
+    }
+
+    /**
+     * Encodes a transition as the bits of its source and target, interleaved from the most significant one.
+     */
+    private long interleave(int source, int target) {
+        long code = 0;
+        for (int i = bits - 1; i >= 0; i--)
+            code = (code << 2) | (((source >> i) & 1) << 1) | ((target >> i) & 1);
+        return code;
+    }
+
+    /**
+     * Builds the BDD of a sorted set of codes, bit depth of a code being tested by variable depth * stride.
+     */
+    private int build(long[] codes, int from, int to, int depth, int width, int stride) {
+        if (from >= to)
+            return BddManager.ZERO;
+        if (depth == width)
+            return BddManager.ONE;
+
+        long bit = 1L << (width - 1 - depth);
+        int split = from;
+        while (split < to && (codes[split] & bit) == 0)
+            split++;
+        return bdd.mk(depth * stride, build(codes, from, split, depth + 1, width, stride),
+                build(codes, split, to, depth + 1, width, stride));
+    }
+
+    /**
+     * Tests whether a state belongs to a set of states.
+     */
+    private boolean contains(int set, int state) {
+        while (set > BddManager.ONE) {
+            int bit = (state >> (bits - 1 - bdd.getVar(set) / 2)) & 1;
+            set = bit == 1 ? bdd.getHigh(set) : bdd.getLow(set);
+        }
+        return set == BddManager.ONE;
+    }
+
+    /**
+     * Returns the satisfaction set of a canonical formula, referenced. Subformulas are evaluated in the order of the
+     * formula DAG, so shared ones are computed once.
+     */
+    private int sat(StateFormula formula) {
+        FormulaDag dag = new FormulaDag(formula);
+        int[] results = new int[dag.size()];
+        for (int node = 0; node < dag.size(); node++) {
+            results[node] = bdd.ref(evaluate(dag, node, results));
+            bdd.maybeGc();
+        }
+
+        for (int node = 0; node < dag.size() - 1; node++)
+            bdd.deref(results[node]);
+        return results[dag.size() - 1];
+    }
+
+    private int evaluate(FormulaDag dag, int node, int[] results) {
+        StateFormula formula = dag.formula(node);
+        int[] children = dag.children(node);
+        int[] operands = new int[children.length];
+        for (int i = 0; i < children.length; i++)
+            operands[i] = results[children[i]];
+
+        if (formula instanceof And) {
+
+            return bdd.and(operands[0], operands[1]);
+
+        } else if (formula instanceof Or) {
+
+            return bdd.or(operands[0], operands[1]);
+
+        } else if (formula instanceof Not) {
+
+            return bdd.diff(states, operands[0]);
+
+        } else if (formula instanceof AtomicProp) {
+
+            Integer label = labels.get(((AtomicProp) formula).label);
+            return label == null ? BddManager.ZERO : label;
+
+        } else if (formula instanceof BoolProp) {
+
+            return ((BoolProp) formula).value ? states : BddManager.ZERO;
+
+        } else if (formula instanceof ThereExists) {
+
+            return satExists(((ThereExists) formula).pathFormula, operands);
+
+        } else if (formula instanceof ForAll) {
+
+            return satForAll(((ForAll) formula).pathFormula, operands);
+
+        } else {
+            throw new IllegalArgumentException("Unsupported state formula " + formula);
+        }
+    }
+
+    private int satExists(PathFormula formula, int[] operands) {
+        if (formula instanceof Until) {
+
+            Until until = (Until) formula;
+            return existsUntil(operands[0], operands[1], until.getLeftActions(), until.getRightActions());
+
+        } else if (formula instanceof Eventually) {
+
+            Eventually eventually = (Eventually) formula;
+            return existsUntil(states, operands[0], eventually.getLeftActions(), eventually.getRightActions());
+
+        } else if (formula instanceof Next) {
+
+            return preImage(operands[0], allowed(((Next) formula).getActions()));
+
+        } else if (formula instanceof Always) {
+
+            return existsAlways(operands[0], ((Always) formula).getActions());
+
+        } else {
+            throw new IllegalArgumentException("Unsupported path formula " + formula);
+        }
+    }
+
+    private int satForAll(PathFormula formula, int[] operands) {
+        if (formula instanceof Until) {
+
+            Until until = (Until) formula;
+            return forAllUntil(operands[0], operands[1], until.getLeftActions(), until.getRightActions());
+
+        } else if (formula instanceof Eventually) {
+
+            Eventually eventually = (Eventually) formula;
+            return forAllUntil(states, operands[0], eventually.getLeftActions(), eventually.getRightActions());
+
+        } else if (formula instanceof Next) {
+
+            return forAllNext(operands[0], ((Next) formula).getActions());
+
+        } else if (formula instanceof Always) {
+
+            // AaG phi is the negation of E(TRUE aUa !phi):
+            Set<String> actions = ((Always) formula).getActions();
+            int violating = bdd.ref(bdd.diff(states, operands[0]));
+            int reaching = existsUntil(states, violating, actions, actions);
+            int result = bdd.diff(states, reaching);
+            bdd.deref(violating);
+            return result;
+
+        } else {
+            throw new IllegalArgumentException("Unsupported path formula " + formula);
+        }
+    }
+
+    /**
+     * Returns, for each partition of the relation, whether its action set has one of the given actions.
+     *
+     * @param actions
+     *            - the actions allowed by a path formula, the empty set allowing any action
+     */
+    private boolean[] allowed(Set<String> actions) {
+        boolean[] allowed = new boolean[actionSets.size()];
+        for (int i = 0; i < allowed.length; i++)
+            allowed[i] = actions.isEmpty() || !Collections.disjoint(actions, actionSets.get(i));
+        return allowed;
+    }
+
+    private static boolean[] complement(boolean[] allowed) {
+        boolean[] result = new boolean[allowed.length];
+        for (int i = 0; i < allowed.length; i++)
+            result[i] = !allowed[i];
+        return result;
+    }
+
+    /**
+     * Returns the states with a step into the targets in one of the allowed partitions, as the union of the
+     * relational products of those partitions with the targets over next state variables.
+     */
+    private int preImage(int targets, boolean[] allowed) {
+        int next = bdd.replace(targets, toNext);
+        int result = BddManager.ZERO;
+        for (int i = 0; i < restricted.length; i++) {
+            if (allowed[i])
+                result = bdd.or(result, bdd.relProd(restricted[i], next, nextCube));
+        }
+        return result;
+    }
+
+    /**
+     * Replaces a referenced BDD by another one, referencing the new one.
+     */
+    private int update(int old, int value) {
+        bdd.ref(value);
+        bdd.deref(old);
+        return value;
+    }
+
+    /**
+     * E(phi aUb psi) is the least fixpoint of Z = psi | (phi & (EbX psi | EaX Z)). Each iteration only takes the
+     * predecessors of the states added by the previous one.
+     */
+    private int existsUntil(int phi, int psi, Set<String> leftActions, Set<String> rightActions) {
+        boolean[] left = allowed(leftActions);
+        int sources = bdd.ref(bdd.and(view, phi));
+        int reached = bdd.ref(bdd.and(sources, preImage(psi, allowed(rightActions))));
+        int frontier = bdd.ref(reached);
+
+        while (frontier != BddManager.ZERO) {
+            int added = bdd.diff(bdd.and(sources, preImage(frontier, left)), reached);
+            frontier = update(frontier, added);
+            reached = update(reached, bdd.or(reached, added));
+            bdd.maybeGc();
+        }
+
+        int result = bdd.or(reached, psi);
+        bdd.deref(frontier);
+        bdd.deref(reached);
+        bdd.deref(sources);
+        return result;
+    }
+
+    /**
+     * A(phi aUb psi) is the least fixpoint of Z = psi | (phi & some step & every step is either a b-step into psi or
+     * an a-step into Z). A state of Z has no step of a partition into the states the partition may not step into.
+     */
+    private int forAllUntil(int phi, int psi, Set<String> leftActions, Set<String> rightActions) {
+        boolean[] left = allowed(leftActions);
+        boolean[] right = allowed(rightActions);
+        int sources = bdd.ref(bdd.and(view, bdd.and(phi, successors)));
+        int notPsi = bdd.ref(bdd.replace(bdd.not(psi), toNext));
+        int reached = bdd.ref(BddManager.ZERO);
+
+        while (true) {
+            // Targets each kind of partition may not step into, over next state variables:
+            int notReached = bdd.ref(bdd.replace(bdd.not(reached), toNext));
+            int notEither = bdd.ref(bdd.and(notPsi, notReached));
+
+            int bad = BddManager.ZERO;
+            for (int i = 0; i < restricted.length; i++) {
+                int forbidden = left[i] ? (right[i] ? notEither : notReached) : (right[i] ? notPsi : BddManager.ONE);
+                bad = bdd.or(bad, bdd.relProd(restricted[i], forbidden, nextCube));
+            }
+            int next = bdd.diff(sources, bad);
+            bdd.deref(notReached);
+            bdd.deref(notEither);
+
+            if (next == reached)
+                break;
+            reached = update(reached, next);
+            bdd.maybeGc();
+        }
+
+        int result = bdd.or(reached, psi);
+        bdd.deref(reached);
+        bdd.deref(notPsi);
+        bdd.deref(sources);
+        return result;
+    }
+
+    /**
+     * EaG phi is the greatest fixpoint of Z = phi & (no step | some step not in a | EaX Z).
+     */
+    private int existsAlways(int phi, Set<String> actions) {
+        boolean[] allowed = allowed(actions);
+        int escaping = bdd.ref(bdd.or(bdd.not(successors), preImage(states, complement(allowed))));
+        int kept = bdd.ref(phi);
+
+        while (true) {
+            int next = bdd.and(phi, bdd.or(escaping, preImage(kept, allowed)));
+            if (next == kept)
+                break;
+            kept = update(kept, next);
+            bdd.maybeGc();
+        }
+
+        bdd.deref(escaping);
+        bdd.deref(kept);
+        return kept;
+    }
+
+    /**
+     * AaX phi holds in the states with some step, all of whose steps are a-steps into phi.
+     */
+    private int forAllNext(int phi, Set<String> actions) {
+        boolean[] allowed = allowed(actions);
+        int violating = bdd.or(preImage(bdd.diff(states, phi), allowed(Collections.<String>emptySet())),
+                preImage(states, complement(allowed)));
+        return bdd.diff(bdd.and(view, successors), violating);
+    }
+
+    @Override
+    public String[] getTrace() {
+        return trace == null ? new String[0] : trace.getStates();
+    }
+
+}
@@ -0,0 +1,67 @@
+package modelChecker;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Counterexample or witness of a check: a path of the model with the actions taken on each of its steps. A finite
+ * trace has one step fewer than states. A lasso has one more step, going from its last state back to the state at
+ * its loop start, and stands for the infinite path repeating that loop forever.
+ */
+public class Trace {
+    private final String[] states;
+    private final List<Set<String>> actions;
+    private final int loopStart;
+
+    Trace(String[] states, List<Set<String>> actions, int loopStart) {
+        this.states = states;
+        this.actions = Collections.unmodifiableList(new ArrayList<>(actions));
+        this.loopStart = loopStart;
+    }
+
+    /**
+     * Returns the names of the states of the path, the first one being an initial state of the model.
+     */
+    public String[] getStates() {
+        return states.clone();
+    }
+
+    /**
+     * Returns the actions of the steps of the path.
+     *
+     * @return for each step, the actions of the transition taken, step i leaving state i
+     */
+    public List<Set<String>> getActions() {
+        return actions;
+    }
+
+    /**
+     * Returns the position of the state the loop of a lasso goes back to.
+     *
+     * @return index in getStates(), or -1 if the trace is finite
+     */
+    public int getLoopStart() {
+        return loopStart;
+    }
+
+    public boolean isLasso() {
+        return loopStart >= 0;
+    }
+
+    public int length() {
+        return states.length;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder(states[0]);
+        for (int i = 0; i < actions.size(); i++) {
+            String target = i + 1 < states.length ? states[i + 1] : "(" + states[loopStart] + ")";
+            builder.append(" -").append(actions.get(i)).append("-> ").append(target);
+        }
+        return builder.toString();
+    }
+
+}
@@ -0,0 +1,524 @@
+package modelChecker;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.IntPredicate;
+
+import model.*;
+import formula.pathFormula.*;
+import formula.stateFormula.*;
+
+/**
+ * Builds the trace of a check once its verdict is known, from the satisfaction sets the check computed. The formula
+ * is explained from the outside in, each temporal operator extending the path with a breadth-first search of the
+ * compiled graph which only enters the states its fixpoint kept. A search visits every edge at most once, so a trace
+ * costs at most one pass over the reachable edges per temporal operator of the formula.
+ *
+ * Counterexamples of A(phi aUb psi) and witnesses of EaG phi are shortest paths to the nearest state where the path
+ * can stop or leave the fixpoint; when no such state can be reached, every reachable state has a step staying in the
+ * fixpoint and the trace is a lasso. Formulas which no single path can explain, such as a failing existential
+ * formula, are explained by the state itself, and so are path formulas under fairness.
+ */
+final class TraceGenerator {
+    // Results of an exit rule: no exit from the state, or the path stopping in it; any other result is an edge id:
+    private static final int NO_EXIT = -1;
+    private static final int STOP = -2;
+
+    private final CompiledModel model;
+    private final RestrictedModel view;
+    private final boolean fairness;
+    private final Function<StateFormula, StateSet> sat;
+
+    /**
+     * Creates a generator for the current restriction of a checker.
+     *
+     * @param model
+     *            - compiled model checked
+     * @param view
+     *            - the view of the model restricted by the constraint
+     * @param fairness
+     *            - whether the path quantifiers only range over fair paths
+     * @param sat
+     *            - the satisfaction sets of canonical formulas on the view
+     */
+    TraceGenerator(CompiledModel model, RestrictedModel view, boolean fairness, Function<StateFormula, StateSet> sat) {
+        this.model = model;
+        this.view = view;
+        this.fairness = fairness;
+        this.sat = sat;
+    }
+
+    /**
+     * Builds a path from a state violating a formula showing why it does.
+     *
+     * @param formula
+     *            - the canonical formula violated
+     * @param state
+     *            - id of the state violating it
+     * @return the counterexample
+     */
+    Path counterexample(StateFormula formula, int state) {
+        Path path = new Path(state);
+        explain(path, formula, false);
+        return path;
+    }
+
+    /**
+     * Extends a path from its last state, where the formula holds or not, until the formula is explained. A lasso is
+     * never extended.
+     */
+    private void explain(Path path, StateFormula formula, boolean holds) {
+        if (path.isLasso())
+            return;
+        int state = path.last();
+
+        if (formula instanceof And) {
+
+            // A conjunction is explained by its left conjunct unless it fails because of the right one only:
+            And and = (And) formula;
+            boolean left = holds || !sat.apply(and.left).contains(state);
+            explain(path, left ? and.left : and.right, holds);
+
+        } else if (formula instanceof Or) {
+
+            Or or = (Or) formula;
+            boolean left = !holds || sat.apply(or.left).contains(state);
+            explain(path, left ? or.left : or.right, holds);
+
+        } else if (formula instanceof Not) {
+
+            explain(path, ((Not) formula).stateFormula, !holds);
+
+        } else if (formula instanceof ThereExists && holds && !fairness) {
+
+            witness(path, (ThereExists) formula);
+
+        } else if (formula instanceof ForAll && !holds && !fairness) {
+
+            counterexample(path, (ForAll) formula);
+        }
+    }
+
+    private void witness(Path path, ThereExists formula) {
+        PathFormula pathFormula = formula.pathFormula;
+        int state = path.last();
+
+        if (pathFormula instanceof Until) {
+
+            Until until = (Until) pathFormula;
+            reach(path, sat.apply(until.left), sat.apply(until.right), until.getLeftActions(),
+                    until.getRightActions(), sat.apply(formula));
+            explain(path, until.right, true);
+
+        } else if (pathFormula instanceof Eventually) {
+
+            Eventually eventually = (Eventually) pathFormula;
+            reach(path, StateSet.full(model.getStateCount()), sat.apply(eventually.stateFormula),
+                    eventually.getLeftActions(), eventually.getRightActions(), sat.apply(formula));
+            explain(path, eventually.stateFormula, true);
+
+        } else if (pathFormula instanceof Next) {
+
+            Next next = (Next) pathFormula;
+            boolean[] allowed = model.allowedActionSets(next.getActions());
+            StateSet phi = sat.apply(next.stateFormula);
+            for (int e = model.outBegin(state); e < model.outEnd(state); e++) {
+                if (view.containsEdge(e) && allowed[model.actionSet(e)] && phi.contains(model.target(e))) {
+                    path.step(e, model.target(e));
+                    explain(path, next.stateFormula, true);
+                    return;
+                }
+            }
+            throw new IllegalStateException("No step of " + model.getStateName(state) + " satisfies " + formula);
+
+        } else if (pathFormula instanceof Always) {
+
+            // The path goes on through states satisfying EaG phi, until it can stop or take a step outside a:
+            boolean[] allowed = model.allowedActionSets(((Always) pathFormula).getActions());
+            StateSet fixpoint = sat.apply(formula);
+            escape(path, e -> allowed[model.actionSet(e)] && fixpoint.contains(model.target(e)), s -> {
+                int degree = 0;
+                for (int e = model.outBegin(s); e < model.outEnd(s); e++) {
+                    if (!view.containsEdge(e))
+                        continue;
+                    degree++;
+                    if (!allowed[model.actionSet(e)])
+                        return e;
+                }
+                return degree == 0 ? STOP : NO_EXIT;
+            });
+        }
+    }
+
+    private void counterexample(Path path, ForAll formula) {
+        PathFormula pathFormula = formula.pathFormula;
+        int state = path.last();
+
+        if (pathFormula instanceof Until) {
+
+            Until until = (Until) pathFormula;
+            untilCounterexample(path, formula, sat.apply(until.left), sat.apply(until.right), until.left,
+                    until.getLeftActions(), until.getRightActions());
+
+        } else if (pathFormula instanceof Eventually) {
+
+            Eventually eventually = (Eventually) pathFormula;
+            untilCounterexample(path, formula, StateSet.full(model.getStateCount()),
+                    sat.apply(eventually.stateFormula), null, eventually.getLeftActions(),
+                    eventually.getRightActions());
+
+        } else if (pathFormula instanceof Next) {
+
+            // A step outside a ends the counterexample, a step into a state violating phi goes on explaining it:
+            Next next = (Next) pathFormula;
+            boolean[] allowed = model.allowedActionSets(next.getActions());
+            StateSet phi = sat.apply(next.stateFormula);
+            for (int e = model.outBegin(state); e < model.outEnd(state); e++) {
+                if (!view.containsEdge(e) || (allowed[model.actionSet(e)] && phi.contains(model.target(e))))
+                    continue;
+                path.step(e, model.target(e));
+                if (allowed[model.actionSet(e)])
+                    explain(path, next.stateFormula, false);
+                return;
+            }
+
+        } else if (pathFormula instanceof Always) {
+
+            // The shortest path of a-steps to a state violating phi, which is a witness of E(TRUE aUa !phi):
+            Always always = (Always) pathFormula;
+            StateSet violating = sat.apply(always.stateFormula).copy().complement();
+            StateSet reaching = sat.apply(formula).copy().complement();
+            reach(path, StateSet.full(model.getStateCount()), violating, always.getActions(), always.getActions(),
+                    reaching);
+            explain(path, always.stateFormula, false);
+        }
+    }
+
+    /**
+     * A path violating A(phi aUb psi) waits in states outside the fixpoint along a-steps which are not b-steps into
+     * psi, and it either reaches a state violating phi, stops, takes a step which is neither an a-step nor a b-step
+     * into psi, or waits forever.
+     *
+     * @param left
+     *            - phi, or null when it is TRUE
+     */
+    private void untilCounterexample(Path path, ForAll formula, StateSet phi, StateSet psi, StateFormula left,
+            Set<String> leftActions, Set<String> rightActions) {
+        boolean[] leftAllowed = model.allowedActionSets(leftActions);
+        boolean[] rightAllowed = model.allowedActionSets(rightActions);
+        StateSet waiting = waitingStates(phi, psi, leftAllowed, rightAllowed, sat.apply(formula));
+
+        int exit = escape(path, e -> {
+            int actionSet = model.actionSet(e);
+            int target = model.target(e);
+            return leftAllowed[actionSet] && !waiting.contains(target)
+                    && !(rightAllowed[actionSet] && psi.contains(target));
+        }, s -> {
+            if (!phi.contains(s))
+                return STOP;
+            int degree = 0;
+            for (int e = model.outBegin(s); e < model.outEnd(s); e++) {
+                if (!view.containsEdge(e))
+                    continue;
+                degree++;
+                int actionSet = model.actionSet(e);
+                if (!leftAllowed[actionSet] && !(rightAllowed[actionSet] && psi.contains(model.target(e))))
+                    return e;
+            }
+            return degree == 0 ? STOP : NO_EXIT;
+        });
+
+        if (exit == STOP && left != null && !phi.contains(path.last()))
+            explain(path, left, false);
+    }
+
+    /**
+     * Returns the states from which every path satisfies A(phi aUb psi) without being in psi yet, which are the
+     * states an a-step may lead into. They are the states of the fixpoint outside psi, together with the psi states
+     * which would satisfy the formula by waiting; the latter are computed as the least fixpoint of forAllUntil over
+     * the phi and psi states only.
+     *
+     * @param fixpoint
+     *            - the states satisfying A(phi aUb psi)
+     */
+    private StateSet waitingStates(StateSet phi, StateSet psi, boolean[] left, boolean[] right, StateSet fixpoint) {
+        StateSet base = fixpoint.copy().removeAll(psi);
+        StateSet result = base.copy();
+        StateSet candidates = view.getStates().retainAll(phi).retainAll(psi);
+        Map<Integer, Integer> pending = new HashMap<>();
+        IntList queue = new IntList();
+
+        for (int s = candidates.nextState(0); s >= 0; s = candidates.nextState(s + 1)) {
+            int degree = 0, count = 0;
+            for (int e = model.outBegin(s); e < model.outEnd(s); e++) {
+                if (!view.containsEdge(e))
+                    continue;
+                degree++;
+                int target = model.target(e);
+                int actionSet = model.actionSet(e);
+                if (!(right[actionSet] && psi.contains(target)) && !(left[actionSet] && base.contains(target)))
+                    count++;
+            }
+            pending.put(s, count);
+            if (degree > 0 && count == 0)
+                queue.add(s);
+        }
+
+        for (int head = 0; head < queue.size(); head++) {
+            int target = queue.get(head);
+            result.add(target);
+            for (int i = model.inBegin(target); i < model.inEnd(target); i++) {
+                int source = model.inSource(i);
+                int edge = model.inEdge(i);
+                int actionSet = model.actionSet(edge);
+                if (candidates.contains(source) && !result.contains(source) && view.containsEdge(edge)
+                        && left[actionSet] && !right[actionSet] && pending.merge(source, -1, Integer::sum) == 0)
+                    queue.add(source);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Extends a path with a shortest witness of E(phi aUb psi): a-steps through phi states followed by a b-step into
+     * a psi state, or nothing if the path already ends in a psi state. The search only enters the states of the
+     * least fixpoint, from which psi can be reached.
+     *
+     * @param fixpoint
+     *            - the states satisfying E(phi aUb psi)
+     */
+    private void reach(Path path, StateSet phi, StateSet psi, Set<String> leftActions, Set<String> rightActions,
+            StateSet fixpoint) {
+        int start = path.last();
+        if (psi.contains(start))
+            return;
+
+        boolean[] left = model.allowedActionSets(leftActions);
+        boolean[] right = model.allowedActionSets(rightActions);
+        Search search = new Search(start);
+        while (search.hasNext()) {
+            int s = search.next();
+            for (int e = model.outBegin(s); e < model.outEnd(s); e++) {
+                if (!view.containsEdge(e))
+                    continue;
+                int target = model.target(e);
+                int actionSet = model.actionSet(e);
+                if (right[actionSet] && psi.contains(target)) {
+                    search.appendPath(path, s);
+                    path.step(e, target);
+                    return;
+                }
+                if (left[actionSet] && phi.contains(target) && fixpoint.contains(target))
+                    search.visit(target, e, s);
+            }
+        }
+
+        throw new IllegalStateException(model.getStateName(start) + " cannot reach a state satisfying psi");
+    }
+
+    /**
+     * Extends a path with a shortest path of continuing steps to the nearest state with an exit, and the exit step if
+     * there is one. If no exit can be reached, every state reached has a continuing step, and these steps are
+     * followed until a state repeats, which closes the path into a lasso.
+     *
+     * @param continuing
+     *            - the edges of the view the path may go on along
+     * @param exits
+     *            - the exit of each state
+     * @return the exit taken, STOP or an edge, or NO_EXIT if the path is a lasso
+     */
+    private int escape(Path path, IntPredicate continuing, ExitRule exits) {
+        int start = path.last();
+        Search search = new Search(start);
+        while (search.hasNext()) {
+            int s = search.next();
+            int exit = exits.exit(s);
+            if (exit != NO_EXIT) {
+                search.appendPath(path, s);
+                if (exit != STOP)
+                    path.step(exit, model.target(exit));
+                return exit;
+            }
+            for (int e = model.outBegin(s); e < model.outEnd(s); e++) {
+                if (view.containsEdge(e) && continuing.test(e))
+                    search.visit(model.target(e), e, s);
+            }
+        }
+
+        // Positions in the path of the states of the lasso, the prefix before the start being left out:
+        Map<Integer, Integer> positions = new HashMap<>();
+        positions.put(start, path.size() - 1);
+        for (int s = start;;) {
+            int next = -1;
+            for (int e = model.outBegin(s); e < model.outEnd(s) && next < 0; e++) {
+                if (view.containsEdge(e) && continuing.test(e))
+                    next = e;
+            }
+            if (next < 0)
+                throw new IllegalStateException(model.getStateName(s) + " has no step left to take");
+
+            s = model.target(next);
+            Integer position = positions.get(s);
+            if (position != null) {
+                path.loop(next, position);
+                return NO_EXIT;
+            }
+            path.step(next, s);
+            positions.put(s, path.size() - 1);
+        }
+    }
+
+    /**
+     * Replays a path of the bisimulation quotient of a model on the model itself, starting from an initial state of
+     * the class it starts in. Each step of the quotient is matched by a step of the current state with the same
+     * actions into the next class. The loop of a lasso is replayed until a state met at its start repeats, which
+     * takes at most as many rounds as that class has states.
+     *
+     * @param path
+     *            - path of the quotient model
+     * @param quotient
+     *            - the quotient
+     * @return the path of the original model
+     */
+    static Path concretize(Path path, BisimulationQuotient quotient) {
+        CompiledModel minimized = quotient.getModel();
+        CompiledModel original = quotient.getOriginal();
+
+        int state = quotient.getOriginalId(path.states.get(0));
+        Path concrete = new Path(state);
+        Map<Integer, Integer> loopStarts = new HashMap<>();
+        if (path.loopStart == 0)
+            loopStarts.put(state, 0);
+
+        int position = 0;
+        while (position < path.edges.size()) {
+            int next = position + 1 < path.states.size() ? position + 1 : path.loopStart;
+            Set<String> actions = minimized.actions(minimized.actionSet(path.edges.get(position)));
+            int edge = -1;
+            for (int e = original.outBegin(state); e < original.outEnd(state) && edge < 0; e++) {
+                if (quotient.getQuotientId(original.target(e)) == path.states.get(next)
+                        && original.actions(original.actionSet(e)).equals(actions))
+                    edge = e;
+            }
+            if (edge < 0)
+                throw new IllegalStateException(original.getStateName(state) + " has no step matching the quotient");
+
+            state = original.target(edge);
+            if (path.isLasso() && next == path.loopStart) {
+                Integer seen = loopStarts.get(state);
+                if (seen != null) {
+                    concrete.loop(edge, seen);
+                    return concrete;
+                }
+                loopStarts.put(state, concrete.size());
+            }
+            concrete.step(edge, state);
+            position = next;
+        }
+
+        return concrete;
+    }
+
+    /**
+     * Exit of a state for escape: NO_EXIT, STOP if the path ends in the state, or the edge ending the path.
+     */
+    private interface ExitRule {
+        int exit(int state);
+    }
+
+    /**
+     * Breadth-first search from a state recording the step each state was first reached by.
+     */
+    private class Search {
+        private final Map<Integer, Integer> reachedBy = new HashMap<>();
+        private final Map<Integer, Integer> parents = new HashMap<>();
+        private final IntList queue = new IntList();
+        private int head;
+
+        Search(int start) {
+            reachedBy.put(start, -1);
+            queue.add(start);
+        }
+
+        boolean hasNext() {
+            return head < queue.size();
+        }
+
+        int next() {
+            return queue.get(head++);
+        }
+
+        void visit(int state, int edge, int parent) {
+            if (reachedBy.putIfAbsent(state, edge) == null) {
+                parents.put(state, parent);
+                queue.add(state);
+            }
+        }
+
+        /**
+         * Appends the steps from the start of the search to a state it reached.
+         */
+        void appendPath(Path path, int state) {
+            IntList steps = new IntList();
+            for (int s = state; reachedBy.get(s) >= 0; s = parents.get(s))
+                steps.add(reachedBy.get(s));
+            for (int i = steps.size() - 1; i >= 0; i--)
+                path.step(steps.get(i), model.target(steps.get(i)));
+        }
+    }
+
+    /**
+     * A path of the compiled model, given by its states and the edges between them. The path of a lasso has one more
+     * edge than states, leading from its last state back to the state at its loop start.
+     */
+    static final class Path {
+        private final IntList states = new IntList();
+        private final IntList edges = new IntList();
+        private int loopStart = -1;
+
+        Path(int start) {
+            states.add(start);
+        }
+
+        int last() {
+            return states.get(states.size() - 1);
+        }
+
+        int size() {
+            return states.size();
+        }
+
+        boolean isLasso() {
+            return loopStart >= 0;
+        }
+
+        void step(int edge, int target) {
+            edges.add(edge);
+            states.add(target);
+        }
+
+        void loop(int edge, int position) {
+            edges.add(edge);
+            loopStart = position;
+        }
+
+        /**
+         * Names the states and actions of the path.
+         *
+         * @param model
+         *            - the model the path belongs to
+         * @return the trace
+         */
+        Trace toTrace(CompiledModel model) {
+            String[] names = new String[states.size()];
+            for (int i = 0; i < names.length; i++)
+                names[i] = model.getStateName(states.get(i));
+            List<Set<String>> actions = new ArrayList<>();
+            for (int i = 0; i < edges.size(); i++)
+                actions.add(model.actions(model.actionSet(edges.get(i))));
+            return new Trace(names, actions, loopStart);
+        }
+    }
+
+}
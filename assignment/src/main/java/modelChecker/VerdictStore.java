@@ -0,0 +1,540 @@
+package modelChecker;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.zip.CRC32;
+
+import model.BinaryModelFormat;
+import model.CompiledModel;
+import model.ModelLoader;
+import formula.FormulaFactory;
+import formula.FormulaGenerator;
+import formula.stateFormula.StateFormula;
+
+/**
+ * Persistent store of verdicts, so that a model, constraint and query checked before are answered without loading
+ * the model again. A verdict is keyed by the SHA-256 digest of the compiled model (BinaryModelFormat.digest) along
+ * with the JSON form of the canonical constraint and query, and holds the verdict with its counterexample.
+ *
+ * A model file is digested as it is loaded, so that it is read once, and the model it compiles to is only digested
+ * when the content of the file was not seen before. Both digests are remembered along with the size and modification
+ * time of the file, so an unchanged file is neither read nor digested again, and a file reformatted without changing
+ * the model still finds its verdicts.
+ *
+ * The store is a single append-only file of records, each with its length and a CRC32 of its content. A crash of the
+ * process can only leave a partial record at the end of the file, which the next open drops. Records are forced to
+ * the disk when the store is compacted or closed, so a crash of the system may lose the verdicts stored since. Verdicts are evicted in least
+ * recently used order once their records take more than the given size, each lookup appending a small touch record
+ * so that the order is the same when the store is opened again. Once dead records make up half of the file, the
+ * live records are written in that order to a new file which atomically replaces it.
+ */
+public class VerdictStore implements Closeable {
+    public static final int MAGIC = 0x5644544C; // "VDTL"
+    public static final int VERSION = 1;
+
+    private static final byte VERDICT = 1;
+    private static final byte MODEL_FILE = 2;
+    private static final byte TOUCH = 3;
+    private static final int HEADER_SIZE = 8;
+    private static final int DIGEST_SIZE = 32;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final Path path;
+    private final long maxBytes;
+    private FileChannel channel;
+
+    // Verdicts by key, in least recently used order, and the size of their records:
+    private final LinkedHashMap<ByteBuffer, Entry> verdicts = new LinkedHashMap<>(16, 0.75f, true);
+    private long verdictBytes;
+    // Model files by path, and the model digest of each file digest:
+    private final Map<String, ModelFile> modelFiles = new HashMap<>();
+    private final Map<ByteBuffer, byte[]> modelDigests = new HashMap<>();
+    private long liveBytes;
+
+    // Digests of the canonical formulas and of the last compiled model checked, whose subformulas the checker caches:
+    private final FixpointModelChecker checker = new FixpointModelChecker();
+    private final FormulaFactory factory = new FormulaFactory();
+    private final Map<StateFormula, byte[]> formulaDigests = new IdentityHashMap<>();
+    private CompiledModel lastModel;
+    private byte[] lastModelDigest;
+
+    private long hits;
+    private long misses;
+
+    /**
+     * Opens a store, creating its file if it does not exist. A partial record left at the end of the file by a crash
+     * is truncated away.
+     *
+     * @param filePath
+     *            - path of the store file
+     * @param maxBytes
+     *            - size the verdict records may take before the least recently used ones are evicted
+     * @throws IOException
+     *             if the file cannot be read or written, or is not a store of a supported version
+     */
+    public VerdictStore(String filePath, long maxBytes) throws IOException {
+        if (maxBytes <= 0)
+            throw new IllegalArgumentException("The store needs a positive size");
+        this.path = Paths.get(filePath);
+        this.maxBytes = maxBytes;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            load();
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the verdict of a query on a model file, checking it and storing the verdict if it is not known yet.
+     *
+     * @param modelPath
+     *            - path of a JSON model read by ModelLoader
+     * @param constraint
+     *            - the constraint applied to the model before verification against the query
+     * @param query
+     *            - the state formula to verify the model against
+     * @return the verdict and counterexample, with the time taken including the load on a miss
+     * @throws IOException
+     *             if the model or the store cannot be read, or the store cannot be written
+     */
+    public synchronized QueryResult check(String modelPath, StateFormula constraint, StateFormula query)
+            throws IOException {
+        long start = System.nanoTime();
+        File file = new File(modelPath);
+        String name = file.getCanonicalPath();
+        long length = file.length();
+        long modified = file.lastModified();
+
+        ModelFile known = modelFiles.get(name);
+        boolean unchanged = known != null && known.length == length && known.modified == modified;
+        byte[] fileDigest = unchanged ? known.fileDigest : null;
+        CompiledModel model = null;
+        if (!unchanged) {
+            MessageDigest digest = sha256();
+            model = new ModelLoader().load(modelPath, digest);
+            fileDigest = digest.digest();
+        }
+        byte[] modelDigest = modelDigests.get(ByteBuffer.wrap(fileDigest));
+        if (modelDigest == null)
+            modelDigest = digest(model);
+        if (!unchanged) {
+            ModelFile modelFile = new ModelFile(name, length, modified, fileDigest, modelDigest);
+            byte[] record = encodeModelFile(modelFile);
+            putModelFile(modelFile, record.length);
+            append(record);
+        }
+
+        StateFormula canonicalConstraint = factory.intern(constraint);
+        StateFormula canonicalQuery = factory.intern(query);
+        ByteBuffer key = key(modelDigest, canonicalConstraint, canonicalQuery);
+        Entry entry = lookup(key);
+        if (entry == null) {
+            if (model == null && Arrays.equals(modelDigest, lastModelDigest)) {
+                model = lastModel;
+            } else if (model == null) {
+                // The digest of the model is known, it is loaded without being digested again:
+                model = new ModelLoader().load(modelPath);
+                lastModel = model;
+                lastModelDigest = modelDigest;
+            }
+            entry = checkAndStore(key, model, canonicalConstraint, canonicalQuery);
+        }
+        return new QueryResult(canonicalQuery, entry.satisfied, entry.trace, System.nanoTime() - start);
+    }
+
+    /**
+     * Returns the verdict of a query on a compiled model, checking it and storing the verdict if it is not known yet.
+     * The digest of the model is computed once for successive checks of the same model.
+     *
+     * @param model
+     *            - compiled model to verify
+     * @param constraint
+     *            - the constraint applied to the model before verification against the query
+     * @param query
+     *            - the state formula to verify the model against
+     * @return the verdict and counterexample
+     * @throws IOException
+     *             if the store cannot be written
+     */
+    public synchronized QueryResult check(CompiledModel model, StateFormula constraint, StateFormula query)
+            throws IOException {
+        long start = System.nanoTime();
+        StateFormula canonicalConstraint = factory.intern(constraint);
+        StateFormula canonicalQuery = factory.intern(query);
+        ByteBuffer key = key(digest(model), canonicalConstraint, canonicalQuery);
+        Entry entry = lookup(key);
+        if (entry == null)
+            entry = checkAndStore(key, model, canonicalConstraint, canonicalQuery);
+        return new QueryResult(canonicalQuery, entry.satisfied, entry.trace, System.nanoTime() - start);
+    }
+
+    /**
+     * Returns the number of verdicts held by the store.
+     */
+    public synchronized int size() {
+        return verdicts.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Returns the size of the store file.
+     *
+     * @return number of bytes
+     * @throws IOException
+     *             if the size cannot be read
+     */
+    public synchronized long getFileSize() throws IOException {
+        return channel.size();
+    }
+
+    /**
+     * Forces the records appended to the disk and closes the store file.
+     *
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            channel.force(true);
+        } finally {
+            channel.close();
+        }
+    }
+
+    private byte[] digest(CompiledModel model) {
+        if (model != lastModel) {
+            lastModelDigest = BinaryModelFormat.digest(model);
+            lastModel = model;
+        }
+        return lastModelDigest;
+    }
+
+    private ByteBuffer key(byte[] modelDigest, StateFormula constraint, StateFormula query) {
+        MessageDigest digest = sha256();
+        digest.update(modelDigest);
+        digest.update(formulaDigest(constraint));
+        digest.update(formulaDigest(query));
+        return ByteBuffer.wrap(digest.digest());
+    }
+
+    private byte[] formulaDigest(StateFormula canonical) {
+        byte[] digest = formulaDigests.get(canonical);
+        if (digest == null) {
+            digest = sha256().digest(FormulaGenerator.toJson(canonical).getBytes(StandardCharsets.UTF_8));
+            formulaDigests.put(canonical, digest);
+        }
+        return digest;
+    }
+
+    /**
+     * Looks up a verdict, recording the use with a touch record so that the order of eviction survives the store.
+     */
+    private Entry lookup(ByteBuffer key) throws IOException {
+        Entry entry = verdicts.get(key);
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        Record touch = new Record(TOUCH);
+        touch.out.write(key.array(), key.arrayOffset(), DIGEST_SIZE);
+        append(touch.toByteArray());
+        return entry;
+    }
+
+    private Entry checkAndStore(ByteBuffer key, CompiledModel model, StateFormula constraint, StateFormula query)
+            throws IOException {
+        boolean satisfied = checker.check(model, constraint, query);
+        byte[] record = encodeVerdict(key, satisfied, checker.getCounterexample());
+        Entry entry = new Entry(satisfied, checker.getCounterexample(), record.length);
+        put(key, entry);
+        append(record);
+        return entry;
+    }
+
+    /**
+     * Adds a verdict, evicting the least recently used ones over the size of the store.
+     */
+    private void put(ByteBuffer key, Entry entry) {
+        Entry previous = verdicts.put(key, entry);
+        if (previous != null) {
+            verdictBytes -= previous.bytes;
+            liveBytes -= previous.bytes;
+        }
+        verdictBytes += entry.bytes;
+        liveBytes += entry.bytes;
+
+        Iterator<Entry> eldest = verdicts.values().iterator();
+        while (verdictBytes > maxBytes && eldest.hasNext()) {
+            Entry evicted = eldest.next();
+            if (evicted == entry)
+                break;
+            eldest.remove();
+            verdictBytes -= evicted.bytes;
+            liveBytes -= evicted.bytes;
+        }
+    }
+
+    private void putModelFile(ModelFile file, int bytes) {
+        ModelFile previous = modelFiles.put(file.name, file);
+        if (previous != null)
+            liveBytes -= previous.bytes;
+        file.bytes = bytes;
+        liveBytes += bytes;
+        modelDigests.put(ByteBuffer.wrap(file.fileDigest), file.modelDigest);
+    }
+
+    /**
+     * Appends a record to the file, its content being already in memory, then compacts the file if dead records make
+     * up more than half of it.
+     */
+    private void append(byte[] record) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(record);
+        long position = channel.size();
+        while (buffer.hasRemaining())
+            position += channel.write(buffer, position);
+
+        if (position > HEADER_SIZE + 2 * liveBytes + BUFFER_SIZE)
+            compact();
+    }
+
+    /**
+     * Reads the records of the file, stopping at the first incomplete or corrupt one and truncating the file there.
+     */
+    private void load() throws IOException {
+        long size = channel.size();
+        if (size < HEADER_SIZE) {
+            channel.truncate(0);
+            channel.write(header(), 0);
+            return;
+        }
+
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel.position(0)),
+                BUFFER_SIZE));
+        if (in.readInt() != MAGIC)
+            throw new IOException(path + " is not a verdict store");
+        int version = in.readInt();
+        if (version != VERSION)
+            throw new IOException("Unsupported verdict store version " + version);
+
+        long position = HEADER_SIZE;
+        while (position + 4 <= size) {
+            int length = in.readInt();
+            if (length < 1 || position + 4 + length + 4 > size)
+                break;
+            byte[] content = new byte[length];
+            in.readFully(content);
+            int checksum = in.readInt();
+            if (checksum != checksum(content, 0, length))
+                break;
+
+            ByteBuffer payload = ByteBuffer.wrap(content, 1, length - 1);
+            int bytes = 4 + length + 4;
+            if (content[0] == VERDICT) {
+                byte[] key = new byte[DIGEST_SIZE];
+                payload.get(key);
+                put(ByteBuffer.wrap(key), decodeVerdict(payload, bytes));
+            } else if (content[0] == TOUCH) {
+                verdicts.get(ByteBuffer.wrap(content, 1, DIGEST_SIZE));
+            } else if (content[0] == MODEL_FILE) {
+                putModelFile(decodeModelFile(payload), bytes);
+            } else {
+                break;
+            }
+            position += bytes;
+        }
+
+        if (position < size)
+            channel.truncate(position);
+        if (channel.size() > HEADER_SIZE + 2 * liveBytes + BUFFER_SIZE)
+            compact();
+    }
+
+    /**
+     * Writes the live records to a new file, the verdicts from the least to the most recently used, and atomically
+     * replaces the store file with it.
+     */
+    private void compact() throws IOException {
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            List<byte[]> records = new ArrayList<>();
+            for (ModelFile file : modelFiles.values())
+                records.add(encodeModelFile(file));
+            for (Map.Entry<ByteBuffer, Entry> verdict : verdicts.entrySet())
+                records.add(encodeVerdict(verdict.getKey(), verdict.getValue().satisfied, verdict.getValue().trace));
+
+            long position = out.write(header(), 0);
+            for (byte[] record : records) {
+                ByteBuffer buffer = ByteBuffer.wrap(record);
+                while (buffer.hasRemaining())
+                    position += out.write(buffer, position);
+            }
+            out.force(true);
+        }
+
+        // The records of the old file reach the disk first, in case the rename does not:
+        channel.force(true);
+        channel.close();
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    private static ByteBuffer header() {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).flip();
+        return header;
+    }
+
+    private static byte[] encodeVerdict(ByteBuffer key, boolean satisfied, Trace trace) throws IOException {
+        Record record = new Record(VERDICT);
+        record.out.write(key.array(), key.arrayOffset(), DIGEST_SIZE);
+        record.out.writeBoolean(satisfied);
+        if (trace == null) {
+            record.out.writeInt(-1);
+            return record.toByteArray();
+        }
+
+        String[] states = trace.getStates();
+        record.out.writeInt(states.length);
+        for (String state : states)
+            record.out.writeUTF(state);
+        record.out.writeInt(trace.getLoopStart());
+        record.out.writeInt(trace.getActions().size());
+        for (Set<String> actions : trace.getActions()) {
+            record.out.writeInt(actions.size());
+            for (String action : new TreeSet<>(actions))
+                record.out.writeUTF(action);
+        }
+        return record.toByteArray();
+    }
+
+    private static Entry decodeVerdict(ByteBuffer payload, int bytes) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload.array(), payload.position(),
+                payload.remaining()));
+        boolean satisfied = in.readBoolean();
+        int stateCount = in.readInt();
+        if (stateCount < 0)
+            return new Entry(satisfied, null, bytes);
+
+        String[] states = new String[stateCount];
+        for (int i = 0; i < stateCount; i++)
+            states[i] = in.readUTF();
+        int loopStart = in.readInt();
+        List<Set<String>> steps = new ArrayList<>();
+        for (int step = in.readInt(); step > 0; step--) {
+            Set<String> actions = new HashSet<>();
+            for (int count = in.readInt(); count > 0; count--)
+                actions.add(in.readUTF());
+            steps.add(actions);
+        }
+        return new Entry(satisfied, new Trace(states, steps, loopStart), bytes);
+    }
+
+    private static byte[] encodeModelFile(ModelFile file) throws IOException {
+        Record record = new Record(MODEL_FILE);
+        record.out.writeUTF(file.name);
+        record.out.writeLong(file.length);
+        record.out.writeLong(file.modified);
+        record.out.write(file.fileDigest);
+        record.out.write(file.modelDigest);
+        return record.toByteArray();
+    }
+
+    private static ModelFile decodeModelFile(ByteBuffer payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload.array(), payload.position(),
+                payload.remaining()));
+        String name = in.readUTF();
+        long length = in.readLong();
+        long modified = in.readLong();
+        byte[] fileDigest = new byte[DIGEST_SIZE];
+        in.readFully(fileDigest);
+        byte[] modelDigest = new byte[DIGEST_SIZE];
+        in.readFully(modelDigest);
+        return new ModelFile(name, length, modified, fileDigest, modelDigest);
+    }
+
+    private static int checksum(byte[] bytes, int offset, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, offset, length);
+        return (int) crc.getValue();
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to provide SHA-256:
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * A record being encoded: its length, its type and content, then the CRC32 of the type and content.
+     */
+    private static class Record {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+
+        Record(byte type) throws IOException {
+            out.writeInt(0);
+            out.writeByte(type);
+        }
+
+        byte[] toByteArray() throws IOException {
+            out.writeInt(0);
+            byte[] record = bytes.toByteArray();
+            int length = record.length - 8;
+            ByteBuffer.wrap(record).putInt(0, length).putInt(record.length - 4, checksum(record, 4, length));
+            return record;
+        }
+    }
+
+    private static class Entry {
+        final boolean satisfied;
+        final Trace trace;
+        final int bytes;
+
+        Entry(boolean satisfied, Trace trace, int bytes) {
+            this.satisfied = satisfied;
+            this.trace = trace;
+            this.bytes = bytes;
+        }
+    }
+
+    private static class ModelFile {
+        final String name;
+        final long length;
+        final long modified;
+        final byte[] fileDigest;
+        final byte[] modelDigest;
+        int bytes;
+
+        ModelFile(String name, long length, long modified, byte[] fileDigest, byte[] modelDigest) {
+            this.name = name;
+            this.length = length;
+            this.modified = modified;
+            this.fileDigest = fileDigest;
+            this.modelDigest = modelDigest;
+        }
+    }
+
+}
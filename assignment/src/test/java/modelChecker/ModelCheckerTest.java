@@ -2,15 +2,47 @@ package modelChecker;
 
 import static org.junit.Assert.*;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
 
 import org.junit.Test;
 
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import formula.FormulaFactory;
+import formula.FormulaGenerator;
 import formula.FormulaParser;
 import formula.stateFormula.StateFormula;
 import modelChecker.ModelChecker;
 import modelChecker.SimpleModelChecker;
+import model.BinaryModelFormat;
+import model.BisimulationQuotient;
+import model.CompiledModel;
+import model.EdgeSet;
+import model.ImplicitModel;
 import model.Model;
+import model.ModelDelta;
+import model.ModelGenerator;
+import model.ModelLoader;
+import model.ReachabilityPruning;
+import model.RestrictedModel;
+import model.StateSpace;
+import model.StateSet;
+import model.Transition;
 import org.junit.rules.ExpectedException;
 
 public class ModelCheckerTest {
@@ -247,4 +279,1217 @@ public class ModelCheckerTest {
     }
 
 
+    /**
+     * Tests complement, iteration and equality of state sets on either side of the 64 bit words
+     */
+    @Test
+    public void stateSetTest() {
+        // Sizes on either side of the 64 bit words, where the bits past the last state must stay clear:
+        for (int size : new int[] { 1, 63, 64, 65, 130 }) {
+            StateSet full = StateSet.full(size);
+            assertEquals(size, full.cardinality());
+            assertEquals(full, new StateSet(size).complement());
+            assertEquals(full.hashCode(), new StateSet(size).complement().hashCode());
+            assertTrue(full.copy().complement().isEmpty());
+
+            StateSet set = new StateSet(size);
+            List<Integer> states = new ArrayList<>();
+            for (int state : new int[] { 0, 1, 62, 63, 64, 65, 127, 128, size - 1 }) {
+                if (state < size && !states.contains(state)) {
+                    set.add(state);
+                    states.add(state);
+                }
+            }
+            Collections.sort(states);
+
+            // Iteration crosses word boundaries and stops at the last state:
+            List<Integer> iterated = new ArrayList<>();
+            for (int s = set.nextState(0); s >= 0; s = set.nextState(s + 1))
+                iterated.add(s);
+            assertEquals(states, iterated);
+            assertEquals(-1, set.nextState(size));
+
+            StateSet complement = set.copy().complement();
+            assertEquals(size - states.size(), complement.cardinality());
+            for (int s = complement.nextState(0); s >= 0; s = complement.nextState(s + 1)) {
+                assertTrue(s < size);
+                assertFalse(set.contains(s));
+            }
+            assertEquals(set, complement.complement());
+        }
+    }
+
+    /**
+     * Tests the forward and reverse adjacency of the compiled mutual exclusion model against its transitions
+     */
+    @Test
+    public void compiledAdjacencyTest() {
+        try {
+            Model model = Model.parseModel("src/test/resources/myTests/MutualModel.json");
+            CompiledModel compiled = CompiledModel.compile(model);
+            assertEquals(model.getTransitions().length, compiled.getEdgeCount());
+
+            // Forward and reverse adjacency list the transitions of the model, in their order for the forward one:
+            for (int s = 0; s < compiled.getStateCount(); s++) {
+                String name = compiled.getStateName(s);
+                List<String> outgoing = new ArrayList<>();
+                List<String> incoming = new ArrayList<>();
+                for (Transition transition : model.getTransitions()) {
+                    String actions = new TreeSet<>(Arrays.asList(transition.getActions())).toString();
+                    if (transition.getSource().equals(name))
+                        outgoing.add(transition.getTarget() + actions);
+                    if (transition.getTarget().equals(name))
+                        incoming.add(transition.getSource() + actions);
+                }
+
+                List<String> forward = new ArrayList<>();
+                for (int e = compiled.outBegin(s); e < compiled.outEnd(s); e++)
+                    forward.add(compiled.getStateName(compiled.target(e)) + actionNames(compiled, e));
+                assertEquals(outgoing, forward);
+                assertEquals(outgoing.size(), compiled.outDegree(s));
+
+                List<String> reverse = new ArrayList<>();
+                for (int i = compiled.inBegin(s); i < compiled.inEnd(s); i++) {
+                    int edge = compiled.inEdge(i);
+                    assertEquals(s, compiled.target(edge));
+                    assertTrue(edge >= compiled.outBegin(compiled.inSource(i)));
+                    assertTrue(edge < compiled.outEnd(compiled.inSource(i)));
+                    reverse.add(compiled.getStateName(compiled.inSource(i)) + actionNames(compiled, edge));
+                }
+                Collections.sort(incoming);
+                Collections.sort(reverse);
+                assertEquals(incoming, reverse);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            fail(e.toString());
+        }
+    }
+
+    private static String actionNames(CompiledModel model, int edge) {
+        Set<String> names = new TreeSet<>();
+        for (int action : model.getActionSetActions(model.actionSet(edge)))
+            names.add(model.getActionName(action));
+        return names.toString();
+    }
+
+    /**
+     * Tests that the fixpoints computed in parallel give the verdicts and traces of the sequential checker
+     */
+    @Test
+    public void parallelFixpointTest() {
+        try {
+            // Without a threshold, the fixpoints of the small models are computed on four threads:
+            FixpointModelChecker sequential = new FixpointModelChecker();
+            FixpointModelChecker parallel = new FixpointModelChecker(4, 0);
+            StateFormula trueConstraint = new FormulaParser("src/test/resources/myTests/TrueConstraint.json").parse();
+
+            Model mutual = Model.parseModel("src/test/resources/myTests/MutualModel.json");
+            for (int i = 1; i <= 10; i++) {
+                StateFormula query = new FormulaParser("src/test/resources/myTests/MutualCTL" + i + ".json").parse();
+                assertEquals(sequential.check(mutual, trueConstraint, query),
+                        parallel.check(mutual, trueConstraint, query));
+                assertArrayEquals(sequential.getTrace(), parallel.getTrace());
+            }
+
+            Model chain = Model.parseModel("src/test/resources/myTests/LongChainModel.json");
+            StateFormula query = new FormulaParser("src/test/resources/myTests/AlwaysP.json").parse();
+            assertFalse(sequential.check(chain, trueConstraint, query));
+            assertFalse(parallel.check(chain, trueConstraint, query));
+            assertArrayEquals(sequential.getTrace(), parallel.getTrace());
+        } catch (IOException e) {
+            e.printStackTrace();
+            fail(e.toString());
+        }
+    }
+
+    /**
+     * Tests that subformulas evaluated concurrently give the verdicts and traces of the sequential checker
+     */
+    @Test
+    public void parallelDagTest() {
+        try {
+            // Without a threshold, the independent subformulas of the small model are evaluated on four threads:
+            Model model = Model.parseModel("src/test/resources/myTests/MutualModel.json");
+            FixpointModelChecker sequential = new FixpointModelChecker();
+            FixpointModelChecker parallel = new FixpointModelChecker(4, 0);
+            StateFormula constraint = FormulaParser.parseRawFormulaString("!p3");
+
+            // The subformula EF(p2 && EX q2) occurs twice in the first query and once in the others:
+            String[] queries = { "(EF(p2 && EX q2) && AG(EF(p2 && EX q2) || (q3 && AX p1)))",
+                    "(A(q1 U EF(p2 && EX q2)) || EG(!p1 && EF y))", "AG(EF(p2 && EX q2))" };
+            for (String formula : queries) {
+                StateFormula query = FormulaParser.parseRawFormulaString(formula);
+                assertEquals(sequential.check(model, constraint, query), parallel.check(model, constraint, query));
+                assertArrayEquals(sequential.getTrace(), parallel.getTrace());
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            fail(e.toString());
+        }
+    }
+
+    /**
+     * Tests that the fixpoint checker restricts the model to the states satisfying the constraint
+     */
+    @Test
+    public void fixpointConstraintTest() {
+        try {
+            Model model = Model.parseModel("src/test/resources/givenTests/model1.json");
+            StateFormula fairnessConstraint = new FormulaParser("src/test/resources/myTests/pORq.json").parse();
+            StateFormula query = new FormulaParser("src/test/resources/myTests/existsPuntilR.json").parse();
+
+            ModelChecker mc = new FixpointModelChecker();
+
+            assertFalse(mc.check(model, fairnessConstraint, query));
+        } catch (IOException e) {
+            e.printStackTrace();
+            fail(e.toString());
+        }
+    }
+
+    /**
+     * Tests the action restricted until of the fixpoint checker on the mutual exclusion model
+     */
+    @Test
+    public void fixpointMutualExclusionTest() {
+        try {
+            Model model = Model.parseModel("src/test/resources/myTests/MutualModel.json");
+            StateFormula fairnessConstraint = new FormulaParser("src/test/resources/myTests/TrueConstraint.json").parse();
+            StateFormula query = new FormulaParser("src/test/resources/myTests/MutualCTL5.json").parse();
+
+            ModelChecker mc = new FixpointModelChecker();
+
+            assertTrue(mc.check(model, fairnessConstraint, query));
+        } catch (IOException e) {
+            e.printStackTrace();
+            fail(e.toString());
+        }
+    }
+
+    /**
+     * Tests that states which can never be reached are decided rather than assumed to hold
+     */
+    @Test
+    public void fixpointUnreachableTest() {
+        try {
+            Model model = Model.parseModel("src/test/resources/myTests/MutualModel.json");
+            StateFormula fairnessConstraint = new FormulaParser("src/test/resources/myTests/TrueConstraint.json").parse();
+            StateFormula query = new FormulaParser("src/test/resources/myTests/MutualCTL8.json").parse();
+
+            ModelChecker mc = new FixpointModelChecker();
+
+            assertFalse(mc.check(model, fairnessConstraint, query));
+        } catch (IOException e) {
+            e.printStackTrace();
+            fail(e.toString());
+        }
+    }
+
+    /**
+     * Tests that a violation more than a thousand steps away from the initial state is found
+     */
+    @Test
+    public void fixpointLongPathTest() {
+        try {
+            Model model = Model.parseModel("src/test/resources/myTests/LongChainModel.json");
+            StateFormula fairnessConstraint = new FormulaParser("src/test/resources/myTests/TrueConstraint.json").parse();
+            StateFormula query = new FormulaParser("src/test/resources/myTests/AlwaysP.json").parse();
+
+            ModelChecker mc = new FixpointModelChecker();
+
+            assertFalse(mc.check(model, fairnessConstraint, query));
+            // The counterexample follows the whole chain down to the state violating p:
+            String[] trace = mc.getTrace();
+            assertEquals(1100, trace.length);
+            assertEquals("s0", trace[0]);
+            assertEquals("s1099", trace[1099]);
+        } catch (IOException e) {
+            e.printStackTrace();
+            fail(e.toString());
+        }
+    }
+
+    /**
+     * Tests that a model loaded by streaming its JSON is compiled completely and can be checked
+     */
+    @Test
+    public void streamingLoaderTest() {
+        try {
+            ModelLoader loader = new ModelLoader();
+            CompiledModel model = loader.load("src/test/resources/myTests/MutualModel.json");
+            StateFormula fairnessConstraint = new FormulaParser("src/test/resources/myTests/TrueConstraint.json").parse();
+            StateFormula query = new FormulaParser("src/test/resources/myTests/MutualCTL1.json").parse();
+
+            assertEquals(8, model.getStateCount());
+            assertEquals(14, model.getEdgeCount());
+            assertTrue(loader.getBytesRead() > 0);
+            assertTrue(new FixpointModelChecker().check(model, fairnessConstraint, query));
+        } catch (IOException e) {
+            e.printStackTrace();
+            fail(e.toString());
+        }
+    }
+
+    /**
+     * Tests that a model written in the binary format reads back to the same model
+     */
+    @Test
+    public void binaryFormatTest() {
+        try {
+            CompiledModel model = new ModelLoader().load("src/test/resources/myTests/MutualModel.json");
+            File file = File.createTempFile("MutualModel", ".bin");
+            file.deleteOnExit();
+            BinaryModelFormat.write(model, file.getPath());
+
+            CompiledModel read = BinaryModelFormat.read(file.getPath());
+            StateFormula fairnessConstraint = new FormulaParser("src/test/resources/myTests/TrueConstraint.json").parse();
+            StateFormula query = new FormulaParser("src/test/resources/myTests/MutualCTL5.json").parse();
+
+            assertEquals(model.getStateCount(), read.getStateCount());
+            assertEquals(model.getEdgeCount(), read.getEdgeCount());
+            assertEquals(model.getStateName(7), read.getStateName(7));
+            assertEquals(5, read.getStateId("s5"));
+            assertArrayEquals(model.getLabels(4), read.getLabels(4));
+            assertTrue(new FixpointModelChecker().check(read, fairnessConstraint, query));
+        } catch (IOException e) {
+            e.printStackTrace();
+            fail(e.toString());
+        }
+    }
+
+    /**
+     * Tests that the label index holds exactly the states carrying each label, in a loaded model and in its binary copy
+     */
+    @Test
+    public void labelIndexTest() {
+        try {
+            CompiledModel model = new ModelLoader().load("src/test/resources/myTests/MutualModel.json");
+            File file = File.createTempFile("MutualModel", ".bin");
+            file.deleteOnExit();
+            BinaryModelFormat.write(model, file.getPath());
+            CompiledModel read = BinaryModelFormat.read(file.getPath());
+
+            // The label index holds exactly the states whose labels contain each atomic proposition:
+            for (CompiledModel compiled : Arrays.asList(model, read)) {
+                for (int label = 0; label < compiled.getLabelCount(); label++) {
+                    StateSet labelled = compiled.getLabelStates(label);
+                    for (int s = 0; s < compiled.getStateCount(); s++) {
+                        boolean carries = Arrays.asList(compiled.getLabels(s)).contains(compiled.getLabelName(label));
+                        assertEquals(carries, labelled.contains(s));
+                        assertEquals(carries, compiled.hasLabel(s, label));
+                    }
+                }
+            }
+            assertEquals(-1, model.getLabelId("unknown"));
+        } catch (IOException e) {
+            e.printStackTrace();
+            fail(e.toString());
+        }
+    }
+
+    /**
+     * Tests the inverted action index, and the edge masks built from it for sets of actions
+     */
+    @Test
+    public void actionIndexTest() {
+        CompiledModel.Builder builder = new CompiledModel.Builder();
+        builder.addState("s0", true, new String[] { "p" });
+        builder.addState("s1", false, new String[] { "q" });
+        builder.addTransition("s0", "s1", new String[] { "a", "b" });
+        builder.addTransition("s0", "s0", new String[] { "c" });
+        builder.addTransition("s1", "s0", new String[] { "b" });
+        builder.addTransition("s1", "s1", null);
+        CompiledModel model = builder.build();
+
+        // Edges are numbered by source, the inverted index lists the edges and sources of each action:
+        int b = model.getActionId("b");
+        assertEquals(2, model.actionEdgesEnd(b) - model.actionEdgesBegin(b));
+        assertEquals(0, model.actionEdge(model.actionEdgesBegin(b)));
+        assertEquals(1, model.actionEdgeSource(model.actionEdgesBegin(b) + 1));
+
+        EdgeSet allowed = model.getAllowedEdges(new HashSet<>(Arrays.asList("b", "c")));
+        assertEquals(3, allowed.cardinality());
+        assertFalse(allowed.contains(3));
+        assertSame(allowed, model.getAllowedEdges(new HashSet<>(Arrays.asList("c", "b"))));
+        assertEquals(4, model.getAllowedEdges(Collections.<String> emptySet()).cardinality());
+        assertTrue(model.getAllowedEdges(Collections.singleton("d")).isEmpty());
+    }
+
+    /**
+     * Tests that a model deserialised by Gson directly numbers its states and transitions and gets the verdicts of a
+     * parsed one
+     */
+    @Test
+    public void deserializedModelTest() {
+        try {
+            // A model read by Gson directly numbers its states and transitions on first use:
+            String modelPath = "src/test/resources/myTests/MutualModel.json";
+            Model deserialized;
+            try (FileReader reader = new FileReader(modelPath)) {
+                deserialized = new Gson().fromJson(reader, Model.class);
+            }
+            Model parsed = Model.parseModel(modelPath);
+            for (int i = 0; i < deserialized.getTransitions().length; i++)
+                assertEquals(i, deserialized.getTransitions()[i].getId());
+            assertEquals(7, deserialized.getStates()[7].getId());
+
+            StateFormula trueConstraint = FormulaParser.parseRawFormulaString("TRUE");
+            for (int i = 1; i <= 10; i++) {
+                String formulaPath = "src/test/resources/myTests/MutualCTL" + i + ".json";
+                SimpleModelChecker expected = new SimpleModelChecker();
+                SimpleModelChecker actual = new SimpleModelChecker();
+                assertEquals(expected.check(parsed, trueConstraint, new FormulaParser(formulaPath).parse()),
+                        actual.check(deserialized, trueConstraint, new FormulaParser(formulaPath).parse()));
+                assertArrayEquals(expected.getTrace(), actual.getTrace());
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            fail(e.toString());
+        }
+    }
+
+    /**
+     * Tests that resized state sets keep their states on either side of the 64 bit words
+     */
+    @Test
+    public void stateSetResizeTest() {
+        for (int size : new int[] { 1, 63, 64, 65, 130 }) {
+            StateSet set = new StateSet(size);
+            List<Integer> states = new ArrayList<>();
+            for (int state : new int[] { 0, 1, 62, 63, 64, 65, 127, 128, size - 1 }) {
+                if (state < size && !states.contains(state)) {
+                    set.add(state);
+                    states.add(state);
+                }
+            }
+
+            // A resized set keeps its states, and the new ids are outside it and in its complement:
+            StateSet resized = set.resize(size + 70);
+            assertEquals(size + 70, resized.size());
+            assertEquals(states.size(), resized.cardinality());
+            for (int state : states)
+                assertTrue(resized.contains(state));
+            assertEquals(-1, resized.nextState(size));
+            assertEquals(size + 70 - states.size(), resized.copy().complement().cardinality());
+            assertEquals(set, set.resize(size));
+            try {
+                set.resize(size - 1);
+                fail("A set cannot shrink");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    /**
+     * Tests the pre-images of every set of states of the mutual exclusion model against their definitions
+     */
+    @Test
+    public void preImageDefinitionTest() {
+        try {
+            Model model = Model.parseModel("src/test/resources/myTests/MutualModel.json");
+            CompiledModel compiled = CompiledModel.compile(model);
+
+            // The pre-images match their definitions for every set of targets, on the model and on a restricted view:
+            StateSet kept = StateSet.full(compiled.getStateCount());
+            kept.remove(compiled.getStateId("s3"));
+            RestrictedModel view = RestrictedModel.of(compiled).restrictStates(kept);
+            EdgeSet[] masks = { compiled.getAllowedEdges(Collections.<String> emptySet()),
+                    compiled.getAllowedEdges(new HashSet<>(Arrays.asList("act1", "act2", "act5"))) };
+            for (int subset = 0; subset < 1 << compiled.getStateCount(); subset++) {
+                StateSet targets = new StateSet(compiled.getStateCount());
+                for (int s = 0; s < compiled.getStateCount(); s++) {
+                    if ((subset & 1 << s) != 0)
+                        targets.add(s);
+                }
+                for (EdgeSet mask : masks) {
+                    StateSet exists = new StateSet(compiled.getStateCount());
+                    StateSet forAll = new StateSet(compiled.getStateCount());
+                    StateSet viewExists = new StateSet(compiled.getStateCount());
+                    StateSet viewForAll = new StateSet(compiled.getStateCount());
+                    for (int s = 0; s < compiled.getStateCount(); s++) {
+                        boolean all = true, viewAll = true;
+                        int viewDegree = 0;
+                        for (int e = compiled.outBegin(s); e < compiled.outEnd(s); e++) {
+                            boolean step = mask.contains(e) && targets.contains(compiled.target(e));
+                            if (step)
+                                exists.add(s);
+                            all &= step;
+                            if (view.containsEdge(e)) {
+                                viewDegree++;
+                                if (step)
+                                    viewExists.add(s);
+                                viewAll &= step;
+                            }
+                        }
+                        if (all && compiled.outDegree(s) > 0)
+                            forAll.add(s);
+                        if (viewAll && viewDegree > 0)
+                            viewForAll.add(s);
+                    }
+                    assertEquals(exists, compiled.preExists(targets, mask));
+                    assertEquals(forAll, compiled.preForAll(targets, mask));
+                    assertEquals(viewExists, view.preExists(targets, mask));
+                    assertEquals(viewForAll, view.preForAll(targets, mask));
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            fail(e.toString());
+        }
+    }
+
+    /**
+     * Tests the existential and universal pre-images on a small model, with and without actions and a restriction
+     */
+    @Test
+    public void preImageTest() {
+        // s0 steps to s1 on a and to s2 on b, s1 steps to s2 on a, s2 has no step:
+        CompiledModel.Builder builder = new CompiledModel.Builder();
+        builder.addState("s0", true, new String[] {});
+        builder.addState("s1", false, new String[] {});
+        builder.addState("s2", false, new String[] {});
+        builder.addTransition("s0", "s1", new String[] { "a" });
+        builder.addTransition("s0", "s2", new String[] { "b" });
+        builder.addTransition("s1", "s2", new String[] { "a" });
+        CompiledModel model = builder.build();
+        EdgeSet any = model.getAllowedEdges(Collections.<String> emptySet());
+        EdgeSet a = model.getAllowedEdges(Collections.singleton("a"));
+
+        StateSet targets = new StateSet(3);
+        targets.add(2);
+        assertEquals("{0, 1}", model.preExists(targets, any).toString());
+        assertEquals("{1}", model.preExists(targets, a).toString());
+        assertEquals("{1}", model.preForAll(targets, any).toString());
+        targets.add(1);
+        assertEquals("{0, 1}", model.preForAll(targets, any).toString());
+        assertEquals("{1}", model.preForAll(targets, a).toString());
+
+        // Without s1, the only step left to s0 is its b-step into s2:
+        StateSet kept = StateSet.full(3);
+        kept.remove(1);
+        RestrictedModel view = RestrictedModel.of(model).restrictStates(kept);
+        assertEquals("{0}", view.preForAll(targets, any).toString());
+        assertEquals("{}", view.preForAll(targets, a).toString());
+        assertEquals("{0}", view.preExists(targets, any).toString());
+    }
+
+    /**
+     * Tests that interned formulas are shared by structure, and that a checker reusing its cache keeps its verdicts
+     */
+    @Test
+    public void formulaFactoryTest() {
+        try {
+            FormulaFactory factory = new FormulaFactory();
+            StateFormula first = factory.intern(new FormulaParser("src/test/resources/myTests/MutualCTL5.json").parse());
+            StateFormula second = factory.intern(new FormulaParser("src/test/resources/myTests/MutualCTL5.json").parse());
+            StateFormula other = factory.intern(new FormulaParser("src/test/resources/myTests/MutualCTL8.json").parse());
+
+            assertSame(first, second);
+            assertNotSame(first, other);
+            assertEquals(factory.getId(first), factory.getId(second));
+            assertSame(factory.atomic("p"), factory.intern(FormulaParser.parseRawFormulaString("p")));
+
+            // A checker reusing its cache on the same model still gives the same verdicts:
+            Model model = Model.parseModel("src/test/resources/myTests/MutualModel.json");
+            StateFormula fairnessConstraint = new FormulaParser("src/test/resources/myTests/TrueConstraint.json").parse();
+            FixpointModelChecker mc = new FixpointModelChecker();
+            CompiledModel compiled = CompiledModel.compile(model);
+            assertTrue(mc.check(compiled, fairnessConstraint, first));
+            assertFalse(mc.check(compiled, fairnessConstraint, other));
+            assertTrue(mc.check(compiled, fairnessConstraint, second));
+        } catch (IOException e) {
+            e.printStackTrace();
+            fail(e.toString());
+        }
+    }
+
+    /**
+     * Tests that a checking session gives the verdicts and traces of single checks, to concurrent submitters too
+     */
+    @Test
+    public void checkingSessionTest() {
+        try {
+            CompiledModel model = new ModelLoader().load("src/test/resources/myTests/MutualModel.json");
+            StateFormula fairnessConstraint = new FormulaParser("src/test/resources/myTests/TrueConstraint.json").parse();
+            List<StateFormula> queries = new ArrayList<>();
+            for (int i = 1; i <= 10; i++)
+                queries.add(new FormulaParser("src/test/resources/myTests/MutualCTL" + i + ".json").parse());
+
+            CheckingSession session = new CheckingSession(model, fairnessConstraint);
+            List<QueryResult> results = session.checkAll(queries);
+
+            // Every verdict matches a single check, and concurrent submitters get the same ones:
+            List<Thread> threads = new ArrayList<>();
+            List<QueryResult> concurrent = Collections.synchronizedList(new ArrayList<QueryResult>());
+            for (int t = 0; t < 4; t++) {
+                Thread thread = new Thread(() -> concurrent.addAll(session.checkAll(queries)));
+                threads.add(thread);
+                thread.start();
+            }
+            for (Thread thread : threads)
+                thread.join();
+
+            for (int i = 0; i < queries.size(); i++) {
+                FixpointModelChecker mc = new FixpointModelChecker();
+                boolean expected = mc.check(model, fairnessConstraint, queries.get(i));
+                assertEquals(expected, results.get(i).isSatisfied());
+                assertArrayEquals(mc.getTrace(), results.get(i).getTrace());
+                for (QueryResult result : concurrent) {
+                    if (result.getQuery() == results.get(i).getQuery())
+                        assertEquals(expected, result.isSatisfied());
+                }
+            }
+            assertEquals(4 * queries.size(), concurrent.size());
+        } catch (IOException | InterruptedException e) {
+            e.printStackTrace();
+            fail(e.toString());
+        }
+    }
+
+    /**
+     * Tests that restricted views leave out the removed states and their edges without changing the compiled model
+     */
+    @Test
+    public void restrictedModelTest() {
+        try {
+            CompiledModel model = new ModelLoader().load("src/test/resources/myTests/MutualModel.json");
+            StateSet kept = StateSet.full(model.getStateCount());
+            kept.remove(model.getStateId("s1"));
+
+            RestrictedModel full = RestrictedModel.of(model);
+            RestrictedModel view = full.restrictStates(kept);
+
+            assertEquals(model.getStateCount(), full.getStateCount());
+            assertEquals(model.getEdgeCount(), full.getEdgeCount());
+            assertEquals(model.getStateCount() - 1, view.getStateCount());
+            assertFalse(view.containsState(model.getStateId("s1")));
+            for (int e = model.outBegin(model.getStateId("s1")); e < model.outEnd(model.getStateId("s1")); e++)
+                assertFalse(view.containsEdge(e));
+
+            // Sessions with different constraints share the compiled model without changing it:
+            StateFormula trueConstraint = new FormulaParser("src/test/resources/myTests/TrueConstraint.json").parse();
+            StateFormula query = new FormulaParser("src/test/resources/myTests/MutualCTL5.json").parse();
+            CheckingSession restricted = new CheckingSession(model, FormulaParser.parseRawFormulaString("!y"));
+            CheckingSession unrestricted = new CheckingSession(model, trueConstraint);
+            assertTrue(restricted.getView().getStateCount() < model.getStateCount());
+            assertEquals(model.getStateCount(), unrestricted.getView().getStateCount());
+            assertEquals(new FixpointModelChecker().check(model, trueConstraint, query),
+                    unrestricted.check(query).isSatisfied());
+        } catch (IOException e) {
+            e.printStackTrace();
+            fail(e.toString());
+        }
+    }
+
+    /**
+     * Tests that fairness constraints restrict the path quantifiers to the paths visiting their states infinitely often
+     */
+    @Test
+    public void fairnessTest() {
+        try {
+            CompiledModel model = new ModelLoader().load("src/test/resources/myTests/FairModel.json");
+            StateFormula fairnessConstraint = new FormulaParser("src/test/resources/myTests/TrueConstraint.json").parse();
+            StateFormula query = FormulaParser.parseRawFormulaString("AF done");
+            FixpointModelChecker mc = new FixpointModelChecker();
+
+            // Waiting forever violates the query, unless only the paths reaching done infinitely often are fair:
+            assertFalse(mc.check(model, fairnessConstraint, query));
+            assertTrue(mc.check(model, fairnessConstraint, new FairnessConstraint(FormulaParser.parseRawFormulaString("done")), query));
+            assertFalse(mc.check(model, fairnessConstraint, new FairnessConstraint(FormulaParser.parseRawFormulaString("waiting")), query));
+            assertTrue(mc.check(model, fairnessConstraint, new FairnessConstraint(FormulaParser.parseRawFormulaString("waiting")),
+                    FormulaParser.parseRawFormulaString("EG waiting")));
+            assertFalse(mc.check(model, fairnessConstraint, new FairnessConstraint(FormulaParser.parseRawFormulaString("done")),
+                    FormulaParser.parseRawFormulaString("EG waiting")));
+        } catch (IOException e) {
+            e.printStackTrace();
+            fail(e.toString());
+        }
+    }
+
+    /**
+     * Tests that the simple checker explores a path longer than any recursion limit to its end
+     */
+    @Test
+    public void longPathTest() {
+        try {
+            // Paths longer than any recursion limit are explored to the end instead of being assumed to hold:
+            Model model = Model.parseModel("src/test/resources/myTests/LongChainModel.json");
+            StateFormula fairnessConstraint = new FormulaParser("src/test/resources/myTests/TrueConstraint.json").parse();
+            StateFormula query = FormulaParser.parseRawFormulaString("AG(!q)");
+
+            ModelChecker mc = new SimpleModelChecker();
+
+            assertFalse(mc.check(model, fairnessConstraint, query));
+        } catch (IOException e) {
+            e.printStackTrace();
+            fail(e.toString());
+        }
+    }
+
+    /**
+     * Tests that pruning drops the unreachable states and their edges and keeps the verdicts of the reachable states
+     */
+    @Test
+    public void reachabilityPruningTest() {
+        try {
+            CompiledModel.Builder builder = new CompiledModel.Builder();
+            builder.addState("s0", true, new String[] { "p" });
+            builder.addState("s1", false, new String[] { "q" });
+            builder.addState("s2", false, new String[] { "p" });
+            builder.addState("s3", false, new String[0]);
+            builder.addTransition("s0", "s1", new String[] { "a" });
+            builder.addTransition("s1", "s1", new String[] { "a" });
+            builder.addTransition("s2", "s3", new String[] { "b" });
+            builder.addTransition("s3", "s0", new String[] { "b" });
+            CompiledModel model = builder.build();
+
+            ReachabilityPruning pruning = ReachabilityPruning.prune(model);
+            CompiledModel pruned = pruning.getModel();
+
+            assertEquals(2, pruning.getDroppedStates());
+            assertEquals(2, pruning.getDroppedEdges());
+            assertEquals(-1, pruning.getPrunedId(model.getStateId("s2")));
+            assertEquals("s1", pruned.getStateName(pruning.getPrunedId(model.getStateId("s1"))));
+            assertArrayEquals(new String[] { "q" }, pruned.getLabels(pruned.getStateId("s1")));
+
+            StateFormula fairnessConstraint = new FormulaParser("src/test/resources/myTests/TrueConstraint.json").parse();
+            StateFormula query = FormulaParser.parseRawFormulaString("(p && AX q)");
+            assertTrue(new FixpointModelChecker().check(model, fairnessConstraint, query));
+            assertTrue(new FixpointModelChecker().check(pruned, fairnessConstraint, query));
+        } catch (IOException e) {
+            e.printStackTrace();
+            fail(e.toString());
+        }
+    }
+
+    /**
+     * Tests that bisimilar states are merged, that the quotient keeps the verdicts, and that its traces name original
+     * states
+     */
+    @Test
+    public void bisimulationTest() {
+        try {
+            // s1 and s2 behave alike, s5 looks like them but leaves with another action:
+            CompiledModel.Builder builder = new CompiledModel.Builder();
+            builder.addState("s0", true, new String[] { "p" });
+            builder.addState("s1", false, new String[] { "q" });
+            builder.addState("s2", false, new String[] { "q" });
+            builder.addState("s3", false, new String[] { "r" });
+            builder.addState("s4", false, new String[] { "r" });
+            builder.addState("s5", false, new String[] { "q" });
+            builder.addTransition("s0", "s1", new String[] { "a" });
+            builder.addTransition("s0", "s2", new String[] { "a" });
+            builder.addTransition("s0", "s5", new String[] { "a" });
+            builder.addTransition("s1", "s3", new String[] { "b" });
+            builder.addTransition("s2", "s4", new String[] { "b" });
+            builder.addTransition("s5", "s3", new String[] { "c" });
+            builder.addTransition("s3", "s3", new String[] { "c" });
+            builder.addTransition("s4", "s4", new String[] { "c" });
+            CompiledModel model = builder.build();
+
+            BisimulationQuotient quotient = BisimulationQuotient.minimize(model);
+            CompiledModel minimized = quotient.getModel();
+
+            assertEquals(4, minimized.getStateCount());
+            assertEquals(5, minimized.getEdgeCount());
+            assertEquals(quotient.getQuotientId(1), quotient.getQuotientId(2));
+            assertEquals(quotient.getQuotientId(3), quotient.getQuotientId(4));
+            assertNotEquals(quotient.getQuotientId(1), quotient.getQuotientId(5));
+            assertArrayEquals(new int[] { 1, 2 }, quotient.getMembers(quotient.getQuotientId(2)));
+
+            StateFormula fairnessConstraint = new FormulaParser("src/test/resources/myTests/TrueConstraint.json").parse();
+            // Some but not all successors of s0 can move on to r with action b:
+            FormulaFactory factory = new FormulaFactory();
+            Set<String> any = Collections.emptySet();
+            StateFormula thenB = factory.exists(factory.next(factory.atomic("r"), Collections.singleton("b")));
+            StateFormula query = factory.and(factory.exists(factory.next(thenB, any)),
+                    factory.not(factory.forAll(factory.next(thenB, any))));
+            assertTrue(new FixpointModelChecker().check(model, fairnessConstraint, query));
+            assertTrue(new FixpointModelChecker().check(minimized, fairnessConstraint, query));
+
+            // Traces found on the quotient name a state of the original model:
+            FixpointModelChecker mc = new FixpointModelChecker();
+            mc.setMinimize(true);
+            Model chain = Model.parseModel("src/test/resources/myTests/LongChainModel.json");
+            assertFalse(mc.check(chain, fairnessConstraint, FormulaParser.parseRawFormulaString("AG(!q)")));
+            assertEquals("s0", mc.getTrace()[0]);
+            assertEquals("s1099", mc.getTrace()[1099]);
+        } catch (IOException e) {
+            e.printStackTrace();
+            fail(e.toString());
+        }
+    }
+
+    /**
+     * Tests that the symbolic checker gives the verdicts and traces of the explicit one, on the mutual exclusion
+     * queries, with and without a constraint
+     */
+    @Test
+    public void symbolicTest() {
+        try {
+            Model model = Model.parseModel("src/test/resources/myTests/MutualModel.json");
+            StateFormula[] constraints = { new FormulaParser("src/test/resources/myTests/TrueConstraint.json").parse(),
+                    FormulaParser.parseRawFormulaString("!y") };
+
+            for (StateFormula constraint : constraints) {
+                for (int i = 1; i <= 10; i++) {
+                    StateFormula query = new FormulaParser("src/test/resources/myTests/MutualCTL" + i + ".json").parse();
+                    ModelChecker explicit = new FixpointModelChecker();
+                    ModelChecker symbolic = new SymbolicModelChecker();
+
+                    assertEquals(explicit.check(model, constraint, query), symbolic.check(model, constraint, query));
+                    assertArrayEquals(explicit.getTrace(), symbolic.getTrace());
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            fail(e.toString());
+        }
+    }
+
+    /**
+     * Tests that the on-the-fly checker agrees with the global one, and only explores the states it needs
+     */
+    @Test
+    public void onTheFlyTest() {
+        try {
+            Model model = Model.parseModel("src/test/resources/myTests/MutualModel.json");
+            StateFormula fairnessConstraint = new FormulaParser("src/test/resources/myTests/TrueConstraint.json").parse();
+            for (int i = 1; i <= 10; i++) {
+                StateFormula query = new FormulaParser("src/test/resources/myTests/MutualCTL" + i + ".json").parse();
+                ModelChecker global = new FixpointModelChecker();
+                ModelChecker local = new OnTheFlyModelChecker();
+
+                assertEquals(global.check(model, fairnessConstraint, query), local.check(model, fairnessConstraint, query));
+                assertEquals(firstState(global.getTrace()), firstState(local.getTrace()));
+            }
+
+            Model given = Model.parseModel("src/test/resources/givenTests/model1.json");
+            StateFormula constraint = new FormulaParser("src/test/resources/myTests/pORq.json").parse();
+            StateFormula query = new FormulaParser("src/test/resources/myTests/existsPuntilR.json").parse();
+            assertFalse(new OnTheFlyModelChecker().check(given, constraint, query));
+
+            // The witness of EX q is the first successor, the rest of the chain is never explored:
+            OnTheFlyModelChecker mc = new OnTheFlyModelChecker();
+            Model chain = Model.parseModel("src/test/resources/myTests/LongChainModel.json");
+            assertTrue(mc.check(chain, fairnessConstraint, FormulaParser.parseRawFormulaString("EX p")));
+            assertEquals(1, mc.getExploredStates());
+        } catch (IOException e) {
+            e.printStackTrace();
+            fail(e.toString());
+        }
+    }
+
+    /**
+     * Tests the on-the-fly checker on a model of a trillion states given by its successor function, of which only
+     * the states the check needs are generated
+     */
+    @Test
+    public void implicitModelTest() {
+        final int bound = 1000000;
+        StateSpace counters = new StateSpace() {
+            @Override
+            public int getVectorLength() {
+                return 2;
+            }
+
+            @Override
+            public List<int[]> initialStates() {
+                return Collections.singletonList(new int[] { 0, 0 });
+            }
+
+            @Override
+            public void successors(int[] state, Successors successors) {
+                if (state[0] + 1 < bound)
+                    successors.add(new int[] { state[0] + 1, state[1] }, "incx");
+                if (state[1] + 1 < bound)
+                    successors.add(new int[] { state[0], state[1] + 1 }, "incy");
+            }
+
+            @Override
+            public boolean hasLabel(int[] state, String label) {
+                return label.equals("five") && state[0] == 5;
+            }
+        };
+
+        try {
+            OnTheFlyModelChecker mc = new OnTheFlyModelChecker();
+            ImplicitModel model = new ImplicitModel(counters);
+            StateFormula trueConstraint = FormulaParser.parseRawFormulaString("TRUE");
+
+            assertTrue(mc.check(model, trueConstraint, FormulaParser.parseRawFormulaString("EF five")));
+            assertTrue(model.getStateCount() < 20);
+            assertFalse(mc.check(model, trueConstraint, FormulaParser.parseRawFormulaString("AX five")));
+            assertArrayEquals(new String[] { "[0, 0]" }, mc.getTrace());
+            assertEquals(1, model.getStore().indexOf(new int[] { 1, 0 }));
+        } catch (IOException e) {
+            e.printStackTrace();
+            fail(e.toString());
+        }
+    }
+
+    /**
+     * Tests that counterexamples are shortest paths of the model with the actions of their steps, closing into a
+     * lasso when the violation is a path looping forever
+     */
+    @Test
+    public void counterexampleTest() {
+        try {
+            // s0 and s1 loop on a while s1 can leave on b for s2, the only state labelled q:
+            CompiledModel.Builder builder = new CompiledModel.Builder();
+            builder.addState("s0", true, new String[] { "p" });
+            builder.addState("s1", false, new String[] { "p" });
+            builder.addState("s2", false, new String[] { "q" });
+            builder.addTransition("s0", "s1", new String[] { "a" });
+            builder.addTransition("s1", "s0", new String[] { "a" });
+            builder.addTransition("s1", "s2", new String[] { "b" });
+            builder.addTransition("s2", "s2", new String[] { "c" });
+            CompiledModel model = builder.build();
+            StateFormula trueConstraint = FormulaParser.parseRawFormulaString("TRUE");
+            FixpointModelChecker mc = new FixpointModelChecker();
+
+            assertFalse(mc.check(model, trueConstraint, FormulaParser.parseRawFormulaString("AG(!q)")));
+            Trace trace = mc.getCounterexample();
+            assertArrayEquals(new String[] { "s0", "s1", "s2" }, trace.getStates());
+            assertEquals(Arrays.asList(Collections.singleton("a"), Collections.singleton("b")), trace.getActions());
+            assertFalse(trace.isLasso());
+
+            assertFalse(mc.check(model, trueConstraint, FormulaParser.parseRawFormulaString("AF q")));
+            trace = mc.getCounterexample();
+            assertArrayEquals(new String[] { "s0", "s1" }, trace.getStates());
+            assertEquals(0, trace.getLoopStart());
+            assertEquals(2, trace.getActions().size());
+
+            // The witness of EX q shows the step out of the loop into s2:
+            assertFalse(mc.check(model, trueConstraint, FormulaParser.parseRawFormulaString("!(EX (EX q))")));
+            assertArrayEquals(new String[] { "s0", "s1", "s2" }, mc.getTrace());
+
+            assertTrue(mc.check(model, trueConstraint, FormulaParser.parseRawFormulaString("EF q")));
+            assertNull(mc.getCounterexample());
+            assertEquals(0, mc.getTrace().length);
+        } catch (IOException e) {
+            e.printStackTrace();
+            fail(e.toString());
+        }
+    }
+
+    /**
+     * Tests the generated models and formulas, which read back as themselves and get the same verdicts in either form
+     */
+    @Test
+    public void generatorTest() {
+        try {
+            StateFormula trueConstraint = FormulaParser.parseRawFormulaString("TRUE");
+            FixpointModelChecker mc = new FixpointModelChecker();
+
+            // Three processes give 2^3 + 3 * 2^2 states, of which no two are critical at once:
+            CompiledModel mutex = ModelGenerator.mutualExclusion(3).compile();
+            assertEquals(20, mutex.getStateCount());
+            assertTrue(mc.check(mutex, trueConstraint, FormulaParser.parseRawFormulaString("AG(!(crit0 && crit1))")));
+            assertTrue(mc.check(mutex, trueConstraint, FormulaParser.parseRawFormulaString("EF((wait0 && wait1) && wait2)")));
+
+            // Four philosophers can all pick up their left fork and starve:
+            CompiledModel philosophers = ModelGenerator.diningPhilosophers(4).compile();
+            assertFalse(mc.check(philosophers, trueConstraint, FormulaParser.parseRawFormulaString("AG(!deadlock)")));
+
+            File modelFile = File.createTempFile("generated", ".json");
+            modelFile.deleteOnExit();
+            ModelGenerator random = ModelGenerator.randomGraph(200, 3, 4, 4, 4052);
+            random.writeJson(modelFile.getPath());
+            Model model = Model.parseModel(modelFile.getPath());
+            assertEquals(200, model.getStates().length);
+            assertEquals(600, model.getTransitions().length);
+
+            // Generated formulas read back as themselves and get the same verdict on both forms of the model:
+            FormulaGenerator formulas = new FormulaGenerator(Arrays.asList("p0", "p1", "p2", "p3"),
+                    Arrays.asList("act0", "act1", "act2", "act3"), 4052);
+            CompiledModel compiled = random.compile();
+            File formulaFile = File.createTempFile("generated", ".json");
+            formulaFile.deleteOnExit();
+            for (int depth = 0; depth <= 5; depth++) {
+                StateFormula query = formulas.write(depth, formulaFile.getPath());
+                StateFormula parsed = new FormulaParser(formulaFile.getPath()).parse();
+                assertEquals(FormulaGenerator.toJson(query), FormulaGenerator.toJson(parsed));
+                assertEquals(mc.check(compiled, trueConstraint, query), mc.check(model, trueConstraint, parsed));
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            fail(e.toString());
+        }
+    }
+
+    /**
+     * Tests the parallel fixpoints against the sequential checker on a generated model above the parallel threshold
+     */
+    @Test
+    public void parallelGeneratedModelTest() {
+        try {
+            // A generated model above the threshold from which fixpoints are computed in parallel:
+            CompiledModel model = ModelGenerator.randomGraph(20000, 3, 4, 4, 4052).compile();
+            FormulaGenerator formulas = new FormulaGenerator(Arrays.asList("p0", "p1", "p2", "p3"),
+                    Arrays.asList("act0", "act1", "act2", "act3"), 4052);
+            StateFormula[] constraints = { FormulaParser.parseRawFormulaString("TRUE"),
+                    FormulaParser.parseRawFormulaString("!p3") };
+
+            FixpointModelChecker sequential = new FixpointModelChecker();
+            FixpointModelChecker parallel = new FixpointModelChecker(4);
+            for (int i = 0; i < 40; i++) {
+                StateFormula query = formulas.next(1 + i % 5);
+                StateFormula constraint = constraints[i % 2];
+                boolean verdict = sequential.check(model, constraint, query);
+                assertEquals(verdict, parallel.check(model, constraint, query));
+                if (!verdict)
+                    assertEquals(sequential.getCounterexample().toString(), parallel.getCounterexample().toString());
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            fail(e.toString());
+        }
+    }
+
+    /**
+     * Tests that concurrently evaluated subformulas shared by queries are cached as they are by the sequential checker
+     */
+    @Test
+    public void parallelDagCacheTest() {
+        try {
+            // Without a threshold, the independent subformulas of a small model are evaluated on four threads:
+            CompiledModel model = ModelGenerator.randomGraph(500, 3, 4, 4, 4052).compile();
+            FixpointModelChecker sequential = new FixpointModelChecker();
+            FixpointModelChecker parallel = new FixpointModelChecker(4, 0);
+            StateFormula constraint = FormulaParser.parseRawFormulaString("!p3");
+
+            // The subformula EF(p0 && EX p1) occurs twice in the first query and once in the second:
+            String[] queries = { "(EF(p0 && EX p1) && AG(EF(p0 && EX p1) || (p2 && AX p1)))",
+                    "(A(p1 U EF(p0 && EX p1)) || EG(!p0 && EF p2))", "AG(EF(p0 && EX p1))" };
+            for (String formula : queries) {
+                StateFormula query = FormulaParser.parseRawFormulaString(formula);
+                boolean verdict = sequential.check(model, constraint, query);
+                assertEquals(verdict, parallel.check(model, constraint, query));
+                assertArrayEquals(sequential.getTrace(), parallel.getTrace());
+                assertEquals(sequential.getCache().size(), parallel.getCache().size());
+                assertEquals(sequential.getCache().getHits(), parallel.getCache().getHits());
+            }
+            assertTrue(parallel.getCache().getHits() > 0);
+        } catch (IOException e) {
+            e.printStackTrace();
+            fail(e.toString());
+        }
+    }
+
+    /**
+     * Tests that the verdicts kept by an incremental session follow edits of the model as a full check would
+     */
+    @Test
+    public void incrementalTest() {
+        try {
+            // s0 and s1 step to each other on a, s2 is not reachable yet:
+            CompiledModel.Builder builder = new CompiledModel.Builder();
+            builder.addState("s0", true, new String[] { "p" });
+            builder.addState("s1", false, new String[] { "p" });
+            builder.addState("s2", false, new String[] { "q" });
+            builder.addTransition("s0", "s1", new String[] { "a" });
+            builder.addTransition("s1", "s0", new String[] { "a" });
+            StateFormula trueConstraint = FormulaParser.parseRawFormulaString("TRUE");
+            IncrementalSession session = new IncrementalSession(builder.build(), trueConstraint);
+            StateFormula always = FormulaParser.parseRawFormulaString("AG p");
+            StateFormula eventually = FormulaParser.parseRawFormulaString("EF q");
+            assertTrue(session.check(always).isSatisfied());
+            assertFalse(session.check(eventually).isSatisfied());
+
+            // A step from s1 into s2 changes both verdicts, and removing s2 changes them back:
+            List<QueryResult> changed = session.apply(new ModelDelta().addTransition("s1", "s2", "b"));
+            assertEquals(2, changed.size());
+            assertFalse(changed.get(0).isSatisfied());
+            assertArrayEquals(new String[] { "s0", "s1", "s2" }, changed.get(0).getTrace());
+            assertTrue(changed.get(1).isSatisfied());
+            changed = session.apply(new ModelDelta().removeState("s2"));
+            assertEquals(2, changed.size());
+            assertTrue(session.getModel().isRemoved(2));
+
+            // An edit which does not reach the initial state changes no verdict:
+            changed = session.apply(new ModelDelta().addState("s3", false, "q").addTransition("s3", "s0", "a"));
+            assertTrue(changed.isEmpty());
+
+            // On random edits of a generated model, the verdicts kept by the session are those of a full check:
+            ModelGenerator random = ModelGenerator.randomGraph(200, 2, 4, 4, 4052);
+            StateFormula constraint = FormulaParser.parseRawFormulaString("!p3");
+            session = new IncrementalSession(random.compile(), constraint);
+            FormulaGenerator formulas = new FormulaGenerator(Arrays.asList("p0", "p1", "p2", "p3"),
+                    Arrays.asList("act0", "act1", "act2", "act3"), 4052);
+            List<StateFormula> queries = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                queries.add(formulas.next(1 + i % 4));
+                session.check(queries.get(i));
+            }
+            FixpointModelChecker mc = new FixpointModelChecker();
+            for (int i = 0; i < 10; i++) {
+                CompiledModel model = session.getModel();
+                String source = model.getStateName(7 * i);
+                session.apply(new ModelDelta().addTransition(source, model.getStateName(3 * i), "act" + i % 4)
+                        .addState(source, i % 3 == 0, "p" + i % 4));
+                for (StateFormula query : queries) {
+                    assertEquals(mc.check(session.getModel(), constraint, query),
+                            session.check(query).isSatisfied());
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            fail(e.toString());
+        }
+    }
+
+    /**
+     * Tests that a delta diffed from an edited JSON model gives the model a fresh load would, and that chained and
+     * branched deltas leave the versions they edit unchanged
+     */
+    @Test
+    public void modelDeltaTest() {
+        try {
+            String modelPath = "src/test/resources/myTests/MutualModel.json";
+            CompiledModel base = new ModelLoader().load(modelPath);
+            assertTrue(ModelDelta.diff(base, Model.parseModel(modelPath)).isEmpty());
+
+            // Removing a state drops the transitions the same delta added to or from it, as well as the existing ones:
+            ModelDelta delta = new ModelDelta().addTransition("s0", "s7", "act7").addTransition("s7", "s0", "act7")
+                    .addState("s8", false, "p1").addTransition("s8", "s7").removeState("s7").removeState("s8");
+            CompiledModel edited = delta.applyTo(base).getModel();
+            assertEquals(base.getStateCount(), edited.getStateCount());
+            assertTrue(edited.isRemoved(base.getStateId("s7")));
+            assertEquals(-1, edited.getStateId("s7"));
+            assertEquals(base.getEdgeCount() - 3, edited.getEdgeCount());
+
+            // Edit the JSON of the model: drop s7, relabel s0, add s8 and replace the transition from s0 to s1:
+            JsonObject json = new JsonParser().parse(new FileReader(modelPath)).getAsJsonObject();
+            JsonArray states = new JsonArray();
+            for (JsonElement state : json.getAsJsonArray("states")) {
+                String name = state.getAsJsonObject().get("name").getAsString();
+                if (name.equals("s0"))
+                    state.getAsJsonObject().add("label", new JsonParser().parse("[\"p1\"]"));
+                if (!name.equals("s7"))
+                    states.add(state);
+            }
+            states.add(new JsonParser().parse("{\"init\": true, \"name\": \"s8\", \"label\": [\"q3\"]}"));
+            JsonArray transitions = new JsonArray();
+            for (JsonElement transition : json.getAsJsonArray("transitions")) {
+                JsonObject object = transition.getAsJsonObject();
+                String source = object.get("source").getAsString();
+                String target = object.get("target").getAsString();
+                if (!source.equals("s7") && !target.equals("s7") && !(source.equals("s0") && target.equals("s1")))
+                    transitions.add(transition);
+            }
+            transitions.add(new JsonParser().parse(
+                    "{\"source\": \"s0\", \"target\": \"s1\", \"actions\": [\"act1\", \"act2\"]}"));
+            transitions.add(new JsonParser().parse("{\"source\": \"s8\", \"target\": \"s0\", \"actions\": []}"));
+            json.add("states", states);
+            json.add("transitions", transitions);
+            File updatedFile = File.createTempFile("MutualModel", ".json");
+            updatedFile.deleteOnExit();
+            try (FileWriter out = new FileWriter(updatedFile)) {
+                out.write(json.toString());
+            }
+
+            // Applying the diff gives the states and transitions of the edited model:
+            delta = ModelDelta.diff(base, Model.parseModel(updatedFile.getPath()));
+            assertEquals(6, delta.size());
+            edited = delta.applyTo(base).getModel();
+            assertEquals(describe(new ModelLoader().load(updatedFile.getPath())), describe(edited));
+            assertTrue(ModelDelta.diff(edited, Model.parseModel(updatedFile.getPath())).isEmpty());
+
+            // Deltas layered over the edited version, one after the other or branching from it, leave it unchanged:
+            Set<String> expected = describe(edited);
+            expected.remove("s0 -[act1, act2]-> s1");
+            expected.add("s8 -[act1]-> s1");
+            CompiledModel chained = new ModelDelta().removeTransition("s0", "s1", "act2", "act1")
+                    .addTransition("s8", "s1", "act1").applyTo(edited).getModel();
+            CompiledModel branched = new ModelDelta().addState("s9", false).addTransition("s8", "s9").applyTo(edited)
+                    .getModel();
+            assertEquals(expected, describe(chained));
+            assertEquals(-1, chained.getStateId("s9"));
+            assertEquals(edited.getStateCount() + 1, branched.getStateCount());
+            assertEquals(describe(new ModelLoader().load(updatedFile.getPath())), describe(edited));
+        } catch (IOException e) {
+            e.printStackTrace();
+            fail(e.toString());
+        }
+    }
+
+    /**
+     * Tests that stored verdicts are found again by file or compiled model, outlive a record cut short by a crash, and
+     * are evicted least recently used first
+     */
+    @Test
+    public void verdictStoreTest() {
+        try {
+            File storeFile = File.createTempFile("verdicts", ".log");
+            storeFile.deleteOnExit();
+            String modelPath = "src/test/resources/myTests/MutualModel.json";
+            StateFormula trueConstraint = FormulaParser.parseRawFormulaString("TRUE");
+            StateFormula query = FormulaParser.parseRawFormulaString("AG(!y)");
+
+            VerdictStore store = new VerdictStore(storeFile.getPath(), 1 << 20);
+            QueryResult checked = store.check(modelPath, trueConstraint, query);
+            QueryResult stored = store.check(modelPath, trueConstraint, FormulaParser.parseRawFormulaString("AG(!y)"));
+            assertEquals(1, store.getMisses());
+            assertEquals(1, store.getHits());
+            assertFalse(stored.isSatisfied());
+            assertArrayEquals(checked.getTrace(), stored.getTrace());
+            assertEquals(checked.getCounterexample().toString(), stored.getCounterexample().toString());
+
+            // The same model compiled in memory has the same digest:
+            assertFalse(store.check(new ModelLoader().load(modelPath), trueConstraint, query).isSatisfied());
+            assertEquals(2, store.getHits());
+            store.close();
+
+            // A record cut short by a crash is dropped when the store is opened again:
+            long size = storeFile.length();
+            try (FileOutputStream out = new FileOutputStream(storeFile, true)) {
+                out.write(new byte[] { 0, 0, 1, 0, 1, 2, 3 });
+            }
+            store = new VerdictStore(storeFile.getPath(), 1 << 20);
+            assertEquals(size, store.getFileSize());
+            assertEquals(1, store.size());
+            assertArrayEquals(checked.getTrace(), store.check(modelPath, trueConstraint, query).getTrace());
+            assertEquals(0, store.getMisses());
+            store.close();
+
+            // A small store only keeps the most recently used verdicts:
+            assertTrue(storeFile.delete());
+            store = new VerdictStore(storeFile.getPath(), 200);
+            String[] queries = { "AG(!y)", "EF y", "AF y", "EG(!y)", "AX y" };
+            for (String formula : queries)
+                store.check(modelPath, trueConstraint, FormulaParser.parseRawFormulaString(formula));
+            assertTrue(store.size() < queries.length);
+            store.check(modelPath, trueConstraint, FormulaParser.parseRawFormulaString("AX y"));
+            assertEquals(1, store.getHits());
+            store.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+            fail(e.toString());
+        }
+    }
+
+    // The states of a model which are not removed, with their labels and transitions, independently of their ids:
+    private static Set<String> describe(CompiledModel model) {
+        Set<String> description = new TreeSet<>();
+        for (int s = 0; s < model.getStateCount(); s++) {
+            if (model.isRemoved(s))
+                continue;
+            String[] labels = model.getLabels(s);
+            Arrays.sort(labels);
+            description.add(model.getStateName(s) + (model.isInitial(s) ? " initial " : " ") + Arrays.toString(labels));
+            for (int e = model.outBegin(s); e < model.outEnd(s); e++) {
+                description.add(model.getStateName(s) + " -" + new TreeSet<>(model.actions(model.actionSet(e))) + "-> "
+                        + model.getStateName(model.target(e)));
+            }
+        }
+        return description;
+    }
+
+    private static String firstState(String[] trace) {
+        return trace.length == 0 ? null : trace[0];
+    }
+
 }